@@ -0,0 +1,96 @@
+package com.trycucumber.systemtests.bench;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Local HTML pages for the benchmarks, built from blocks of ten elements: a section, its heading, a paragraph with
+ * a link, an image, a two item list, a hidden span and a one pixel div, so visibility and size filtering have
+ * something to drop.
+ * User: Atish Narlawar
+ */
+public final class GeneratedPage {
+
+    /**
+     * The elements in one block.
+     */
+    public static final int NODES_PER_BLOCK = 10;
+
+    /**
+     * A one pixel gif, so images load without a server.
+     */
+    private static final String PIXEL = "data:image/gif;base64,R0lGODlhAQABAIAAAAAAAP///yH5BAEAAAAALAAAAAABAAEAAAIBRAA7";
+
+    /**
+     * Instantiates a new Generated page.
+     */
+    private GeneratedPage() {
+    }
+
+    /**
+     * Writes a page of about the given number of elements to a temporary file, deleted when the JVM exits.
+     *
+     * @param nodes the nodes
+     *
+     * @return the file
+     *
+     * @throws IOException the iO exception
+     */
+    public static File write(int nodes) throws IOException {
+        StringBuilder html = new StringBuilder(nodes * 160);
+        html.append("<!DOCTYPE html><html><head><title>Generated ").append(nodes).append("</title>")
+                .append("<style>.tiny{width:1px;height:1px;overflow:hidden}.copy{color:#333;border:1px solid #ccc}</style>")
+                .append("</head><body>");
+
+        for (int block = 0; block < blocks(nodes); block++) {
+            html.append("<div class=\"section block\" id=\"block-").append(block).append("\">")
+                    .append("<h2>Block ").append(block).append("</h2>")
+                    .append("<p class=\"copy\">Copy of block ").append(block)
+                    .append(" <a href=\"#block-").append(block).append("\">link ").append(block).append("</a></p>")
+                    .append("<img src=\"").append(PIXEL).append("\" alt=\"image ").append(block).append("\" width=\"40\" height=\"30\"/>")
+                    .append("<ul><li>first</li><li>second</li></ul>")
+                    .append("<span style=\"display:none\">hidden</span>")
+                    .append("<div class=\"tiny\"></div>")
+                    .append("</div>");
+        }
+        html.append("</body></html>");
+
+        File page = File.createTempFile("generated-" + nodes + "-", ".html");
+        page.deleteOnExit();
+        Files.write(html, page, Charsets.UTF_8);
+        return page;
+    }
+
+    /**
+     * Gets XPaths of a heading, an image and a list from up to ten blocks, as a scenario would track them.
+     *
+     * @param nodes the nodes the page was written with
+     *
+     * @return the tracked x paths
+     */
+    public static Set<String> trackedXPaths(int nodes) {
+        Set<String> xpaths = new LinkedHashSet<String>();
+        for (int block = 0; block < Math.min(10, blocks(nodes)); block++) {
+            xpaths.add("//div[@id='block-" + block + "']/h2");
+            xpaths.add("//div[@id='block-" + block + "']/img");
+            xpaths.add("//div[@id='block-" + block + "']/ul");
+        }
+        return xpaths;
+    }
+
+    /**
+     * Blocks.
+     *
+     * @param nodes the nodes
+     *
+     * @return the int
+     */
+    private static int blocks(int nodes) {
+        return Math.max(1, nodes / NODES_PER_BLOCK);
+    }
+}
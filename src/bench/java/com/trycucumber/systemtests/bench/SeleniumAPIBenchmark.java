@@ -0,0 +1,249 @@
+package com.trycucumber.systemtests.bench;
+
+import com.trycucumber.systemtests.api.ElementXPathResolver;
+import com.trycucumber.systemtests.api.ScreenshotWriter;
+import com.trycucumber.systemtests.api.SeleniumAPI;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.WebElement;
+import org.springframework.context.support.GenericXmlApplicationContext;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the SeleniumAPI hot paths on the headless browser, against generated pages of 100 to 10,000
+ * elements. The Spring context is the one the Cucumber tests use, so the configured snapshot, caching and
+ * screenshot settings are what gets measured, except that the crumb store and the SQL log are written to a fresh
+ * directory per trial under bench.output.dir. Run with mvn -P bench test-compile exec:exec.
+ * User: Atish Narlawar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SeleniumAPIBenchmark {
+
+    /**
+     * The system property naming the directory the benchmarks write to.
+     */
+    private static final String OUTPUT_DIR_PROPERTY = "bench.output.dir";
+
+    /**
+     * The elements on the generated page.
+     */
+    @Param({"100", "1000", "10000"})
+    private int nodes;
+
+    /**
+     * The Context.
+     */
+    private GenericXmlApplicationContext context;
+
+    /**
+     * The Selenium API.
+     */
+    private SeleniumAPI seleniumAPI;
+
+    /**
+     * The Screenshot writer.
+     */
+    private ScreenshotWriter screenshotWriter;
+
+    /**
+     * The element in the last block, deepest in document order.
+     */
+    private WebElement lastLink;
+
+    /**
+     * The Tracked x paths.
+     */
+    private Set<String> trackedXPaths;
+
+    /**
+     * A page sized PNG of noise, so it does not compress away.
+     */
+    private byte[] screenshot;
+
+    /**
+     * The Screenshot counter, to make every new screenshot unique.
+     */
+    private int screenshotCounter;
+
+    /**
+     * Starts a session and opens the generated page.
+     *
+     * @throws Exception the exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File outputDir = new File(System.getProperty(OUTPUT_DIR_PROPERTY, "target/bench"), "nodes-" + nodes);
+        FileUtils.deleteDirectory(outputDir);
+        System.setProperty("crumbdb.store.path", new File(outputDir, "crumbstore").getPath());
+        System.setProperty("element.state.sql.file", new File(outputDir, "log-sql.txt").getPath());
+
+        context = new GenericXmlApplicationContext("classpath:seleniumContext.xml");
+        seleniumAPI = context.getBean(SeleniumAPI.class);
+        screenshotWriter = context.getBean(ScreenshotWriter.class);
+
+        File page = GeneratedPage.write(nodes);
+        seleniumAPI.start();
+        seleniumAPI.openPage(page.toURI().toString());
+
+        List<WebElement> links = seleniumAPI.findElementsByCss("a");
+        lastLink = links.get(links.size() - 1);
+        trackedXPaths = GeneratedPage.trackedXPaths(nodes);
+        screenshot = noisePng(1280, 800);
+    }
+
+    /**
+     * Waits for the screenshots of the iteration to reach the disk.
+     */
+    @TearDown(Level.Iteration)
+    public void flushScreenshots() {
+        screenshotWriter.flush();
+    }
+
+    /**
+     * Releases the session and closes the context.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        seleniumAPI.quit();
+        context.close();
+    }
+
+    /**
+     * Gets visible elements.
+     *
+     * @return the list
+     */
+    @Benchmark
+    public List<WebElement> getVisibleElements() {
+        return seleniumAPI.getVisibleElements();
+    }
+
+    /**
+     * Gets tangible elements.
+     *
+     * @return the list
+     */
+    @Benchmark
+    public List<WebElement> getTangibleElements() {
+        return seleniumAPI.getTangibleElements();
+    }
+
+    /**
+     * Gets the XPath of an element, answered from the per page cache after the first call.
+     *
+     * @return the string
+     */
+    @Benchmark
+    public String getElementXPath() {
+        return seleniumAPI.getElementXPath(lastLink);
+    }
+
+    /**
+     * Resolves the XPath of an element in the browser, as getElementXPath does on a cache miss.
+     *
+     * @return the list
+     */
+    @Benchmark
+    public List<String> getElementXPathUncached() {
+        return new ElementXPathResolver().resolve(seleniumAPI.getDriver(), Collections.singletonList(lastLink));
+    }
+
+    /**
+     * Logs the state of the tracked elements into the crumb store and the element state sinks.
+     */
+    @Benchmark
+    public void logElementState() {
+        seleniumAPI.logElementState(seleniumAPI.getDriver(), trackedXPaths, "SeleniumAPIBenchmark", "nodes-" + nodes);
+    }
+
+    /**
+     * Gets attribute values of one element, one of each kind of lookup.
+     *
+     * @return the object
+     */
+    @Benchmark
+    public Object[] getAttributeValue() {
+        return new Object[]{
+                seleniumAPI.getAttributeValue(lastLink, "isVisible"),
+                seleniumAPI.getAttributeValue(lastLink, "width"),
+                seleniumAPI.getAttributeValue(lastLink, "color"),
+                seleniumAPI.getAttributeValue(lastLink, "href")
+        };
+    }
+
+    /**
+     * Writes a screenshot not seen before. The writer's queue bounds how far writes can run ahead of the disk.
+     *
+     * @return the future
+     */
+    @Benchmark
+    public Future<File> writeNewScreenshot() {
+        byte[] unique = screenshot.clone();
+        int counter = screenshotCounter++;
+        for (int i = 0; i < 4; i++) {
+            unique[unique.length / 2 + i] = (byte) (counter >>> (8 * i));
+        }
+        return screenshotWriter.write("bench-" + nodes, unique);
+    }
+
+    /**
+     * Writes a screenshot already in the store, which costs a hash and a manifest line.
+     *
+     * @return the future
+     */
+    @Benchmark
+    public Future<File> writeDuplicateScreenshot() {
+        return screenshotWriter.write("bench-" + nodes, screenshot);
+    }
+
+    /**
+     * Noise png.
+     *
+     * @param width  the width
+     * @param height the height
+     *
+     * @return the byte [ ]
+     *
+     * @throws IOException the iO exception
+     */
+    private static byte[] noisePng(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
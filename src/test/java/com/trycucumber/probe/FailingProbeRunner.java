@@ -0,0 +1,11 @@
+package com.trycucumber.probe;
+
+import cucumber.api.CucumberOptions;
+
+/**
+ * Runner of the probe features including the scenario whose Before hook fails.
+ * User: Atish Narlawar
+ */
+@CucumberOptions(features = "classpath:probe", glue = "classpath:com/trycucumber/probe")
+public class FailingProbeRunner {
+}
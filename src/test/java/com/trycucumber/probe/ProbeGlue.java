@@ -0,0 +1,66 @@
+package com.trycucumber.probe;
+
+import com.trycucumber.systemtests.framework.RunContext;
+import cucumber.api.java.Before;
+import cucumber.api.java.en.Given;
+import cucumber.api.java.en.When;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Glue of the probe features the framework tests run through a real Cucumber runtime. It lives outside the
+ * systemtests package so the suite runners never pick it up.
+ * User: Atish Narlawar
+ */
+public class ProbeGlue {
+
+    /**
+     * What the hooks and steps saw, as "what: scenario | step".
+     */
+    public static final List<String> OBSERVED = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Records the hook.
+     */
+    @Before("@probe")
+    public void before() {
+        observe("before");
+    }
+
+    /**
+     * Fails, as a browser that cannot start would.
+     */
+    @Before("@probe-failing-hook")
+    public void failingBefore() {
+        throw new IllegalStateException("Probe hook failure");
+    }
+
+    /**
+     * Records the step.
+     */
+    @Given("^a probe step$")
+    public void probeStep() {
+        observe("step");
+    }
+
+    /**
+     * Records the step of an outline row.
+     *
+     * @param row the row
+     */
+    @When("^probe row (\\d+)$")
+    public void probeRow(int row) {
+        observe("row " + row);
+    }
+
+    /**
+     * Records what is running.
+     *
+     * @param what the what
+     */
+    private static void observe(String what) {
+        OBSERVED.add(what + ": " + RunContext.getScenario() + " | " + RunContext.getStep());
+    }
+}
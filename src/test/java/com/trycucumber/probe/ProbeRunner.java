@@ -0,0 +1,11 @@
+package com.trycucumber.probe;
+
+import cucumber.api.CucumberOptions;
+
+/**
+ * Runner of the probe features the parallel runner tests share out over forked workers.
+ * User: Atish Narlawar
+ */
+@CucumberOptions(features = "classpath:probe-parallel", glue = "classpath:com/trycucumber/probe")
+public class ProbeRunner {
+}
@@ -0,0 +1,44 @@
+package com.trycucumber.systemtests;
+
+
+import com.trycucumber.systemtests.framework.LoadGenerator;
+import com.trycucumber.systemtests.framework.LoadReport;
+import cucumber.api.CucumberOptions;
+
+import java.io.File;
+import java.io.IOException;
+
+
+/**
+ * Load runner replaying the same Cucumber journeys RunCukesTestIT checks, on concurrent virtual users, to measure
+ * the capacity of server.host. Run it with mvn -P load test-compile exec:exec, which uses headless browsers.
+ * Every virtual user runs in a JVM and browser of its own, so size the load to the machine rather than the pool.
+ * <p/>
+ * User: Atish Narlawar
+ * <p/>
+ * Set -Dload.users, -Dload.rampup.seconds, -Dload.duration.seconds and -Dload.iterations to shape the load
+ * (0 lifts the duration or iteration limit), -Dload.report.path to move the report, and
+ * -Dcucumber.options="--tags @HomePage" to pick other journeys.
+ */
+@CucumberOptions(features = "src/test/resources/features", tags = {"@ready", "~@wip", "@happypath", "~@performance"})
+public class RunCukesLoad {
+
+    /**
+     * Runs the load and exits with 1 when any scenario failed or any virtual user stopped without a report.
+     *
+     * @param args the args
+     *
+     * @throws IOException the iO exception
+     */
+    public static void main(String[] args) throws IOException {
+        LoadGenerator generator = new LoadGenerator(RunCukesLoad.class,
+                Integer.getInteger("load.users", 4),
+                Long.getLong("load.rampup.seconds", 0),
+                Long.getLong("load.duration.seconds", 60),
+                Integer.getInteger("load.iterations", 0));
+
+        LoadReport report = generator.run();
+        report.write(new File(System.getProperty("load.report.path", "target/load-report.json")));
+        System.exit(report.getFailed() == 0 && report.getLostUsers() == 0 ? 0 : 1);
+    }
+}
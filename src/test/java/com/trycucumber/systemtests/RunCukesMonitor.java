@@ -0,0 +1,56 @@
+package com.trycucumber.systemtests;
+
+
+import com.trycucumber.systemtests.framework.MonitorDaemon;
+import com.trycucumber.systemtests.framework.RollingMetricsFile;
+import cucumber.api.CucumberOptions;
+
+import java.io.File;
+
+
+/**
+ * Synthetic monitoring daemon running the @happypath journeys on a schedule in one long-lived JVM, with the
+ * Spring context and browser sessions kept warm between runs. Run it with mvn -P monitor test-compile exec:exec.
+ * <p/>
+ * User: Atish Narlawar
+ * <p/>
+ * Set -Dmonitor.interval.seconds for the pause between runs, -Dmonitor.runs to stop after that many runs (0 runs
+ * until the JVM is stopped), and -Dmonitor.metrics.path, -Dmonitor.metrics.max.bytes and -Dmonitor.metrics.files
+ * for the rolling metrics file.
+ */
+@CucumberOptions(features = "src/test/resources/features", tags = {"@ready", "~@wip", "@happypath", "~@performance"})
+public class RunCukesMonitor {
+
+    /**
+     * Runs the daemon until its runs are done or the JVM is asked to stop.
+     *
+     * @param args the args
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws InterruptedException {
+        RollingMetricsFile metricsFile = new RollingMetricsFile(new File(System.getProperty("monitor.metrics.path", "target/monitor/metrics.jsonl")),
+                Long.getLong("monitor.metrics.max.bytes", 10 * 1024 * 1024),
+                Integer.getInteger("monitor.metrics.files", 5));
+
+        final MonitorDaemon daemon = new MonitorDaemon(RunCukesMonitor.class,
+                Long.getLong("monitor.interval.seconds", 60),
+                Integer.getInteger("monitor.runs", 0),
+                metricsFile);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.shutdown(60);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "monitor-shutdown"));
+
+        daemon.start();
+        daemon.awaitTermination();
+        System.exit(0);
+    }
+}
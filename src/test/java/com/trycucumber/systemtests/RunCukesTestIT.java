@@ -1,8 +1,12 @@
 package com.trycucumber.systemtests;
 
 
+import com.trycucumber.systemtests.framework.ParallelCucumberRunner;
 import cucumber.api.CucumberOptions;
 import cucumber.api.testng.AbstractTestNGCucumberTests;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
 
 
 /**
@@ -10,6 +14,9 @@ import cucumber.api.testng.AbstractTestNGCucumberTests;
  * <p/>
  * User: Atish Narlawar
  * This is the cucumber Test
+ * <p/>
+ * Set -Dcucumber.workers=N to run features on N forked JVMs in parallel (0 uses every core).
+ * Every value in seleniumtest.properties can be overridden with a system property of the same name.
  *
  */
 
@@ -17,7 +24,22 @@ import cucumber.api.testng.AbstractTestNGCucumberTests;
  * started cucumber option
  */
 
-@CucumberOptions(features = "src/test/resources/features", tags = {"@ready", "~@wip", "@happypath"}, format = {"html:target/cucumber-html-report", "json:target/cucumber-json-report.json"})
+@CucumberOptions(features = "src/test/resources/features", tags = {"@ready", "~@wip", "@happypath"}, format = {"html:target/cucumber-html-report", "json:target/cucumber-json-report.json", "com.trycucumber.systemtests.framework.StepTracker"})
 public class RunCukesTestIT extends AbstractTestNGCucumberTests {
 
-}
\ No newline at end of file
+    /**
+     * Run cukes, sequentially or on the configured number of parallel workers.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    @Test(groups = "cucumber", description = "Runs Cucumber Features")
+    public void run_cukes() throws IOException {
+        int workers = ParallelCucumberRunner.configuredWorkers();
+        if (workers > 1) {
+            new ParallelCucumberRunner(getClass(), workers).runCukes();
+        } else {
+            super.run_cukes();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks image URLs concurrently over one pooled HTTP client. Each URL is asked for with HEAD, falling back to a
+ * one byte ranged GET for servers that refuse HEAD; a GET answered with more than the byte asked for is aborted
+ * rather than downloaded. Statuses are cached for the run, shared across pages and threads, until they expire;
+ * URLs that could not be reached are checked again next time.
+ * User: Atish Narlawar
+ */
+@Component
+public class BrokenImageChecker implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(BrokenImageChecker.class);
+
+    /**
+     * The status recorded for URLs that could not be fetched at all.
+     */
+    private static final int UNREACHABLE = -1;
+
+    /**
+     * The Concurrency.
+     */
+    @Value("${image.check.concurrency}")
+    private int concurrency;
+
+    /**
+     * The Cache ttl seconds.
+     */
+    @Value("${image.check.cache.ttl.seconds}")
+    private long cacheTtlSeconds;
+
+    /**
+     * The Timeout millis, for connecting and for reading.
+     */
+    @Value("${image.check.timeout.millis}")
+    private int timeoutMillis;
+
+    /**
+     * The Statuses by url.
+     */
+    private final ConcurrentMap<String, CachedStatus> statuses = new ConcurrentHashMap<String, CachedStatus>();
+
+    /**
+     * The Http client.
+     */
+    private CloseableHttpClient httpClient;
+
+    /**
+     * The Executor.
+     */
+    private ExecutorService executor;
+
+    /**
+     * After properties set.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(concurrency);
+        connectionManager.setDefaultMaxPerRoute(concurrency);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder().setNameFormat("image-check-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Destroy.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void destroy() throws IOException {
+        executor.shutdownNow();
+        httpClient.close();
+    }
+
+    /**
+     * Finds broken images among the urls. Duplicates are checked once; URLs that cannot be reached at all are
+     * logged and, as before, not reported as broken.
+     *
+     * @param imageUrls the image urls
+     *
+     * @return the broken image urls, in the order given
+     */
+    public Set<String> findBroken(Collection<String> imageUrls) {
+        Map<String, Future<Integer>> checks = new LinkedHashMap<String, Future<Integer>>();
+        for (String imageUrl : imageUrls) {
+            if (imageUrl != null && imageUrl.startsWith("http") && !checks.containsKey(imageUrl)) {
+                checks.put(imageUrl, status(imageUrl));
+            }
+        }
+
+        Set<String> brokenImages = new LinkedHashSet<String>();
+        for (Map.Entry<String, Future<Integer>> check : checks.entrySet()) {
+            int status;
+            try {
+                status = check.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                status = UNREACHABLE;
+            }
+
+            if (status == UNREACHABLE) {
+                logger.warn("Bad image " + check.getKey());
+            } else if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT) {
+                brokenImages.add(check.getKey());
+            }
+        }
+        return brokenImages;
+    }
+
+    /**
+     * Gets the status of the url from the cache, starting a check when it is missing or expired.
+     *
+     * @param url the url
+     *
+     * @return the status
+     */
+    private Future<Integer> status(final String url) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            CachedStatus cached = statuses.get(url);
+            if (cached != null && cached.isUsable(now)) {
+                return cached.status;
+            }
+
+            FutureTask<Integer> check = new FutureTask<Integer>(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return fetchStatus(url);
+                }
+            });
+            CachedStatus fresh = new CachedStatus(check, now + TimeUnit.SECONDS.toMillis(cacheTtlSeconds));
+
+            boolean won = cached == null ? statuses.putIfAbsent(url, fresh) == null : statuses.replace(url, cached, fresh);
+            if (won) {
+                executor.execute(check);
+                return check;
+            }
+        }
+    }
+
+    /**
+     * Fetch status, with HEAD first and a ranged GET when HEAD is not allowed.
+     *
+     * @param url the url
+     *
+     * @return the status
+     */
+    private int fetchStatus(String url) {
+        try {
+            int status = execute(new HttpHead(url));
+            if (status == HttpStatus.SC_METHOD_NOT_ALLOWED || status == HttpStatus.SC_NOT_IMPLEMENTED || status == HttpStatus.SC_FORBIDDEN) {
+                HttpGet rangedGet = new HttpGet(url);
+                rangedGet.setHeader("Range", "bytes=0-0");
+                status = execute(rangedGet);
+            }
+            return status;
+        } catch (IOException e) {
+            logger.debug("Could not check image " + url + ": " + e.getMessage());
+            return UNREACHABLE;
+        } catch (IllegalArgumentException e) {
+            logger.debug("Invalid image url " + url);
+            return UNREACHABLE;
+        }
+    }
+
+    /**
+     * Execute the request and release its connection.
+     *
+     * @param request the request
+     *
+     * @return the status
+     *
+     * @throws IOException the iO exception
+     */
+    private int execute(HttpUriRequest request) throws IOException {
+        CloseableHttpResponse response = httpClient.execute(request);
+        try {
+            int status = response.getStatusLine().getStatusCode();
+            if (response.getEntity() != null && status != HttpStatus.SC_PARTIAL_CONTENT && !(request instanceof HttpHead)) {
+                // The server ignored the range and may be sending the whole image, or an error page.
+                request.abort();
+            } else {
+                EntityUtils.consume(response.getEntity());
+            }
+            return status;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * A status, possibly still being fetched, and when it expires.
+     */
+    private static final class CachedStatus {
+
+        /**
+         * The Status.
+         */
+        private final Future<Integer> status;
+
+        /**
+         * The Expires at.
+         */
+        private final long expiresAt;
+
+        /**
+         * Instantiates a new Cached status.
+         *
+         * @param status    the status
+         * @param expiresAt the expires at
+         */
+        private CachedStatus(Future<Integer> status, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Is usable, when it has not expired and is not a finished check that could not reach the url.
+         *
+         * @param now the now
+         *
+         * @return the boolean
+         */
+        private boolean isUsable(long now) {
+            if (expiresAt <= now) {
+                return false;
+            }
+            if (!status.isDone()) {
+                return true;
+            }
+            try {
+                return status.get() != UNREACHABLE;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (ExecutionException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.trycucumber.systemtests.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Checks images served by a local server with a {@link BrokenImageChecker}.
+ * User: Atish Narlawar
+ */
+public class BrokenImageCheckerTest {
+
+    /**
+     * The Timeout millis of the checker.
+     */
+    private static final int TIMEOUT_MILLIS = 500;
+
+    /**
+     * The bytes of the image that ignores ranges sent before the checker hung up.
+     */
+    private final AtomicLong hugeBytesSent = new AtomicLong();
+
+    /**
+     * The requests for the flaky image.
+     */
+    private final AtomicInteger flakyHits = new AtomicInteger();
+
+    /**
+     * The Server executor.
+     */
+    private ExecutorService serverExecutor;
+
+    /**
+     * The Server.
+     */
+    private HttpServer server;
+
+    /**
+     * The Checker.
+     */
+    private BrokenImageChecker checker;
+
+    /**
+     * Starts the server and the checker.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void start() throws IOException {
+        hugeBytesSent.set(0);
+        flakyHits.set(0);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 200, "png");
+            }
+        });
+        server.createContext("/missing.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 404, "not found");
+            }
+        });
+        server.createContext("/ranged.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, "");
+                } else {
+                    exchange.getResponseHeaders().set("Content-Range", "bytes 0-0/3");
+                    respond(exchange, 206, "p");
+                }
+            }
+        });
+        server.createContext("/huge.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    respond(exchange, 405, "");
+                    return;
+                }
+                exchange.sendResponseHeaders(200, 0);
+                byte[] block = new byte[64 * 1024];
+                OutputStream body = exchange.getResponseBody();
+                try {
+                    while (hugeBytesSent.get() < 1024L * 1024 * 1024) {
+                        body.write(block);
+                        body.flush();
+                        hugeBytesSent.addAndGet(block.length);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.createContext("/flaky.png", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (flakyHits.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(TIMEOUT_MILLIS * 3);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                respond(exchange, 404, "not found");
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        checker = new BrokenImageChecker();
+        setField(checker, "concurrency", 4);
+        setField(checker, "cacheTtlSeconds", 600L);
+        setField(checker, "timeoutMillis", TIMEOUT_MILLIS);
+        checker.afterPropertiesSet();
+    }
+
+    /**
+     * Stops the checker and the server.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void stop() throws IOException {
+        checker.destroy();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * Error statuses are broken, whether answered to HEAD or to the ranged GET after HEAD is refused.
+     */
+    @Test
+    public void reportsErrorStatuses() {
+        assertEquals(checker.findBroken(Arrays.asList(url("/ok.png"), url("/missing.png"), url("/ranged.png"), url("/missing.png"))),
+                Collections.singleton(url("/missing.png")));
+    }
+
+    /**
+     * A server that ignores the range is hung up on instead of read to the end.
+     */
+    @Test(timeOut = 10000)
+    public void abortsGetsAnsweredWithTheWholeImage() {
+        assertTrue(checker.findBroken(Collections.singleton(url("/huge.png"))).isEmpty());
+        assertTrue(hugeBytesSent.get() < 1024L * 1024 * 1024, "Image downloaded in full");
+    }
+
+    /**
+     * A URL that could not be reached is not broken, and is checked again next time instead of being cached.
+     */
+    @Test
+    public void checksUnreachableUrlsAgain() {
+        assertTrue(checker.findBroken(Collections.singleton(url("/flaky.png"))).isEmpty());
+        assertEquals(checker.findBroken(Collections.singleton(url("/flaky.png"))), Collections.singleton(url("/flaky.png")));
+        assertEquals(checker.findBroken(Collections.singleton(url("/flaky.png"))), Collections.singleton(url("/flaky.png")));
+        assertEquals(flakyHits.get(), 2);
+    }
+
+    /**
+     * Url of a path on the server.
+     *
+     * @param path the path
+     *
+     * @return the string
+     */
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Responds with a status and body, without a body to HEAD requests.
+     *
+     * @param exchange the exchange
+     * @param status   the status
+     * @param body     the body
+     *
+     * @throws IOException the iO exception
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(status, head || bytes.length == 0 ? -1 : bytes.length);
+        if (!head) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visibility of the whole DOM worked out inside the browser in a single script call, instead of one
+ * isDisplayed() round trip per node.
+ * User: Atish Narlawar
+ */
+public final class DomSnapshot {
+
+    /**
+     * In-page helpers approximating WebDriver's isDisplayed(): display, visibility and opacity of the element
+     * and its ancestors, hidden inputs, noscript, and a positive size of the element or one of its children.
+     * tcIsShown(e) checks a single element; tcIsShownSelf(e, style) skips the ancestor walk for callers that
+     * already know the ancestors are shown.
+     */
+    static final String IS_SHOWN_FUNCTIONS =
+            "function tcStyle(e) {" +
+            "  return window.getComputedStyle ? window.getComputedStyle(e, null) : e.currentStyle;" +
+            "}" +
+            "function tcPositiveSize(e) {" +
+            "  var r = e.getBoundingClientRect();" +
+            "  if (r.width > 0 && r.height > 0) { return true; }" +
+            "  for (var c = e.firstChild; c; c = c.nextSibling) {" +
+            "    if (c.nodeType == 3) { return true; }" +
+            "    if (c.nodeType == 1 && tcStyle(c).display != 'none' && tcPositiveSize(c)) { return true; }" +
+            "  }" +
+            "  return false;" +
+            "}" +
+            "function tcIsShownSelf(e, style) {" +
+            "  var tag = e.tagName.toUpperCase();" +
+            "  if (tag == 'OPTION' || tag == 'OPTGROUP') { return true; }" +
+            "  if (tag == 'NOSCRIPT') { return false; }" +
+            "  if (tag == 'INPUT' && String(e.type).toLowerCase() == 'hidden') { return false; }" +
+            "  if (!style || style.visibility == 'hidden' || style.visibility == 'collapse') { return false; }" +
+            "  if (tag == 'HTML' || tag == 'BODY') { return true; }" +
+            "  return tcPositiveSize(e);" +
+            "}" +
+            "function tcHidesSubtree(style) {" +
+            "  return !style || style.display == 'none' || parseFloat(style.opacity) === 0;" +
+            "}" +
+            "function tcIsShown(e) {" +
+            "  for (var a = e; a && a.nodeType == 1; a = a.parentNode) {" +
+            "    if (tcHidesSubtree(tcStyle(a))) { return false; }" +
+            "  }" +
+            "  return tcIsShownSelf(e, tcStyle(e));" +
+            "}";
+
+    /**
+     * Defines tcEachVisible(visit), which walks every element in document order (the same set and order as //*)
+     * and calls visit(element, index) for the visible ones. A node is hidden by its subtree when its parent was,
+     * so each ancestor is styled once; the marker is removed before returning. Returns the element count.
+     */
+    static final String EACH_VISIBLE_FUNCTION = IS_SHOWN_FUNCTIONS +
+            "function tcEachVisible(visit) {" +
+            "  var all = document.getElementsByTagName('*');" +
+            "  try {" +
+            "    for (var i = 0; i < all.length; i++) {" +
+            "      var e = all[i], p = e.parentNode, style = tcStyle(e);" +
+            "      e.__tcHidden = (p && p.nodeType == 1 && p.__tcHidden) || tcHidesSubtree(style);" +
+            "      if (!e.__tcHidden && tcIsShownSelf(e, style)) { visit(e, i); }" +
+            "    }" +
+            "  } finally {" +
+            "    for (var j = 0; j < all.length; j++) { all[j].__tcHidden = undefined; }" +
+            "  }" +
+            "  return all.length;" +
+            "}";
+
+    /**
+     * The Visible elements script.
+     */
+    private static final String VISIBLE_ELEMENTS_SCRIPT = EACH_VISIBLE_FUNCTION +
+            "var visible = [];" +
+            "var total = tcEachVisible(function (e) { visible.push(e); });" +
+            "return {visible: visible, total: total};";
+
+    /**
+     * The Visible elements.
+     */
+    private final List<WebElement> visibleElements;
+
+    /**
+     * The Total elements.
+     */
+    private final int totalElements;
+
+    /**
+     * Instantiates a new Dom snapshot.
+     *
+     * @param visibleElements the visible elements
+     * @param totalElements   the total elements
+     */
+    private DomSnapshot(List<WebElement> visibleElements, int totalElements) {
+        this.visibleElements = visibleElements;
+        this.totalElements = totalElements;
+    }
+
+    /**
+     * Takes a snapshot of the current page.
+     *
+     * @param driver the driver, which must support JavaScript
+     *
+     * @return the dom snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public static DomSnapshot take(WebDriver driver) {
+        Map<String, Object> result = (Map<String, Object>) ((JavascriptExecutor) driver).executeScript(VISIBLE_ELEMENTS_SCRIPT);
+
+        List<WebElement> visible = new ArrayList<WebElement>((List<WebElement>) result.get("visible"));
+        int total = ((Number) result.get("total")).intValue();
+
+        return new DomSnapshot(Collections.unmodifiableList(visible), total);
+    }
+
+    /**
+     * Gets visible elements, in document order.
+     *
+     * @return the visible elements
+     */
+    public List<WebElement> getVisibleElements() {
+        return visibleElements;
+    }
+
+    /**
+     * Gets total elements on the page.
+     *
+     * @return the total elements
+     */
+    public int getTotalElements() {
+        return totalElements;
+    }
+
+    /**
+     * Gets the round trips saved compared with findElements plus one isDisplayed() per element.
+     *
+     * @return the saved round trips
+     */
+    public int getSavedRoundTrips() {
+        return totalElements;
+    }
+}
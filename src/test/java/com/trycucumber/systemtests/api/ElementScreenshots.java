@@ -0,0 +1,134 @@
+package com.trycucumber.systemtests.api;
+
+import net.iharder.Base64;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Images of many elements cropped from one page screenshot. The element rects, the scroll offset, the viewport
+ * and the device pixel ratio are read in a single script call, and the crops are cut in memory. The same
+ * mapping places the ignore regions of visual comparisons.
+ * User: Atish Narlawar
+ */
+public class ElementScreenshots {
+
+    /**
+     * Takes the elements and returns their client rects with what is needed to map them onto the screenshot.
+     */
+    private static final String RECTS_SCRIPT =
+            "var elements = arguments[0], rects = [];" +
+            "for (var i = 0; i < elements.length; i++) {" +
+            "  var r = elements[i].getBoundingClientRect();" +
+            "  rects.push([r.left, r.top, r.width, r.height]);" +
+            "}" +
+            "var doc = document.documentElement;" +
+            "return {rects: rects, ratio: window.devicePixelRatio || 1," +
+            "  scrollX: window.pageXOffset || doc.scrollLeft || 0, scrollY: window.pageYOffset || doc.scrollTop || 0," +
+            "  viewportHeight: window.innerHeight || doc.clientHeight};";
+
+    /**
+     * Captures the elements.
+     *
+     * @param driver   the driver
+     * @param elements the elements
+     *
+     * @return one image per element, in order, null for elements outside the screenshot or without area
+     *
+     * @throws IOException the iO exception
+     */
+    public List<BufferedImage> capture(WebDriver driver, List<WebElement> elements) throws IOException {
+        Map<String, Object> layout = layout(driver, elements);
+        byte[] png = Base64.decode(((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64));
+        BufferedImage page = ImageIO.read(new ByteArrayInputStream(png));
+
+        List<BufferedImage> images = new ArrayList<BufferedImage>(elements.size());
+        for (Rectangle crop : toScreenshot(layout, page)) {
+            images.add(crop == null ? null : page.getSubimage(crop.x, crop.y, crop.width, crop.height));
+        }
+        return images;
+    }
+
+    /**
+     * Locates the elements on a screenshot just taken of the current page.
+     *
+     * @param driver     the driver
+     * @param elements   the elements
+     * @param screenshot the screenshot
+     *
+     * @return one rectangle per element in screenshot pixels, in order, null for elements outside the screenshot or
+     * without area
+     */
+    public List<Rectangle> locate(WebDriver driver, List<WebElement> elements, BufferedImage screenshot) {
+        return toScreenshot(layout(driver, elements), screenshot);
+    }
+
+    /**
+     * Reads the element rects and the page layout in one script call.
+     *
+     * @param driver   the driver
+     * @param elements the elements
+     *
+     * @return the layout
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> layout(WebDriver driver, List<WebElement> elements) {
+        return (Map<String, Object>) ((JavascriptExecutor) driver).executeScript(RECTS_SCRIPT, elements);
+    }
+
+    /**
+     * Maps the client rects of the layout onto screenshot pixels.
+     *
+     * @param layout     the layout
+     * @param screenshot the screenshot
+     *
+     * @return the rectangles, null for those outside the screenshot or without area
+     */
+    @SuppressWarnings("unchecked")
+    private List<Rectangle> toScreenshot(Map<String, Object> layout, BufferedImage screenshot) {
+        double ratio = asDouble(layout.get("ratio"));
+        double scrollX = asDouble(layout.get("scrollX"));
+        double scrollY = asDouble(layout.get("scrollY"));
+
+        // Some drivers capture the whole page, others only the viewport; only page captures need the scroll offset.
+        boolean wholePage = screenshot.getHeight() > Math.ceil(asDouble(layout.get("viewportHeight")) * ratio) + 1;
+        double offsetX = wholePage ? scrollX : 0;
+        double offsetY = wholePage ? scrollY : 0;
+
+        Rectangle screenshotBounds = new Rectangle(0, 0, screenshot.getWidth(), screenshot.getHeight());
+        List<Rectangle> rectangles = new ArrayList<Rectangle>();
+        for (Object rawRect : (List<Object>) layout.get("rects")) {
+            List<Object> rect = (List<Object>) rawRect;
+            int x = (int) Math.floor((asDouble(rect.get(0)) + offsetX) * ratio);
+            int y = (int) Math.floor((asDouble(rect.get(1)) + offsetY) * ratio);
+            int right = (int) Math.ceil((asDouble(rect.get(0)) + offsetX + asDouble(rect.get(2))) * ratio);
+            int bottom = (int) Math.ceil((asDouble(rect.get(1)) + offsetY + asDouble(rect.get(3))) * ratio);
+
+            Rectangle rectangle = new Rectangle(x, y, right - x, bottom - y).intersection(screenshotBounds);
+            rectangles.add(rectangle.isEmpty() ? null : rectangle);
+        }
+        return rectangles;
+    }
+
+    /**
+     * As double.
+     *
+     * @param value the value
+     *
+     * @return the double
+     */
+    private double asDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
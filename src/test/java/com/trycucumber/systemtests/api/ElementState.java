@@ -0,0 +1,63 @@
+package com.trycucumber.systemtests.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state of one page element as logged by SeleniumAPI#logElementState: the attributes compared against the
+ * baseline, and the per element log fields (tag and visibility) written with every attribute row.
+ * User: Atish Narlawar
+ */
+public class ElementState {
+
+    /**
+     * The Xpath.
+     */
+    private final String xpath;
+
+    /**
+     * The Attributes.
+     */
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+    /**
+     * The Log fields.
+     */
+    private final Map<String, Object> logFields = new HashMap<String, Object>();
+
+    /**
+     * Instantiates a new Element state.
+     *
+     * @param xpath the xpath
+     */
+    public ElementState(String xpath) {
+        this.xpath = xpath;
+    }
+
+    /**
+     * Gets xpath.
+     *
+     * @return the xpath
+     */
+    public String getXpath() {
+        return xpath;
+    }
+
+    /**
+     * Gets attributes.
+     *
+     * @return the attributes
+     */
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Gets log fields.
+     *
+     * @return the log fields
+     */
+    public Map<String, Object> getLogFields() {
+        return logFields;
+    }
+}
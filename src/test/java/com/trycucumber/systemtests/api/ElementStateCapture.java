@@ -0,0 +1,194 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Captures the logged state of page elements. {@link #capture} reads computed style, bounding rect, tag and the
+ * tag specific attributes of a whole batch of XPaths in one script call; {@link #captureOne} asks the driver
+ * attribute by attribute, for browsers that cannot run the script.
+ * User: Atish Narlawar
+ */
+public class ElementStateCapture {
+
+    /**
+     * Takes the list of XPaths and returns, per XPath, null when nothing matches or the raw values. Colors are
+     * standardized to rgba() like WebElement#getCssValue does, and border color is read whatever the border
+     * width, as logElementState always did.
+     */
+    private static final String CAPTURE_SCRIPT = DomSnapshot.IS_SHOWN_FUNCTIONS +
+            "function tcColor(value) {" +
+            "  var m = /^rgb\\((\\d+),\\s*(\\d+),\\s*(\\d+)\\)$/.exec(value);" +
+            "  return m ? 'rgba(' + m[1] + ', ' + m[2] + ', ' + m[3] + ', 1)' : value;" +
+            "}" +
+            "var xpaths = arguments[0], states = [];" +
+            "var sx = window.pageXOffset || document.documentElement.scrollLeft || 0;" +
+            "var sy = window.pageYOffset || document.documentElement.scrollTop || 0;" +
+            "for (var i = 0; i < xpaths.length; i++) {" +
+            "  var e = document.evaluate(xpaths[i], document, null, XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" +
+            "  if (!e || e.nodeType != 1) { states.push(null); continue; }" +
+            "  var style = tcStyle(e), r = e.getBoundingClientRect(), tag = e.tagName.toLowerCase();" +
+            "  var state = {" +
+            "    tag: tag, visible: tcIsShown(e)," +
+            "    color: tcColor(style.getPropertyValue('color'))," +
+            "    width: Math.round(r.width), height: Math.round(r.height)," +
+            "    posX: Math.round(r.left + sx), posY: Math.round(r.top + sy)," +
+            "    opacity: style.getPropertyValue('opacity')," +
+            "    borderWidth: style.getPropertyValue('border-width')," +
+            "    borderColor: tcColor(style.getPropertyValue('border-color'))" +
+            "  };" +
+            "  if (tag == 'img') { state.src = e.src; state.alt = e.getAttribute('alt'); }" +
+            "  if (tag == 'li' || tag == 'ol') { state.liCount = e.getElementsByTagName('li').length; }" +
+            "  if (tag == 'a') { state.href = e.href; }" +
+            "  states.push(state);" +
+            "}" +
+            "return states;";
+
+    /**
+     * Captures the state of every XPath in one script call.
+     *
+     * @param driver the driver
+     * @param xpaths the xpaths
+     *
+     * @return the element states, in the order of the xpaths
+     */
+    @SuppressWarnings("unchecked")
+    public List<ElementState> capture(WebDriver driver, Collection<String> xpaths) {
+        List<String> xpathList = new ArrayList<String>(xpaths);
+        List<Object> rawStates = (List<Object>) ((JavascriptExecutor) driver).executeScript(CAPTURE_SCRIPT, xpathList);
+
+        List<ElementState> elementStates = new ArrayList<ElementState>(xpathList.size());
+        for (int i = 0; i < xpathList.size(); i++) {
+            ElementState elementState = new ElementState(xpathList.get(i));
+            Map<String, Object> rawState = (Map<String, Object>) rawStates.get(i);
+
+            if (rawState == null) {
+                markAbsent(elementState);
+            } else {
+                Map<String, Object> attributes = elementState.getAttributes();
+                attributes.put("isPresent", "true");
+                attributes.put("isVisible", rawState.get("visible"));
+                attributes.put("color", asString(rawState.get("color")));
+                attributes.put("height", asInteger(rawState.get("height")));
+                attributes.put("width", asInteger(rawState.get("width")));
+                attributes.put("posX", asInteger(rawState.get("posX")));
+                attributes.put("posY", asInteger(rawState.get("posY")));
+                attributes.put("opacity", asString(rawState.get("opacity")));
+                attributes.put("borderWidth", asString(rawState.get("borderWidth")));
+                attributes.put("borderColor", asString(rawState.get("borderColor")));
+
+                if (rawState.containsKey("src")) {
+                    attributes.put("src", asString(rawState.get("src")));
+                    attributes.put("alt", asString(rawState.get("alt")));
+                }
+                if (rawState.containsKey("liCount")) {
+                    attributes.put("liCount", asInteger(rawState.get("liCount")));
+                }
+                if (rawState.containsKey("href")) {
+                    attributes.put("href", asString(rawState.get("href")));
+                }
+
+                elementState.getLogFields().put("element_tag", asString(rawState.get("tag")));
+                elementState.getLogFields().put("element_visible", rawState.get("visible"));
+            }
+            elementStates.add(elementState);
+        }
+        return elementStates;
+    }
+
+    /**
+     * Captures the state of one XPath with one driver call per attribute.
+     *
+     * @param driver           the driver
+     * @param pageElementXPath the page element x path
+     *
+     * @return the element state
+     */
+    public ElementState captureOne(WebDriver driver, String pageElementXPath) {
+        ElementState elementState = new ElementState(pageElementXPath);
+        Map<String, Object> peAttributes = elementState.getAttributes();
+        Map<String, Object> peLogFields = elementState.getLogFields();
+
+        List<WebElement> pageElements = driver.findElements(By.xpath(pageElementXPath));
+        if (pageElements.size() == 0) {
+            markAbsent(elementState);
+            return elementState;
+        }
+
+        WebElement pageElement = pageElements.get(0);
+        String tagName = pageElement.getTagName();
+        boolean displayed = pageElement.isDisplayed();
+
+        peAttributes.put("isPresent", "true");
+
+        peAttributes.put("isVisible", displayed);
+        peAttributes.put("color", pageElement.getCssValue("color"));
+        peAttributes.put("height", pageElement.getSize().getHeight());
+        peAttributes.put("width", pageElement.getSize().getWidth());
+        peAttributes.put("posX", pageElement.getLocation().getX());
+        peAttributes.put("posY", pageElement.getLocation().getY());
+        peAttributes.put("opacity", pageElement.getCssValue("opacity"));
+
+        peAttributes.put("borderWidth", pageElement.getCssValue("border-width"));
+        peAttributes.put("borderColor", pageElement.getCssValue("border-color"));
+
+        peLogFields.put("element_tag", tagName);
+
+        // element's visibility is added to every row for easier reporting exclusion
+        peLogFields.put("element_visible", displayed);
+
+        if (tagName.equals("img")) {
+            peAttributes.put("src", pageElement.getAttribute("src"));
+            peAttributes.put("alt", pageElement.getAttribute("alt"));
+        }
+
+        if (tagName.equals("li") || tagName.equals("ol")) {
+            peAttributes.put("liCount", pageElement.findElements(By.tagName("li")).size());
+        }
+
+        if (tagName.equals("a")) {
+            peAttributes.put("href", pageElement.getAttribute("href"));
+        }
+
+        return elementState;
+    }
+
+    /**
+     * Mark absent.
+     *
+     * @param elementState the element state
+     */
+    private void markAbsent(ElementState elementState) {
+        elementState.getAttributes().put("isPresent", "false");
+        elementState.getLogFields().put("element_visible", "false");
+    }
+
+    /**
+     * As string, keeping null as null.
+     *
+     * @param value the value
+     *
+     * @return the string
+     */
+    private String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * As integer.
+     *
+     * @param value the value
+     *
+     * @return the integer
+     */
+    private Integer asInteger(Object value) {
+        return value == null ? null : ((Number) value).intValue();
+    }
+}
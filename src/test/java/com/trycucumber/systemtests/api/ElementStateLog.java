@@ -0,0 +1,119 @@
+package com.trycucumber.systemtests.api;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element state rows written by logElementState, streamed to the sinks named in element.state.sinks:
+ * "file" for the INSERT statements of log-sql.txt, "jdbc" for batched inserts into a local database.
+ * Shared by every browser thread.
+ * User: Atish Narlawar
+ */
+@Component
+public class ElementStateLog implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(ElementStateLog.class);
+
+    /**
+     * The Sink names.
+     */
+    @Value("${element.state.sinks}")
+    private String sinkNames;
+
+    /**
+     * The Sql file.
+     */
+    @Value("${element.state.sql.file}")
+    private String sqlFile;
+
+    /**
+     * The Jdbc url.
+     */
+    @Value("${element.state.jdbc.url}")
+    private String jdbcUrl;
+
+    /**
+     * The Jdbc batch size.
+     */
+    @Value("${element.state.jdbc.batch.size}")
+    private int jdbcBatchSize;
+
+    /**
+     * The Sinks.
+     */
+    private final List<ElementStateSink> sinks = new ArrayList<ElementStateSink>();
+
+    /**
+     * Opens the configured sinks.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        for (String sinkName : StringUtils.split(sinkNames, ", ")) {
+            if ("file".equals(sinkName)) {
+                sinks.add(new SqlFileElementStateSink(new File(sqlFile)));
+            } else if ("jdbc".equals(sinkName)) {
+                sinks.add(new JdbcElementStateSink(jdbcUrl, jdbcBatchSize));
+            } else {
+                throw new IllegalArgumentException("Unknown element state sink " + sinkName);
+            }
+        }
+    }
+
+    /**
+     * Writes a row to every sink.
+     *
+     * @param row the row, keyed by testlog column
+     */
+    public synchronized void write(Map<String, Object> row) {
+        for (ElementStateSink sink : sinks) {
+            try {
+                sink.write(row);
+            } catch (IOException e) {
+                logger.error("Could not write element state to " + sink, e);
+            }
+        }
+    }
+
+    /**
+     * Flushes every sink.
+     */
+    public synchronized void flush() {
+        for (ElementStateSink sink : sinks) {
+            try {
+                sink.flush();
+            } catch (IOException e) {
+                logger.error("Could not flush element state to " + sink, e);
+            }
+        }
+    }
+
+    /**
+     * Closes every sink.
+     */
+    @Override
+    public synchronized void destroy() {
+        for (ElementStateSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                logger.error("Could not close element state sink " + sink, e);
+            }
+        }
+        sinks.clear();
+    }
+}
@@ -0,0 +1,34 @@
+package com.trycucumber.systemtests.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Destination for element state log rows, one row per element attribute.
+ * User: Atish Narlawar
+ */
+public interface ElementStateSink extends Closeable {
+
+    /**
+     * The columns of the testlog table, in the order sinks write them.
+     */
+    String[] COLUMNS = {"browser", "browser_width", "browser_height", "element_xpath", "test_name", "test_state",
+            "test_run_id", "log_time", "element_tag", "element_visible", "attribute_name", "attribute_value"};
+
+    /**
+     * Writes a row. Sinks may buffer it until {@link #flush()}.
+     *
+     * @param row the row, keyed by column name
+     *
+     * @throws IOException the iO exception
+     */
+    void write(Map<String, Object> row) throws IOException;
+
+    /**
+     * Flushes buffered rows.
+     *
+     * @throws IOException the iO exception
+     */
+    void flush() throws IOException;
+}
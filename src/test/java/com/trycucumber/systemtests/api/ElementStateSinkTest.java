@@ -0,0 +1,150 @@
+package com.trycucumber.systemtests.api;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Writes element state rows through the file and JDBC sinks.
+ * User: Atish Narlawar
+ */
+public class ElementStateSinkTest {
+
+    /**
+     * A missing column is written as SQL NULL, and quotes in values are doubled.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void writesMissingColumnsAsNull() throws IOException {
+        File sqlFile = File.createTempFile("log-sql", ".txt");
+        try {
+            SqlFileElementStateSink sink = new SqlFileElementStateSink(sqlFile);
+            sink.write(row("say \"hi\""));
+            sink.close();
+
+            String statement = FileUtils.readFileToString(sqlFile);
+            assertTrue(statement.contains(",NULL,"), statement);
+            assertTrue(statement.endsWith(",\"alt\",\"say \"\"hi\"\"\");\n"), statement);
+            assertFalse(statement.contains("\"null\""), statement);
+        } finally {
+            FileUtils.deleteQuietly(sqlFile);
+        }
+    }
+
+    /**
+     * A batch the database refuses is rolled back and dropped, and later rows still go in.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void dropsARefusedBatch() throws Exception {
+        String url = "jdbc:h2:mem:element-state-sink;DB_CLOSE_DELAY=-1";
+        Connection reader = DriverManager.getConnection(url);
+        try {
+            JdbcElementStateSink sink = new JdbcElementStateSink(url, 10);
+            sink.write(row("kept"));
+            sink.flush();
+
+            sink.write(row("refused"));
+            Map<String, Object> tooLong = row("too long");
+            tooLong.put("browser", StringUtils.repeat("x", 64));
+            sink.write(tooLong);
+            try {
+                sink.flush();
+                fail("A browser name longer than its column was inserted");
+            } catch (IOException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+            }
+
+            sink.write(row("after"));
+            sink.close();
+
+            assertEquals(attributeValues(reader), "kept,after");
+            assertNull(firstTestState(reader));
+        } finally {
+            Statement statement = reader.createStatement();
+            statement.execute("DROP ALL OBJECTS");
+            statement.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * Row of an alt attribute without a test state.
+     *
+     * @param value the value
+     *
+     * @return the row
+     */
+    private static Map<String, Object> row(String value) {
+        Map<String, Object> row = new HashMap<String, Object>();
+        row.put("browser", "firefox");
+        row.put("browser_width", 800);
+        row.put("browser_height", 600);
+        row.put("element_xpath", "/html/body/img");
+        row.put("test_name", "home");
+        row.put("attribute_name", "alt");
+        row.put("attribute_value", value);
+        return row;
+    }
+
+    /**
+     * The attribute values in the testlog table, in insertion order.
+     *
+     * @param connection the connection
+     *
+     * @return the attribute values, comma separated
+     *
+     * @throws SQLException the sQL exception
+     */
+    private static String attributeValues(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT attribute_value FROM testlog ORDER BY id");
+            StringBuilder values = new StringBuilder();
+            while (rows.next()) {
+                values.append(values.length() == 0 ? "" : ",").append(rows.getString(1));
+            }
+            return values.toString();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * The test state of the first row.
+     *
+     * @param connection the connection
+     *
+     * @return the test state
+     *
+     * @throws SQLException the sQL exception
+     */
+    private static String firstTestState(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT test_state FROM testlog ORDER BY id");
+            rows.next();
+            return rows.getString(1);
+        } finally {
+            statement.close();
+        }
+    }
+}
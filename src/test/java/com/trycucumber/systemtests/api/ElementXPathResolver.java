@@ -0,0 +1,107 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out element XPaths for a whole list of elements in one script call and remembers them until the page
+ * changes. The paths follow SeleniumAPI#getElementXPath: one step per ancestor, predicated on class and id,
+ * or on text when neither is set, anchored with // at the closest ancestor whose class contains "section".
+ * User: Atish Narlawar
+ */
+public class ElementXPathResolver {
+
+    /**
+     * Takes the list of elements and returns their XPaths in the same order.
+     */
+    private static final String XPATHS_SCRIPT =
+            "function tcTrim(s) { return s ? String(s).replace(/^\\s+|\\s+$/g, '') : ''; }" +
+            "function tcXPath(e) {" +
+            "  var steps = [];" +
+            "  for (var n = e; n && n.nodeType == 1; n = n.parentNode) {" +
+            "    var cls = n.getAttribute('class') || '', id = n.getAttribute('id') || '', predicates = [];" +
+            "    if (cls) { predicates.push(\"@class='\" + cls + \"'\"); }" +
+            "    if (id) { predicates.push(\"@id='\" + id + \"'\"); }" +
+            "    if (!predicates.length) {" +
+            "      var text = tcTrim(n.innerText !== undefined ? n.innerText : n.textContent);" +
+            "      if (text) { predicates.push(\"text()='\" + text + \"'\"); }" +
+            "    }" +
+            "    steps.push(n.tagName.toLowerCase() + (predicates.length ? '[' + predicates.join(' and ') + ']' : ''));" +
+            "    if (cls.indexOf('section') >= 0) { return '//' + steps.reverse().join('/'); }" +
+            "  }" +
+            "  return '/' + steps.reverse().join('/');" +
+            "}" +
+            "var elements = arguments[0], paths = [];" +
+            "for (var i = 0; i < elements.length; i++) { paths.push(tcXPath(elements[i])); }" +
+            "return paths;";
+
+    /**
+     * The XPaths resolved since the last page change.
+     */
+    private final Map<WebElement, String> xpaths = new HashMap<WebElement, String>();
+
+    /**
+     * Gets the cached XPath of an element.
+     *
+     * @param element the element
+     *
+     * @return the XPath, or null when not resolved yet
+     */
+    public String getCached(WebElement element) {
+        return xpaths.get(element);
+    }
+
+    /**
+     * Caches an XPath worked out elsewhere.
+     *
+     * @param element the element
+     * @param xpath   the xpath
+     */
+    public void put(WebElement element, String xpath) {
+        xpaths.put(element, xpath);
+    }
+
+    /**
+     * Resolves the XPaths of the elements, sending only the ones not cached yet to the browser in one call.
+     *
+     * @param driver   the driver
+     * @param elements the elements
+     *
+     * @return the XPaths, in the order of the elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> resolve(WebDriver driver, List<WebElement> elements) {
+        List<WebElement> misses = new ArrayList<WebElement>();
+        for (WebElement element : elements) {
+            if (!xpaths.containsKey(element)) {
+                misses.add(element);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            List<Object> resolved = (List<Object>) ((JavascriptExecutor) driver).executeScript(XPATHS_SCRIPT, misses);
+            for (int i = 0; i < misses.size(); i++) {
+                xpaths.put(misses.get(i), String.valueOf(resolved.get(i)));
+            }
+        }
+
+        List<String> result = new ArrayList<String>(elements.size());
+        for (WebElement element : elements) {
+            result.add(xpaths.get(element));
+        }
+        return result;
+    }
+
+    /**
+     * Forgets every resolved XPath. Called whenever the page changes.
+     */
+    public void clear() {
+        xpaths.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package com.trycucumber.systemtests.api;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * Inserts element state rows into the testlog table of a JDBC database, such as an embedded H2 file, with
+ * prepared statement batches committed every batchSize rows and on flush.
+ * User: Atish Narlawar
+ */
+public class JdbcElementStateSink implements ElementStateSink {
+
+    /**
+     * The testlog table, created when missing.
+     */
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS testlog (" +
+            "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+            "browser VARCHAR(32), " +
+            "browser_width INT, " +
+            "browser_height INT, " +
+            "element_xpath VARCHAR(4096), " +
+            "test_name VARCHAR(255), " +
+            "test_state VARCHAR(255), " +
+            "test_run_id VARCHAR(64), " +
+            "log_time VARCHAR(19), " +
+            "element_tag VARCHAR(32), " +
+            "element_visible VARCHAR(5), " +
+            "attribute_name VARCHAR(64), " +
+            "attribute_value VARCHAR(4096))";
+
+    /**
+     * The Insert statement.
+     */
+    private static final String INSERT = "INSERT INTO testlog (" + StringUtils.join(COLUMNS, ",") + ") VALUES (" +
+            StringUtils.repeat("?", ",", COLUMNS.length) + ")";
+
+    /**
+     * The Connection.
+     */
+    private final Connection connection;
+
+    /**
+     * The Insert.
+     */
+    private final PreparedStatement insert;
+
+    /**
+     * The Batch size.
+     */
+    private final int batchSize;
+
+    /**
+     * The rows added since the last executed batch.
+     */
+    private int pendingRows;
+
+    /**
+     * Instantiates a new Jdbc element state sink.
+     *
+     * @param url       the jdbc url
+     * @param batchSize the batch size
+     *
+     * @throws IOException the iO exception
+     */
+    public JdbcElementStateSink(String url, int batchSize) throws IOException {
+        this.batchSize = batchSize;
+        try {
+            connection = DriverManager.getConnection(url);
+            connection.setAutoCommit(false);
+
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(CREATE_TABLE);
+            } finally {
+                statement.close();
+            }
+            connection.commit();
+
+            insert = connection.prepareStatement(INSERT);
+        } catch (SQLException e) {
+            throw new IOException("Could not open element state database " + url, e);
+        }
+    }
+
+    /**
+     * Write.
+     *
+     * @param row the row
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void write(Map<String, Object> row) throws IOException {
+        try {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                Object value = row.get(COLUMNS[i]);
+                insert.setObject(i + 1, value == null ? null : value.toString());
+            }
+            insert.addBatch();
+            if (++pendingRows >= batchSize) {
+                flush();
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Executes and commits the pending batch. When that fails the batch is rolled back and dropped, so that the
+     * next flush does not run into the same rows again.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void flush() throws IOException {
+        if (pendingRows == 0) {
+            return;
+        }
+        try {
+            insert.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+                insert.clearBatch();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw new IOException("Could not insert " + pendingRows + " element state rows", e);
+        } finally {
+            pendingRows = 0;
+        }
+    }
+
+    /**
+     * Close.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            try {
+                insert.close();
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
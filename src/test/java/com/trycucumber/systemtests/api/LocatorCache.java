@@ -0,0 +1,331 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.internal.WrapsElement;
+import org.testng.log4testng.Logger;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers what locators found on the current page. Entries are dropped when SeleniumAPI leaves the page, and
+ * when a check of the page, made at most once per check interval, finds another URL, a new document or a DOM
+ * mutation. Cached elements are handed out as proxies: a stale element drops the cache, and an element found
+ * with findElement is looked up again and the call retried once. Within a check interval a locator may keep
+ * answering with the element it found before the DOM changed.
+ * User: Atish Narlawar
+ */
+public class LocatorCache {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(LocatorCache.class);
+
+    /**
+     * Installs a MutationObserver counting DOM changes on first call in a document, then returns the count
+     * and the URL. A count of -1 means the document is new.
+     */
+    private static final String GENERATION_SCRIPT =
+            "var cache = window.__tcLocatorCache, generation = 0;" +
+            "if (!cache) {" +
+            "  cache = window.__tcLocatorCache = {generation: 0};" +
+            "  if (window.MutationObserver) {" +
+            "    new MutationObserver(function () { cache.generation++; })" +
+            "        .observe(document, {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "  }" +
+            "  generation = -1;" +
+            "} else {" +
+            "  generation = cache.generation;" +
+            "}" +
+            "return [generation, String(window.location.href)];";
+
+    /**
+     * Whether finders go through the cache at all.
+     */
+    private final boolean enabled;
+
+    /**
+     * The Check interval millis.
+     */
+    private final long checkIntervalMillis;
+
+    /**
+     * The single elements found, by locator.
+     */
+    private final Map<By, WebElement> elements = new HashMap<By, WebElement>();
+
+    /**
+     * The element lists found, by locator.
+     */
+    private final Map<By, List<WebElement>> elementLists = new HashMap<By, List<WebElement>>();
+
+    /**
+     * The URL the entries were found on.
+     */
+    private String url;
+
+    /**
+     * The DOM generation the entries were found in.
+     */
+    private long generation = -1;
+
+    /**
+     * When the page was last checked.
+     */
+    private long lastCheck;
+
+    /**
+     * The Hits.
+     */
+    private long hits;
+
+    /**
+     * The Misses.
+     */
+    private long misses;
+
+    /**
+     * Instantiates a new Locator cache.
+     *
+     * @param enabled             the enabled
+     * @param checkIntervalMillis the check interval millis
+     */
+    public LocatorCache(boolean enabled, long checkIntervalMillis) {
+        this.enabled = enabled;
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    /**
+     * Finds an element, from the cache when it is still valid.
+     *
+     * @param driver  the driver
+     * @param locator the locator
+     *
+     * @return the web element
+     */
+    public WebElement findElement(WebDriver driver, By locator) {
+        if (!enabled) {
+            return driver.findElement(locator);
+        }
+        validate(driver);
+
+        WebElement element = elements.get(locator);
+        if (element != null) {
+            hits++;
+            return element;
+        }
+
+        misses++;
+        element = proxy(driver, locator, driver.findElement(locator), true);
+        elements.put(locator, element);
+        return element;
+    }
+
+    /**
+     * Finds elements, from the cache when they are still valid.
+     *
+     * @param driver  the driver
+     * @param locator the locator
+     *
+     * @return the web elements
+     */
+    public List<WebElement> findElements(WebDriver driver, By locator) {
+        if (!enabled) {
+            return driver.findElements(locator);
+        }
+        validate(driver);
+
+        List<WebElement> found = elementLists.get(locator);
+        if (found != null) {
+            hits++;
+            return found;
+        }
+
+        misses++;
+        found = new ArrayList<WebElement>();
+        for (WebElement element : driver.findElements(locator)) {
+            found.add(proxy(driver, locator, element, false));
+        }
+        found = Collections.unmodifiableList(found);
+        elementLists.put(locator, found);
+        return found;
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void invalidate() {
+        elements.clear();
+        elementLists.clear();
+        url = null;
+        generation = -1;
+        lastCheck = 0;
+    }
+
+    /**
+     * Gets hits.
+     *
+     * @return the hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets misses.
+     *
+     * @return the misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops the entries when the page moved on, checking at most once per check interval.
+     *
+     * @param driver the driver
+     */
+    @SuppressWarnings("unchecked")
+    private void validate(WebDriver driver) {
+        long now = System.currentTimeMillis();
+        if (elements.isEmpty() && elementLists.isEmpty()) {
+            lastCheck = 0;
+        }
+        if (now - lastCheck < checkIntervalMillis) {
+            return;
+        }
+
+        long currentGeneration;
+        String currentUrl;
+        try {
+            List<Object> state = (List<Object>) ((JavascriptExecutor) driver).executeScript(GENERATION_SCRIPT);
+            currentGeneration = ((Number) state.get(0)).longValue();
+            currentUrl = String.valueOf(state.get(1));
+        } catch (WebDriverException e) {
+            logger.debug("Could not check the page, not caching locators: " + e.getMessage());
+            invalidate();
+            return;
+        }
+
+        if (currentGeneration < 0 || currentGeneration != generation || !currentUrl.equals(url)) {
+            elements.clear();
+            elementLists.clear();
+        }
+        url = currentUrl;
+        generation = currentGeneration < 0 ? 0 : currentGeneration;
+        lastCheck = now;
+    }
+
+    /**
+     * Wraps a found element.
+     *
+     * @param driver     the driver
+     * @param locator    the locator
+     * @param element    the element
+     * @param refindable whether a stale element can be found again with the locator
+     *
+     * @return the web element
+     */
+    private WebElement proxy(WebDriver driver, By locator, WebElement element, boolean refindable) {
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> type = element.getClass(); type != null; type = type.getSuperclass()) {
+            for (Class<?> implemented : type.getInterfaces()) {
+                if (Modifier.isPublic(implemented.getModifiers())) {
+                    interfaces.add(implemented);
+                }
+            }
+        }
+        interfaces.add(WebElement.class);
+        interfaces.add(WrapsElement.class);
+
+        return (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(), interfaces.toArray(new Class<?>[interfaces.size()]),
+                new StaleAwareElement(driver, locator, element, refindable));
+    }
+
+    /**
+     * Delegates to the found element, reacting to it going stale.
+     */
+    private final class StaleAwareElement implements InvocationHandler {
+
+        /**
+         * The Driver.
+         */
+        private final WebDriver driver;
+
+        /**
+         * The Locator.
+         */
+        private final By locator;
+
+        /**
+         * The Refindable.
+         */
+        private final boolean refindable;
+
+        /**
+         * The Element.
+         */
+        private WebElement element;
+
+        /**
+         * Instantiates a new Stale aware element.
+         *
+         * @param driver     the driver
+         * @param locator    the locator
+         * @param element    the element
+         * @param refindable the refindable
+         */
+        private StaleAwareElement(WebDriver driver, By locator, WebElement element, boolean refindable) {
+            this.driver = driver;
+            this.locator = locator;
+            this.element = element;
+            this.refindable = refindable;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("getWrappedElement") && method.getParameterTypes().length == 0) {
+                return element;
+            }
+            if (method.getName().equals("equals") && args != null && args.length == 1) {
+                Object other = args[0] instanceof WrapsElement ? ((WrapsElement) args[0]).getWrappedElement() : args[0];
+                return element.equals(other);
+            }
+
+            try {
+                return method.invoke(element, args);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof StaleElementReferenceException)) {
+                    throw e.getCause();
+                }
+                invalidate();
+                if (!refindable) {
+                    throw e.getCause();
+                }
+                logger.debug("Cached element for " + locator + " went stale, finding it again");
+                element = driver.findElement(locator);
+                try {
+                    return method.invoke(element, args);
+                } catch (InvocationTargetException retry) {
+                    throw retry.getCause();
+                }
+            }
+        }
+    }
+}
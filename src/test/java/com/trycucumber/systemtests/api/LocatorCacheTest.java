@@ -0,0 +1,257 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+/**
+ * Finds elements on a fake page through a {@link LocatorCache} and changes the page under it.
+ * User: Atish Narlawar
+ */
+public class LocatorCacheTest {
+
+    /**
+     * The Logo locator.
+     */
+    private static final By LOGO = By.id("logo");
+
+    /**
+     * The Links locator.
+     */
+    private static final By LINKS = By.tagName("a");
+
+    /**
+     * The Page.
+     */
+    private FakePage page;
+
+    /**
+     * Opens a fresh page.
+     */
+    @BeforeMethod
+    public void openPage() {
+        page = new FakePage();
+    }
+
+    /**
+     * Locators answer from the cache while the page stays the same.
+     */
+    @Test
+    public void answersFromTheCacheOnTheSamePage() {
+        LocatorCache cache = new LocatorCache(true, 0);
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 1");
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 1");
+        assertEquals(cache.findElements(page.driver, LINKS).size(), 2);
+        assertEquals(cache.findElements(page.driver, LINKS).size(), 2);
+
+        assertEquals(page.finds, 2);
+        assertEquals(cache.getHits(), 2);
+        assertEquals(cache.getMisses(), 2);
+    }
+
+    /**
+     * A DOM mutation, another URL, a new document or an explicit invalidate each drop the entries.
+     */
+    @Test
+    public void dropsEntriesWhenThePageChanges() {
+        LocatorCache cache = new LocatorCache(true, 0);
+        cache.findElement(page.driver, LOGO);
+
+        page.generation++;
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 2");
+
+        page.url = "http://localhost/other";
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 3");
+
+        page.generation = -1;
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 4");
+
+        page.generation = 0;
+        cache.invalidate();
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 5");
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 5");
+        assertEquals(cache.getMisses(), 5);
+    }
+
+    /**
+     * Within the check interval the page is not looked at again.
+     */
+    @Test
+    public void checksThePageOncePerInterval() {
+        LocatorCache cache = new LocatorCache(true, 60000);
+        cache.findElement(page.driver, LOGO);
+        page.generation++;
+
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 1");
+        assertEquals(page.checks, 1);
+    }
+
+    /**
+     * A stale element found with findElement is found again and the call retried, and the cache is dropped.
+     */
+    @Test
+    public void findsAStaleElementAgain() {
+        LocatorCache cache = new LocatorCache(true, 60000);
+        WebElement logo = cache.findElement(page.driver, LOGO);
+        page.staleBefore = page.finds + 1;
+
+        assertEquals(logo.getText(), "logo 2");
+        assertEquals(cache.findElement(page.driver, LOGO).getText(), "logo 3");
+    }
+
+    /**
+     * A stale element of a list is reported, and the list is found again next time.
+     */
+    @Test
+    public void reportsStaleListElements() {
+        LocatorCache cache = new LocatorCache(true, 60000);
+        WebElement link = cache.findElements(page.driver, LINKS).get(0);
+        page.staleBefore = page.finds + 1;
+
+        try {
+            link.getText();
+            fail("A stale element answered");
+        } catch (StaleElementReferenceException e) {
+            assertEquals(cache.findElements(page.driver, LINKS).get(0).getText(), "a 2");
+        }
+    }
+
+    /**
+     * Without a way to check the page, and when disabled, every locator goes to the driver.
+     */
+    @Test
+    public void findsEverythingWhenItCannotCache() {
+        LocatorCache disabled = new LocatorCache(false, 0);
+        disabled.findElement(page.driver, LOGO);
+        disabled.findElement(page.driver, LOGO);
+        assertEquals(page.finds, 2);
+        assertEquals(page.checks, 0);
+
+        page.scriptsFail = true;
+        LocatorCache blind = new LocatorCache(true, 0);
+        blind.findElement(page.driver, LOGO);
+        blind.findElement(page.driver, LOGO);
+        assertEquals(page.finds, 4);
+    }
+
+    /**
+     * A WebDriver with a page whose elements are numbered by the find that returned them, and go stale on request.
+     */
+    private static final class FakePage implements InvocationHandler {
+
+        /**
+         * The Driver.
+         */
+        private final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, this);
+
+        /**
+         * The DOM generation reported to the cache, -1 for a new document.
+         */
+        private long generation;
+
+        /**
+         * The Url.
+         */
+        private String url = "http://localhost/";
+
+        /**
+         * Whether scripts fail.
+         */
+        private boolean scriptsFail;
+
+        /**
+         * Elements returned by finds before this one are stale.
+         */
+        private int staleBefore;
+
+        /**
+         * The Finds.
+         */
+        private int finds;
+
+        /**
+         * The page checks made by the cache.
+         */
+        private int checks;
+
+        /**
+         * Answers the driver calls the cache makes.
+         *
+         * @param proxy  the proxy
+         * @param method the method
+         * @param args   the args
+         *
+         * @return the object
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("executeScript".equals(name)) {
+                if (scriptsFail) {
+                    throw new WebDriverException("JavaScript is disabled");
+                }
+                checks++;
+                return Arrays.<Object>asList(generation, url);
+            }
+            if ("findElement".equals(name)) {
+                return element(tagOf((By) args[0]), ++finds);
+            }
+            if ("findElements".equals(name)) {
+                int find = ++finds;
+                return Arrays.asList(element(tagOf((By) args[0]), find), element(tagOf((By) args[0]), find));
+            }
+            return "toString".equals(name) ? "FakePage" : null;
+        }
+
+        /**
+         * Tag of the elements a locator finds.
+         *
+         * @param locator the locator
+         *
+         * @return the tag
+         */
+        private static String tagOf(By locator) {
+            return LOGO.equals(locator) ? "logo" : "a";
+        }
+
+        /**
+         * Element returned by a find, which tells its text until it goes stale.
+         *
+         * @param tag  the tag
+         * @param find the find
+         *
+         * @return the web element
+         */
+        private WebElement element(final String tag, final int find) {
+            return (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebElement.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if (find < staleBefore) {
+                        throw new StaleElementReferenceException(tag + " " + find + " is gone");
+                    }
+                    return tag + " " + find;
+                }
+            });
+        }
+    }
+}
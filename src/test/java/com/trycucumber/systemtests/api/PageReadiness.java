@@ -0,0 +1,69 @@
+package com.trycucumber.systemtests.api;
+
+import java.util.Collection;
+
+/**
+ * When a page opened by SeleniumAPI#openPage counts as ready for the next step. A scenario can choose one with a
+ * tag such as {@code @readiness-networkidle}.
+ * User: Atish Narlawar
+ */
+public enum PageReadiness {
+
+    /**
+     * The DOM is parsed; images, frames and scripts may still be loading.
+     */DOM_CONTENT_LOADED("domcontentloaded"),
+    /**
+     * The load event has fired.
+     */LOAD("load"),
+    /**
+     * The page has loaded and no XHR or fetch request has been in flight for a quiet period.
+     */NETWORK_IDLE("networkidle"),
+    /**
+     * A JavaScript expression given by the test is true.
+     */CUSTOM("custom");
+
+    /**
+     * The prefix of readiness scenario tags.
+     */
+    public static final String TAG_PREFIX = "@readiness-";
+
+    /**
+     * The Tag name.
+     */
+    private final String tagName;
+
+    /**
+     * Instantiates a new Page readiness.
+     *
+     * @param tagName the tag name
+     */
+    private PageReadiness(String tagName) {
+        this.tagName = tagName;
+    }
+
+    /**
+     * Gets tag, e.g. @readiness-networkidle.
+     *
+     * @return the tag
+     */
+    public String getTag() {
+        return TAG_PREFIX + tagName;
+    }
+
+    /**
+     * Finds the readiness selected by a scenario's tags.
+     *
+     * @param tags          the scenario tags
+     * @param defaultReadiness the readiness when no tag selects one
+     *
+     * @return the page readiness
+     */
+    public static PageReadiness forTags(Collection<String> tags, PageReadiness defaultReadiness) {
+        for (PageReadiness readiness : values()) {
+            if (readiness != CUSTOM && tags.contains(readiness.getTag())) {
+                return readiness;
+            }
+        }
+        return defaultReadiness;
+    }
+}
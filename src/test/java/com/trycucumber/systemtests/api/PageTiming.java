@@ -0,0 +1,397 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Navigation Timing and Resource Timing of the current page, read in a single script call. Times are in
+ * milliseconds from the start of the navigation; a phase the page has not reached yet is -1.
+ * <p/>
+ * Browsers keep only a limited number of Resource Timing entries per page and drop the rest without telling.
+ * {@link #capture(WebDriver, int)} raises the limit with performance.setResourceTimingBufferSize once it has read
+ * the entries, so the resources the page loads afterwards are kept, and leaves the new size in
+ * window.__resourceTimingBufferSize; until then the limit is taken to be the specification's default of
+ * {@value #DEFAULT_RESOURCE_BUFFER_SIZE}. A page that reached its limit is marked {@link #isResourceBufferFull()},
+ * and its resources are then only the first ones it loaded.
+ * User: Atish Narlawar
+ */
+public final class PageTiming {
+
+    /**
+     * The Resource Timing buffer size browsers start with.
+     */
+    public static final int DEFAULT_RESOURCE_BUFFER_SIZE = 150;
+
+    /**
+     * Returns the timings of the page, or null when the browser has no Navigation Timing, then raises the Resource
+     * Timing buffer to arguments[0] when that is more than its size.
+     */
+    private static final String TIMING_SCRIPT =
+            "var p = window.performance;" +
+            "if (!p || !p.timing) { return null; }" +
+            "var t = p.timing, start = t.navigationStart;" +
+            "function since(v) { return v > 0 ? v - start : -1; }" +
+            "function phase(from, to) { return from > 0 && to >= from ? to - from : -1; }" +
+            "var resources = [], entries = p.getEntriesByType ? p.getEntriesByType('resource') : [];" +
+            "for (var i = 0; i < entries.length; i++) {" +
+            "  var e = entries[i];" +
+            "  resources.push({name: e.name, initiatorType: e.initiatorType, startTime: e.startTime, duration: e.duration," +
+            "    wait: phase(e.requestStart, e.responseStart), receive: phase(e.responseStart, e.responseEnd)," +
+            "    transferSize: e.transferSize || 0, encodedBodySize: e.encodedBodySize || 0, decodedBodySize: e.decodedBodySize || 0});" +
+            "}" +
+            "var size = window.__resourceTimingBufferSize || " + DEFAULT_RESOURCE_BUFFER_SIZE + ", full = entries.length >= size;" +
+            "if (arguments[0] > size && p.setResourceTimingBufferSize) {" +
+            "  p.setResourceTimingBufferSize(arguments[0]); window.__resourceTimingBufferSize = arguments[0];" +
+            "}" +
+            "return {url: location.href, navigationStart: start, ttfb: since(t.responseStart)," +
+            "  domContentLoaded: since(t.domContentLoadedEventEnd), load: since(t.loadEventEnd), resources: resources," +
+            "  resourceBufferFull: full};";
+
+    /**
+     * The Url.
+     */
+    private final String url;
+
+    /**
+     * The Navigation start, in milliseconds since the epoch.
+     */
+    private final long navigationStart;
+
+    /**
+     * The time to first byte.
+     */
+    private final double ttfb;
+
+    /**
+     * The Dom content loaded.
+     */
+    private final double domContentLoaded;
+
+    /**
+     * The Load.
+     */
+    private final double load;
+
+    /**
+     * The Resources.
+     */
+    private final List<Resource> resources;
+
+    /**
+     * Whether the page filled its Resource Timing buffer, so later resources are missing.
+     */
+    private final boolean resourceBufferFull;
+
+    /**
+     * Instantiates a new Page timing.
+     *
+     * @param url                the url
+     * @param navigationStart    the navigation start
+     * @param ttfb               the ttfb
+     * @param domContentLoaded   the dom content loaded
+     * @param load               the load
+     * @param resources          the resources
+     * @param resourceBufferFull whether the page filled its Resource Timing buffer
+     */
+    private PageTiming(String url, long navigationStart, double ttfb, double domContentLoaded, double load, List<Resource> resources,
+                       boolean resourceBufferFull) {
+        this.url = url;
+        this.navigationStart = navigationStart;
+        this.ttfb = ttfb;
+        this.domContentLoaded = domContentLoaded;
+        this.load = load;
+        this.resources = resources;
+        this.resourceBufferFull = resourceBufferFull;
+    }
+
+    /**
+     * Reads the timings of the current page, leaving its Resource Timing buffer alone.
+     *
+     * @param driver the driver, which must support JavaScript
+     *
+     * @return the page timing, or null when the browser does not support Navigation Timing
+     */
+    public static PageTiming capture(WebDriver driver) {
+        return capture(driver, 0);
+    }
+
+    /**
+     * Reads the timings of the current page, then raises its Resource Timing buffer for the rest of its life.
+     *
+     * @param driver             the driver, which must support JavaScript
+     * @param resourceBufferSize the Resource Timing buffer size to raise the page to, 0 to leave it alone
+     *
+     * @return the page timing, or null when the browser does not support Navigation Timing
+     */
+    @SuppressWarnings("unchecked")
+    public static PageTiming capture(WebDriver driver, int resourceBufferSize) {
+        Map<String, Object> timing = (Map<String, Object>) ((JavascriptExecutor) driver).executeScript(TIMING_SCRIPT, resourceBufferSize);
+        if (timing == null) {
+            return null;
+        }
+
+        List<Resource> resources = new ArrayList<Resource>();
+        for (Map<String, Object> entry : (List<Map<String, Object>>) timing.get("resources")) {
+            resources.add(new Resource(String.valueOf(entry.get("name")), String.valueOf(entry.get("initiatorType")),
+                    number(entry, "startTime"), number(entry, "duration"), number(entry, "wait"), number(entry, "receive"),
+                    (long) number(entry, "transferSize"), (long) number(entry, "encodedBodySize"), (long) number(entry, "decodedBodySize")));
+        }
+
+        return new PageTiming(String.valueOf(timing.get("url")), (long) number(timing, "navigationStart"), number(timing, "ttfb"),
+                number(timing, "domContentLoaded"), number(timing, "load"), Collections.unmodifiableList(resources),
+                Boolean.TRUE.equals(timing.get("resourceBufferFull")));
+    }
+
+    /**
+     * Reads a number of a script result, which comes back as a Long or a Double.
+     *
+     * @param values the values
+     * @param name   the name
+     *
+     * @return the double
+     */
+    private static double number(Map<String, Object> values, String name) {
+        Object value = values.get(name);
+        return value instanceof Number ? ((Number) value).doubleValue() : -1;
+    }
+
+    /**
+     * Gets url.
+     *
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets navigation start, in milliseconds since the epoch.
+     *
+     * @return the navigation start
+     */
+    public long getNavigationStart() {
+        return navigationStart;
+    }
+
+    /**
+     * Gets the time to first byte.
+     *
+     * @return the ttfb
+     */
+    public double getTtfb() {
+        return ttfb;
+    }
+
+    /**
+     * Gets dom content loaded.
+     *
+     * @return the dom content loaded
+     */
+    public double getDomContentLoaded() {
+        return domContentLoaded;
+    }
+
+    /**
+     * Gets load.
+     *
+     * @return the load
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * Gets resources, in the order the browser started them.
+     *
+     * @return the resources
+     */
+    public List<Resource> getResources() {
+        return resources;
+    }
+
+    /**
+     * Is the Resource Timing buffer full, so that resources past its size, their count and their bytes are missing.
+     *
+     * @return the boolean
+     */
+    public boolean isResourceBufferFull() {
+        return resourceBufferFull;
+    }
+
+    /**
+     * Gets the bytes transferred for the resources. Cross-origin resources without Timing-Allow-Origin and
+     * browsers without Resource Timing Level 2 report 0.
+     *
+     * @return the transfer size
+     */
+    public long getTransferSize() {
+        long transferSize = 0;
+        for (Resource resource : resources) {
+            transferSize += resource.getTransferSize();
+        }
+        return transferSize;
+    }
+
+    /**
+     * One resource the page loaded.
+     */
+    public static final class Resource {
+
+        /**
+         * The Name, its url.
+         */
+        private final String name;
+
+        /**
+         * The Initiator type, such as img, script or css.
+         */
+        private final String initiatorType;
+
+        /**
+         * The Start time.
+         */
+        private final double startTime;
+
+        /**
+         * The Duration.
+         */
+        private final double duration;
+
+        /**
+         * The time waiting for the first byte, -1 when not exposed.
+         */
+        private final double wait;
+
+        /**
+         * The time receiving the response, -1 when not exposed.
+         */
+        private final double receive;
+
+        /**
+         * The Transfer size.
+         */
+        private final long transferSize;
+
+        /**
+         * The Encoded body size.
+         */
+        private final long encodedBodySize;
+
+        /**
+         * The Decoded body size.
+         */
+        private final long decodedBodySize;
+
+        /**
+         * Instantiates a new Resource.
+         *
+         * @param name            the name
+         * @param initiatorType   the initiator type
+         * @param startTime       the start time
+         * @param duration        the duration
+         * @param wait            the wait
+         * @param receive         the receive
+         * @param transferSize    the transfer size
+         * @param encodedBodySize the encoded body size
+         * @param decodedBodySize the decoded body size
+         */
+        private Resource(String name, String initiatorType, double startTime, double duration, double wait, double receive,
+                         long transferSize, long encodedBodySize, long decodedBodySize) {
+            this.name = name;
+            this.initiatorType = initiatorType;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.wait = wait;
+            this.receive = receive;
+            this.transferSize = transferSize;
+            this.encodedBodySize = encodedBodySize;
+            this.decodedBodySize = decodedBodySize;
+        }
+
+        /**
+         * Gets name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets initiator type.
+         *
+         * @return the initiator type
+         */
+        public String getInitiatorType() {
+            return initiatorType;
+        }
+
+        /**
+         * Gets start time.
+         *
+         * @return the start time
+         */
+        public double getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Gets duration.
+         *
+         * @return the duration
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * Gets wait.
+         *
+         * @return the wait
+         */
+        public double getWait() {
+            return wait;
+        }
+
+        /**
+         * Gets receive.
+         *
+         * @return the receive
+         */
+        public double getReceive() {
+            return receive;
+        }
+
+        /**
+         * Gets transfer size.
+         *
+         * @return the transfer size
+         */
+        public long getTransferSize() {
+            return transferSize;
+        }
+
+        /**
+         * Gets encoded body size.
+         *
+         * @return the encoded body size
+         */
+        public long getEncodedBodySize() {
+            return encodedBodySize;
+        }
+
+        /**
+         * Gets decoded body size.
+         *
+         * @return the decoded body size
+         */
+        public long getDecodedBodySize() {
+            return decodedBodySize;
+        }
+    }
+}
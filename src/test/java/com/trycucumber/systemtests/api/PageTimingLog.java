@@ -0,0 +1,304 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.base.Charsets;
+import com.trycucumber.systemtests.framework.LatencyHistogram;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Page timings of the run. Every scenario's navigations are exported as a HAR-like JSON file, one page per
+ * navigation with its resources as entries, and timings are aggregated per URL across scenarios into
+ * summary.json when the run ends.
+ * User: Atish Narlawar
+ */
+@Component
+public class PageTimingLog implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(PageTimingLog.class);
+
+    /**
+     * The Enabled.
+     */
+    @Value("${page.timing.enabled}")
+    private boolean enabled;
+
+    /**
+     * The Output path.
+     */
+    @Value("${page.timing.path}")
+    private String outputPath;
+
+    /**
+     * The Output dir.
+     */
+    private File outputDir;
+
+    /**
+     * The Url timings, by URL.
+     */
+    private final Map<String, UrlTimings> urlTimings = new TreeMap<String, UrlTimings>();
+
+    /**
+     * The Scenario exports written, numbering their files.
+     */
+    private final AtomicInteger scenarioExports = new AtomicInteger();
+
+    /**
+     * After properties set.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        outputDir = new File(outputPath);
+        if (enabled) {
+            FileUtils.forceMkdir(outputDir);
+        }
+    }
+
+    /**
+     * Is enabled.
+     *
+     * @return the boolean
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a navigation to the per URL aggregates.
+     *
+     * @param timing the timing
+     */
+    public synchronized void record(PageTiming timing) {
+        UrlTimings timings = urlTimings.get(timing.getUrl());
+        if (timings == null) {
+            timings = new UrlTimings();
+            urlTimings.put(timing.getUrl(), timings);
+        }
+        timings.record(timing);
+    }
+
+    /**
+     * Writes the navigations of a scenario as a HAR-like export.
+     *
+     * @param scenario the scenario
+     * @param timings  the timings, in navigation order
+     *
+     * @return the file
+     *
+     * @throws IOException the iO exception
+     */
+    public File writeScenario(String scenario, List<PageTiming> timings) throws IOException {
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        File export = new File(outputDir, String.format("%04d-%s.har.json", scenarioExports.incrementAndGet(),
+                scenario.replaceAll("[^A-Za-z0-9._-]+", "-")));
+        try {
+            JSONArray pages = new JSONArray();
+            JSONArray entries = new JSONArray();
+            for (int i = 0; i < timings.size(); i++) {
+                PageTiming timing = timings.get(i);
+                String pageId = "page_" + (i + 1);
+
+                JSONObject pageTimings = new JSONObject();
+                pageTimings.put("onContentLoad", timing.getDomContentLoaded());
+                pageTimings.put("onLoad", timing.getLoad());
+                pageTimings.put("_ttfb", timing.getTtfb());
+                pageTimings.put("_resourceBufferFull", timing.isResourceBufferFull());
+
+                JSONObject page = new JSONObject();
+                page.put("id", pageId);
+                page.put("title", timing.getUrl());
+                page.put("startedDateTime", isoFormat.format(new Date(timing.getNavigationStart())));
+                page.put("pageTimings", pageTimings);
+                pages.put(page);
+
+                for (PageTiming.Resource resource : timing.getResources()) {
+                    JSONObject request = new JSONObject();
+                    request.put("method", "GET");
+                    request.put("url", resource.getName());
+
+                    JSONObject content = new JSONObject();
+                    content.put("size", resource.getDecodedBodySize());
+
+                    JSONObject response = new JSONObject();
+                    response.put("bodySize", resource.getEncodedBodySize());
+                    response.put("_transferSize", resource.getTransferSize());
+                    response.put("content", content);
+
+                    JSONObject entryTimings = new JSONObject();
+                    entryTimings.put("wait", resource.getWait());
+                    entryTimings.put("receive", resource.getReceive());
+
+                    JSONObject entry = new JSONObject();
+                    entry.put("pageref", pageId);
+                    entry.put("startedDateTime", isoFormat.format(new Date(timing.getNavigationStart() + (long) resource.getStartTime())));
+                    entry.put("time", resource.getDuration());
+                    entry.put("request", request);
+                    entry.put("response", response);
+                    entry.put("timings", entryTimings);
+                    entry.put("_initiatorType", resource.getInitiatorType());
+                    entries.put(entry);
+                }
+            }
+
+            JSONObject creator = new JSONObject();
+            creator.put("name", "system-tests");
+            creator.put("version", "1.0");
+
+            JSONObject log = new JSONObject();
+            log.put("version", "1.2");
+            log.put("creator", creator);
+            log.put("comment", scenario);
+            log.put("pages", pages);
+            log.put("entries", entries);
+
+            FileUtils.writeStringToFile(export, new JSONObject().put("log", log).toString(2), Charsets.UTF_8.name());
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        return export;
+    }
+
+    /**
+     * Writes the per URL summary.
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized void writeSummary() throws IOException {
+        try {
+            JSONObject summary = new JSONObject();
+            for (Map.Entry<String, UrlTimings> url : urlTimings.entrySet()) {
+                UrlTimings timings = url.getValue();
+
+                JSONObject urlSummary = new JSONObject();
+                urlSummary.put("navigations", timings.navigations);
+                urlSummary.put("ttfb", summarize(timings.ttfb));
+                urlSummary.put("domContentLoaded", summarize(timings.domContentLoaded));
+                urlSummary.put("load", summarize(timings.load));
+                urlSummary.put("meanResources", (double) timings.resources / timings.navigations);
+                urlSummary.put("meanTransferBytes", (double) timings.transferBytes / timings.navigations);
+                summary.put(url.getKey(), urlSummary);
+            }
+            FileUtils.writeStringToFile(new File(outputDir, "summary.json"), summary.toString(2), Charsets.UTF_8.name());
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        logger.info("Page timings of " + urlTimings.size() + " urls written to " + outputDir);
+    }
+
+    /**
+     * Writes the summary when anything was recorded.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (enabled && !urlTimings.isEmpty()) {
+            writeSummary();
+        }
+    }
+
+    /**
+     * Summarize, in milliseconds.
+     *
+     * @param histogram the histogram
+     *
+     * @return the jSON object
+     *
+     * @throws JSONException the jSON exception
+     */
+    private static JSONObject summarize(LatencyHistogram histogram) throws JSONException {
+        JSONObject summary = new JSONObject();
+        summary.put("count", histogram.getCount());
+        summary.put("meanMillis", histogram.getCount() == 0 ? 0 : histogram.getTotalMicros() / 1000.0 / histogram.getCount());
+        summary.put("p50Millis", histogram.getPercentileMicros(50) / 1000.0);
+        summary.put("p95Millis", histogram.getPercentileMicros(95) / 1000.0);
+        summary.put("maxMillis", histogram.getMaxMicros() / 1000.0);
+        return summary;
+    }
+
+    /**
+     * The timings of one URL.
+     */
+    private static final class UrlTimings {
+
+        /**
+         * The Navigations.
+         */
+        private long navigations;
+
+        /**
+         * The Resources.
+         */
+        private long resources;
+
+        /**
+         * The Transfer bytes.
+         */
+        private long transferBytes;
+
+        /**
+         * The Ttfb.
+         */
+        private final LatencyHistogram ttfb = new LatencyHistogram();
+
+        /**
+         * The Dom content loaded.
+         */
+        private final LatencyHistogram domContentLoaded = new LatencyHistogram();
+
+        /**
+         * The Load.
+         */
+        private final LatencyHistogram load = new LatencyHistogram();
+
+        /**
+         * Record, leaving out phases the page had not reached.
+         *
+         * @param timing the timing
+         */
+        private void record(PageTiming timing) {
+            navigations++;
+            resources += timing.getResources().size();
+            transferBytes += timing.getTransferSize();
+            recordMillis(ttfb, timing.getTtfb());
+            recordMillis(domContentLoaded, timing.getDomContentLoaded());
+            recordMillis(load, timing.getLoad());
+        }
+
+        /**
+         * Record millis.
+         *
+         * @param histogram the histogram
+         * @param millis    the millis
+         */
+        private static void recordMillis(LatencyHistogram histogram, double millis) {
+            if (millis >= 0) {
+                histogram.record((long) (millis * 1000000));
+            }
+        }
+    }
+}
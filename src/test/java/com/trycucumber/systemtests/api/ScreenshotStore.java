@@ -0,0 +1,250 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed screenshot storage. Each distinct capture is stored once as blobs/&lt;ab&gt;/&lt;sha1&gt;.png,
+ * addressed by the SHA-1 of the PNG the browser returned, and manifest.tsv maps every screenshot taken, by time
+ * and name, to its blob. Blobs can optionally be recompressed when written. A blob is written to a temporary file
+ * and renamed into place, and a screenshot only gets its manifest line once its blob is there, so the manifest
+ * never points at a missing or half written blob.
+ * User: Atish Narlawar
+ */
+@Component
+public class ScreenshotStore implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(ScreenshotStore.class);
+
+    /**
+     * The Blob suffix.
+     */
+    private static final String BLOB_SUFFIX = ".png";
+
+    /**
+     * The Path to screen shot.
+     */
+    @Value("${server.screenshot.path}")
+    private String pathToScreenshot;
+
+    /**
+     * The Relative screen shot path.
+     */
+    @Value("${server.screenshot.relative.path}")
+    private String relativeScreenshotPath;
+
+    /**
+     * Whether new blobs are recompressed at maximum PNG compression, keeping the result only when smaller.
+     */
+    @Value("${screenshot.store.recompress}")
+    private boolean recompress;
+
+    /**
+     * The hashes already stored, this run or before.
+     */
+    private final Set<String> storedHashes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The Blob dir.
+     */
+    private File blobDir;
+
+    /**
+     * The Manifest.
+     */
+    private Writer manifest;
+
+    /**
+     * Opens the store and indexes the blobs already on disk.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        File storeDir = new File(pathToScreenshot + relativeScreenshotPath);
+        blobDir = new File(storeDir, "blobs");
+        FileUtils.forceMkdir(blobDir);
+
+        File[] prefixDirs = blobDir.listFiles();
+        if (prefixDirs != null) {
+            for (File prefixDir : prefixDirs) {
+                String[] blobs = prefixDir.list();
+                if (blobs == null) {
+                    continue;
+                }
+                for (String blob : blobs) {
+                    if (blob.endsWith(BLOB_SUFFIX)) {
+                        storedHashes.add(blob.substring(0, blob.length() - BLOB_SUFFIX.length()));
+                    }
+                }
+            }
+        }
+
+        manifest = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(storeDir, "manifest.tsv"), true), Charsets.UTF_8));
+        logger.debug("Screenshot store " + storeDir + " opened with " + storedHashes.size() + " blobs");
+    }
+
+    /**
+     * Destroy.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public synchronized void destroy() throws IOException {
+        manifest.close();
+    }
+
+    /**
+     * Hashes a screenshot.
+     *
+     * @param png the png
+     *
+     * @return the hash addressing it
+     */
+    public String hash(byte[] png) {
+        return Hashing.sha1().hashBytes(png).toString();
+    }
+
+    /**
+     * Gets the blob file of a hash.
+     *
+     * @param hash the hash
+     *
+     * @return the blob file
+     */
+    public File getBlobFile(String hash) {
+        return new File(new File(blobDir, hash.substring(0, 2)), hash + BLOB_SUFFIX);
+    }
+
+    /**
+     * Stores a screenshot: writes its blob unless already stored, then records it in the manifest. Nothing is
+     * recorded when the blob cannot be written.
+     *
+     * @param name the screenshot name
+     * @param hash the hash of the png
+     * @param png  the png
+     *
+     * @return the blob file
+     *
+     * @throws IOException the iO exception
+     */
+    public File store(String name, String hash, byte[] png) throws IOException {
+        if (!storedHashes.contains(hash)) {
+            writeBlob(hash, png);
+        }
+        record(name, hash);
+        return getBlobFile(hash);
+    }
+
+    /**
+     * Writes a blob through a temporary file of this thread's own, so that writers racing on the same new capture
+     * each put a whole copy in place.
+     *
+     * @param hash the hash
+     * @param png  the png
+     *
+     * @throws IOException the iO exception
+     */
+    public void writeBlob(String hash, byte[] png) throws IOException {
+        File blobFile = getBlobFile(hash);
+        File tempFile = new File(blobFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileUtils.writeByteArrayToFile(tempFile, recompress ? recompress(png) : png);
+            if (!tempFile.renameTo(blobFile) && !(blobFile.delete() && tempFile.renameTo(blobFile))) {
+                throw new IOException("Could not move " + tempFile + " to " + blobFile);
+            }
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+        storedHashes.add(hash);
+    }
+
+    /**
+     * Records a screenshot in the manifest, as one line written at once.
+     *
+     * @param name the screenshot name
+     * @param hash the hash of its blob
+     *
+     * @throws IOException the iO exception
+     */
+    private synchronized void record(String name, String hash) throws IOException {
+        manifest.write(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()) + '\t'
+                + name.replace('\t', ' ').replace('\n', ' ') + '\t' + hash + '\n');
+    }
+
+    /**
+     * Flushes the manifest.
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized void flush() throws IOException {
+        manifest.flush();
+    }
+
+    /**
+     * Recompresses a PNG at maximum compression.
+     *
+     * @param png the png
+     *
+     * @return the smaller of the recompressed and the original png
+     */
+    private byte[] recompress(byte[] png) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+            if (image == null || !writers.hasNext()) {
+                return png;
+            }
+
+            ImageWriter writer = writers.next();
+            ByteArrayOutputStream recompressed = new ByteArrayOutputStream(png.length);
+            ImageOutputStream output = ImageIO.createImageOutputStream(recompressed);
+            try {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (param.canWriteCompressed()) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(0.0f);
+                }
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+                output.close();
+            }
+            return recompressed.size() < png.length ? recompressed.toByteArray() : png;
+        } catch (IOException e) {
+            logger.debug("Could not recompress screenshot: " + e.getMessage());
+            return png;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Stores screenshots in a {@link ScreenshotStore} in a temporary directory.
+ * User: Atish Narlawar
+ */
+public class ScreenshotStoreTest {
+
+    /**
+     * The Store dir.
+     */
+    private File storeDir;
+
+    /**
+     * The Store.
+     */
+    private ScreenshotStore store;
+
+    /**
+     * Opens the store.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void open() throws IOException {
+        storeDir = Files.createTempDir();
+        store = new ScreenshotStore();
+        setField(store, "pathToScreenshot", storeDir.getPath());
+        setField(store, "relativeScreenshotPath", "/screenshots/");
+        setField(store, "recompress", false);
+        store.afterPropertiesSet();
+    }
+
+    /**
+     * Closes and removes the store.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void close() throws IOException {
+        store.destroy();
+        FileUtils.deleteDirectory(storeDir);
+    }
+
+    /**
+     * A capture taken twice is one blob with two manifest lines.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void storesEachCaptureOnce() throws IOException {
+        byte[] png = "png".getBytes();
+        File first = store.store("first", store.hash(png), png);
+        File second = store.store("second", store.hash(png), png);
+        store.flush();
+
+        assertEquals(first, second);
+        assertEquals(FileUtils.readFileToString(first), "png");
+        assertEquals(first.getParentFile().list().length, 1);
+        List<String> manifest = FileUtils.readLines(new File(storeDir, "screenshots/manifest.tsv"));
+        assertEquals(manifest.size(), 2);
+        assertTrue(manifest.get(1).endsWith("\tsecond\t" + store.hash(png)));
+    }
+
+    /**
+     * A screenshot whose blob cannot be written gets no manifest line, and a later capture writes the blob.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void recordsNothingWithoutItsBlob() throws IOException {
+        byte[] png = "png".getBytes();
+        String hash = store.hash(png);
+        File prefixDir = store.getBlobFile(hash).getParentFile();
+        FileUtils.writeStringToFile(prefixDir, "in the way");
+
+        try {
+            store.store("lost", hash, png);
+            fail("The blob was written over a file");
+        } catch (IOException e) {
+            store.flush();
+            assertEquals(FileUtils.readFileToString(new File(storeDir, "screenshots/manifest.tsv")), "");
+        }
+
+        assertTrue(prefixDir.delete());
+        File blob = store.store("retried", hash, png);
+        assertTrue(blob.isFile());
+        assertFalse(new File(prefixDir, hash + ".png." + Thread.currentThread().getId() + ".tmp").exists());
+    }
+}
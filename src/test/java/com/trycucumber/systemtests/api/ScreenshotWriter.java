@@ -0,0 +1,219 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.iharder.Base64;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes screenshots to the {@link ScreenshotStore} off the test thread. A screenshot the browser returned as
+ * base64 is decoded, hashed and written on a small background pool; one already decoded is hashed on the test
+ * thread. A capture already stored costs no disk I/O beyond its manifest line. When its queue is full the test
+ * thread does the work itself, which keeps memory bounded and slows capture down to the speed of the disk.
+ * <p/>
+ * Each thread waits only for its own screenshots in {@link #flush()}, or for a single one in {@link #await(Future)},
+ * for at most the flush timeout. Once the writer is shut down it refuses new screenshots instead of dropping them.
+ * User: Atish Narlawar
+ */
+@Component
+public class ScreenshotWriter implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(ScreenshotWriter.class);
+
+    /**
+     * The Screenshot store.
+     */
+    @Autowired
+    private ScreenshotStore screenshotStore;
+
+    /**
+     * The Writer threads.
+     */
+    @Value("${screenshot.writer.threads}")
+    private int writerThreads;
+
+    /**
+     * The Queue size, the most screenshots held in memory waiting to be written.
+     */
+    @Value("${screenshot.writer.queue.size}")
+    private int queueSize;
+
+    /**
+     * The Flush timeout seconds.
+     */
+    @Value("${screenshot.writer.flush.timeout.seconds}")
+    private long flushTimeoutSeconds;
+
+    /**
+     * The Executor.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The writes each thread submitted and has not flushed yet.
+     */
+    private final ThreadLocal<List<Future<File>>> pendingWrites = new ThreadLocal<List<Future<File>>>() {
+        @Override
+        protected List<Future<File>> initialValue() {
+            return new ArrayList<Future<File>>();
+        }
+    };
+
+    /**
+     * Creates the writer pool.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        executor = new ThreadPoolExecutor(writerThreads, writerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("screenshot-writer-%d").setDaemon(true).build(),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable write, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Screenshot writer has been shut down");
+                        }
+                        write.run();
+                    }
+                });
+    }
+
+    /**
+     * Stops the pool after the screenshots of every thread are written.
+     *
+     * @throws Exception the exception
+     */
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(flushTimeoutSeconds, TimeUnit.SECONDS)) {
+            logger.warn("Screenshots still being written after " + flushTimeoutSeconds + " s, giving up on them");
+        }
+        screenshotStore.flush();
+    }
+
+    /**
+     * Queues a screenshot for decoding and writing.
+     *
+     * @param name      the screenshot name recorded in the manifest
+     * @param base64Png the screenshot as returned by the browser, a base64 encoded PNG
+     *
+     * @return the blob file the screenshot is stored in, once written
+     *
+     * @throws RejectedExecutionException when the writer has been shut down
+     */
+    public Future<File> write(final String name, final String base64Png) {
+        return submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                byte[] png = Base64.decode(base64Png);
+                return screenshotStore.store(name, screenshotStore.hash(png), png);
+            }
+        });
+    }
+
+    /**
+     * Queues a screenshot for writing.
+     *
+     * @param name the screenshot name recorded in the manifest
+     * @param png  the screenshot
+     *
+     * @return the blob file the screenshot is stored in, once written
+     *
+     * @throws RejectedExecutionException when the writer has been shut down
+     */
+    public Future<File> write(final String name, final byte[] png) {
+        final String hash = screenshotStore.hash(png);
+
+        return submit(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                return screenshotStore.store(name, hash, png);
+            }
+        });
+    }
+
+    /**
+     * Waits until a queued screenshot is on disk, for at most the flush timeout.
+     *
+     * @param write the write
+     *
+     * @return the blob file, or null when the screenshot could not be stored in time
+     */
+    public File await(Future<File> write) {
+        try {
+            return write.get(flushTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            logger.debug("Could not store screenshot: " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            logger.warn("Screenshot still being written after " + flushTimeoutSeconds + " s, not waiting for it");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Waits until every screenshot this thread queued so far is on disk, or the flush timeout is up.
+     */
+    public void flush() {
+        List<Future<File>> writes = pendingWrites.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(flushTimeoutSeconds);
+        try {
+            for (Future<File> write : writes) {
+                try {
+                    write.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (ExecutionException e) {
+                    logger.debug("Could not store screenshot: " + e.getCause().getMessage());
+                }
+            }
+        } catch (TimeoutException e) {
+            logger.warn("Screenshots still being written after " + flushTimeoutSeconds + " s, not waiting for them");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            writes.clear();
+        }
+
+        try {
+            screenshotStore.flush();
+        } catch (IOException e) {
+            logger.debug("Could not flush screenshot manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a write and remembers it for the calling thread's flush.
+     *
+     * @param write the write
+     *
+     * @return the future
+     */
+    private Future<File> submit(Callable<File> write) {
+        Future<File> future = executor.submit(write);
+        pendingWrites.get().add(future);
+        return future;
+    }
+}
@@ -0,0 +1,156 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.io.Files;
+import net.iharder.Base64;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Writes screenshots through a {@link ScreenshotWriter} into a {@link ScreenshotStore} in a temporary directory.
+ * User: Atish Narlawar
+ */
+public class ScreenshotWriterTest {
+
+    /**
+     * Holds up the blob writes of screenshots named slow until released.
+     */
+    private CountDownLatch slowWrites;
+
+    /**
+     * The Store dir.
+     */
+    private File storeDir;
+
+    /**
+     * The Writer.
+     */
+    private ScreenshotWriter writer;
+
+    /**
+     * Opens the store and starts the writer.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void start() throws IOException {
+        slowWrites = new CountDownLatch(1);
+        storeDir = Files.createTempDir();
+        ScreenshotStore store = new ScreenshotStore() {
+            @Override
+            public void writeBlob(String hash, byte[] png) throws IOException {
+                if (new String(png).startsWith("slow")) {
+                    try {
+                        slowWrites.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.writeBlob(hash, png);
+            }
+        };
+        setField(store, "pathToScreenshot", storeDir.getPath());
+        setField(store, "relativeScreenshotPath", "/screenshots/");
+        setField(store, "recompress", false);
+        store.afterPropertiesSet();
+
+        writer = new ScreenshotWriter();
+        setField(writer, "screenshotStore", store);
+        setField(writer, "writerThreads", 2);
+        setField(writer, "queueSize", 4);
+        setField(writer, "flushTimeoutSeconds", 10L);
+        writer.afterPropertiesSet();
+    }
+
+    /**
+     * Stops the writer and removes the store.
+     *
+     * @throws Exception the exception
+     */
+    @AfterMethod
+    public void stop() throws Exception {
+        slowWrites.countDown();
+        writer.destroy();
+        FileUtils.deleteDirectory(storeDir);
+    }
+
+    /**
+     * A base64 screenshot is decoded and stored under its content hash.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void decodesAndStoresInTheBackground() throws Exception {
+        Future<File> blob = writer.write("home", Base64.encodeBytes("fast png".getBytes()));
+        writer.flush();
+
+        assertTrue(blob.isDone());
+        assertEquals(FileUtils.readFileToString(blob.get()), "fast png");
+        assertTrue(FileUtils.readFileToString(new File(storeDir, "screenshots/manifest.tsv")).contains("\thome\t"));
+    }
+
+    /**
+     * A decoded screenshot is queued like a base64 one, and await returns its blob once written.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void awaitsADecodedScreenshot() throws Exception {
+        Future<File> blob = writer.write("home", "raw png".getBytes());
+        File file = writer.await(blob);
+
+        assertTrue(blob.isDone());
+        assertEquals(file, blob.get());
+        assertEquals(FileUtils.readFileToString(file), "raw png");
+    }
+
+    /**
+     * A thread's flush does not wait for the screenshots of another thread.
+     *
+     * @throws Exception the exception
+     */
+    @Test(timeOut = 5000)
+    public void flushesOnlyTheCallersScreenshots() throws Exception {
+        final Future<?>[] slow = new Future<?>[1];
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                slow[0] = writer.write("slow", Base64.encodeBytes("slow png".getBytes()));
+            }
+        });
+        other.start();
+        other.join();
+
+        Future<File> fast = writer.write("fast", Base64.encodeBytes("fast png".getBytes()));
+        writer.flush();
+
+        assertTrue(fast.isDone());
+        assertFalse(slow[0].isDone());
+        slowWrites.countDown();
+        slow[0].get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Once shut down, the writer refuses screenshots instead of dropping them.
+     *
+     * @throws Exception the exception
+     */
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void refusesScreenshotsAfterShutdown() throws Exception {
+        writer.destroy();
+        writer.write("late", "bGF0ZQ==");
+    }
+}
@@ -1,17 +1,17 @@
 package com.trycucumber.systemtests.api;
 
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.opera.core.systems.OperaDriver;
 import com.trycucumber.systemtests.framework.BrowserSize;
+import com.trycucumber.systemtests.framework.CrumbKey;
+import com.trycucumber.systemtests.framework.CrumbStore;
 import com.trycucumber.systemtests.framework.DriverFactory;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
+import com.trycucumber.systemtests.framework.InstrumentedDriver;
+import com.trycucumber.systemtests.framework.RunContext;
+import cucumber.api.Scenario;
+import net.iharder.Base64;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.openqa.selenium.By;
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.Dimension;
@@ -27,34 +27,38 @@ import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.testng.log4testng.Logger;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -65,16 +69,65 @@ import static org.junit.Assert.assertTrue;
 public class SeleniumAPI {
 
     /**
-     * The Path to screen shot.
+     * Whether visibility queries run as one in-browser DOM snapshot instead of per element round trips.
      */
-    @Value("${server.screenshot.path}")
-    private String pathToScreenshot;
+    @Value("${selenium.dom.snapshot}")
+    private boolean domSnapshot;
 
     /**
-     * The Relative screen shot path.
+     * The Tags never reported as tangible, comma separated.
      */
-    @Value("${server.screenshot.relative.path}")
-    private String relativeScreenshotPath;
+    @Value("${selenium.tangible.excluded.tags}")
+    private String tangibleExcludedTags;
+
+    /**
+     * The Min width of a tangible element.
+     */
+    @Value("${selenium.tangible.min.width}")
+    private int tangibleMinWidth;
+
+    /**
+     * The Min height of a tangible element.
+     */
+    @Value("${selenium.tangible.min.height}")
+    private int tangibleMinHeight;
+
+    /**
+     * The Viewports logged by logElementStateForAllResolutions, as BrowserSize names or WIDTHxHEIGHT.
+     */
+    @Value("${rwd.viewports}")
+    private String rwdViewports;
+
+    /**
+     * The number of viewports captured at once, each on its own pooled session. 1 resizes the current browser.
+     */
+    @Value("${rwd.viewport.concurrency}")
+    private int rwdViewportConcurrency;
+
+    /**
+     * The Round trips saved by DOM snapshots.
+     */
+    private final AtomicLong savedRoundTrips = new AtomicLong();
+
+    /**
+     * The Element state capture.
+     */
+    private final ElementStateCapture elementStateCapture = new ElementStateCapture();
+
+    /**
+     * The Element screenshots.
+     */
+    private final ElementScreenshots elementScreenshots = new ElementScreenshots();
+
+    /**
+     * The XPaths resolved on the current page.
+     */
+    private final ElementXPathResolver xpathResolver = new ElementXPathResolver();
+
+    /**
+     * The page timings of the navigations since {@link #start()}.
+     */
+    private final List<PageTiming> pageTimings = new ArrayList<PageTiming>();
 
     /**
      * The Driver.
@@ -82,9 +135,65 @@ public class SeleniumAPI {
     protected WebDriver driver;
 
     /**
-     * The Web driver wait.
+     * The Wait engine.
+     */
+    private final WaitEngine waitEngine = new WaitEngine();
+
+    /**
+     * The timeout of waitForCilckaleByCss and the other wait methods.
+     */
+    @Value("${selenium.wait.timeout.millis}")
+    private long waitTimeoutMillis;
+
+    /**
+     * The implicit wait the driver is currently set to.
+     */
+    private long implicitWaitMillis;
+
+    /**
+     * The readiness openPage waits for unless a scenario selects another.
+     */
+    @Value("${selenium.page.readiness}")
+    private PageReadiness defaultPageReadiness;
+
+    /**
+     * The quiet period after which the network counts as idle.
+     */
+    @Value("${selenium.page.network.idle.millis}")
+    private long networkIdleMillis;
+
+    /**
+     * The Readiness timeout millis.
+     */
+    @Value("${selenium.page.readiness.timeout.millis}")
+    private long readinessTimeoutMillis;
+
+    /**
+     * The readiness openPage waits for.
+     */
+    private PageReadiness pageReadiness;
+
+    /**
+     * The predicate of CUSTOM readiness.
+     */
+    private String readinessPredicate = "true";
+
+    /**
+     * Whether the findElement(s)By* finders cache their results for the current page.
+     */
+    @Value("${selenium.locator.cache}")
+    private boolean locatorCacheEnabled;
+
+    /**
+     * How often a cached page is checked for navigation and DOM mutations.
+     */
+    @Value("${selenium.locator.cache.check.interval.millis}")
+    private long locatorCacheCheckIntervalMillis;
+
+    /**
+     * The Locator cache.
      */
-    protected WebDriverWait webDriverWait;
+    private LocatorCache locatorCache;
 
     /**
      * The Driver factory.
@@ -92,11 +201,61 @@ public class SeleniumAPI {
     @Autowired
     private DriverFactory driverFactory;
 
+    /**
+     * The Broken image checker.
+     */
+    @Autowired
+    private BrokenImageChecker brokenImageChecker;
+
+    /**
+     * The Crumb store.
+     */
+    @Autowired
+    private CrumbStore crumbStore;
+
+    /**
+     * The Element state log.
+     */
+    @Autowired
+    private ElementStateLog elementStateLog;
+
+    /**
+     * The Screenshot writer.
+     */
+    @Autowired
+    private ScreenshotWriter screenshotWriter;
+
+    /**
+     * The Visual diff engine.
+     */
+    @Autowired
+    private VisualDiffEngine visualDiffEngine;
+
+    /**
+     * The Page timing log.
+     */
+    @Autowired
+    private PageTimingLog pageTimingLog;
+
+    /**
+     * The Resource Timing buffer size each page is raised to once its timings are captured, 0 to leave it alone.
+     */
+    @Value("${page.timing.resource.buffer}")
+    private int resourceTimingBuffer;
+
     /**
      * The constant logger.
      */
     private static final Logger logger = Logger.getLogger(SeleniumAPI.class);
 
+    /**
+     * Returns the resolved src of every image on the page.
+     */
+    private static final String IMAGE_URLS_SCRIPT =
+            "var images = document.getElementsByTagName('img'), urls = [];" +
+            "for (var i = 0; i < images.length; i++) { urls.push(images[i].src); }" +
+            "return urls;";
+
     /**
      * Resize browser window.
      *
@@ -126,10 +285,24 @@ public class SeleniumAPI {
 
 
     /**
-     * Implicit timeouts
+     * Implicit timeouts. Sets the implicit wait back to the one sessions start with.
+     *
+     * @deprecated sessions start with {@link DriverFactory#DEFAULT_IMPLICIT_WAIT_SECONDS}; wait for elements with
+     * {@link #waitForCilckaleByCss(String)} and the other wait methods instead of a longer implicit wait
      */
+    @Deprecated
     public void implicit() {
-        driver.manage().timeouts().implicitlyWait(100, TimeUnit.SECONDS);
+        implicitlyWait(TimeUnit.SECONDS.toMillis(DriverFactory.DEFAULT_IMPLICIT_WAIT_SECONDS));
+    }
+
+    /**
+     * Sets the implicit wait, remembering it so waits that switch it off can restore it.
+     *
+     * @param millis the millis
+     */
+    private void implicitlyWait(long millis) {
+        driver.manage().timeouts().implicitlyWait(millis, TimeUnit.MILLISECONDS);
+        implicitWaitMillis = millis;
     }
 
     /**
@@ -149,35 +322,39 @@ public class SeleniumAPI {
 
 
     /**
-     * Create screen shot dir.
+     * Gets screen shot, and waits until it is stored like {@link #getScreenShotAsync(WebDriver, String)}.
+     *
+     * @param driver   the driver
+     * @param filename the filename
+     *
+     * @return the screen shot blob, or null when the screenshot could not be taken or stored
      *
      * @throws IOException the iO exception
      */
-    private void createScreenShotDir() throws IOException {
-        FileUtils.forceMkdir(new File(pathToScreenshot + "/target/screenshots/"));
+    public File getScreenShot(WebDriver driver, String filename) throws IOException {
+        Future<File> imageFile = getScreenShotAsync(driver, filename);
+        return imageFile == null ? null : screenshotWriter.await(imageFile);
     }
 
     /**
-     * Gets screen shot.
+     * Gets screen shot without waiting for it to be stored. The screenshot is taken on this thread and decoded
+     * and stored in the background by {@link ScreenshotWriter}, under its content hash with the filename recorded
+     * in the screenshot manifest; the file exists once the future is done or {@link ScreenshotWriter#flush()}
+     * returns.
      *
      * @param driver   the driver
      * @param filename the filename
      *
-     * @return the screen shot
+     * @return the screen shot blob, once written, or null when the screenshot could not be taken
      *
      * @throws IOException the iO exception
      */
-    public File getScreenShot(WebDriver driver, String filename) throws IOException {
+    public Future<File> getScreenShotAsync(WebDriver driver, String filename) throws IOException {
 
-        File imageFile = null;
+        Future<File> imageFile = null;
         try {
-            createScreenShotDir();
-
-            File scrFile = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-
-            String path = pathToScreenshot + relativeScreenshotPath + filename + scrFile.getName();
-            imageFile = new File(path);
-            FileUtils.copyFile(scrFile, imageFile);
+            String screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64);
+            imageFile = screenshotWriter.write(filename, screenshot);
             logger.debug("We are taking screenshots!");
         } catch (Exception ex) {
             // Any exception in Screen shot should be eaten here. It should not hamper selenium tests.
@@ -187,6 +364,107 @@ public class SeleniumAPI {
         return imageFile;
     }
 
+    /**
+     * Gets screen shots of elements, cropped from a single page screenshot and stored like
+     * {@link #getScreenShot(WebDriver, String)} as filename plus the element's index. The crops are written
+     * together in the background and waited for before returning, so the files exist.
+     *
+     * @param elements the elements
+     * @param filename the filename
+     *
+     * @return the screen shot blobs, in the order of the elements, null for elements not on the screenshot or not
+     * stored
+     *
+     * @throws IOException the iO exception
+     */
+    public List<File> getElementScreenShots(List<WebElement> elements, String filename) throws IOException {
+        List<Future<File>> writes = new ArrayList<Future<File>>(elements.size());
+        int index = 0;
+        for (BufferedImage image : elementScreenshots.capture(driver, elements)) {
+            if (image == null) {
+                writes.add(null);
+            } else {
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                ImageIO.write(image, "png", png);
+                writes.add(screenshotWriter.write(filename + index, png.toByteArray()));
+            }
+            index++;
+        }
+
+        List<File> imageFiles = new ArrayList<File>(writes.size());
+        for (Future<File> write : writes) {
+            imageFiles.add(write == null ? null : screenshotWriter.await(write));
+        }
+        return imageFiles;
+    }
+
+    /**
+     * Gets screen shots of every element matching the locators, cropped from a single page screenshot.
+     *
+     * @param filename the filename
+     * @param locators the locators
+     *
+     * @return the screen shot blobs
+     *
+     * @throws IOException the iO exception
+     */
+    public List<File> getElementScreenShots(String filename, By... locators) throws IOException {
+        List<WebElement> elements = new ArrayList<WebElement>();
+        for (By locator : locators) {
+            elements.addAll(driver.findElements(locator));
+        }
+        return getElementScreenShots(elements, filename);
+    }
+
+    /**
+     * Takes a screenshot, stores it like {@link #getScreenShot(WebDriver, String)} and compares it with the visual
+     * baseline of the same name. A screenshot without a baseline, or differing from it, is written as a candidate
+     * baseline for {@link VisualBaselinePromotion}.
+     *
+     * @param name          the baseline name
+     * @param ignoreRegions the regions not compared, in screenshot pixels
+     *
+     * @return the visual diff result
+     *
+     * @throws IOException the iO exception
+     */
+    public VisualDiffResult compareScreenShot(String name, List<Rectangle> ignoreRegions) throws IOException {
+        byte[] png = Base64.decode(((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64));
+        screenshotWriter.write(name, png);
+        return visualDiffEngine.compare(name, ImageIO.read(new ByteArrayInputStream(png)), ignoreRegions.toArray(new Rectangle[ignoreRegions.size()]));
+    }
+
+    /**
+     * Compares a screenshot with its visual baseline, ignoring the areas of the matching elements, such as
+     * carousels or timestamps. The element areas are mapped onto the screenshot like the crops of
+     * {@link #getElementScreenShots(String, By...)}, with the device pixel ratio and scroll offset.
+     *
+     * @param name            the baseline name
+     * @param ignoredElements the locators of the elements not compared
+     *
+     * @return the visual diff result
+     *
+     * @throws IOException the iO exception
+     */
+    public VisualDiffResult compareScreenShot(String name, By... ignoredElements) throws IOException {
+        List<WebElement> elements = new ArrayList<WebElement>();
+        for (By ignoredElement : ignoredElements) {
+            elements.addAll(driver.findElements(ignoredElement));
+        }
+
+        byte[] png = Base64.decode(((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64));
+        screenshotWriter.write(name, png);
+        BufferedImage screenshot = ImageIO.read(new ByteArrayInputStream(png));
+
+        List<Rectangle> ignoreRegions = new ArrayList<Rectangle>();
+        for (Rectangle ignoreRegion : elementScreenshots.locate(driver, elements, screenshot)) {
+            if (ignoreRegion != null) {
+                ignoreRegions.add(ignoreRegion);
+            }
+        }
+        return visualDiffEngine.compare(name, screenshot, ignoreRegions.toArray(new Rectangle[ignoreRegions.size()]));
+    }
+
     /**
      * Gets attribute value.
      *
@@ -231,38 +509,69 @@ public class SeleniumAPI {
     }
 
     /**
-     * Gets tangible elements.
+     * Gets tangible elements: visible elements whose tag is not excluded and whose size meets the thresholds.
+     * In snapshot mode the filtering runs inside the page in one pass.
      *
      * @return the tangible elements
      */
     public List<WebElement> getTangibleElements() {
-        List<WebElement> visibleElements = getVisibleElements();
+        TangibleElementQuery query = getTangibleElementQuery();
 
-        List<WebElement> tangibleElements = new LinkedList<WebElement>();
-
-        Iterator<WebElement> visibleElementsIt = visibleElements.iterator();
-
-        while (visibleElementsIt.hasNext()) {
+        if (domSnapshot) {
+            try {
+                return query.findElements(driver);
+            } catch (RuntimeException e) {
+                logger.debug("In-page tangible element query not available, checking elements one by one: " + e.getMessage());
+            }
+        }
 
-            WebElement pageElement = visibleElementsIt.next();
+        List<WebElement> tangibleElements = new ArrayList<WebElement>();
 
-            if (!pageElement.getTagName().equals("html") && !pageElement.getTagName().equals("body") && !pageElement.getTagName().equals("nav") && !pageElement.getTagName().equals("ul")) {
-                if (pageElement.getSize().getWidth() > 0 && pageElement.getSize().getHeight() > 0) {
-                    tangibleElements.add(pageElement);
-                }
+        for (WebElement pageElement : getVisibleElements()) {
+            if (query.isTangible(pageElement)) {
+                tangibleElements.add(pageElement);
             }
-
         }
 
         return tangibleElements;
     }
 
     /**
-     * Gets visible elements.
+     * Finds tangible elements as a compact array of tag, position and size, without remote element references.
+     *
+     * @return the tangible elements
+     */
+    public TangibleElement[] findTangibleElements() {
+        return getTangibleElementQuery().find(driver);
+    }
+
+    /**
+     * Gets tangible element query for the configured exclusions and thresholds.
+     *
+     * @return the tangible element query
+     */
+    private TangibleElementQuery getTangibleElementQuery() {
+        return new TangibleElementQuery(Arrays.asList(StringUtils.split(tangibleExcludedTags, ", ")), tangibleMinWidth, tangibleMinHeight);
+    }
+
+    /**
+     * Gets visible elements. In snapshot mode visibility is worked out in the browser with one script call.
      *
      * @return the visible elements
      */
     public List<WebElement> getVisibleElements() {
+        if (domSnapshot) {
+            try {
+                DomSnapshot snapshot = DomSnapshot.take(driver);
+                savedRoundTrips.addAndGet(snapshot.getSavedRoundTrips());
+                logger.debug("DOM snapshot found " + snapshot.getVisibleElements().size() + " visible of " + snapshot.getTotalElements()
+                        + " elements, saving " + snapshot.getSavedRoundTrips() + " round trips");
+                return new ArrayList<WebElement>(snapshot.getVisibleElements());
+            } catch (RuntimeException e) {
+                logger.debug("DOM snapshot not available, checking elements one by one: " + e.getMessage());
+            }
+        }
+
         List<WebElement> pageElements = driver.findElements(By.xpath("//*"));
 
         List<WebElement> visibleElements = new LinkedList<WebElement>();
@@ -283,16 +592,79 @@ public class SeleniumAPI {
     }
 
     /**
-     * Gets element x path.
+     * Gets the round trips DOM snapshots have saved so far on this thread.
+     *
+     * @return the saved round trips
+     */
+    public long getSavedRoundTrips() {
+        return savedRoundTrips.get();
+    }
+
+    /**
+     * Gets element x path. Paths are cached per page, so asking again for the same element is free.
      *
      * @param element the element
      *
      * @return the element x path
      */
     public String getElementXPath(WebElement element) {
-        String elementClass = element.getAttribute("class");
-        String elementId = element.getAttribute("id");
-        String elementText = element.getText();
+        String cachedXPath = xpathResolver.getCached(element);
+        if (cachedXPath != null) {
+            return cachedXPath;
+        }
+
+        if (domSnapshot) {
+            try {
+                return xpathResolver.resolve(driver, Collections.singletonList(element)).get(0);
+            } catch (RuntimeException e) {
+                logger.debug("In-page XPath resolution not available, walking up the tree: " + e.getMessage());
+            }
+        }
+
+        String elementXPath = getElementXPathByAncestors(element);
+        xpathResolver.put(element, elementXPath);
+        return elementXPath;
+    }
+
+    /**
+     * Gets the x paths of all the elements in one script call. Paths are cached per page.
+     *
+     * @param elements the elements
+     *
+     * @return the element x paths, in the order of the elements
+     */
+    public List<String> getElementXPaths(List<WebElement> elements) {
+        if (domSnapshot) {
+            try {
+                return xpathResolver.resolve(driver, elements);
+            } catch (RuntimeException e) {
+                logger.debug("In-page XPath resolution not available, walking up the tree: " + e.getMessage());
+            }
+        }
+
+        List<String> elementXPaths = new ArrayList<String>(elements.size());
+        for (WebElement element : elements) {
+            String elementXPath = xpathResolver.getCached(element);
+            if (elementXPath == null) {
+                elementXPath = getElementXPathByAncestors(element);
+                xpathResolver.put(element, elementXPath);
+            }
+            elementXPaths.add(elementXPath);
+        }
+        return elementXPaths;
+    }
+
+    /**
+     * Gets element x path by asking the driver about the element and each of its ancestors.
+     *
+     * @param element the element
+     *
+     * @return the element x path
+     */
+    private String getElementXPathByAncestors(WebElement element) {
+        String elementClass = StringUtils.defaultString(element.getAttribute("class"));
+        String elementId = StringUtils.defaultString(element.getAttribute("id"));
+        String elementText = StringUtils.trimToEmpty(element.getText());
         String elementTag = element.getTagName();
 
         String elementXPath;
@@ -300,8 +672,10 @@ public class SeleniumAPI {
 
         if (elementClass.contains("section")) {
             elementXPath = "//";
+        } else if (elementTag.equalsIgnoreCase("html")) {
+            elementXPath = "/";
         } else {
-            elementXPath = getElementXPath(element.findElement(By.xpath("/parent::*"))) + "/";
+            elementXPath = getElementXPathByAncestors(element.findElement(By.xpath("parent::*"))) + "/";
         }
         elementXPath = elementXPath + elementTag;
 
@@ -318,7 +692,7 @@ public class SeleniumAPI {
                     elementXPath = elementXPath + " and ";
                 }
 
-                elementXPath = elementXPath + "@id='" + elementClass + "'";
+                elementXPath = elementXPath + "@id='" + elementId + "'";
                 elementXPathComma = true;
             }
 
@@ -339,49 +713,117 @@ public class SeleniumAPI {
     }
 
     /**
-     * Find broken images.
+     * Find broken images. The image urls are collected in one script call and checked concurrently.
      *
      * @return the set
      */
+    @SuppressWarnings("unchecked")
     public Set<String> findBrokenImages() {
-        List<WebElement> imagesList = driver.findElements(By.tagName("img"));
-
-        Set<String> brokenImages = new LinkedHashSet<String>();
+        List<String> imageUrls = new ArrayList<String>();
 
-        for (WebElement image : imagesList) {
-            try {
-
-                HttpClient httpclient = HttpClientBuilder.create().build();
-                HttpResponse response = httpclient.execute(new HttpGet(image.getAttribute("src")));
-                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                    brokenImages.add(image.getAttribute("src"));
-                }
-            } catch (IOException ioe) {
-                logger.warn("Bad image " + image);
+        try {
+            for (Object imageUrl : (List<Object>) ((JavascriptExecutor) driver).executeScript(IMAGE_URLS_SCRIPT)) {
+                imageUrls.add(String.valueOf(imageUrl));
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Could not collect image urls in the page, asking each image: " + e.getMessage());
+            for (WebElement image : driver.findElements(By.tagName("img"))) {
+                imageUrls.add(image.getAttribute("src"));
             }
         }
 
-        return brokenImages;
+        return brokenImageChecker.findBroken(imageUrls);
 
     }
 
     /**
-     * Log element state for all resolutions.
+     * Log element state for all resolutions configured in rwd.viewports. With rwd.viewport.concurrency above 1
+     * the viewports are captured concurrently, each on a pooled session already sized to it that loads the
+     * current page with the current cookies. Concurrency is capped at the sessions the pool can still hand out, so
+     * captures never wait on one another for a session; with one or none left the current browser is resized.
+     * The capture threads run under the caller's {@link RunContext}, so their commands count towards its step.
      *
      * @param pageElements the page elements
      * @param testName     the test name
      * @param testState    the test state
+     *
+     * @return the milliseconds spent per viewport, in the configured order
      */
-    public void logElementStateForAllResolutions(Set<String> pageElements, String testName, String testState) {
-        //todo configure resolutions somewhere else
+    public Map<Dimension, Long> logElementStateForAllResolutions(final Set<String> pageElements, final String testName, final String testState) {
+        List<Dimension> viewports = BrowserSize.parseDimensions(rwdViewports);
+        Map<Dimension, Long> timings = new LinkedHashMap<Dimension, Long>();
+        int concurrency = Math.min(Math.min(rwdViewportConcurrency, viewports.size()), driverFactory.getAvailableSessions());
+
+        if (concurrency <= 1) {
+            for (Dimension viewport : viewports) {
+                long start = System.currentTimeMillis();
+                resizeBrowserWindow(driver, viewport.getWidth(), viewport.getHeight());
+                logElementState(driver, pageElements, testName, testState);
+                timings.put(viewport, System.currentTimeMillis() - start);
+                logger.info("Logged element state at " + viewport + " in " + timings.get(viewport) + " ms");
+            }
+            return timings;
+        }
 
-        for (int i = 400; i <= 1200; i += 200) { //todo make these not hard-coded
-            resizeBrowserWindow(driver, i, 640);
-            logElementState(driver, pageElements, testName, testState);
+        final String pageUrl = driver.getCurrentUrl();
+        final Set<Cookie> cookies = driver.manage().getCookies();
+        final String scenario = RunContext.getScenario();
+        final String step = RunContext.getStep();
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("viewport-%d").build());
+        Map<Dimension, Future<Long>> captures = new LinkedHashMap<Dimension, Future<Long>>();
+        try {
+            for (final Dimension viewport : viewports) {
+                captures.put(viewport, executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        RunContext.setScenario(scenario);
+                        RunContext.setStep(step);
+                        try {
+                            long start = System.currentTimeMillis();
+                            WebDriver viewportDriver = driverFactory.getObject(viewport);
+                            boolean captured = false;
+                            try {
+                                driverFactory.recordVisit(viewportDriver, pageUrl);
+                                viewportDriver.get(pageUrl);
+                                if (!cookies.isEmpty()) {
+                                    for (Cookie cookie : cookies) {
+                                        viewportDriver.manage().addCookie(cookie);
+                                    }
+                                    viewportDriver.navigate().refresh();
+                                }
+                                logElementState(viewportDriver, pageElements, testName, testState);
+                                captured = true;
+                            } finally {
+                                if (captured) {
+                                    driverFactory.release(viewportDriver);
+                                } else {
+                                    driverFactory.invalidate(viewportDriver);
+                                }
+                            }
+                            return System.currentTimeMillis() - start;
+                        } finally {
+                            RunContext.setScenario(null);
+                            RunContext.setStep(null);
+                        }
+                    }
+                }));
+            }
 
-            resizeBrowserWindow(driver, i, 1200);
-            logElementState(driver, pageElements, testName, testState);
+            for (Map.Entry<Dimension, Future<Long>> capture : captures.entrySet()) {
+                timings.put(capture.getKey(), capture.getValue().get());
+                logger.info("Logged element state at " + capture.getKey() + " in " + timings.get(capture.getKey()) + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while logging element state", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not log element state for every viewport", e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+        return timings;
     }
 
     /**
@@ -393,88 +835,29 @@ public class SeleniumAPI {
      * @param testState    the test state
      */
     public void logElementState(WebDriver driver, Set<String> pageElements, String testName, String testState) {
-        int browserWidth = getBrowserWidth(driver);
 
         //Connection connection = null;
 
         driver.manage().timeouts().implicitlyWait(1, TimeUnit.MILLISECONDS);
+        if (driver == this.driver) {
+            implicitWaitMillis = 1;
+        }
 
-        Iterator<String> pageElementsIt = pageElements.iterator();
+        Dimension browserSize = driver.manage().window().getSize();
 
         Date now = new Date();
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
         String sqlTimestamp = sdf.format(now);
 
-        String sqlOutput = new String();
-        String javaOutput = new String();
-
-        Integer elementCounter = 0;
-
-        while (pageElementsIt.hasNext()) {
-
-            String pageElementXPath = pageElementsIt.next();
-
-            elementCounter = elementCounter + 1;
-
-            HashMap peAttributes = new HashMap();
-            HashMap peLogFields = new HashMap();
-
-            //todo uncomment this and add handling for elements that don't exist.
-            //this snippet is currently only used for generating a list of working elements
-            if (driver.findElements(By.xpath(pageElementXPath)).size() == 0) {
-                peAttributes.put("isPresent", "false");
-                peLogFields.put("element_visible", "false");
-
-            } else {
-                WebElement pageElement = driver.findElement(By.xpath(pageElementXPath));
-
-                //String pageElementXPath = pageElementsIt.next();
-
-
-                //            javaOutput = javaOutput + "            WebElement autoElement" + elementCounter.toString() + " = driver.findElement(By.xpath(\"" + pageElementXPath + "\"));\n";
-                //
-                //            javaOutput = javaOutput + "               if (seleniumUtil.getBrowserWidth(driver) == 400 && seleniumUtil.getBrowserHeight(driver) == 600) {\n";
-
+        for (ElementState elementState : captureElementStates(driver, pageElements)) {
 
-                peAttributes.put("isPresent", "true");
+            String pageElementXPath = elementState.getXpath();
 
-                peAttributes.put("isVisible", pageElement.isDisplayed());
-                peAttributes.put("color", pageElement.getCssValue("color"));
-                peAttributes.put("height", pageElement.getSize().getHeight());
-                peAttributes.put("width", pageElement.getSize().getWidth());
-                peAttributes.put("posX", pageElement.getLocation().getX());
-                peAttributes.put("posY", pageElement.getLocation().getY());
-                peAttributes.put("opacity", pageElement.getCssValue("opacity"));
+            Map<String, Object> peAttributes = elementState.getAttributes();
+            Map<String, Object> peLogFields = new HashMap<String, Object>(elementState.getLogFields());
 
-                peAttributes.put("borderWidth", pageElement.getCssValue("border-width"));
-
-                peLogFields.put("element_tag", pageElement.getTagName());
-
-                // element's visibility is added to every row for easier reporting exclusion
-                peLogFields.put("element_visible", pageElement.isDisplayed());
-
-                // don't log the border color if the border width is 0
-                if (pageElement.getCssValue("border-width") != "0") {
-                    peAttributes.put("borderColor", pageElement.getCssValue("border-color"));
-                }
-
-                if (pageElement.getTagName().equals("img")) {
-                    peAttributes.put("src", pageElement.getAttribute("src"));
-                    peAttributes.put("alt", pageElement.getAttribute("alt"));
-                }
-
-                if (pageElement.getTagName().equals("li") || pageElement.getTagName().equals("ol")) {
-                    peAttributes.put("liCount", pageElement.findElements(By.tagName("li")).size());
-                }
-
-                if (pageElement.getTagName().equals("a")) {
-                    peAttributes.put("href", pageElement.getAttribute("href"));
-                }
-            }
-
-
-            peLogFields.put("browser_width", driver.manage().window().getSize().getWidth());
-            peLogFields.put("browser_height", driver.manage().window().getSize().getHeight());
+            peLogFields.put("browser_width", browserSize.getWidth());
+            peLogFields.put("browser_height", browserSize.getHeight());
             peLogFields.put("element_xpath", pageElementXPath);
             peLogFields.put("test_name", testName); //todo get test name from class
             peLogFields.put("test_state", testState); //todo sanitize string?
@@ -483,136 +866,130 @@ public class SeleniumAPI {
             peLogFields.put("log_time", sqlTimestamp);
 
             // todo replace this with currentBrowser
-            if (driver instanceof ChromeDriver) {
+            WebDriver browserDriver = InstrumentedDriver.unwrap(driver);
+            if (browserDriver instanceof ChromeDriver) {
                 peLogFields.put("browser", "chrome");
-            } else if (driver instanceof FirefoxDriver) {
+            } else if (browserDriver instanceof FirefoxDriver) {
                 peLogFields.put("browser", "firefox");
-            } else if (driver instanceof SafariDriver) {
+            } else if (browserDriver instanceof SafariDriver) {
                 peLogFields.put("browser", "safari");
-            } else if (driver instanceof InternetExplorerDriver) {
+            } else if (browserDriver instanceof InternetExplorerDriver) {
                 peLogFields.put("browser", "internetexplorer"); //todo get the version too
-            } else if (driver instanceof OperaDriver) {
+            } else if (browserDriver instanceof OperaDriver) {
                 peLogFields.put("browser", "opera"); //todo get the version too
-            } else if (driver instanceof RemoteWebDriver) {
+            } else if (browserDriver instanceof RemoteWebDriver) {
                 peLogFields.put("browser", "chrome"); //todo somehow get the browser name using getCapabilities even though only RemoteWebDriver supports it -ig
             } else {
                 logger.debug("this shouldn't happen"); //todo make this not happen
             }
 
-            Iterator peAttributesIt = peAttributes.entrySet().iterator();
-
-            while (peAttributesIt.hasNext()) {
-                Map.Entry peAttribute = (Map.Entry) peAttributesIt.next();
-                HashMap insertFields = new HashMap();
-
-                insertFields.putAll(peLogFields);
+            for (Map.Entry<String, Object> peAttribute : peAttributes.entrySet()) {
+                Map<String, Object> insertFields = new HashMap<String, Object>(peLogFields);
 
                 insertFields.put("attribute_name", peAttribute.getKey());
                 insertFields.put("attribute_value", peAttribute.getValue());
 
-                Iterator insertFieldsIt = insertFields.entrySet().iterator();
-
-                String sqlFieldNames = new String();
-                String sqlFieldValues = new String();
-
-                while (insertFieldsIt.hasNext()) {
-                    Map.Entry insertField = (Map.Entry) insertFieldsIt.next();
-
-                    if (sqlFieldNames.equals("")) {
-                        sqlFieldNames += insertField.getKey();
-                        sqlFieldValues += "\"" + insertField.getValue() + "\"";
-                    } else {
-                        sqlFieldNames += "," + insertField.getKey();
-                        sqlFieldValues += ",\"" + insertField.getValue() + "\"";
-                    }
-                }
-
-                sqlOutput = sqlOutput +
-                        "INSERT INTO testlog (" +
-                        sqlFieldNames +
-                        ") VALUES (" +
-                        sqlFieldValues +
-                        ");\n";
-
-                //////////////////////////////////////////////////////////
-
-                String xpathHash = DigestUtils.md5Hex(pageElementXPath);
-                String crumbLogPath = "crumbdb/" + peLogFields.get("browser") + "/" + testName + "/" + testState + "/" + peLogFields.get("browser_width") + "x" + peLogFields.get("browser_height") + "/" + xpathHash;
-                File crumbLogFile = new File(crumbLogPath);
+                elementStateLog.write(insertFields);
 
-                if (crumbLogFile.mkdirs()) {
-                }
-
-
-                BufferedReader reader = null;
+                CrumbKey crumbKey = CrumbKey.forXPath(String.valueOf(peLogFields.get("browser")), testName, testState,
+                        peLogFields.get("browser_width") + "x" + peLogFields.get("browser_height"), pageElementXPath, peAttribute.getKey());
+                String value = String.valueOf(peAttribute.getValue());
                 try {
-                    reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(new FileInputStream(new File(crumbLogFile + "/" + peAttribute.getKey() + ".txt")))));
-
-                    String line = null;
-
-                    while ((line = reader.readLine()) != null) {
-                        line = StringUtils.strip(line, "\n");
-
-
-                        if (StringUtils.trim(peAttribute.getValue().toString()).equals(StringUtils.trim(line))) {
-                            //System.err.println("OK: " + pageElementXPath + "/" + peAttribute.getKey() + " = " + peAttribute.getValue());
-                        } else {
-                            System.err.println("WARNING: " + pageElementXPath + "/" + peAttribute.getKey() + " = " + peAttribute.getValue() + "(was " + line + ")");
-                        }
-
-                        break;
+                    String baseline = crumbStore.record(crumbKey, value);
+                    if (baseline == null) {
+                        System.err.println("NEW: " + pageElementXPath + "/" + peAttribute.getKey() + " = " + value);
+                    } else if (!StringUtils.trim(value).equals(StringUtils.trim(baseline))) {
+                        System.err.println("WARNING: " + pageElementXPath + "/" + peAttribute.getKey() + " = " + value + "(was " + baseline + ")");
                     }
-                } catch (FileNotFoundException e) {
-                    System.err.println("NEW: " + pageElementXPath + "/" + peAttribute.getKey() + " = " + peAttribute.getValue());
-
                 } catch (IOException e) {
-                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
-                }
-
-                //System.err.println(crumbLogPath + "/" + peAttribute.getKey());
-
-
-                try {
-                    PrintWriter out = new PrintWriter(new FileOutputStream(crumbLogFile + "/" + peAttribute.getKey() + ".txt", true));
-
-                    out.println(peAttribute.getValue());
-                    out.close();
-                    out = null;
-
-                } catch (Exception e) {
-                    System.err.println("oops, couldn't write crumblog file!");
+                    System.err.println("oops, couldn't write crumb store!");
                 }
 
             }
         }
 
         try {
-            PrintWriter out = new PrintWriter(new FileOutputStream(new File("log-sql.txt"), true));
+            crumbStore.flush();
+        } catch (IOException e) {
+            System.err.println("oops, couldn't write crumb store!");
+        }
 
-            out.println(sqlOutput);
-            out.close();
-            out = null;
+        elementStateLog.flush();
+    }
 
-            out = new PrintWriter(new FileOutputStream(new File("log-java.txt"), true));
 
-            out.println(javaOutput);
-            out.close();
-            out = null;
+    /**
+     * Captures the state of the page elements, in one script call when the driver supports it.
+     *
+     * @param driver       the driver
+     * @param pageElements the page elements
+     *
+     * @return the element states
+     */
+    private List<ElementState> captureElementStates(WebDriver driver, Set<String> pageElements) {
+        if (domSnapshot) {
+            try {
+                return elementStateCapture.capture(driver, pageElements);
+            } catch (RuntimeException e) {
+                logger.debug("In-page element state capture not available, reading attributes one by one: " + e.getMessage());
+            }
+        }
 
-        } catch (Exception e) {
-            System.err.println("oops, couldn't write log file!");
+        List<ElementState> elementStates = new ArrayList<ElementState>(pageElements.size());
+        for (String pageElementXPath : pageElements) {
+            elementStates.add(elementStateCapture.captureOne(driver, pageElementXPath));
         }
+        return elementStates;
     }
 
-
     /**
      * Open page.
      *
      * @param pagePath the page path
      */
     public void openPage(String pagePath) {
+        openPage(pagePath, pageReadiness);
+    }
+
+    /**
+     * Open page and wait until it is ready.
+     *
+     * @param pagePath  the page path
+     * @param readiness the readiness, CUSTOM using the predicate set with {@link #setReadinessPredicate(String)}
+     */
+    public void openPage(String pagePath, PageReadiness readiness) {
+        pageChanged();
+        driverFactory.recordVisit(driver, pagePath);
         driver.get(pagePath);
+        waitEngine.waitForReadiness(driver, readiness, readinessPredicate, networkIdleMillis, readinessTimeoutMillis);
+        capturePageTiming();
+    }
 
+    /**
+     * Sets the readiness {@link #openPage(String)} waits for, until the next {@link #start()}.
+     *
+     * @param readiness the readiness
+     */
+    public void setPageReadiness(PageReadiness readiness) {
+        this.pageReadiness = readiness;
+    }
+
+    /**
+     * Sets the JavaScript expression that must be true for CUSTOM readiness, e.g. "window.appReady === true".
+     *
+     * @param predicate the predicate
+     */
+    public void setReadinessPredicate(String predicate) {
+        this.readinessPredicate = predicate;
+    }
+
+    /**
+     * Selects the readiness tagged on a scenario, such as @readiness-networkidle, or the configured default.
+     *
+     * @param scenario the scenario
+     */
+    public void selectPageReadiness(Scenario scenario) {
+        setPageReadiness(PageReadiness.forTags(scenario.getSourceTagNames(), defaultPageReadiness));
     }
 
 
@@ -625,7 +1002,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementByCss(String cssString) {
 
-        return driver.findElement(By.cssSelector(cssString));
+        return getLocatorCache().findElement(driver, By.cssSelector(cssString));
 
     }
 
@@ -638,7 +1015,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementByTagName(String tagName) {
 
-        return driver.findElement(By.tagName(tagName));
+        return getLocatorCache().findElement(driver, By.tagName(tagName));
 
     }
 
@@ -651,7 +1028,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementByClassName(String className) {
 
-        return driver.findElement(By.className(className));
+        return getLocatorCache().findElement(driver, By.className(className));
 
     }
 
@@ -665,7 +1042,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementByXpath(String xpathExpression) {
 
-        return driver.findElement(By.xpath(xpathExpression));
+        return getLocatorCache().findElement(driver, By.xpath(xpathExpression));
 
     }
 
@@ -678,7 +1055,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementByLinkText(String linkText) {
 
-        return driver.findElement(By.linkText(linkText));
+        return getLocatorCache().findElement(driver, By.linkText(linkText));
 
     }
 
@@ -692,7 +1069,7 @@ public class SeleniumAPI {
      */
     public WebElement findElementById(String id) {
 
-        return driver.findElement(By.id(id));
+        return getLocatorCache().findElement(driver, By.id(id));
 
     }
 
@@ -755,7 +1132,7 @@ public class SeleniumAPI {
      */
     public List<WebElement> findElementsByCss(String cssString) {
 
-        return driver.findElements(By.cssSelector(cssString));
+        return getLocatorCache().findElements(driver, By.cssSelector(cssString));
 
     }
 
@@ -769,7 +1146,7 @@ public class SeleniumAPI {
      */
     public List<WebElement> findElementsByClassName(String className) {
 
-        return driver.findElements(By.className(className));
+        return getLocatorCache().findElements(driver, By.className(className));
 
     }
 
@@ -782,7 +1159,7 @@ public class SeleniumAPI {
      */
     public List<WebElement> findElementsById(String id) {
 
-        return driver.findElements(By.id(id));
+        return getLocatorCache().findElements(driver, By.id(id));
 
 
     }
@@ -796,7 +1173,7 @@ public class SeleniumAPI {
      */
     public List<WebElement> findElementsByXpath(String xpathExpression) {
 
-        return driver.findElements(By.xpath(xpathExpression));
+        return getLocatorCache().findElements(driver, By.xpath(xpathExpression));
 
     }
 
@@ -808,7 +1185,7 @@ public class SeleniumAPI {
      */
     public void getScreenShot(String screenName) {
         try {
-            getScreenShot(driver, screenName);
+            getScreenShotAsync(driver, screenName);
         } catch (Exception ex) {
             logger.error("Screen Shot functionality not working. Missing screen name " + screenName);
         }
@@ -816,29 +1193,58 @@ public class SeleniumAPI {
 
 
     /**
-     * Start void.
+     * Start void. Leases a browser session from the driver pool.
      *
      * @throws Exception the exception
      */
     public void start() throws Exception {
+        start(false);
+    }
+
+    /**
+     * Start void, optionally in a new browser session outside the pool, whose cache starts empty.
+     *
+     * @param freshSession whether to start a new session instead of leasing a pooled one
+     *
+     * @throws Exception the exception
+     */
+    public void start(boolean freshSession) throws Exception {
         if (driver != null) {
             quit();
         }
 
-        driver = driverFactory.getObject();
-        webDriverWait = new WebDriverWait(driver, 2);
+        pageTimings.clear();
+        driver = freshSession ? driverFactory.getFreshObject() : driverFactory.getObject();
+        implicitWaitMillis = TimeUnit.SECONDS.toMillis(DriverFactory.DEFAULT_IMPLICIT_WAIT_SECONDS);
+        pageReadiness = defaultPageReadiness;
+        readinessPredicate = "true";
 
     }
 
     /**
-     * Quit void.
+     * Quit void. Waits for pending screenshots and exports the page timings of the scenario, then hands the
+     * browser session back to the driver pool, which resets it for the next scenario.
      */
     public void quit() {
+        screenshotWriter.flush();
+        exportPageTimings();
+        if (locatorCache != null && locatorCache.getHits() + locatorCache.getMisses() > 0) {
+            logger.debug("Locator cache: " + locatorCache.getHits() + " hits, " + locatorCache.getMisses() + " misses");
+        }
         if (driver != null) {
-            driver.quit();
+            driverFactory.release(driver);
         }
+        pageChanged();
         driver = null;
-        webDriverWait = null;
+    }
+
+    /**
+     * Gets the driver of the session leased by {@link #start()}.
+     *
+     * @return the driver, null before start and after quit
+     */
+    public WebDriver getDriver() {
+        return driver;
     }
 
     /**
@@ -856,14 +1262,25 @@ public class SeleniumAPI {
      * @param cssString the css string
      */
     public void waitForCilckaleByCss(String cssString) {
-        webDriverWait.until(ExpectedConditions.elementToBeClickable(By.cssSelector(cssString)));
-
+        waitEngine.waitFor(driver, By.cssSelector(cssString), WaitEngine.Condition.CLICKABLE, waitTimeoutMillis, implicitWaitMillis);
     }
 
+    /**
+     * Wait an element by css.
+     *
+     * @param cssString the css string
+     */
     public void waitAnElementByCSS(String cssString) {
-        webDriverWait.until(ExpectedConditions.presenceOfElementLocated(By.cssSelector(cssString)));
-        driver.findElements(By.cssSelector(cssString));
+        waitEngine.waitFor(driver, By.cssSelector(cssString), WaitEngine.Condition.PRESENT, waitTimeoutMillis, implicitWaitMillis);
+    }
 
+    /**
+     * Waits until no element matches the css.
+     *
+     * @param cssString the css string
+     */
+    public void waitForAbsenceByCss(String cssString) {
+        waitEngine.waitFor(driver, By.cssSelector(cssString), WaitEngine.Condition.ABSENT, waitTimeoutMillis, implicitWaitMillis);
     }
 
 
@@ -893,17 +1310,12 @@ public class SeleniumAPI {
     }
 
     /**
-     * Click void.
+     * Click void. Waits for the element to be clickable, for at most the wait timeout.
      *
      * @param element the element
      */
     public void click(WebElement element) {
-        WebElement webElement = webDriverWait.until(ExpectedConditions.visibilityOf(element));
-        if (webElement != null) {
-            webElement.click();
-        } else {
-            assertNotNull("Element for click not found");
-        }
+        waitEngine.waitFor(driver, element, WaitEngine.Condition.CLICKABLE, waitTimeoutMillis).click();
     }
 
     /**
@@ -996,6 +1408,7 @@ public class SeleniumAPI {
      * @param handle the handle
      */
     public void switchTo(String handle) {
+        pageChanged();
         driver.switchTo().window(handle);
     }
 
@@ -1003,6 +1416,7 @@ public class SeleniumAPI {
      * Close void.
      */
     public void close() {
+        pageChanged();
         driver.close();
     }
 
@@ -1010,7 +1424,93 @@ public class SeleniumAPI {
      * Navigate back.
      */
     public void navigateBack() {
+        pageChanged();
         driver.navigate().back();
+        capturePageTiming();
+    }
+
+    /**
+     * Gets the Navigation and Resource Timing of the current page.
+     *
+     * @return the page timing, or null when the browser does not support Navigation Timing
+     */
+    public PageTiming getPageTiming() {
+        return PageTiming.capture(driver, resourceTimingBuffer);
+    }
+
+    /**
+     * Records the Navigation and Resource Timing of the page just navigated to, and raises its Resource Timing
+     * buffer so that what it loads from now on is kept.
+     */
+    private void capturePageTiming() {
+        if (!pageTimingLog.isEnabled()) {
+            return;
+        }
+        try {
+            PageTiming timing = PageTiming.capture(driver, resourceTimingBuffer);
+            if (timing != null) {
+                pageTimings.add(timing);
+                pageTimingLog.record(timing);
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Page timing not available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exports the page timings of the scenario, under the scenario name kept by the step tracker.
+     */
+    private void exportPageTimings() {
+        if (pageTimings.isEmpty()) {
+            return;
+        }
+        try {
+            File export = pageTimingLog.writeScenario(RunContext.getScenario(), pageTimings);
+            logger.debug("Page timings of " + pageTimings.size() + " navigations written to " + export);
+        } catch (IOException e) {
+            logger.warn("Could not write page timings: " + e.getMessage());
+        }
+        pageTimings.clear();
+    }
+
+    /**
+     * Drops everything cached about the current page. Called before anything that leaves it.
+     */
+    private void pageChanged() {
+        xpathResolver.clear();
+        if (locatorCache != null) {
+            locatorCache.invalidate();
+        }
+    }
+
+    /**
+     * Gets locator cache, created on first use with the configured settings.
+     *
+     * @return the locator cache
+     */
+    private LocatorCache getLocatorCache() {
+        if (locatorCache == null) {
+            locatorCache = new LocatorCache(locatorCacheEnabled, locatorCacheCheckIntervalMillis);
+        }
+        return locatorCache;
+    }
+
+    /**
+     * Gets the finder calls answered from the locator cache.
+     *
+     * @return the locator cache hits
+     */
+    public long getLocatorCacheHits() {
+        return locatorCache == null ? 0 : locatorCache.getHits();
+    }
+
+    /**
+     * Gets the finder calls that went to the browser while the locator cache was enabled.
+     *
+     * @return the locator cache misses
+     */
+    public long getLocatorCacheMisses() {
+        return locatorCache == null ? 0 : locatorCache.getMisses();
     }
 
     /**
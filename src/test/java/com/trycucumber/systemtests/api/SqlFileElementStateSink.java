@@ -0,0 +1,87 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Streams element state rows as INSERT statements to a SQL file kept open for the whole run. Missing columns are
+ * written as NULL.
+ * User: Atish Narlawar
+ */
+public class SqlFileElementStateSink implements ElementStateSink {
+
+    /**
+     * The column list shared by every statement.
+     */
+    private static final String INSERT_PREFIX = "INSERT INTO testlog (" + StringUtils.join(COLUMNS, ",") + ") VALUES (";
+
+    /**
+     * The Writer.
+     */
+    private final Writer writer;
+
+    /**
+     * Instantiates a new Sql file element state sink, appending to the file.
+     *
+     * @param file the file
+     *
+     * @throws IOException the iO exception
+     */
+    public SqlFileElementStateSink(File file) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8));
+    }
+
+    /**
+     * Write.
+     *
+     * @param row the row
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void write(Map<String, Object> row) throws IOException {
+        writer.write(INSERT_PREFIX);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = row.get(COLUMNS[i]);
+            if (value == null) {
+                writer.write("NULL");
+            } else {
+                writer.write('"');
+                writer.write(StringUtils.replace(value.toString(), "\"", "\"\""));
+                writer.write('"');
+            }
+        }
+        writer.write(");\n");
+    }
+
+    /**
+     * Flush.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Close.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,128 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.By;
+
+/**
+ * Compact description of a tangible page element, as returned by {@link TangibleElementQuery#find}.
+ * Holds no remote element reference; use {@link #getLocator()} to look the element up when needed.
+ * User: Atish Narlawar
+ */
+public final class TangibleElement {
+
+    /**
+     * The position of the element among //* in document order.
+     */
+    private final int domIndex;
+
+    /**
+     * The Tag name.
+     */
+    private final String tagName;
+
+    /**
+     * The X.
+     */
+    private final int x;
+
+    /**
+     * The Y.
+     */
+    private final int y;
+
+    /**
+     * The Width.
+     */
+    private final int width;
+
+    /**
+     * The Height.
+     */
+    private final int height;
+
+    /**
+     * Instantiates a new Tangible element.
+     *
+     * @param domIndex the dom index
+     * @param tagName  the tag name
+     * @param x        the x
+     * @param y        the y
+     * @param width    the width
+     * @param height   the height
+     */
+    TangibleElement(int domIndex, String tagName, int x, int y, int width, int height) {
+        this.domIndex = domIndex;
+        this.tagName = tagName;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Gets dom index.
+     *
+     * @return the dom index
+     */
+    public int getDomIndex() {
+        return domIndex;
+    }
+
+    /**
+     * Gets tag name.
+     *
+     * @return the tag name
+     */
+    public String getTagName() {
+        return tagName;
+    }
+
+    /**
+     * Gets x.
+     *
+     * @return the x
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Gets y.
+     *
+     * @return the y
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Gets width.
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets height.
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets a locator for the element, valid as long as the page is not modified.
+     *
+     * @return the locator
+     */
+    public By getLocator() {
+        return By.xpath("(//*)[" + (domIndex + 1) + "]");
+    }
+
+    @Override
+    public String toString() {
+        return tagName + "#" + domIndex + "[" + x + "," + y + " " + width + "x" + height + "]";
+    }
+}
@@ -0,0 +1,132 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds tangible elements, visible elements that are not excluded by tag and meet the size thresholds,
+ * in one pass inside the page.
+ * User: Atish Narlawar
+ */
+public class TangibleElementQuery {
+
+    /**
+     * Takes the excluded tags, min width, min height and whether to return elements or compact descriptions.
+     * Descriptions come back as parallel arrays: tag names, and five numbers per element (dom index, x, y,
+     * width, height) in a flat rects array.
+     */
+    private static final String TANGIBLE_ELEMENTS_SCRIPT = DomSnapshot.EACH_VISIBLE_FUNCTION +
+            "var excluded = {}, minWidth = arguments[1], minHeight = arguments[2], asElements = arguments[3];" +
+            "for (var k = 0; k < arguments[0].length; k++) { excluded[arguments[0][k].toLowerCase()] = true; }" +
+            "var sx = window.pageXOffset || document.documentElement.scrollLeft || 0;" +
+            "var sy = window.pageYOffset || document.documentElement.scrollTop || 0;" +
+            "var elements = [], tags = [], rects = [];" +
+            "tcEachVisible(function (e, i) {" +
+            "  var tag = e.tagName.toLowerCase();" +
+            "  if (excluded[tag]) { return; }" +
+            "  var r = e.getBoundingClientRect(), w = Math.round(r.width), h = Math.round(r.height);" +
+            "  if (w < minWidth || h < minHeight) { return; }" +
+            "  if (asElements) { elements.push(e); return; }" +
+            "  tags.push(tag);" +
+            "  rects.push(i, Math.round(r.left + sx), Math.round(r.top + sy), w, h);" +
+            "});" +
+            "return asElements ? elements : {tags: tags, rects: rects};";
+
+    /**
+     * The Excluded tags.
+     */
+    private final List<String> excludedTags;
+
+    /**
+     * The Min width.
+     */
+    private final int minWidth;
+
+    /**
+     * The Min height.
+     */
+    private final int minHeight;
+
+    /**
+     * Instantiates a new Tangible element query.
+     *
+     * @param excludedTags the excluded tags
+     * @param minWidth     the min width
+     * @param minHeight    the min height
+     */
+    public TangibleElementQuery(Collection<String> excludedTags, int minWidth, int minHeight) {
+        this.excludedTags = new ArrayList<String>(excludedTags);
+        this.minWidth = minWidth;
+        this.minHeight = minHeight;
+    }
+
+    /**
+     * Finds the tangible elements as compact descriptions, without creating remote element references.
+     *
+     * @param driver the driver
+     *
+     * @return the tangible elements
+     */
+    @SuppressWarnings("unchecked")
+    public TangibleElement[] find(WebDriver driver) {
+        Map<String, Object> result = (Map<String, Object>) execute(driver, false);
+
+        List<Object> tags = (List<Object>) result.get("tags");
+        List<Number> rects = (List<Number>) result.get("rects");
+
+        TangibleElement[] tangibleElements = new TangibleElement[tags.size()];
+        for (int i = 0; i < tangibleElements.length; i++) {
+            int offset = i * 5;
+            tangibleElements[i] = new TangibleElement(rects.get(offset).intValue(), String.valueOf(tags.get(i)),
+                    rects.get(offset + 1).intValue(), rects.get(offset + 2).intValue(),
+                    rects.get(offset + 3).intValue(), rects.get(offset + 4).intValue());
+        }
+        return tangibleElements;
+    }
+
+    /**
+     * Finds the tangible elements as WebElements, in document order.
+     *
+     * @param driver the driver
+     *
+     * @return the list
+     */
+    @SuppressWarnings("unchecked")
+    public List<WebElement> findElements(WebDriver driver) {
+        return new ArrayList<WebElement>((List<WebElement>) execute(driver, true));
+    }
+
+    /**
+     * Is the element excluded by tag or size. Used where the query cannot run in the browser.
+     *
+     * @param element the element
+     *
+     * @return the boolean
+     */
+    public boolean isTangible(WebElement element) {
+        if (excludedTags.contains(element.getTagName().toLowerCase())) {
+            return false;
+        }
+        Dimension size = element.getSize();
+        return size.getWidth() >= minWidth && size.getHeight() >= minHeight;
+    }
+
+    /**
+     * Execute.
+     *
+     * @param driver     the driver
+     * @param asElements the as elements
+     *
+     * @return the object
+     */
+    private Object execute(WebDriver driver, boolean asElements) {
+        return ((JavascriptExecutor) driver).executeScript(TANGIBLE_ELEMENTS_SCRIPT, excludedTags, minWidth, minHeight, asElements);
+    }
+}
@@ -0,0 +1,75 @@
+package com.trycucumber.systemtests.api;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Promotes the candidate baselines written by {@link VisualDiffEngine} to baselines, after they have been looked at.
+ * A parallel run writes candidates per worker, under target/cucumber-parallel/worker-&lt;n&gt;/visual-candidates;
+ * the directories are promoted in the order given, so a later one wins when two hold the same name.
+ * <p/>
+ * Usage: VisualBaselinePromotion &lt;baseline dir&gt; &lt;candidate dir&gt;...
+ * User: Atish Narlawar
+ */
+public final class VisualBaselinePromotion {
+
+    /**
+     * Instantiates a new Visual baseline promotion.
+     */
+    private VisualBaselinePromotion() {
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     *
+     * @throws IOException the iO exception
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: VisualBaselinePromotion <baseline dir> <candidate dir>...");
+            System.exit(2);
+        }
+
+        File baselineDir = new File(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            List<String> promoted = promote(new File(args[i]), baselineDir);
+            System.out.println("Promoted " + promoted.size() + " baselines from " + args[i] + " to " + args[0] + ": " + promoted);
+        }
+    }
+
+    /**
+     * Moves every candidate baseline of the directory into the baseline directory, replacing older baselines.
+     *
+     * @param candidateDir the candidate dir
+     * @param baselineDir  the baseline dir
+     *
+     * @return the names of the promoted baselines
+     *
+     * @throws IOException the iO exception
+     */
+    public static List<String> promote(File candidateDir, File baselineDir) throws IOException {
+        List<String> promoted = new ArrayList<String>();
+        File[] candidates = candidateDir.listFiles((FileFilter) new SuffixFileFilter(".png"));
+        if (candidates == null) {
+            return promoted;
+        }
+        Arrays.sort(candidates);
+
+        FileUtils.forceMkdir(baselineDir);
+        for (File candidate : candidates) {
+            FileUtils.copyFile(candidate, new File(baselineDir, candidate.getName()));
+            FileUtils.forceDelete(candidate);
+            promoted.add(candidate.getName().substring(0, candidate.getName().length() - ".png".length()));
+        }
+        return promoted;
+    }
+}
@@ -0,0 +1,506 @@
+package com.trycucumber.systemtests.api;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares screenshots with stored baselines. Images are split into square tiles diffed in parallel on a fork/join
+ * pool, straight on the int[] pixel buffers. A pixel matches when no colour channel differs by more than the
+ * tolerance; pixels inside ignore regions are skipped and left out of the count. Once more pixels than the budget
+ * differ every tile stops, since the verdict cannot change. Mismatches are painted red over a faded copy of the
+ * baseline in a diff image; tiles skipped after an early exit stay black.
+ * <p/>
+ * Baselines are only read. A screenshot without a baseline, or one that does not match it, is written to the
+ * candidate directory, and becomes a baseline once promoted with {@link VisualBaselinePromotion}.
+ * User: Atish Narlawar
+ */
+@Component
+public class VisualDiffEngine implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(VisualDiffEngine.class);
+
+    /**
+     * The colour of mismatched pixels in the diff image.
+     */
+    private static final int MISMATCH_COLOR = 0xFFFF0000;
+
+    /**
+     * Orders rectangles by their top edge.
+     */
+    private static final Comparator<Rectangle> BY_TOP = new Comparator<Rectangle>() {
+        @Override
+        public int compare(Rectangle first, Rectangle second) {
+            return first.y < second.y ? -1 : (first.y == second.y ? 0 : 1);
+        }
+    };
+
+    /**
+     * The Baseline path.
+     */
+    @Value("${visual.diff.baseline.path}")
+    private String baselinePath;
+
+    /**
+     * The Candidate path, where screenshots waiting to be promoted to baselines are written.
+     */
+    @Value("${visual.diff.candidate.path}")
+    private String candidatePath;
+
+    /**
+     * The Diff path.
+     */
+    @Value("${visual.diff.output.path}")
+    private String diffPath;
+
+    /**
+     * The Tolerance, the largest per channel difference still counted as equal.
+     */
+    @Value("${visual.diff.tolerance}")
+    private int tolerance;
+
+    /**
+     * The Max mismatch ratio, the share of compared pixels allowed to differ.
+     */
+    @Value("${visual.diff.max.mismatch.ratio}")
+    private double maxMismatchRatio;
+
+    /**
+     * The Tile size in pixels.
+     */
+    @Value("${visual.diff.tile.size}")
+    private int tileSize;
+
+    /**
+     * The Fork join pool.
+     */
+    private ForkJoinPool forkJoinPool;
+
+    /**
+     * After properties set.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Visual diff tile size must be positive, was " + tileSize);
+        }
+        FileUtils.forceMkdir(new File(candidatePath));
+        FileUtils.forceMkdir(new File(diffPath));
+        forkJoinPool = new ForkJoinPool();
+    }
+
+    /**
+     * Destroy.
+     */
+    @Override
+    public void destroy() {
+        forkJoinPool.shutdownNow();
+    }
+
+    /**
+     * Compares a screenshot with the baseline of the same name. When there is none yet, or the screenshot does not
+     * match it, the screenshot is written as the candidate baseline of that name.
+     *
+     * @param name           the baseline name
+     * @param screenshot     the screenshot
+     * @param ignoreRegions  the regions not compared
+     *
+     * @return the visual diff result
+     *
+     * @throws IOException the iO exception
+     */
+    public VisualDiffResult compare(String name, BufferedImage screenshot, Rectangle... ignoreRegions) throws IOException {
+        File baselineFile = new File(baselinePath, name + ".png");
+        File candidateFile = new File(candidatePath, name + ".png");
+        if (!baselineFile.isFile()) {
+            ImageIO.write(screenshot, "png", candidateFile);
+            logger.info("NEW: candidate visual baseline " + candidateFile + ", promote it to " + baselinePath + " to compare against it");
+            return new VisualDiffResult(name, 0, 0, 0, true, null);
+        }
+
+        BufferedImage baseline = ImageIO.read(baselineFile);
+        if (baseline == null) {
+            throw new IOException("Unreadable visual baseline " + baselineFile);
+        }
+        VisualDiffResult result = compare(name, toIntRgb(screenshot), toIntRgb(baseline), Arrays.asList(ignoreRegions));
+        if (result.isMatch()) {
+            FileUtils.deleteQuietly(candidateFile);
+        } else {
+            ImageIO.write(screenshot, "png", candidateFile);
+        }
+        return result;
+    }
+
+    /**
+     * Compares two images of type TYPE_INT_RGB or TYPE_INT_ARGB.
+     *
+     * @param name          the name
+     * @param actual        the actual
+     * @param baseline      the baseline
+     * @param ignoreRegions the ignore regions
+     *
+     * @return the visual diff result
+     *
+     * @throws IOException the iO exception
+     */
+    private VisualDiffResult compare(String name, BufferedImage actual, BufferedImage baseline, List<Rectangle> ignoreRegions) throws IOException {
+        int width = Math.max(actual.getWidth(), baseline.getWidth());
+        int height = Math.max(actual.getHeight(), baseline.getHeight());
+        Rectangle overlap = new Rectangle(0, 0, Math.min(actual.getWidth(), baseline.getWidth()), Math.min(actual.getHeight(), baseline.getHeight()));
+
+        long ignoredPixels = countIgnored(ignoreRegions, new Rectangle(0, 0, width, height));
+        long totalPixels = (long) width * height - ignoredPixels;
+        long budget = (long) Math.floor(totalPixels * maxMismatchRatio);
+
+        // Pixels only one of the images has always differ, unless ignored.
+        long outsideOverlap = totalPixels - ((long) overlap.width * overlap.height - countIgnored(ignoreRegions, overlap));
+        AtomicLong mismatches = new AtomicLong(outsideOverlap);
+
+        int[] actualPixels = ((DataBufferInt) actual.getRaster().getDataBuffer()).getData();
+        int[] baselinePixels = ((DataBufferInt) baseline.getRaster().getDataBuffer()).getData();
+        int[] diffPixels = new int[overlap.width * overlap.height];
+
+        List<Rectangle> tiles = new ArrayList<Rectangle>();
+        for (int y = 0; y < overlap.height; y += tileSize) {
+            for (int x = 0; x < overlap.width; x += tileSize) {
+                tiles.add(new Rectangle(x, y, Math.min(tileSize, overlap.width - x), Math.min(tileSize, overlap.height - y)));
+            }
+        }
+
+        if (mismatches.get() <= budget) {
+            forkJoinPool.invoke(new TileDiff(tiles, 0, tiles.size(), ignoreRegions, actualPixels, actual.getWidth(),
+                    baselinePixels, baseline.getWidth(), diffPixels, overlap.width, mismatches, budget));
+        }
+
+        File diffFile = null;
+        if (mismatches.get() > 0) {
+            diffFile = writeDiffImage(name, diffPixels, overlap.width, overlap.height);
+        } else {
+            FileUtils.deleteQuietly(new File(diffPath, name + "-diff.png"));
+        }
+
+        VisualDiffResult result = new VisualDiffResult(name, totalPixels, mismatches.get(), budget, false, diffFile);
+        if (!result.isMatch()) {
+            logger.warn("Visual difference " + result);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the pixels of the bounds inside at least one ignore region, so that overlapping regions count once.
+     * The bounds are cut into vertical strips at every region edge, and the regions crossing a strip are merged
+     * into runs of rows.
+     *
+     * @param ignoreRegions the ignore regions
+     * @param bounds        the bounds
+     *
+     * @return the number of ignored pixels
+     */
+    static long countIgnored(List<Rectangle> ignoreRegions, Rectangle bounds) {
+        List<Rectangle> regions = new ArrayList<Rectangle>();
+        SortedSet<Integer> edges = new TreeSet<Integer>();
+        for (Rectangle ignoreRegion : ignoreRegions) {
+            Rectangle region = ignoreRegion.intersection(bounds);
+            if (!region.isEmpty()) {
+                regions.add(region);
+                edges.add(region.x);
+                edges.add(region.x + region.width);
+            }
+        }
+
+        long ignored = 0;
+        Integer left = null;
+        for (Integer right : edges) {
+            if (left != null) {
+                List<Rectangle> crossing = new ArrayList<Rectangle>();
+                for (Rectangle region : regions) {
+                    if (region.x <= left && region.x + region.width >= right) {
+                        crossing.add(region);
+                    }
+                }
+                Collections.sort(crossing, BY_TOP);
+
+                long rows = 0;
+                int runEnd = Integer.MIN_VALUE;
+                for (Rectangle region : crossing) {
+                    int bottom = region.y + region.height;
+                    if (bottom > runEnd) {
+                        rows += bottom - Math.max(region.y, runEnd);
+                        runEnd = bottom;
+                    }
+                }
+                ignored += rows * (right - left);
+            }
+            left = right;
+        }
+        return ignored;
+    }
+
+    /**
+     * Writes the diff image.
+     *
+     * @param name       the name
+     * @param diffPixels the diff pixels
+     * @param width      the width
+     * @param height     the height
+     *
+     * @return the file
+     *
+     * @throws IOException the iO exception
+     */
+    private File writeDiffImage(String name, int[] diffPixels, int width, int height) throws IOException {
+        if (width == 0 || height == 0) {
+            return null;
+        }
+        BufferedImage diffImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(diffPixels, 0, ((DataBufferInt) diffImage.getRaster().getDataBuffer()).getData(), 0, diffPixels.length);
+
+        File diffFile = new File(diffPath, name + "-diff.png");
+        ImageIO.write(diffImage, "png", diffFile);
+        return diffFile;
+    }
+
+    /**
+     * Returns the image itself when it is backed by an int[] of RGB pixels, otherwise an RGB copy.
+     *
+     * @param image the image
+     *
+     * @return the buffered image
+     */
+    private static BufferedImage toIntRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = copy.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return copy;
+    }
+
+    /**
+     * Diffs a range of tiles, splitting it in halves until a single tile is left.
+     */
+    private final class TileDiff extends RecursiveAction {
+
+        /**
+         * The constant serialVersionUID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The Tiles.
+         */
+        private final List<Rectangle> tiles;
+
+        /**
+         * The First tile.
+         */
+        private final int from;
+
+        /**
+         * The tile after the last one.
+         */
+        private final int to;
+
+        /**
+         * The Ignore regions.
+         */
+        private final List<Rectangle> ignoreRegions;
+
+        /**
+         * The Actual pixels.
+         */
+        private final int[] actual;
+
+        /**
+         * The Actual width.
+         */
+        private final int actualWidth;
+
+        /**
+         * The Baseline pixels.
+         */
+        private final int[] baseline;
+
+        /**
+         * The Baseline width.
+         */
+        private final int baselineWidth;
+
+        /**
+         * The Diff pixels.
+         */
+        private final int[] diff;
+
+        /**
+         * The Diff width.
+         */
+        private final int diffWidth;
+
+        /**
+         * The Mismatches, shared by every tile.
+         */
+        private final AtomicLong mismatches;
+
+        /**
+         * The Budget.
+         */
+        private final long budget;
+
+        /**
+         * Instantiates a new Tile diff.
+         *
+         * @param tiles         the tiles
+         * @param from          the from
+         * @param to            the to
+         * @param ignoreRegions the ignore regions
+         * @param actual        the actual
+         * @param actualWidth   the actual width
+         * @param baseline      the baseline
+         * @param baselineWidth the baseline width
+         * @param diff          the diff
+         * @param diffWidth     the diff width
+         * @param mismatches    the mismatches
+         * @param budget        the budget
+         */
+        private TileDiff(List<Rectangle> tiles, int from, int to, List<Rectangle> ignoreRegions, int[] actual, int actualWidth,
+                         int[] baseline, int baselineWidth, int[] diff, int diffWidth, AtomicLong mismatches, long budget) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.ignoreRegions = ignoreRegions;
+            this.actual = actual;
+            this.actualWidth = actualWidth;
+            this.baseline = baseline;
+            this.baselineWidth = baselineWidth;
+            this.diff = diff;
+            this.diffWidth = diffWidth;
+            this.mismatches = mismatches;
+            this.budget = budget;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileDiff(tiles, from, middle, ignoreRegions, actual, actualWidth, baseline, baselineWidth, diff, diffWidth, mismatches, budget),
+                        new TileDiff(tiles, middle, to, ignoreRegions, actual, actualWidth, baseline, baselineWidth, diff, diffWidth, mismatches, budget));
+            } else if (to > from && mismatches.get() <= budget) {
+                diffTile(tiles.get(from));
+            }
+        }
+
+        /**
+         * Diffs one tile, giving up between rows once the budget is exceeded.
+         *
+         * @param tile the tile
+         */
+        private void diffTile(Rectangle tile) {
+            List<Rectangle> tileIgnores = new ArrayList<Rectangle>();
+            for (Rectangle ignoreRegion : ignoreRegions) {
+                if (ignoreRegion.intersects(tile)) {
+                    tileIgnores.add(ignoreRegion);
+                }
+            }
+
+            for (int y = tile.y; y < tile.y + tile.height; y++) {
+                int rowMismatches = 0;
+                for (int x = tile.x; x < tile.x + tile.width; x++) {
+                    int expected = baseline[y * baselineWidth + x];
+                    int found = actual[y * actualWidth + x];
+
+                    if (!tileIgnores.isEmpty() && isIgnored(tileIgnores, x, y)) {
+                        diff[y * diffWidth + x] = fade(expected) & 0xFF7F7F7F;
+                    } else if (withinTolerance(expected, found)) {
+                        diff[y * diffWidth + x] = fade(expected);
+                    } else {
+                        diff[y * diffWidth + x] = MISMATCH_COLOR;
+                        rowMismatches++;
+                    }
+                }
+                if (rowMismatches > 0 && mismatches.addAndGet(rowMismatches) > budget) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Is ignored.
+         *
+         * @param regions the regions
+         * @param x       the x
+         * @param y       the y
+         *
+         * @return the boolean
+         */
+        private boolean isIgnored(List<Rectangle> regions, int x, int y) {
+            for (Rectangle region : regions) {
+                if (region.contains(x, y)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Within tolerance.
+         *
+         * @param expected the expected
+         * @param found    the found
+         *
+         * @return true when no channel differs by more than the tolerance
+         */
+        private boolean withinTolerance(int expected, int found) {
+            if (expected == found) {
+                return true;
+            }
+            return Math.abs(((expected >> 16) & 0xFF) - ((found >> 16) & 0xFF)) <= tolerance
+                    && Math.abs(((expected >> 8) & 0xFF) - ((found >> 8) & 0xFF)) <= tolerance
+                    && Math.abs((expected & 0xFF) - (found & 0xFF)) <= tolerance;
+        }
+
+        /**
+         * Fades a pixel towards white, for unchanged areas of the diff image.
+         *
+         * @param pixel the pixel
+         *
+         * @return the faded pixel
+         */
+        private int fade(int pixel) {
+            int r = 191 + (((pixel >> 16) & 0xFF) >> 2);
+            int g = 191 + (((pixel >> 8) & 0xFF) >> 2);
+            int b = 191 + ((pixel & 0xFF) >> 2);
+            return 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.trycucumber.systemtests.api;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Compares generated images with a {@link VisualDiffEngine} writing into a temporary directory.
+ * User: Atish Narlawar
+ */
+public class VisualDiffEngineTest {
+
+    /**
+     * The Work dir.
+     */
+    private File workDir;
+
+    /**
+     * The Engine.
+     */
+    private VisualDiffEngine engine;
+
+    /**
+     * Starts the engine with 8 pixel tiles and, unless a test raises it, no mismatches allowed.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void start() throws IOException {
+        workDir = Files.createTempDir();
+        engine = newEngine(8);
+        engine.afterPropertiesSet();
+    }
+
+    /**
+     * Stops the engine.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void stop() throws IOException {
+        engine.destroy();
+        FileUtils.deleteDirectory(workDir);
+    }
+
+    /**
+     * The first screenshot, once promoted, is the baseline, and the same image matches it.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void matchesItsOwnBaseline() throws IOException {
+        BufferedImage image = image(20, 20, 0x336699);
+        assertTrue(engine.compare("page", image).isBaselineCreated());
+        promote();
+
+        VisualDiffResult result = engine.compare("page", image(20, 20, 0x33669F));
+        assertTrue(result.isMatch());
+        assertEquals(result.getTotalPixels(), 400);
+        assertEquals(result.getMismatchedPixels(), 0);
+    }
+
+    /**
+     * Changed pixels are counted and drawn into a diff image, pixels in ignore regions are not.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void countsChangedPixelsOutsideIgnoreRegions() throws IOException {
+        setField(engine, "maxMismatchRatio", 0.05);
+        engine.compare("page", image(20, 20, 0xFFFFFF));
+        promote();
+        BufferedImage changed = image(20, 20, 0xFFFFFF);
+        paint(changed, new Rectangle(2, 2, 4, 4), 0x000000);
+        paint(changed, new Rectangle(12, 12, 5, 5), 0x000000);
+
+        VisualDiffResult result = engine.compare("page", changed, new Rectangle(10, 10, 10, 10));
+        assertFalse(result.isMatch());
+        assertEquals(result.getTotalPixels(), 300);
+        assertEquals(result.getMismatchBudget(), 15);
+        assertEquals(result.getMismatchedPixels(), 16);
+        assertNotNull(result.getDiffImage());
+    }
+
+    /**
+     * Overlapping ignore regions leave each pixel out of the total once.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void countsOverlappingIgnoreRegionsOnce() throws IOException {
+        engine.compare("page", image(20, 20, 0xFFFFFF));
+        promote();
+
+        VisualDiffResult result = engine.compare("page", image(20, 20, 0xFFFFFF),
+                new Rectangle(0, 0, 10, 10), new Rectangle(5, 5, 10, 10), new Rectangle(0, 0, 10, 10));
+        assertEquals(result.getTotalPixels(), 400 - 175);
+    }
+
+    /**
+     * Overlaps are counted once however the regions nest or touch, and only inside the bounds.
+     */
+    @Test
+    public void countsIgnoredPixels() {
+        Rectangle bounds = new Rectangle(0, 0, 100, 100);
+        assertEquals(VisualDiffEngine.countIgnored(Collections.<Rectangle>emptyList(), bounds), 0);
+        assertEquals(VisualDiffEngine.countIgnored(Arrays.asList(new Rectangle(10, 10, 50, 50), new Rectangle(20, 20, 10, 10)), bounds), 2500);
+        assertEquals(VisualDiffEngine.countIgnored(Arrays.asList(new Rectangle(0, 0, 10, 10), new Rectangle(10, 0, 10, 10)), bounds), 200);
+        assertEquals(VisualDiffEngine.countIgnored(Arrays.asList(new Rectangle(0, 0, 10, 30), new Rectangle(0, 10, 30, 10)), bounds), 500);
+        assertEquals(VisualDiffEngine.countIgnored(Arrays.asList(new Rectangle(-10, 90, 30, 30)), bounds), 200);
+    }
+
+    /**
+     * A size difference counts the pixels only one image has, except those ignored.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void countsPixelsOutsideTheOtherImage() throws IOException {
+        engine.compare("page", image(20, 20, 0xFFFFFF));
+        promote();
+
+        assertEquals(engine.compare("page", image(20, 25, 0xFFFFFF)).getMismatchedPixels(), 100);
+        VisualDiffResult result = engine.compare("page", image(20, 25, 0xFFFFFF), new Rectangle(0, 15, 20, 10));
+        assertEquals(result.getTotalPixels(), 300);
+        assertEquals(result.getMismatchedPixels(), 0);
+    }
+
+    /**
+     * New and changed screenshots are written as candidates and leave the baselines alone until promoted.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void writesCandidatesUntilPromoted() throws IOException {
+        File baseline = new File(workDir, "baselines/page.png");
+        File candidate = new File(workDir, "candidates/page.png");
+        assertTrue(engine.compare("page", image(20, 20, 0xFFFFFF)).isBaselineCreated());
+        assertFalse(baseline.exists());
+        assertTrue(candidate.isFile());
+        assertTrue(engine.compare("page", image(20, 20, 0xFFFFFF)).isBaselineCreated());
+
+        assertEquals(promote(), Arrays.asList("page"));
+        assertFalse(candidate.exists());
+        assertFalse(engine.compare("page", image(20, 20, 0x000000)).isMatch());
+        assertTrue(candidate.isFile());
+
+        assertEquals(promote(), Arrays.asList("page"));
+        assertTrue(engine.compare("page", image(20, 20, 0x000000)).isMatch());
+        assertFalse(candidate.exists());
+    }
+
+    /**
+     * A tile size that cannot split the image is refused at startup.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void refusesTilesWithoutArea() throws IOException {
+        newEngine(0).afterPropertiesSet();
+    }
+
+    /**
+     * New engine.
+     *
+     * @param tileSize the tile size
+     *
+     * @return the visual diff engine
+     */
+    private VisualDiffEngine newEngine(int tileSize) {
+        VisualDiffEngine visualDiffEngine = new VisualDiffEngine();
+        setField(visualDiffEngine, "baselinePath", new File(workDir, "baselines").getPath());
+        setField(visualDiffEngine, "candidatePath", new File(workDir, "candidates").getPath());
+        setField(visualDiffEngine, "diffPath", new File(workDir, "diffs").getPath());
+        setField(visualDiffEngine, "tolerance", 8);
+        setField(visualDiffEngine, "maxMismatchRatio", 0.0);
+        setField(visualDiffEngine, "tileSize", tileSize);
+        return visualDiffEngine;
+    }
+
+    /**
+     * Promotes the candidate baselines.
+     *
+     * @return the names promoted
+     *
+     * @throws IOException the iO exception
+     */
+    private List<String> promote() throws IOException {
+        return VisualBaselinePromotion.promote(new File(workDir, "candidates"), new File(workDir, "baselines"));
+    }
+
+    /**
+     * Image of one colour.
+     *
+     * @param width  the width
+     * @param height the height
+     * @param rgb    the rgb
+     *
+     * @return the buffered image
+     */
+    private static BufferedImage image(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        paint(image, new Rectangle(0, 0, width, height), rgb);
+        return image;
+    }
+
+    /**
+     * Paints an area of the image.
+     *
+     * @param image the image
+     * @param area  the area
+     * @param rgb   the rgb
+     */
+    private static void paint(BufferedImage image, Rectangle area, int rgb) {
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+    }
+}
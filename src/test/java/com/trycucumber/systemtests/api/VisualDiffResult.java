@@ -0,0 +1,128 @@
+package com.trycucumber.systemtests.api;
+
+import java.io.File;
+
+/**
+ * Outcome of comparing a screenshot with its baseline.
+ * User: Atish Narlawar
+ */
+public class VisualDiffResult {
+
+    /**
+     * The Name.
+     */
+    private final String name;
+
+    /**
+     * The Total pixels compared, ignored regions excluded.
+     */
+    private final long totalPixels;
+
+    /**
+     * The Mismatched pixels found. Once the budget is exceeded comparison stops, so this is a lower bound.
+     */
+    private final long mismatchedPixels;
+
+    /**
+     * The Mismatch budget, the most mismatched pixels still accepted as a match.
+     */
+    private final long mismatchBudget;
+
+    /**
+     * Whether the screenshot had no baseline and was written as a candidate baseline.
+     */
+    private final boolean baselineCreated;
+
+    /**
+     * The Diff image, or null when nothing differed.
+     */
+    private final File diffImage;
+
+    /**
+     * Instantiates a new Visual diff result.
+     *
+     * @param name             the name
+     * @param totalPixels      the total pixels
+     * @param mismatchedPixels the mismatched pixels
+     * @param mismatchBudget   the mismatch budget
+     * @param baselineCreated  the baseline created
+     * @param diffImage        the diff image
+     */
+    public VisualDiffResult(String name, long totalPixels, long mismatchedPixels, long mismatchBudget, boolean baselineCreated, File diffImage) {
+        this.name = name;
+        this.totalPixels = totalPixels;
+        this.mismatchedPixels = mismatchedPixels;
+        this.mismatchBudget = mismatchBudget;
+        this.baselineCreated = baselineCreated;
+        this.diffImage = diffImage;
+    }
+
+    /**
+     * Gets name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets total pixels.
+     *
+     * @return the total pixels
+     */
+    public long getTotalPixels() {
+        return totalPixels;
+    }
+
+    /**
+     * Gets mismatched pixels.
+     *
+     * @return the mismatched pixels
+     */
+    public long getMismatchedPixels() {
+        return mismatchedPixels;
+    }
+
+    /**
+     * Gets mismatch budget.
+     *
+     * @return the mismatch budget
+     */
+    public long getMismatchBudget() {
+        return mismatchBudget;
+    }
+
+    /**
+     * Is baseline created.
+     *
+     * @return the boolean
+     */
+    public boolean isBaselineCreated() {
+        return baselineCreated;
+    }
+
+    /**
+     * Gets diff image.
+     *
+     * @return the diff image
+     */
+    public File getDiffImage() {
+        return diffImage;
+    }
+
+    /**
+     * Is match.
+     *
+     * @return true when the mismatched pixels are within the budget
+     */
+    public boolean isMatch() {
+        return mismatchedPixels <= mismatchBudget;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + mismatchedPixels + (isMatch() ? "" : "+") + " of " + totalPixels + " pixels differ (budget " + mismatchBudget + ")"
+                + (diffImage == null ? "" : ", see " + diffImage);
+    }
+}
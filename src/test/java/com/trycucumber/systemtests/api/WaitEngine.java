@@ -0,0 +1,479 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.testng.log4testng.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a locator, or an element already found, to appear, become clickable or disappear. The condition is
+ * checked inside the page by a
+ * MutationObserver, within one async script call that returns as soon as the DOM changes so that it holds.
+ * Browsers without MutationObserver or async script support, and locators the page cannot evaluate, fall back
+ * to polling with the implicit wait switched off and a delay that doubles between polls.
+ * <p/>
+ * Also waits for a {@link PageReadiness}, in one async script call that re-checks every few milliseconds. For
+ * NETWORK_IDLE, XMLHttpRequest and fetch are wrapped with counters of the requests in flight; requests started
+ * before the wrappers were installed, which happens once driver.get() returns, are not seen.
+ * User: Atish Narlawar
+ */
+public class WaitEngine {
+
+    /**
+     * What to wait for.
+     */
+    public static enum Condition {
+        /**
+         * The element is in the DOM.
+         */PRESENT,
+        /**
+         * The element is displayed and enabled.
+         */CLICKABLE,
+        /**
+         * No element matches.
+         */ABSENT
+    }
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(WaitEngine.class);
+
+    /**
+     * The First poll delay.
+     */
+    private static final long MIN_POLL_MILLIS = 10;
+
+    /**
+     * The Max poll delay.
+     */
+    private static final long MAX_POLL_MILLIS = 500;
+
+    /**
+     * The time the script timeout is given beyond the wait timeout, so the page always answers first.
+     */
+    private static final long SCRIPT_TIMEOUT_MARGIN_MILLIS = 5000;
+
+    /**
+     * The locator kind the wait script takes for an element already found, passed as the locator value.
+     */
+    private static final String ELEMENT_KIND = "element";
+
+    /**
+     * Arguments: locator kind, locator value, condition, timeout millis, callback.
+     */
+    private static final String WAIT_SCRIPT = DomSnapshot.IS_SHOWN_FUNCTIONS +
+            "var kind = arguments[0], value = arguments[1], condition = arguments[2], timeout = arguments[3];" +
+            "var done = arguments[arguments.length - 1];" +
+            "function tcFind() {" +
+            "  switch (kind) {" +
+            "    case 'cssSelector': return document.querySelector(value);" +
+            "    case 'id': return document.getElementById(value);" +
+            "    case 'name': return document.getElementsByName(value)[0] || null;" +
+            "    case 'className': return document.getElementsByClassName(value)[0] || null;" +
+            "    case 'tagName': return document.getElementsByTagName(value)[0] || null;" +
+            "    case 'xpath': return document.evaluate(value, document, null, 9, null).singleNodeValue;" +
+            "    case 'element': return document.documentElement.contains(value) ? value : null;" +
+            "  }" +
+            "  throw new Error('unsupported locator ' + kind);" +
+            "}" +
+            "function tcCheck() {" +
+            "  var e = tcFind();" +
+            "  if (condition == 'ABSENT') { return e ? null : {met: true}; }" +
+            "  if (!e || (condition == 'CLICKABLE' && (e.disabled || !tcIsShown(e)))) { return null; }" +
+            "  return {met: true, element: e};" +
+            "}" +
+            "try {" +
+            "  var result = tcCheck();" +
+            "  if (result) { done(result); return; }" +
+            "  if (!window.MutationObserver) { done({unsupported: true}); return; }" +
+            "} catch (e) { done({unsupported: true}); return; }" +
+            "var finished = false, timer;" +
+            "var observer = new MutationObserver(function () {" +
+            "  var result = finished ? null : tcCheck();" +
+            "  if (result) { finished = true; observer.disconnect(); clearTimeout(timer); done(result); }" +
+            "});" +
+            "observer.observe(document, {childList: true, subtree: true, attributes: true});" +
+            "timer = setTimeout(function () {" +
+            "  if (finished) { return; }" +
+            "  finished = true; observer.disconnect();" +
+            "  done(tcCheck() || {met: false});" +
+            "}, timeout);";
+
+    /**
+     * The readiness check interval, inside the page and when polling.
+     */
+    private static final long READINESS_INTERVAL_MILLIS = 50;
+
+    /**
+     * Defines tcReady(readiness, predicate, idleMillis), installing the request counters on first use.
+     */
+    private static final String READY_FUNCTION =
+            "function tcInstallNetworkCounters() {" +
+            "  if (window.__tcNetwork) { return window.__tcNetwork; }" +
+            "  var network = window.__tcNetwork = {pending: 0, lastActivity: new Date().getTime()};" +
+            "  function start() { network.pending++; network.lastActivity = new Date().getTime(); }" +
+            "  function end() { network.pending = Math.max(0, network.pending - 1); network.lastActivity = new Date().getTime(); }" +
+            "  if (window.XMLHttpRequest) {" +
+            "    var send = XMLHttpRequest.prototype.send;" +
+            "    XMLHttpRequest.prototype.send = function () {" +
+            "      var xhr = this, ended = false;" +
+            "      function once() { if (!ended) { ended = true; end(); } }" +
+            "      start();" +
+            "      if (xhr.addEventListener) { xhr.addEventListener('loadend', once, false); }" +
+            "      var change = xhr.onreadystatechange;" +
+            "      xhr.onreadystatechange = function () { if (xhr.readyState == 4) { once(); } if (change) { return change.apply(xhr, arguments); } };" +
+            "      try { return send.apply(xhr, arguments); } catch (e) { once(); throw e; }" +
+            "    };" +
+            "  }" +
+            "  if (window.fetch) {" +
+            "    var fetch = window.fetch;" +
+            "    window.fetch = function () {" +
+            "      start();" +
+            "      return fetch.apply(this, arguments).then(function (r) { end(); return r; }, function (e) { end(); throw e; });" +
+            "    };" +
+            "  }" +
+            "  return network;" +
+            "}" +
+            "function tcReady(readiness, predicate, idleMillis) {" +
+            "  var state = document.readyState;" +
+            "  switch (readiness) {" +
+            "    case 'DOM_CONTENT_LOADED': return state == 'interactive' || state == 'complete';" +
+            "    case 'LOAD': return state == 'complete';" +
+            "    case 'NETWORK_IDLE':" +
+            "      var network = tcInstallNetworkCounters();" +
+            "      return state == 'complete' && network.pending == 0 && new Date().getTime() - network.lastActivity >= idleMillis;" +
+            "    case 'CUSTOM': return !!(new Function('return (' + predicate + ');'))();" +
+            "  }" +
+            "  return true;" +
+            "}";
+
+    /**
+     * Arguments: readiness, predicate, idle millis, timeout millis, check interval millis, callback.
+     */
+    private static final String READINESS_WAIT_SCRIPT = READY_FUNCTION +
+            "var readiness = arguments[0], predicate = arguments[1], idleMillis = arguments[2];" +
+            "var deadline = new Date().getTime() + arguments[3], interval = arguments[4];" +
+            "var done = arguments[arguments.length - 1];" +
+            "(function check() {" +
+            "  var ready;" +
+            "  try { ready = tcReady(readiness, predicate, idleMillis); } catch (e) { ready = false; }" +
+            "  if (ready || new Date().getTime() >= deadline) { done(ready); } else { setTimeout(check, interval); }" +
+            "})();";
+
+    /**
+     * Arguments: readiness, predicate, idle millis.
+     */
+    private static final String READINESS_CHECK_SCRIPT = READY_FUNCTION +
+            "return tcReady(arguments[0], arguments[1], arguments[2]);";
+
+    /**
+     * The driver the script timeout was last set on.
+     */
+    private WebDriver scriptTimeoutDriver;
+
+    /**
+     * The script timeout last set.
+     */
+    private long scriptTimeoutMillis;
+
+    /**
+     * Waits for the condition.
+     *
+     * @param driver                  the driver
+     * @param locator                 the locator
+     * @param condition               the condition
+     * @param timeoutMillis           the timeout millis
+     * @param implicitWaitMillis      the implicit wait the driver is set to, restored after polling
+     *
+     * @return the element, or null when waiting for ABSENT
+     *
+     * @throws TimeoutException when the condition does not hold in time
+     */
+    public WebElement waitFor(WebDriver driver, By locator, Condition condition, long timeoutMillis, long implicitWaitMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        String[] kindAndValue = locatorKindAndValue(locator);
+        if (kindAndValue != null) {
+            Map<String, Object> result = waitInPage(driver, kindAndValue[0], kindAndValue[1], locator, condition, timeoutMillis);
+            if (result != null) {
+                return (WebElement) result.get("element");
+            }
+        }
+
+        return poll(driver, locator, condition, deadline, timeoutMillis, implicitWaitMillis);
+    }
+
+    /**
+     * Waits for the condition on an element already found. ABSENT holds once the element is no longer in the
+     * page.
+     *
+     * @param driver        the driver
+     * @param element       the element
+     * @param condition     the condition
+     * @param timeoutMillis the timeout millis
+     *
+     * @return the element, or null when waiting for ABSENT
+     *
+     * @throws TimeoutException when the condition does not hold in time
+     * @throws StaleElementReferenceException when the element is gone while waiting for it to be PRESENT or CLICKABLE
+     */
+    public WebElement waitFor(WebDriver driver, WebElement element, Condition condition, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        Map<String, Object> result = waitInPage(driver, ELEMENT_KIND, element, element, condition, timeoutMillis);
+        if (result != null) {
+            return condition == Condition.ABSENT ? null : element;
+        }
+
+        return poll(element, condition, deadline, timeoutMillis);
+    }
+
+    /**
+     * Waits for the condition inside the page.
+     *
+     * @param driver        the driver
+     * @param kind          the locator kind
+     * @param value         the locator value
+     * @param target        what is waited for, for the timeout message
+     * @param condition     the condition
+     * @param timeoutMillis the timeout millis
+     *
+     * @return the script result once the condition holds, or null when the page cannot wait and polling is needed
+     *
+     * @throws TimeoutException when the condition does not hold in time
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> waitInPage(WebDriver driver, String kind, Object value, Object target, Condition condition, long timeoutMillis) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return null;
+        }
+        try {
+            setScriptTimeout(driver, timeoutMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS);
+            Map<String, Object> result = (Map<String, Object>) ((JavascriptExecutor) driver).executeAsyncScript(
+                    WAIT_SCRIPT, kind, value, condition.name(), timeoutMillis);
+
+            if (Boolean.TRUE.equals(result.get("unsupported"))) {
+                return null;
+            }
+            if (Boolean.TRUE.equals(result.get("met"))) {
+                return result;
+            }
+            throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for " + target + " to be " + condition);
+        } catch (TimeoutException e) {
+            throw e;
+        } catch (WebDriverException e) {
+            // Navigation unloads the script, and some drivers cannot run async scripts at all.
+            logger.debug("Falling back to polling for " + target + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Polls for the condition, doubling the delay between polls.
+     *
+     * @param driver             the driver
+     * @param locator            the locator
+     * @param condition          the condition
+     * @param deadline           the deadline
+     * @param timeoutMillis      the timeout millis
+     * @param implicitWaitMillis the implicit wait millis
+     *
+     * @return the element, or null when waiting for ABSENT
+     */
+    private WebElement poll(WebDriver driver, By locator, Condition condition, long deadline, long timeoutMillis, long implicitWaitMillis) {
+        driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+        try {
+            long delay = MIN_POLL_MILLIS;
+            while (true) {
+                List<WebElement> elements = driver.findElements(locator);
+                try {
+                    if (condition == Condition.ABSENT && elements.isEmpty()) {
+                        return null;
+                    }
+                    if (condition == Condition.PRESENT && !elements.isEmpty()) {
+                        return elements.get(0);
+                    }
+                    if (condition == Condition.CLICKABLE && !elements.isEmpty()
+                            && elements.get(0).isDisplayed() && elements.get(0).isEnabled()) {
+                        return elements.get(0);
+                    }
+                } catch (StaleElementReferenceException e) {
+                    logger.debug("Element went stale while waiting for " + locator);
+                }
+
+                delay = pause(delay, deadline, timeoutMillis, locator, condition);
+            }
+        } finally {
+            driver.manage().timeouts().implicitlyWait(implicitWaitMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Polls an element for the condition, doubling the delay between polls.
+     *
+     * @param element       the element
+     * @param condition     the condition
+     * @param deadline      the deadline
+     * @param timeoutMillis the timeout millis
+     *
+     * @return the element, or null when waiting for ABSENT
+     */
+    private WebElement poll(WebElement element, Condition condition, long deadline, long timeoutMillis) {
+        long delay = MIN_POLL_MILLIS;
+        while (true) {
+            try {
+                boolean displayed = element.isDisplayed();
+                if (condition == Condition.PRESENT || condition == Condition.CLICKABLE && displayed && element.isEnabled()) {
+                    return element;
+                }
+            } catch (StaleElementReferenceException e) {
+                if (condition == Condition.ABSENT) {
+                    return null;
+                }
+                throw e;
+            }
+
+            delay = pause(delay, deadline, timeoutMillis, element, condition);
+        }
+    }
+
+    /**
+     * Sleeps between two polls.
+     *
+     * @param delay         the delay
+     * @param deadline      the deadline
+     * @param timeoutMillis the timeout millis
+     * @param target        what is waited for, for the timeout message
+     * @param condition     the condition
+     *
+     * @return the delay before the next poll
+     *
+     * @throws TimeoutException when the deadline has passed
+     */
+    private static long pause(long delay, long deadline, long timeoutMillis, Object target, Condition condition) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for " + target + " to be " + condition);
+        }
+        try {
+            Thread.sleep(Math.min(delay, remaining));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted waiting for " + target, e);
+        }
+        return Math.min(delay * 2, MAX_POLL_MILLIS);
+    }
+
+    /**
+     * Waits until the page is ready.
+     *
+     * @param driver        the driver
+     * @param readiness     the readiness
+     * @param predicate     the JavaScript expression for CUSTOM readiness
+     * @param idleMillis    the quiet period for NETWORK_IDLE
+     * @param timeoutMillis the timeout millis
+     *
+     * @throws TimeoutException when the page is not ready in time
+     */
+    public void waitForReadiness(WebDriver driver, PageReadiness readiness, String predicate, long idleMillis, long timeoutMillis) {
+        if (!(driver instanceof JavascriptExecutor)) {
+            return;
+        }
+        JavascriptExecutor executor = (JavascriptExecutor) driver;
+
+        Object ready;
+        try {
+            setScriptTimeout(driver, timeoutMillis + SCRIPT_TIMEOUT_MARGIN_MILLIS);
+            ready = executor.executeAsyncScript(READINESS_WAIT_SCRIPT, readiness.name(), predicate, idleMillis, timeoutMillis, READINESS_INTERVAL_MILLIS);
+        } catch (WebDriverException e) {
+            logger.debug("Polling for page readiness " + readiness + ": " + e.getMessage());
+            ready = pollReadiness(executor, readiness, predicate, idleMillis, timeoutMillis);
+        }
+
+        if (!Boolean.TRUE.equals(ready)) {
+            throw new TimeoutException("Page " + driver.getCurrentUrl() + " not " + readiness + " after " + timeoutMillis + " ms");
+        }
+    }
+
+    /**
+     * Polls the readiness check.
+     *
+     * @param executor      the executor
+     * @param readiness     the readiness
+     * @param predicate     the predicate
+     * @param idleMillis    the idle millis
+     * @param timeoutMillis the timeout millis
+     *
+     * @return whether the page became ready
+     */
+    private boolean pollReadiness(JavascriptExecutor executor, PageReadiness readiness, String predicate, long idleMillis, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try {
+                if (Boolean.TRUE.equals(executor.executeScript(READINESS_CHECK_SCRIPT, readiness.name(), predicate, idleMillis))) {
+                    return true;
+                }
+            } catch (WebDriverException e) {
+                logger.debug("Page readiness check failed: " + e.getMessage());
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(READINESS_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sets the script timeout, unless the driver already has it.
+     *
+     * @param driver        the driver
+     * @param timeoutMillis the timeout millis
+     */
+    private void setScriptTimeout(WebDriver driver, long timeoutMillis) {
+        if (driver != scriptTimeoutDriver || timeoutMillis > scriptTimeoutMillis) {
+            driver.manage().timeouts().setScriptTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            scriptTimeoutDriver = driver;
+            scriptTimeoutMillis = timeoutMillis;
+        }
+    }
+
+    /**
+     * Splits a locator into the kind and value the wait script understands, from its toString() form,
+     * such as "By.selector: .nav" for By.cssSelector.
+     *
+     * @param locator the locator
+     *
+     * @return the kind and value, or null when the script cannot evaluate the locator
+     */
+    private String[] locatorKindAndValue(By locator) {
+        String description = locator.toString();
+        int separator = description.indexOf(": ");
+        if (!description.startsWith("By.") || separator < 0) {
+            return null;
+        }
+
+        String kind = description.substring(3, separator);
+        if (kind.equals("selector")) {
+            kind = "cssSelector";
+        }
+        if (kind.equals("cssSelector") || kind.equals("id") || kind.equals("name") || kind.equals("className")
+                || kind.equals("tagName") || kind.equals("xpath")) {
+            return new String[]{kind, description.substring(separator + 2)};
+        }
+        return null;
+    }
+}
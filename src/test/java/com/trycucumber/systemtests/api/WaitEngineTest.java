@@ -0,0 +1,162 @@
+package com.trycucumber.systemtests.api;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+/**
+ * Waits through a {@link WaitEngine} for an element of a fake page that shows up, goes away or never gets ready.
+ * User: Atish Narlawar
+ */
+public class WaitEngineTest {
+
+    /**
+     * The Page.
+     */
+    private FakePage page;
+
+    /**
+     * Opens a fresh page.
+     */
+    @BeforeMethod
+    public void openPage() {
+        page = new FakePage();
+    }
+
+    /**
+     * Without scripts, an element is polled until it is displayed.
+     */
+    @Test
+    public void pollsAnElementUntilItIsClickable() {
+        page.scriptsFail = true;
+        page.hiddenChecks = 3;
+
+        assertSame(new WaitEngine().waitFor(page.driver, page.element, WaitEngine.Condition.CLICKABLE, 5000), page.element);
+        assertEquals(page.hiddenChecks, -1);
+    }
+
+    /**
+     * The page answers the wait when it can, with the element itself.
+     */
+    @Test
+    public void waitsForAnElementInThePage() {
+        assertSame(new WaitEngine().waitFor(page.driver, page.element, WaitEngine.Condition.CLICKABLE, 5000), page.element);
+        assertEquals(page.scripts, 1);
+    }
+
+    /**
+     * An element that goes stale is absent.
+     */
+    @Test
+    public void waitsForAnElementToGoAway() {
+        page.scriptsFail = true;
+        page.stale = true;
+
+        assertNull(new WaitEngine().waitFor(page.driver, page.element, WaitEngine.Condition.ABSENT, 5000));
+    }
+
+    /**
+     * An element that stays hidden times out.
+     */
+    @Test(expectedExceptions = TimeoutException.class)
+    public void timesOutOnAHiddenElement() {
+        page.scriptsFail = true;
+        page.hiddenChecks = Integer.MAX_VALUE;
+
+        new WaitEngine().waitFor(page.driver, page.element, WaitEngine.Condition.CLICKABLE, 100);
+    }
+
+    /**
+     * A WebDriver whose page holds one element, hidden for a number of checks.
+     */
+    private static final class FakePage implements InvocationHandler {
+
+        /**
+         * The Driver.
+         */
+        private final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, this);
+
+        /**
+         * The Element.
+         */
+        private final WebElement element = (WebElement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebElement.class}, this);
+
+        /**
+         * Whether scripts fail.
+         */
+        private boolean scriptsFail;
+
+        /**
+         * Whether the element is gone.
+         */
+        private boolean stale;
+
+        /**
+         * The checks the element answers hidden to, -1 once it was seen displayed.
+         */
+        private int hiddenChecks;
+
+        /**
+         * The Scripts run.
+         */
+        private int scripts;
+
+        /**
+         * Answers the driver and element calls the engine makes.
+         *
+         * @param proxy  the proxy
+         * @param method the method
+         * @param args   the args
+         *
+         * @return the object
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("executeAsyncScript".equals(name)) {
+                if (scriptsFail) {
+                    throw new WebDriverException("JavaScript is disabled");
+                }
+                scripts++;
+                return Collections.<String, Object>singletonMap("met", true);
+            }
+            if ("manage".equals(name) || "timeouts".equals(name)) {
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebDriver.Options.class, WebDriver.Timeouts.class}, this);
+            }
+            if ("isDisplayed".equals(name)) {
+                if (stale) {
+                    throw new StaleElementReferenceException("element is gone");
+                }
+                if (hiddenChecks > 0) {
+                    hiddenChecks--;
+                    return false;
+                }
+                hiddenChecks = -1;
+                return true;
+            }
+            if ("isEnabled".equals(name)) {
+                return true;
+            }
+            if ("toString".equals(name)) {
+                return proxy == element ? "FakeElement" : "FakePage";
+            }
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.trycucumber.systemtests.framework;
 
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.testng.AbstractTestNGSpringContextTests;
@@ -34,6 +35,12 @@ public abstract class AbstractSeleniumTest extends AbstractTestNGSpringContextTe
     @Value("${server.port}")
     private int serverPort;
 
+    /**
+     * The Stand-in server.
+     */
+    @Autowired
+    private StandInServer standInServer;
+
     /**
      * The Verification errors.
      */
@@ -61,7 +68,7 @@ public abstract class AbstractSeleniumTest extends AbstractTestNGSpringContextTe
     }
 
     /**
-     * Gets page url.
+     * Gets page url, on the stand-in server when it is recording or replaying.
      *
      * @param pagePath the page path
      *
@@ -69,7 +76,7 @@ public abstract class AbstractSeleniumTest extends AbstractTestNGSpringContextTe
      */
     @Override
     public String getPageUrl(String pagePath) {
-        String url = this.getServerUrl() + ":" + this.getServerPort();
+        String url = standInServer.isServing() ? standInServer.getBaseUrl() : this.getServerUrl() + ":" + this.getServerPort();
         if (StringUtils.isNotEmpty(this.getContextPath())) {
             url = url + "/" + this.getContextPath();
         }
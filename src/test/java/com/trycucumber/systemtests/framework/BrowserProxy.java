@@ -0,0 +1,1270 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openqa.selenium.Proxy;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP proxy every browser from {@link DriverFactory} is pointed at. Requests to blocked domains, such as
+ * ad and analytics networks, are answered with an empty 204 without leaving the machine; when an allow list is
+ * set, only its domains and server.host get through. Static assets fetched over plain HTTP are kept in an on-disk
+ * cache, evicting the least recently used beyond a size limit. A cached asset is served for as long as its
+ * Cache-Control max-age or Expires header allows, never longer than the cache ttl; assets without either are only
+ * cached from third-party hosts, so a new build of the site under test is never hidden behind an old copy, and
+ * requests asking for no-cache skip the cache. When browser.proxy.resource.timing.buffer is set, pages of the site
+ * under test get a script at the top of their head raising the browser's Resource Timing buffer from the first
+ * request, so {@link com.trycucumber.systemtests.api.PageTiming} sees every resource of a large page; since the
+ * script changes the DOM and is refused by pages with a Content-Security-Policy, it is off by default and the
+ * buffer is raised once each page's timings are captured instead. Responses are relayed to the browser as they
+ * arrive, and written to the cache on the way; only pages getting the script are read whole first. A server that
+ * cannot be reached gets the browser a 502. Browser connections are kept alive between requests. HTTPS goes through
+ * CONNECT tunnels, which are subject to the domain lists but can neither be cached nor have the script added.
+ * <p/>
+ * A second, pass-through port does the same but without the cache and the domain lists, for cold cache sessions
+ * that must see the site as a first-time visitor would.
+ * User: Atish Narlawar
+ */
+@Component
+public class BrowserProxy implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(BrowserProxy.class);
+
+    /**
+     * The Cache entry suffix.
+     */
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    /**
+     * The suffix of cache entries being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The end of a chunk or a line.
+     */
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    /**
+     * The headers that belong to one connection and are never passed on.
+     */
+    private static final List<String> HOP_BY_HOP_HEADERS = Arrays.asList("connection", "proxy-connection", "keep-alive",
+            "proxy-authorization", "proxy-authenticate", "te", "trailer", "transfer-encoding", "upgrade", "host", "content-length");
+
+    /**
+     * The content types cached as static assets.
+     */
+    private static final List<String> STATIC_TYPES = Arrays.asList("image/", "font/", "text/css", "javascript",
+            "application/font", "application/x-font", "application/vnd.ms-fontobject");
+
+    /**
+     * The max-age or s-maxage directive of a Cache-Control header.
+     */
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])(?:s-)?max-age\\s*=\\s*\"?(\\d+)");
+
+    /**
+     * The opening head tag of a page.
+     */
+    private static final Pattern HEAD_TAG = Pattern.compile("<head(?:\\s[^>]*)?>", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The milliseconds an idle browser connection is kept open.
+     */
+    private static final int KEEP_ALIVE_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * The Enabled.
+     */
+    @Value("${browser.proxy.enabled}")
+    private boolean enabled;
+
+    /**
+     * The host browsers reach the proxy at. Anything but a loopback address makes the proxy listen on every
+     * interface, for remote browsers.
+     */
+    @Value("${browser.proxy.host}")
+    private String host;
+
+    /**
+     * The Port, 0 for any free port.
+     */
+    @Value("${browser.proxy.port}")
+    private int port;
+
+    /**
+     * The domains never let through, each matching itself and its subdomains.
+     */
+    @Value("${browser.proxy.block.domains}")
+    private String blockDomains;
+
+    /**
+     * The only domains let through besides server.host, none meaning every domain not blocked.
+     */
+    @Value("${browser.proxy.allow.domains}")
+    private String allowDomains;
+
+    /**
+     * The Cache path.
+     */
+    @Value("${browser.proxy.cache.path}")
+    private String cachePath;
+
+    /**
+     * The Cache max bytes.
+     */
+    @Value("${browser.proxy.cache.max.bytes}")
+    private long cacheMaxBytes;
+
+    /**
+     * The Cache ttl seconds.
+     */
+    @Value("${browser.proxy.cache.ttl.seconds}")
+    private long cacheTtlSeconds;
+
+    /**
+     * The Resource Timing buffer size set by a script added to pages of the site under test, 0, the default, to
+     * leave pages untouched.
+     */
+    @Value("${browser.proxy.resource.timing.buffer}")
+    private int resourceTimingBuffer;
+
+    /**
+     * The Server url.
+     */
+    @Value("${server.host}")
+    private String serverUrl;
+
+    /**
+     * The host of the site under test, whose assets are only cached when they say for how long.
+     */
+    private String serverHost;
+
+    /**
+     * The Selenium proxy settings, the same object for every session so equal capabilities make equal session keys.
+     */
+    private Proxy seleniumProxy;
+
+    /**
+     * The Blocked domains.
+     */
+    private List<String> blocked;
+
+    /**
+     * The Allowed domains.
+     */
+    private List<String> allowed;
+
+    /**
+     * The cache entry sizes by key, least recently used first.
+     */
+    private final LinkedHashMap<String, Long> cacheEntries = new LinkedHashMap<String, Long>(256, 0.75f, true);
+
+    /**
+     * The Cache bytes.
+     */
+    private long cacheBytes;
+
+    /**
+     * The Cache dir.
+     */
+    private File cacheDir;
+
+    /**
+     * The Server socket.
+     */
+    private ServerSocket serverSocket;
+
+    /**
+     * The Server socket of the pass-through port, which neither caches nor blocks.
+     */
+    private ServerSocket passThroughSocket;
+
+    /**
+     * The Selenium proxy settings of the pass-through port.
+     */
+    private Proxy passThroughProxy;
+
+    /**
+     * The Executor.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The Http client.
+     */
+    private CloseableHttpClient httpClient;
+
+    /**
+     * The Cache hits.
+     */
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * The Cache misses.
+     */
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * The Blocked requests.
+     */
+    private final AtomicLong blockedRequests = new AtomicLong();
+
+    /**
+     * Starts the proxy, indexing the cache already on disk.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        serverHost = URI.create(serverUrl).getHost().toLowerCase(Locale.ENGLISH);
+        blocked = domains(blockDomains);
+        allowed = domains(allowDomains);
+        if (!allowed.isEmpty()) {
+            allowed.add(serverHost);
+        }
+
+        cacheDir = new File(cachePath);
+        FileUtils.forceMkdir(cacheDir);
+        loadCache();
+
+        httpClient = HttpClients.custom()
+                .disableContentCompression()
+                .disableRedirectHandling()
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .setMaxConnTotal(64)
+                .setMaxConnPerRoute(16)
+                .build();
+
+        InetAddress address = InetAddress.getByName(host);
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(address.isLoopbackAddress() ? address : null, port), 128);
+        passThroughSocket = new ServerSocket();
+        passThroughSocket.bind(new InetSocketAddress(address.isLoopbackAddress() ? address : null, 0), 128);
+
+        seleniumProxy = new Proxy();
+        seleniumProxy.setHttpProxy(getAddress());
+        seleniumProxy.setSslProxy(getAddress());
+        passThroughProxy = new Proxy();
+        passThroughProxy.setHttpProxy(getPassThroughAddress());
+        passThroughProxy.setSslProxy(getPassThroughAddress());
+
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("browser-proxy-%d").setDaemon(true).build());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket, false);
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept(passThroughSocket, true);
+            }
+        });
+        logger.info("Browser proxy listening at " + getAddress() + " with " + cacheEntries.size() + " cached assets, and passing"
+                + " through at " + getPassThroughAddress());
+    }
+
+    /**
+     * Stops the proxy.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (serverSocket == null) {
+            return;
+        }
+        serverSocket.close();
+        passThroughSocket.close();
+        executor.shutdownNow();
+        httpClient.close();
+        logger.info("Browser proxy: " + cacheHits.get() + " cache hits, " + cacheMisses.get() + " misses, "
+                + blockedRequests.get() + " blocked requests");
+    }
+
+    /**
+     * Is running.
+     *
+     * @return the boolean
+     */
+    public boolean isRunning() {
+        return serverSocket != null && !serverSocket.isClosed();
+    }
+
+    /**
+     * Gets the address browsers should use, as host:port.
+     *
+     * @return the address
+     */
+    public String getAddress() {
+        return host + ":" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the address of the pass-through port, as host:port.
+     *
+     * @return the pass through address
+     */
+    public String getPassThroughAddress() {
+        return host + ":" + passThroughSocket.getLocalPort();
+    }
+
+    /**
+     * Is the proxy reachable from browsers on other machines, that is listening at a host other than loopback.
+     *
+     * @return the boolean
+     */
+    public boolean isRoutable() {
+        return !serverSocket.getInetAddress().isLoopbackAddress();
+    }
+
+    /**
+     * Gets the proxy settings for the PROXY capability, routing both HTTP and HTTPS through this proxy.
+     *
+     * @return the selenium proxy
+     */
+    public Proxy getSeleniumProxy() {
+        return seleniumProxy;
+    }
+
+    /**
+     * Gets the proxy settings for sessions with a cold cache, routing HTTP and HTTPS through the pass-through port.
+     *
+     * @return the pass through proxy
+     */
+    public Proxy getPassThroughProxy() {
+        return passThroughProxy;
+    }
+
+    /**
+     * Gets cache hits.
+     *
+     * @return the cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Gets cache misses.
+     *
+     * @return the cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Gets blocked requests.
+     *
+     * @return the blocked requests
+     */
+    public long getBlockedRequests() {
+        return blockedRequests.get();
+    }
+
+    /**
+     * Is the host let through by the block and allow lists.
+     *
+     * @param requestHost the request host
+     *
+     * @return the boolean
+     */
+    public boolean isAllowed(String requestHost) {
+        String name = requestHost.toLowerCase(Locale.ENGLISH);
+        return !matches(name, blocked) && (allowed.isEmpty() || matches(name, allowed));
+    }
+
+    /**
+     * Accepts connections until the proxy is stopped.
+     *
+     * @param socket      the server socket
+     * @param passThrough whether the socket is the pass-through port
+     */
+    private void accept(ServerSocket socket, final boolean passThrough) {
+        while (!socket.isClosed()) {
+            final Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    logger.warn("Browser proxy stopped accepting connections: " + e.getMessage());
+                }
+                return;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        client.setSoTimeout(KEEP_ALIVE_MILLIS);
+                        InputStream input = new BufferedInputStream(client.getInputStream());
+                        OutputStream output = new BufferedOutputStream(client.getOutputStream());
+                        while (handle(client, input, output, passThrough)) {
+                            logger.debug("Browser proxy connection kept alive");
+                        }
+                    } catch (SocketTimeoutException e) {
+                        // idle connection
+                    } catch (IOException e) {
+                        logger.debug("Browser proxy connection failed: " + e.getMessage());
+                    } finally {
+                        close(client);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Handles one request on a browser connection.
+     *
+     * @param client      the client
+     * @param input       the client input
+     * @param output      the client output
+     * @param passThrough whether to skip the cache and the domain lists
+     *
+     * @return whether the connection stays open for another request
+     *
+     * @throws IOException the iO exception
+     */
+    private boolean handle(Socket client, InputStream input, OutputStream output, boolean passThrough) throws IOException {
+        String requestLine = readLine(input);
+        if (StringUtils.isBlank(requestLine)) {
+            return false;
+        }
+        String[] parts = StringUtils.split(requestLine, ' ');
+        if (parts.length < 3) {
+            respond(output, 400, "Bad Request", new ArrayList<String[]>(), new byte[0], false);
+            return false;
+        }
+        String method = parts[0].toUpperCase(Locale.ENGLISH);
+
+        List<String[]> headers = new ArrayList<String[]>();
+        String line;
+        while (StringUtils.isNotEmpty(line = readLine(input))) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.add(new String[]{line.substring(0, colon).trim(), line.substring(colon + 1).trim()});
+            }
+        }
+
+        if ("CONNECT".equals(method)) {
+            tunnel(client, input, output, parts[1], passThrough);
+            return false;
+        }
+
+        String connection = (StringUtils.defaultString(header(headers, "Connection")) + ","
+                + StringUtils.defaultString(header(headers, "Proxy-Connection"))).toLowerCase(Locale.ENGLISH);
+        boolean http11 = "HTTP/1.1".equalsIgnoreCase(parts[2]);
+        boolean keepAlive = http11 ? !connection.contains("close") : connection.contains("keep-alive");
+
+        byte[] body = new byte[0];
+        String contentLength = header(headers, "Content-Length");
+        if (contentLength != null) {
+            body = new byte[Integer.parseInt(contentLength)];
+            new DataInputStream(input).readFully(body);
+        } else if (header(headers, "Transfer-Encoding") != null) {
+            respond(output, 411, "Length Required", new ArrayList<String[]>(), new byte[0], false);
+            return false;
+        }
+
+        URI uri = URI.create(parts[1]);
+        if (uri.getHost() == null) {
+            respond(output, 400, "Bad Request", new ArrayList<String[]>(), new byte[0], false);
+            return false;
+        }
+        if (!passThrough && !isAllowed(uri.getHost())) {
+            blockedRequests.incrementAndGet();
+            respond(output, 204, "No Content", new ArrayList<String[]>(), new byte[0], keepAlive);
+            return keepAlive;
+        }
+
+        String requestCacheControl = (StringUtils.defaultString(header(headers, "Cache-Control")) + ","
+                + StringUtils.defaultString(header(headers, "Pragma"))).toLowerCase(Locale.ENGLISH);
+        boolean cacheable = !passThrough && "GET".equals(method) && header(headers, "Authorization") == null;
+        String key = cacheable ? Hashing.sha1().hashString(uri.toString(), Charsets.UTF_8).toString() : null;
+        CachedResponse cached = cacheable && !requestCacheControl.contains("no-cache") ? readCache(key, uri) : null;
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            respond(output, cached.status, cached.reason, cached.headers, cached.body, keepAlive);
+            return keepAlive;
+        }
+
+        CloseableHttpResponse upstream;
+        try {
+            upstream = fetch(method, uri, headers, body);
+        } catch (IOException e) {
+            logger.debug("Browser proxy could not fetch " + uri + ": " + e.getMessage());
+            respond(output, 502, "Bad Gateway", new ArrayList<String[]>(), new byte[0], keepAlive);
+            return keepAlive;
+        }
+        try {
+            List<String[]> responseHeaders = new ArrayList<String[]>();
+            for (Header header : upstream.getAllHeaders()) {
+                if (!HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase(Locale.ENGLISH))) {
+                    responseHeaders.add(new String[]{header.getName(), header.getValue()});
+                }
+            }
+            CachedResponse response = new CachedResponse(upstream.getStatusLine().getStatusCode(),
+                    upstream.getStatusLine().getReasonPhrase(), responseHeaders, null);
+            HttpEntity entity = upstream.getEntity();
+
+            if ("HEAD".equals(method)) {
+                respond(output, response.status, response.reason, response.headers, null, keepAlive);
+                return keepAlive;
+            }
+            if (resourceTimingBuffer > 0 && "GET".equals(method) && isPage(response)
+                    && serverHost.equals(uri.getHost().toLowerCase(Locale.ENGLISH))) {
+                byte[] page = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+                respond(output, response.status, response.reason, response.headers, raiseResourceTimingBuffer(page, resourceTimingBuffer), keepAlive);
+                return keepAlive;
+            }
+
+            CacheWriter cacheWriter = null;
+            if (cacheable && isStaticAsset(response) && freshnessMillis(uri, response.headers) > 0) {
+                cacheMisses.incrementAndGet();
+                cacheWriter = new CacheWriter(key, response);
+            }
+            return relay(output, response, entity, http11, keepAlive, cacheWriter);
+        } finally {
+            upstream.close();
+        }
+    }
+
+    /**
+     * Copies a response to the browser as it arrives, with its length when known and otherwise chunked, or up to
+     * the connection close for HTTP/1.0 browsers. A failure half way through the body closes the connection.
+     *
+     * @param output      the client output
+     * @param response    the status and headers of the response
+     * @param entity      the body, or null
+     * @param http11      whether the browser speaks HTTP/1.1
+     * @param keepAlive   whether the browser asked to keep the connection open
+     * @param cacheWriter the cache writer to copy the body to as well, or null
+     *
+     * @return whether the connection stays open for another request
+     *
+     * @throws IOException the iO exception
+     */
+    private static boolean relay(OutputStream output, CachedResponse response, HttpEntity entity, boolean http11,
+                                 boolean keepAlive, CacheWriter cacheWriter) throws IOException {
+        long length = entity == null ? 0 : entity.getContentLength();
+        boolean chunked = length < 0 && http11;
+        boolean reusable = keepAlive && (length >= 0 || chunked);
+        writeHead(output, response.status, response.reason, response.headers, length, chunked, reusable);
+
+        boolean complete = false;
+        try {
+            if (entity != null) {
+                InputStream content = entity.getContent();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    if (chunked) {
+                        output.write((Integer.toHexString(read) + "\r\n").getBytes(Charsets.ISO_8859_1));
+                    }
+                    output.write(buffer, 0, read);
+                    if (chunked) {
+                        output.write(CRLF);
+                    }
+                    if (cacheWriter != null) {
+                        cacheWriter.write(buffer, read);
+                    }
+                }
+            }
+            if (chunked) {
+                output.write(("0\r\n\r\n").getBytes(Charsets.ISO_8859_1));
+            }
+            output.flush();
+            complete = true;
+        } finally {
+            if (cacheWriter != null) {
+                cacheWriter.finish(complete);
+            }
+        }
+        return reusable;
+    }
+
+    /**
+     * Sends the request to the real server.
+     *
+     * @param method  the method
+     * @param uri     the uri
+     * @param headers the headers
+     * @param body    the body
+     *
+     * @return the response, which the caller closes
+     *
+     * @throws IOException the iO exception
+     */
+    private CloseableHttpResponse fetch(String method, URI uri, List<String[]> headers, byte[] body) throws IOException {
+        RequestBuilder request = RequestBuilder.create(method).setUri(uri);
+        for (String[] header : headers) {
+            if (!HOP_BY_HOP_HEADERS.contains(header[0].toLowerCase(Locale.ENGLISH))) {
+                request.addHeader(header[0], header[1]);
+            }
+        }
+        if (body.length > 0) {
+            request.setEntity(new ByteArrayEntity(body));
+        }
+
+        return httpClient.execute(request.build());
+    }
+
+    /**
+     * Opens a CONNECT tunnel and copies bytes both ways until either side closes.
+     *
+     * @param client      the client
+     * @param input       the client input, which may hold bytes already read
+     * @param output      the client output
+     * @param authority   the host:port
+     * @param passThrough whether to skip the domain lists
+     *
+     * @throws IOException the iO exception
+     */
+    private void tunnel(Socket client, final InputStream input, OutputStream output, String authority, boolean passThrough) throws IOException {
+        int colon = authority.lastIndexOf(':');
+        String tunnelHost = colon > 0 ? authority.substring(0, colon) : authority;
+        int tunnelPort = colon > 0 ? Integer.parseInt(authority.substring(colon + 1)) : 443;
+
+        if (!passThrough && !isAllowed(tunnelHost)) {
+            blockedRequests.incrementAndGet();
+            respond(output, 403, "Forbidden", new ArrayList<String[]>(), new byte[0], false);
+            return;
+        }
+
+        final Socket server = new Socket();
+        try {
+            server.connect(new InetSocketAddress(tunnelHost, tunnelPort), (int) TimeUnit.SECONDS.toMillis(30));
+        } catch (IOException e) {
+            close(server);
+            respond(output, 502, "Bad Gateway", new ArrayList<String[]>(), new byte[0], false);
+            return;
+        }
+
+        try {
+            client.setSoTimeout(0);
+            output.write("HTTP/1.1 200 Connection Established\r\n\r\n".getBytes(Charsets.ISO_8859_1));
+            output.flush();
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        IOUtils.copy(input, server.getOutputStream());
+                    } catch (IOException e) {
+                        // the other direction notices the close
+                    } finally {
+                        close(server);
+                    }
+                }
+            });
+            IOUtils.copy(server.getInputStream(), client.getOutputStream());
+        } catch (SocketException e) {
+            // either side closed the tunnel
+        } finally {
+            close(server);
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring a failure since the connection is done with either way.
+     *
+     * @param socket the socket
+     */
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Could not close " + socket + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a response.
+     *
+     * @param output    the output
+     * @param status    the status
+     * @param reason    the reason
+     * @param headers   the headers
+     * @param body      the body, null for HEAD
+     * @param keepAlive whether the connection stays open afterwards
+     *
+     * @throws IOException the iO exception
+     */
+    private static void respond(OutputStream output, int status, String reason, List<String[]> headers, byte[] body,
+                                boolean keepAlive) throws IOException {
+        writeHead(output, status, reason, headers, body == null ? -1 : body.length, false, keepAlive);
+        if (body != null) {
+            output.write(body);
+        }
+        output.flush();
+    }
+
+    /**
+     * Writes the status line and headers of a response.
+     *
+     * @param output        the output
+     * @param status        the status
+     * @param reason        the reason
+     * @param headers       the headers
+     * @param contentLength the content length, -1 for none
+     * @param chunked       whether the body is sent in chunks
+     * @param keepAlive     whether the connection stays open afterwards
+     *
+     * @throws IOException the iO exception
+     */
+    private static void writeHead(OutputStream output, int status, String reason, List<String[]> headers, long contentLength,
+                                  boolean chunked, boolean keepAlive) throws IOException {
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(status).append(' ').append(StringUtils.defaultString(reason)).append("\r\n");
+        for (String[] header : headers) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        if (contentLength >= 0) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        if (chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        }
+        head.append(keepAlive ? "Connection: keep-alive\r\n\r\n" : "Connection: close\r\n\r\n");
+        output.write(head.toString().getBytes(Charsets.ISO_8859_1));
+    }
+
+    /**
+     * Is the response a static asset worth caching: a successful, storable image, font, stylesheet or script.
+     *
+     * @param response the response
+     *
+     * @return the boolean
+     */
+    private static boolean isStaticAsset(CachedResponse response) {
+        if (response.status != 200) {
+            return false;
+        }
+        String cacheControl = (StringUtils.defaultString(header(response.headers, "Cache-Control")) + ","
+                + StringUtils.defaultString(header(response.headers, "Pragma"))).toLowerCase(Locale.ENGLISH);
+        if (cacheControl.contains("no-store") || cacheControl.contains("no-cache") || cacheControl.contains("private")
+                || header(response.headers, "Set-Cookie") != null) {
+            return false;
+        }
+        String contentType = StringUtils.defaultString(header(response.headers, "Content-Type")).toLowerCase(Locale.ENGLISH);
+        for (String staticType : STATIC_TYPES) {
+            if (contentType.contains(staticType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Is the response a successful, uncompressed HTML page.
+     *
+     * @param response the response
+     *
+     * @return the boolean
+     */
+    private static boolean isPage(CachedResponse response) {
+        String contentEncoding = header(response.headers, "Content-Encoding");
+        return response.status == 200 && (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding))
+                && StringUtils.defaultString(header(response.headers, "Content-Type")).toLowerCase(Locale.ENGLISH).contains("text/html");
+    }
+
+    /**
+     * Adds a script right after the opening head tag of a page, raising its Resource Timing buffer to the size and
+     * leaving the size in window.__resourceTimingBufferSize. A page without a head tag is left alone.
+     *
+     * @param page the page
+     * @param size the buffer size
+     *
+     * @return the page with the script
+     */
+    static byte[] raiseResourceTimingBuffer(byte[] page, int size) {
+        // ISO-8859-1 maps every byte to one char, so indexes into the text are indexes into the bytes
+        String text = new String(page, Charsets.ISO_8859_1);
+        Matcher head = HEAD_TAG.matcher(text);
+        if (!head.find()) {
+            return page;
+        }
+        String script = "<script>if (window.performance && performance.setResourceTimingBufferSize) {"
+                + " performance.setResourceTimingBufferSize(" + size + "); window.__resourceTimingBufferSize = " + size + "; }</script>";
+        return (text.substring(0, head.end()) + script + text.substring(head.end())).getBytes(Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets how long a response may be served from the cache after it was fetched: what its max-age, or else its
+     * Expires header, allows, minus its Age, and never more than the cache ttl. A response that says neither is
+     * only cached for the ttl when it comes from a third-party host.
+     *
+     * @param uri     the uri
+     * @param headers the response headers
+     *
+     * @return the freshness in milliseconds, 0 or less when it must not be cached
+     */
+    long freshnessMillis(URI uri, List<String[]> headers) {
+        long ttlMillis = TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+        long freshness;
+
+        Matcher maxAge = MAX_AGE.matcher(StringUtils.defaultString(header(headers, "Cache-Control")).toLowerCase(Locale.ENGLISH));
+        String expires = header(headers, "Expires");
+        if (maxAge.find()) {
+            freshness = TimeUnit.SECONDS.toMillis(Long.parseLong(maxAge.group(1)));
+        } else if (expires != null) {
+            Date expiresAt = DateUtils.parseDate(expires);
+            String dateHeader = header(headers, "Date");
+            Date date = dateHeader == null ? null : DateUtils.parseDate(dateHeader);
+            freshness = expiresAt == null ? 0 : expiresAt.getTime() - (date == null ? System.currentTimeMillis() : date.getTime());
+        } else {
+            return uri.getHost() != null && uri.getHost().toLowerCase(Locale.ENGLISH).equals(serverHost) ? 0 : ttlMillis;
+        }
+
+        String age = header(headers, "Age");
+        if (age != null && StringUtils.isNumeric(age.trim())) {
+            freshness -= TimeUnit.SECONDS.toMillis(Long.parseLong(age.trim()));
+        }
+        return Math.min(freshness, ttlMillis);
+    }
+
+    /**
+     * Reads a cached response, unless it is missing or no longer fresh.
+     *
+     * @param key the key
+     * @param uri the uri
+     *
+     * @return the cached response, or null
+     *
+     * @throws IOException the iO exception
+     */
+    private CachedResponse readCache(String key, URI uri) throws IOException {
+        synchronized (cacheEntries) {
+            if (cacheEntries.get(key) == null) {
+                return null;
+            }
+        }
+
+        File entry = entryFile(key);
+        long fetchedAt = entry.lastModified();
+        if (fetchedAt < System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(cacheTtlSeconds)) {
+            evict(key);
+            return null;
+        }
+
+        DataInputStream input;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+        } catch (IOException e) {
+            evict(key);
+            return null;
+        }
+        try {
+            int status = input.readInt();
+            String reason = input.readUTF();
+            int headerCount = input.readInt();
+            List<String[]> headers = new ArrayList<String[]>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new String[]{input.readUTF(), input.readUTF()});
+            }
+            if (fetchedAt + freshnessMillis(uri, headers) < System.currentTimeMillis()) {
+                input.close();
+                evict(key);
+                return null;
+            }
+            byte[] body = new byte[input.readInt()];
+            input.readFully(body);
+            return new CachedResponse(status, reason, headers, body);
+        } catch (EOFException e) {
+            logger.debug("Dropping truncated cache entry " + entry);
+            evict(key);
+            return null;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Indexes an entry just written to the cache, and evicts the least recently used entries beyond the size limit.
+     *
+     * @param key   the key
+     * @param entry the entry
+     */
+    private void indexCache(String key, File entry) {
+        List<String> evicted = new ArrayList<String>();
+        synchronized (cacheEntries) {
+            Long previous = cacheEntries.put(key, entry.length());
+            cacheBytes += entry.length() - (previous == null ? 0 : previous);
+
+            Iterator<Map.Entry<String, Long>> eldest = cacheEntries.entrySet().iterator();
+            while (cacheBytes > cacheMaxBytes && eldest.hasNext()) {
+                Map.Entry<String, Long> candidate = eldest.next();
+                if (!candidate.getKey().equals(key)) {
+                    cacheBytes -= candidate.getValue();
+                    evicted.add(candidate.getKey());
+                    eldest.remove();
+                }
+            }
+        }
+        for (String evictedKey : evicted) {
+            FileUtils.deleteQuietly(entryFile(evictedKey));
+        }
+    }
+
+    /**
+     * Evict.
+     *
+     * @param key the key
+     */
+    private void evict(String key) {
+        synchronized (cacheEntries) {
+            Long size = cacheEntries.remove(key);
+            if (size != null) {
+                cacheBytes -= size;
+            }
+        }
+        FileUtils.deleteQuietly(entryFile(key));
+    }
+
+    /**
+     * Indexes the cache on disk, oldest first so they are evicted first. Temporary files older than the cache ttl
+     * were left behind by a crash and are deleted; younger ones may belong to a writer in another process.
+     */
+    private void loadCache() {
+        List<File> entries = new ArrayList<File>();
+        long abandonedBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+        for (File entry : FileUtils.listFiles(cacheDir, null, true)) {
+            if (entry.getName().endsWith(ENTRY_SUFFIX)) {
+                entries.add(entry);
+            } else if (entry.getName().endsWith(TEMP_SUFFIX) && entry.lastModified() < abandonedBefore) {
+                FileUtils.deleteQuietly(entry);
+            }
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.lastModified() < b.lastModified() ? -1 : a.lastModified() == b.lastModified() ? 0 : 1;
+            }
+        });
+        for (File entry : entries) {
+            String name = entry.getName();
+            cacheEntries.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), entry.length());
+            cacheBytes += entry.length();
+        }
+    }
+
+    /**
+     * Entry file.
+     *
+     * @param key the key
+     *
+     * @return the file
+     */
+    private File entryFile(String key) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Reads a CRLF or LF terminated line.
+     *
+     * @param input the input
+     *
+     * @return the line, null at the end of the stream
+     *
+     * @throws IOException the iO exception
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets the first header of the name.
+     *
+     * @param headers the headers
+     * @param name    the name
+     *
+     * @return the value, or null
+     */
+    private static String header(List<String[]> headers, String name) {
+        for (String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a comma separated domain list.
+     *
+     * @param domainList the domain list
+     *
+     * @return the domains
+     */
+    private static List<String> domains(String domainList) {
+        List<String> domains = new ArrayList<String>();
+        for (String domain : StringUtils.split(StringUtils.defaultString(domainList), ", ")) {
+            domains.add(StringUtils.removeStart(domain.toLowerCase(Locale.ENGLISH), "."));
+        }
+        return domains;
+    }
+
+    /**
+     * Does the host equal one of the domains or lie under it.
+     *
+     * @param hostName the host name
+     * @param domains  the domains
+     *
+     * @return the boolean
+     */
+    private static boolean matches(String hostName, Collection<String> domains) {
+        for (String domain : domains) {
+            if (hostName.equals(domain) || hostName.endsWith("." + domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A response being written to the cache as it is relayed to the browser, through a temporary file of its own so
+     * that readers, and writers in other processes, never see half of it. A failure to write it only loses the
+     * entry.
+     */
+    private final class CacheWriter {
+
+        /**
+         * The Key.
+         */
+        private final String key;
+
+        /**
+         * The Temp file.
+         */
+        private File temp;
+
+        /**
+         * The File output, to go back to the body length.
+         */
+        private FileOutputStream file;
+
+        /**
+         * The Output.
+         */
+        private DataOutputStream output;
+
+        /**
+         * The position of the body length.
+         */
+        private int lengthPosition;
+
+        /**
+         * The Body length.
+         */
+        private int bodyLength;
+
+        /**
+         * Starts an entry with the status and headers of the response.
+         *
+         * @param key      the key
+         * @param response the response
+         */
+        private CacheWriter(String key, CachedResponse response) {
+            this.key = key;
+            try {
+                File directory = entryFile(key).getParentFile();
+                FileUtils.forceMkdir(directory);
+                temp = File.createTempFile(key, TEMP_SUFFIX, directory);
+                file = new FileOutputStream(temp);
+                output = new DataOutputStream(new BufferedOutputStream(file));
+                output.writeInt(response.status);
+                output.writeUTF(StringUtils.defaultString(response.reason));
+                output.writeInt(response.headers.size());
+                for (String[] header : response.headers) {
+                    output.writeUTF(header[0]);
+                    output.writeUTF(header[1]);
+                }
+                lengthPosition = output.size();
+                output.writeInt(0);
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        /**
+         * Appends body bytes.
+         *
+         * @param bytes  the bytes
+         * @param length the length
+         */
+        private void write(byte[] bytes, int length) {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.write(bytes, 0, length);
+                bodyLength += length;
+            } catch (IOException e) {
+                abandon(e);
+            }
+        }
+
+        /**
+         * Puts the entry in place once the whole body was written, and drops it otherwise.
+         *
+         * @param complete whether the whole body was written
+         */
+        private void finish(boolean complete) {
+            if (output == null) {
+                return;
+            }
+            if (!complete) {
+                abandon(null);
+                return;
+            }
+            File entry = entryFile(key);
+            try {
+                output.flush();
+                ByteBuffer length = ByteBuffer.allocate(4);
+                length.putInt(0, bodyLength);
+                file.getChannel().write(length, lengthPosition);
+                output.close();
+                output = null;
+            } catch (IOException e) {
+                abandon(e);
+                return;
+            }
+            if (!temp.renameTo(entry) && !(entry.delete() && temp.renameTo(entry))) {
+                FileUtils.deleteQuietly(temp);
+                return;
+            }
+            indexCache(key, entry);
+        }
+
+        /**
+         * Drops the entry.
+         *
+         * @param e the failure, or null when the body was cut short
+         */
+        private void abandon(IOException e) {
+            if (e != null) {
+                logger.debug("Could not cache " + key + ": " + e.getMessage());
+            }
+            IOUtils.closeQuietly(output);
+            IOUtils.closeQuietly(file);
+            output = null;
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * A response as sent to the browser.
+     */
+    private static final class CachedResponse {
+
+        /**
+         * The Status.
+         */
+        private final int status;
+
+        /**
+         * The Reason.
+         */
+        private final String reason;
+
+        /**
+         * The Headers.
+         */
+        private final List<String[]> headers;
+
+        /**
+         * The Body.
+         */
+        private final byte[] body;
+
+        /**
+         * Instantiates a new Cached response.
+         *
+         * @param status  the status
+         * @param reason  the reason
+         * @param headers the headers
+         * @param body    the body
+         */
+        private CachedResponse(int status, String reason, List<String[]> headers, byte[] body) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
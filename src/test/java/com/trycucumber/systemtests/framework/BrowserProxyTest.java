@@ -0,0 +1,491 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs a {@link BrowserProxy} against a local upstream server, reached as localhost for the site under test and as
+ * 127.0.0.1 for a third-party host.
+ * User: Atish Narlawar
+ */
+public class BrowserProxyTest {
+
+    /**
+     * The upstream requests, by path.
+     */
+    private final ConcurrentMap<String, AtomicInteger> upstreamHits = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * The Upstream.
+     */
+    private HttpServer upstream;
+
+    /**
+     * The Proxy.
+     */
+    private BrowserProxy proxy;
+
+    /**
+     * The Cache dir.
+     */
+    private File cacheDir;
+
+    /**
+     * Starts the upstream server and the proxy.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void start() throws IOException {
+        upstreamHits.clear();
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        asset("/plain.css", null);
+        asset("/fresh.css", "max-age=600");
+        asset("/revalidated.css", "no-cache");
+        asset("/expired.css", "max-age=0");
+        page("/page.html");
+        streamedAsset("/streamed.png");
+        upstream.start();
+
+        cacheDir = Files.createTempDir();
+        proxy = startProxy();
+    }
+
+    /**
+     * Starts a proxy on the cache dir.
+     *
+     * @return the browser proxy
+     *
+     * @throws IOException the iO exception
+     */
+    private BrowserProxy startProxy() throws IOException {
+        BrowserProxy proxy = new BrowserProxy();
+        setField(proxy, "enabled", true);
+        setField(proxy, "host", "127.0.0.1");
+        setField(proxy, "port", 0);
+        setField(proxy, "blockDomains", "ads.test");
+        setField(proxy, "allowDomains", "");
+        setField(proxy, "cachePath", cacheDir.getPath());
+        setField(proxy, "cacheMaxBytes", 1024 * 1024L);
+        setField(proxy, "cacheTtlSeconds", 3600L);
+        setField(proxy, "resourceTimingBuffer", 0);
+        setField(proxy, "serverUrl", "http://localhost:" + upstream.getAddress().getPort() + "/");
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+
+    /**
+     * Stops the proxy and the upstream server.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void stop() throws IOException {
+        proxy.destroy();
+        upstream.stop(0);
+        FileUtils.deleteDirectory(cacheDir);
+    }
+
+    /**
+     * Every session gets the same proxy settings, so their session keys match.
+     */
+    @Test
+    public void handsOutOneSeleniumProxy() {
+        assertSame(proxy.getSeleniumProxy(), proxy.getSeleniumProxy());
+        assertEquals(proxy.getSeleniumProxy().getHttpProxy(), proxy.getAddress());
+    }
+
+    /**
+     * Assets are cached only as long as their headers allow, and site assets only when they say so.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void cachesOnlyWhatIsFresh() throws IOException {
+        Socket browser = connect();
+        try {
+            for (int i = 0; i < 2; i++) {
+                get(browser, "localhost", "/plain.css", null);
+                get(browser, "127.0.0.1", "/plain.css", null);
+                get(browser, "localhost", "/fresh.css", null);
+                get(browser, "localhost", "/revalidated.css", null);
+                get(browser, "localhost", "/expired.css", null);
+            }
+            get(browser, "localhost", "/fresh.css", "no-cache");
+        } finally {
+            browser.close();
+        }
+
+        assertEquals(upstreamHits.get("localhost/plain.css").get(), 2);
+        assertEquals(upstreamHits.get("127.0.0.1/plain.css").get(), 1);
+        assertEquals(upstreamHits.get("localhost/fresh.css").get(), 2);
+        assertEquals(upstreamHits.get("localhost/revalidated.css").get(), 2);
+        assertEquals(upstreamHits.get("localhost/expired.css").get(), 2);
+    }
+
+    /**
+     * Blocked hosts get an empty answer on a connection that stays open.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void keepsConnectionsAlive() throws IOException {
+        Socket browser = connect();
+        try {
+            Map<String, String> blocked = get(browser, "ads.test", "/pixel.gif", null);
+            assertEquals(blocked.get("status"), "204");
+            assertEquals(blocked.get("connection"), "keep-alive");
+
+            Map<String, String> asset = get(browser, "localhost", "/fresh.css", null);
+            assertEquals(asset.get("status"), "200");
+            assertEquals(asset.get("body"), "body{}");
+            assertEquals(proxy.getBlockedRequests(), 1);
+        } finally {
+            browser.close();
+        }
+    }
+
+    /**
+     * A response without a length is relayed in chunks as it arrives, and cached on the way when fresh.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void streamsAndCachesResponses() throws IOException {
+        Socket browser = connect();
+        try {
+            Map<String, String> streamed = get(browser, "127.0.0.1", "/streamed.png", null);
+            assertEquals(streamed.get("transfer-encoding"), "chunked");
+            assertEquals(streamed.get("body"), StringUtils.repeat("0123456789", 10000));
+
+            Map<String, String> cached = get(browser, "127.0.0.1", "/streamed.png", null);
+            assertEquals(cached.get("content-length"), "100000");
+            assertEquals(cached.get("body"), streamed.get("body"));
+        } finally {
+            browser.close();
+        }
+        assertEquals(upstreamHits.get("127.0.0.1/streamed.png").get(), 1);
+        assertEquals(FileUtils.listFiles(cacheDir, new String[]{"tmp"}, true).size(), 0);
+    }
+
+    /**
+     * A server that cannot be reached gets the browser a 502 on a connection that stays open.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void answersBadGatewayWhenTheServerIsDown() throws IOException {
+        ServerSocket closed = new ServerSocket(0);
+        closed.close();
+
+        Socket browser = connect();
+        try {
+            assertEquals(send(browser, "localhost:" + closed.getLocalPort(), "/fresh.css", null).get("status"), "502");
+            assertEquals(get(browser, "localhost", "/fresh.css", null).get("status"), "200");
+        } finally {
+            browser.close();
+        }
+    }
+
+    /**
+     * Opening the cache leaves temporary files other writers may still be using, and deletes abandoned ones.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void leavesOtherWritersTemporaryFiles() throws IOException {
+        File young = new File(cacheDir, "ab/ab01.tmp");
+        File abandoned = new File(cacheDir, "ab/ab02.tmp");
+        FileUtils.writeStringToFile(young, "partial");
+        FileUtils.writeStringToFile(abandoned, "partial");
+        assertTrue(abandoned.setLastModified(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+
+        startProxy().destroy();
+        assertTrue(young.isFile());
+        assertFalse(abandoned.exists());
+    }
+
+    /**
+     * The pass-through port lets blocked hosts through and never answers from the cache.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void passesThroughWithoutCacheOrBlocking() throws IOException {
+        Socket cached = connect(proxy.getAddress());
+        Socket passThrough = connect(proxy.getPassThroughAddress());
+        try {
+            get(cached, "127.0.0.1", "/fresh.css", null);
+            get(passThrough, "127.0.0.1", "/fresh.css", null);
+            get(passThrough, "127.0.0.1", "/fresh.css", null);
+            assertEquals(upstreamHits.get("127.0.0.1/fresh.css").get(), 3);
+            assertEquals(proxy.getPassThroughProxy().getHttpProxy(), proxy.getPassThroughAddress());
+
+            setField(proxy, "blocked", Collections.singletonList("127.0.0.1"));
+            assertEquals(get(cached, "127.0.0.1", "/plain.css", null).get("status"), "204");
+            assertEquals(get(passThrough, "127.0.0.1", "/plain.css", null).get("status"), "200");
+        } finally {
+            cached.close();
+            passThrough.close();
+        }
+    }
+
+    /**
+     * Pages of the site are passed on untouched unless the Resource Timing buffer script is asked for.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void addsTheResourceTimingScriptOnlyWhenAskedTo() throws IOException {
+        Socket browser = connect();
+        try {
+            assertEquals(get(browser, "localhost", "/page.html", null).get("body"), "<html><head><title>t</title></head></html>");
+
+            setField(proxy, "resourceTimingBuffer", 500);
+            assertTrue(get(browser, "localhost", "/page.html", null).get("body").startsWith("<html><head><script>"));
+        } finally {
+            browser.close();
+        }
+    }
+
+    /**
+     * Pages get the Resource Timing buffer script right after their head tag, and only when they have one.
+     */
+    @Test
+    public void raisesTheResourceTimingBufferOfPages() {
+        String page = new String(BrowserProxy.raiseResourceTimingBuffer(
+                "<!DOCTYPE html><HTML><Head lang=\"en\"><title>t</title></head></html>".getBytes(Charsets.ISO_8859_1), 500), Charsets.ISO_8859_1);
+        assertEquals(page, "<!DOCTYPE html><HTML><Head lang=\"en\"><script>if (window.performance && performance.setResourceTimingBufferSize) {"
+                + " performance.setResourceTimingBufferSize(500); window.__resourceTimingBufferSize = 500; }</script><title>t</title></head></html>");
+
+        byte[] fragment = "<div>no head</div><header>x</header>".getBytes(Charsets.ISO_8859_1);
+        assertSame(BrowserProxy.raiseResourceTimingBuffer(fragment, 500), fragment);
+    }
+
+    /**
+     * Serves a stylesheet from the upstream server, counting its requests.
+     *
+     * @param path         the path
+     * @param cacheControl the cache control header, or null
+     */
+    private void asset(final String path, final String cacheControl) {
+        upstream.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String key = exchange.getRequestHeaders().getFirst("Host").replaceAll(":\\d+$", "") + path;
+                upstreamHits.putIfAbsent(key, new AtomicInteger());
+                upstreamHits.get(key).incrementAndGet();
+
+                byte[] body = "body{}".getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/css");
+                if (cacheControl != null) {
+                    exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+    }
+
+    /**
+     * Serves a page from the upstream server.
+     *
+     * @param path the path
+     */
+    private void page(String path) {
+        upstream.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "<html><head><title>t</title></head></html>".getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "text/html");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(body);
+                output.close();
+            }
+        });
+    }
+
+    /**
+     * Serves a fresh image from the upstream server in chunks, without a length, counting its requests.
+     *
+     * @param path the path
+     */
+    private void streamedAsset(final String path) {
+        upstream.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String key = exchange.getRequestHeaders().getFirst("Host").replaceAll(":\\d+$", "") + path;
+                upstreamHits.putIfAbsent(key, new AtomicInteger());
+                upstreamHits.get(key).incrementAndGet();
+
+                exchange.getResponseHeaders().add("Content-Type", "image/png");
+                exchange.getResponseHeaders().add("Cache-Control", "max-age=600");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream output = exchange.getResponseBody();
+                for (int i = 0; i < 10; i++) {
+                    output.write(StringUtils.repeat("0123456789", 1000).getBytes(Charsets.UTF_8));
+                    output.flush();
+                }
+                output.close();
+            }
+        });
+    }
+
+    /**
+     * Opens a browser connection to the proxy.
+     *
+     * @return the socket
+     *
+     * @throws IOException the iO exception
+     */
+    private Socket connect() throws IOException {
+        return connect(proxy.getAddress());
+    }
+
+    /**
+     * Opens a browser connection to a proxy port.
+     *
+     * @param address the host:port
+     *
+     * @return the socket
+     *
+     * @throws IOException the iO exception
+     */
+    private Socket connect(String address) throws IOException {
+        Socket browser = new Socket("127.0.0.1", Integer.parseInt(address.split(":")[1]));
+        browser.setSoTimeout(10000);
+        return browser;
+    }
+
+    /**
+     * Sends a GET through the proxy on an open connection and reads the response.
+     *
+     * @param browser      the browser connection
+     * @param hostName     the host name
+     * @param path         the path
+     * @param cacheControl the request cache control header, or null
+     *
+     * @return the lower cased headers, with the status as status and the body as body
+     *
+     * @throws IOException the iO exception
+     */
+    private Map<String, String> get(Socket browser, String hostName, String path, String cacheControl) throws IOException {
+        return send(browser, hostName + ":" + upstream.getAddress().getPort(), path, cacheControl);
+    }
+
+    /**
+     * Sends a GET for a host:port through the proxy on an open connection and reads the response, of a known
+     * length or chunked.
+     *
+     * @param browser      the browser connection
+     * @param authority    the host:port
+     * @param path         the path
+     * @param cacheControl the request cache control header, or null
+     *
+     * @return the lower cased headers, with the status as status and the body as body
+     *
+     * @throws IOException the iO exception
+     */
+    private Map<String, String> send(Socket browser, String authority, String path, String cacheControl) throws IOException {
+        String request = "GET http://" + authority + path + " HTTP/1.1\r\nHost: " + authority + "\r\n"
+                + (cacheControl == null ? "" : "Cache-Control: " + cacheControl + "\r\n") + "\r\n";
+        browser.getOutputStream().write(request.getBytes(Charsets.ISO_8859_1));
+        browser.getOutputStream().flush();
+
+        InputStream input = new BufferedInputStream(browser.getInputStream(), 1);
+        Map<String, String> response = new TreeMap<String, String>();
+        response.put("status", readLine(input).split(" ")[1]);
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            int colon = line.indexOf(':');
+            response.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        if ("chunked".equals(response.get("transfer-encoding"))) {
+            int chunkLength;
+            while ((chunkLength = Integer.parseInt(readLine(input), 16)) > 0) {
+                body.write(read(input, chunkLength));
+                readLine(input);
+            }
+            readLine(input);
+        } else {
+            body.write(read(input, Integer.parseInt(response.get("content-length"))));
+        }
+        response.put("body", new String(body.toByteArray(), Charsets.UTF_8));
+        return response;
+    }
+
+    /**
+     * Reads a number of bytes.
+     *
+     * @param input  the input
+     * @param length the length
+     *
+     * @return the bytes
+     *
+     * @throws IOException the iO exception
+     */
+    private static byte[] read(InputStream input, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(input).readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a CRLF terminated line.
+     *
+     * @param input the input
+     *
+     * @return the line
+     *
+     * @throws IOException the iO exception
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), Charsets.ISO_8859_1);
+    }
+}
@@ -2,6 +2,9 @@ package com.trycucumber.systemtests.framework;
 
 import org.openqa.selenium.Dimension;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * BrowserSize constant class.
  * User: Atish Narlawar
@@ -47,5 +50,42 @@ public enum BrowserSize {
         return new Dimension(browserWidth, browserHeight);
     }
 
+    /**
+     * Parses a viewport, either a BrowserSize name such as TABLET or a custom size such as 1024x768.
+     *
+     * @param viewport the viewport
+     *
+     * @return the dimension
+     */
+    public static Dimension parseDimension(String viewport) {
+        String trimmed = viewport.trim();
+        for (BrowserSize browserSize : values()) {
+            if (browserSize.name().equalsIgnoreCase(trimmed)) {
+                return browserSize.getDimension();
+            }
+        }
 
+        String[] parts = trimmed.toLowerCase().split("x");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid viewport " + viewport + ", expected a BrowserSize name or WIDTHxHEIGHT");
+        }
+        return new Dimension(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+
+    /**
+     * Parses a comma separated list of viewports.
+     *
+     * @param viewports the viewports
+     *
+     * @return the dimensions, in the order given
+     */
+    public static List<Dimension> parseDimensions(String viewports) {
+        List<Dimension> dimensions = new ArrayList<Dimension>();
+        for (String viewport : viewports.split(",")) {
+            if (!viewport.trim().isEmpty()) {
+                dimensions.add(parseDimension(viewport));
+            }
+        }
+        return dimensions;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,269 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies of the WebDriver commands sent through {@link InstrumentedDriver}, per command and per scenario step
+ * as tracked by {@link RunContext}. Written as JSON when the run ends: percentiles per command over the whole
+ * run, and the round trips and percentiles of every step.
+ * User: Atish Narlawar
+ */
+@Component
+public class CommandMetrics implements DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(CommandMetrics.class);
+
+    /**
+     * The Enabled.
+     */
+    private final boolean enabled;
+
+    /**
+     * The Summary file.
+     */
+    private final File summaryFile;
+
+    /**
+     * The Step metrics, by scenario and step.
+     */
+    private final ConcurrentMap<StepKey, StepMetrics> steps = new ConcurrentHashMap<StepKey, StepMetrics>();
+
+    /**
+     * Instantiates a new Command metrics.
+     *
+     * @param enabled     the enabled
+     * @param summaryFile the summary file
+     */
+    @Autowired
+    public CommandMetrics(@Value("${driver.metrics.enabled}") boolean enabled, @Value("${driver.metrics.path}") String summaryFile) {
+        this.enabled = enabled;
+        this.summaryFile = new File(summaryFile);
+    }
+
+    /**
+     * Is enabled.
+     *
+     * @return the boolean
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records one command against the scenario and step running on this thread.
+     *
+     * @param command the command
+     * @param nanos   the latency in nanoseconds
+     */
+    public void record(String command, long nanos) {
+        StepKey key = new StepKey(RunContext.getScenario(), RunContext.getStep());
+        StepMetrics metrics = steps.get(key);
+        if (metrics == null) {
+            StepMetrics created = new StepMetrics();
+            metrics = steps.putIfAbsent(key, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        metrics.record(command, nanos);
+    }
+
+    /**
+     * Writes the summary of the run.
+     *
+     * @throws IOException the iO exception
+     */
+    public void writeSummary() throws IOException {
+        Map<String, LatencyHistogram> commands = new TreeMap<String, LatencyHistogram>();
+        JSONArray stepSummaries = new JSONArray();
+        long roundTrips = 0;
+
+        try {
+            for (Map.Entry<StepKey, StepMetrics> step : new TreeMap<StepKey, StepMetrics>(steps).entrySet()) {
+                JSONObject stepCommands = new JSONObject();
+                for (Map.Entry<String, LatencyHistogram> command : new TreeMap<String, LatencyHistogram>(step.getValue().commands).entrySet()) {
+                    LatencyHistogram total = commands.get(command.getKey());
+                    if (total == null) {
+                        total = new LatencyHistogram();
+                        commands.put(command.getKey(), total);
+                    }
+                    total.add(command.getValue());
+                    stepCommands.put(command.getKey(), summarize(command.getValue()));
+                }
+
+                long stepRoundTrips = step.getValue().roundTrips.get();
+                roundTrips += stepRoundTrips;
+
+                JSONObject stepSummary = new JSONObject();
+                stepSummary.put("scenario", step.getKey().scenario);
+                stepSummary.put("step", step.getKey().step);
+                stepSummary.put("roundTrips", stepRoundTrips);
+                stepSummary.put("commands", stepCommands);
+                stepSummaries.put(stepSummary);
+            }
+
+            JSONObject commandSummaries = new JSONObject();
+            for (Map.Entry<String, LatencyHistogram> command : commands.entrySet()) {
+                commandSummaries.put(command.getKey(), summarize(command.getValue()));
+            }
+
+            JSONObject summary = new JSONObject();
+            summary.put("roundTrips", roundTrips);
+            summary.put("commands", commandSummaries);
+            summary.put("steps", stepSummaries);
+
+            File directory = summaryFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(summaryFile), Charsets.UTF_8);
+            try {
+                writer.write(summary.toString(2));
+            } finally {
+                writer.close();
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        logger.info("WebDriver command metrics for " + roundTrips + " round trips written to " + summaryFile);
+    }
+
+    /**
+     * Writes the summary when anything was recorded.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (enabled && !steps.isEmpty()) {
+            writeSummary();
+        }
+    }
+
+    /**
+     * Summarize.
+     *
+     * @param histogram the histogram
+     *
+     * @return the jSON object
+     *
+     * @throws JSONException the jSON exception
+     */
+    private static JSONObject summarize(LatencyHistogram histogram) throws JSONException {
+        JSONObject summary = new JSONObject();
+        summary.put("count", histogram.getCount());
+        summary.put("totalMicros", histogram.getTotalMicros());
+        summary.put("p50Micros", histogram.getPercentileMicros(50));
+        summary.put("p95Micros", histogram.getPercentileMicros(95));
+        summary.put("p99Micros", histogram.getPercentileMicros(99));
+        summary.put("maxMicros", histogram.getMaxMicros());
+        return summary;
+    }
+
+    /**
+     * A scenario and step.
+     */
+    private static final class StepKey implements Comparable<StepKey> {
+
+        /**
+         * The Scenario.
+         */
+        private final String scenario;
+
+        /**
+         * The Step.
+         */
+        private final String step;
+
+        /**
+         * Instantiates a new Step key.
+         *
+         * @param scenario the scenario
+         * @param step     the step
+         */
+        private StepKey(String scenario, String step) {
+            this.scenario = scenario;
+            this.step = step;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StepKey)) {
+                return false;
+            }
+            StepKey other = (StepKey) o;
+            return scenario.equals(other.scenario) && step.equals(other.step);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scenario.hashCode() + step.hashCode();
+        }
+
+        @Override
+        public int compareTo(StepKey other) {
+            int byScenario = scenario.compareTo(other.scenario);
+            return byScenario != 0 ? byScenario : step.compareTo(other.step);
+        }
+    }
+
+    /**
+     * The commands sent during one step.
+     */
+    private static final class StepMetrics {
+
+        /**
+         * The Round trips.
+         */
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        /**
+         * The Histograms by command.
+         */
+        private final ConcurrentMap<String, LatencyHistogram> commands = new ConcurrentHashMap<String, LatencyHistogram>();
+
+        /**
+         * Record.
+         *
+         * @param command the command
+         * @param nanos   the nanos
+         */
+        private void record(String command, long nanos) {
+            LatencyHistogram histogram = commands.get(command);
+            if (histogram == null) {
+                LatencyHistogram created = new LatencyHistogram();
+                histogram = commands.putIfAbsent(command, created);
+                if (histogram == null) {
+                    histogram = created;
+                }
+            }
+            histogram.record(nanos);
+            roundTrips.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Objects;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Identifies one logged attribute of one element: browser, test, test state, viewport, element and attribute.
+ * The element is identified by the md5 of its XPath, as in the crumbdb directory layout.
+ * User: Atish Narlawar
+ */
+public final class CrumbKey {
+
+    /**
+     * The Browser.
+     */
+    private final String browser;
+
+    /**
+     * The Test name.
+     */
+    private final String testName;
+
+    /**
+     * The Test state.
+     */
+    private final String testState;
+
+    /**
+     * The Viewport, as WIDTHxHEIGHT.
+     */
+    private final String viewport;
+
+    /**
+     * The Xpath hash.
+     */
+    private final String xpathHash;
+
+    /**
+     * The Attribute.
+     */
+    private final String attribute;
+
+    /**
+     * Instantiates a new Crumb key.
+     *
+     * @param browser   the browser
+     * @param testName  the test name
+     * @param testState the test state
+     * @param viewport  the viewport
+     * @param xpathHash the xpath hash
+     * @param attribute the attribute
+     */
+    public CrumbKey(String browser, String testName, String testState, String viewport, String xpathHash, String attribute) {
+        this.browser = String.valueOf(browser);
+        this.testName = String.valueOf(testName);
+        this.testState = String.valueOf(testState);
+        this.viewport = String.valueOf(viewport);
+        this.xpathHash = String.valueOf(xpathHash);
+        this.attribute = String.valueOf(attribute);
+    }
+
+    /**
+     * Creates a key for an element XPath.
+     *
+     * @param browser   the browser
+     * @param testName  the test name
+     * @param testState the test state
+     * @param viewport  the viewport
+     * @param xpath     the xpath
+     * @param attribute the attribute
+     *
+     * @return the crumb key
+     */
+    public static CrumbKey forXPath(String browser, String testName, String testState, String viewport, String xpath, String attribute) {
+        return new CrumbKey(browser, testName, testState, viewport, DigestUtils.md5Hex(xpath), attribute);
+    }
+
+    /**
+     * Gets browser.
+     *
+     * @return the browser
+     */
+    public String getBrowser() {
+        return browser;
+    }
+
+    /**
+     * Gets test name.
+     *
+     * @return the test name
+     */
+    public String getTestName() {
+        return testName;
+    }
+
+    /**
+     * Gets test state.
+     *
+     * @return the test state
+     */
+    public String getTestState() {
+        return testState;
+    }
+
+    /**
+     * Gets viewport.
+     *
+     * @return the viewport
+     */
+    public String getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Gets xpath hash.
+     *
+     * @return the xpath hash
+     */
+    public String getXpathHash() {
+        return xpathHash;
+    }
+
+    /**
+     * Gets attribute.
+     *
+     * @return the attribute
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CrumbKey)) {
+            return false;
+        }
+        CrumbKey other = (CrumbKey) o;
+        return browser.equals(other.browser) && testName.equals(other.testName) && testState.equals(other.testState)
+                && viewport.equals(other.viewport) && xpathHash.equals(other.xpathHash) && attribute.equals(other.attribute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(browser, testName, testState, viewport, xpathHash, attribute);
+    }
+
+    @Override
+    public String toString() {
+        return browser + "/" + testName + "/" + testState + "/" + viewport + "/" + xpathHash + "/" + attribute;
+    }
+}
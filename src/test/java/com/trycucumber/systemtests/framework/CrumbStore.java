@@ -0,0 +1,647 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only store for element state crumbs, replacing the crumbdb tree of one small file per attribute.
+ * Every observation is appended to the current segment file as a length prefixed, checksummed record. The
+ * baseline of each key, the first value ever recorded for it, is kept in an in-memory index rebuilt from the
+ * segments on start, so baseline lookups are a single hash lookup.
+ * <p/>
+ * A run appends to the last segment, cut back to its last intact record. Once the observations have filled more
+ * than one segment, opening the store compacts them into a single segment holding only the baselines.
+ * <p/>
+ * Several processes may open the same directory, such as parallel cucumber forks. The first one takes a lock on
+ * store.lock for its lifetime and owns the numbered segments: only it cuts them back, numbers new ones and
+ * compacts. The others read the baselines and append to private segments of their own, locked while they are
+ * open, which the next owner folds into its compaction.
+ * User: Atish Narlawar
+ */
+@Component
+public class CrumbStore implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(CrumbStore.class);
+
+    /**
+     * The Segment file prefix.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * The Segment file suffix.
+     */
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * The bytes of the length and checksum before each record.
+     */
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    /**
+     * The Private segment file prefix.
+     */
+    private static final String PRIVATE_PREFIX = "private-";
+
+    /**
+     * The Lock file name.
+     */
+    private static final String LOCK_FILE = "store.lock";
+
+    /**
+     * The file a compaction is written to before it is renamed into a segment.
+     */
+    private static final String COMPACTING_FILE = "compacting.tmp";
+
+    /**
+     * The attempts to load the segments while the owner compacts them away.
+     */
+    private static final int LOAD_ATTEMPTS = 5;
+
+    /**
+     * The files locked by stores of this JVM. File locks are held per process, and closing any channel of a file
+     * releases them, so a file locked here is never opened for locking again.
+     */
+    private static final Set<String> LOCKED_IN_THIS_JVM = Collections.synchronizedSet(new HashSet<String>());
+
+    /**
+     * The Directory.
+     */
+    private final File directory;
+
+    /**
+     * The Max segment bytes.
+     */
+    private final long maxSegmentBytes;
+
+    /**
+     * The Baselines.
+     */
+    private final Map<CrumbKey, String> baselines = new HashMap<CrumbKey, String>();
+
+    /**
+     * The Current segment number.
+     */
+    private int segmentNumber;
+
+    /**
+     * The Current segment size.
+     */
+    private long segmentBytes;
+
+    /**
+     * The Segment output.
+     */
+    private DataOutputStream segmentOutput;
+
+    /**
+     * The Lock channel, holding the lock of the owner.
+     */
+    private FileChannel lockChannel;
+
+    /**
+     * The Private segment being written, when not the owner.
+     */
+    private File privateSegment;
+
+    /**
+     * Instantiates a new Crumb store.
+     *
+     * @param directory       the directory
+     * @param maxSegmentBytes the max segment bytes
+     */
+    @Autowired
+    public CrumbStore(@Value("${crumbdb.store.path}") String directory, @Value("${crumbdb.segment.max.bytes}") long maxSegmentBytes) {
+        this.directory = new File(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Opens the store and rebuilds the baseline index from the existing segments.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public synchronized void afterPropertiesSet() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create crumb store directory " + directory);
+        }
+
+        lockChannel = tryLock(new File(directory, LOCK_FILE));
+        if (lockChannel != null) {
+            openOwned();
+        } else {
+            openShared();
+        }
+        logger.debug("Crumb store " + directory + " opened with " + baselines.size() + " baselines"
+                + (lockChannel != null ? "" : ", shared with another store"));
+    }
+
+    /**
+     * Whether this store owns the directory.
+     *
+     * @return the boolean
+     */
+    public synchronized boolean isOwner() {
+        return lockChannel != null;
+    }
+
+    /**
+     * Loads the segments as their owner, and compacts the private segments other stores left behind into them.
+     *
+     * @throws IOException the iO exception
+     */
+    private void openOwned() throws IOException {
+        List<File> segments = new ArrayList<File>();
+        long intactBytes = 0;
+        for (File segment : listSegments(SEGMENT_PREFIX)) {
+            String name = segment.getName();
+            segmentNumber = Math.max(segmentNumber, Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            intactBytes = loadSegment(segment);
+            segments.add(segment);
+        }
+
+        List<File> leftBehind = new ArrayList<File>();
+        for (File segment : listSegments(PRIVATE_PREFIX)) {
+            FileChannel channel = tryLock(segment);
+            loadSegment(segment);
+            if (channel != null) {
+                unlock(segment, channel);
+                leftBehind.add(segment);
+            }
+        }
+
+        if (segments.size() > 1 || !leftBehind.isEmpty()) {
+            List<File> compacted = new ArrayList<File>(segments);
+            compacted.addAll(leftBehind);
+            compact(compacted);
+        } else if (segments.size() == 1) {
+            reopen(segments.get(0), intactBytes);
+        }
+    }
+
+    /**
+     * Loads the segments of a directory another store owns, starting over when the owner compacts a segment away
+     * meanwhile.
+     *
+     * @throws IOException the iO exception
+     */
+    private void openShared() throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                for (File segment : listSegments(SEGMENT_PREFIX)) {
+                    loadSegment(segment);
+                }
+                for (File segment : listSegments(PRIVATE_PREFIX)) {
+                    loadSegment(segment);
+                }
+                return;
+            } catch (FileNotFoundException e) {
+                baselines.clear();
+                if (attempt == LOAD_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the segments of a kind, in order.
+     *
+     * @param prefix the prefix
+     *
+     * @return the segments
+     */
+    private List<File> listSegments(String prefix) {
+        List<File> segments = new ArrayList<File>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(prefix) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Records a value and returns the baseline it should be compared with.
+     *
+     * @param key   the key
+     * @param value the value
+     *
+     * @return the baseline recorded before this value, or null when the key is new
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized String record(CrumbKey key, String value) throws IOException {
+        String baseline = baselines.get(key);
+        if (baseline == null) {
+            baselines.put(key, value);
+        }
+        append(key, value);
+        return baseline;
+    }
+
+    /**
+     * Gets the baseline of a key.
+     *
+     * @param key the key
+     *
+     * @return the baseline, or null when nothing was recorded
+     */
+    public synchronized String getBaseline(CrumbKey key) {
+        return baselines.get(key);
+    }
+
+    /**
+     * Flushes appended records to disk.
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized void flush() throws IOException {
+        if (segmentOutput != null) {
+            segmentOutput.flush();
+        }
+    }
+
+    /**
+     * Destroy.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public synchronized void destroy() throws IOException {
+        try {
+            closeSegment();
+        } finally {
+            if (lockChannel != null) {
+                unlock(new File(directory, LOCK_FILE), lockChannel);
+                lockChannel = null;
+            }
+        }
+    }
+
+    /**
+     * Appends a record, rolling over to a new segment when the current one is full.
+     *
+     * @param key   the key
+     * @param value the value
+     *
+     * @throws IOException the iO exception
+     */
+    private void append(CrumbKey key, String value) throws IOException {
+        byte[] payload = encode(key, value);
+
+        if (segmentOutput == null || segmentBytes + payload.length > maxSegmentBytes) {
+            closeSegment();
+            if (lockChannel != null) {
+                segmentNumber++;
+                segmentOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile(segmentNumber))));
+            } else {
+                openPrivateSegment();
+            }
+            segmentBytes = 0;
+        }
+
+        segmentBytes += writeRecord(segmentOutput, payload);
+    }
+
+    /**
+     * Starts a private segment, locked until it is closed so that the owner leaves it alone. It is created and
+     * locked under another name first, so the owner never sees it unlocked.
+     *
+     * @throws IOException the iO exception
+     */
+    private void openPrivateSegment() throws IOException {
+        String name = PRIVATE_PREFIX + UUID.randomUUID();
+        File creating = new File(directory, name + ".new");
+        File segment = new File(directory, name + SEGMENT_SUFFIX);
+        FileOutputStream stream = new FileOutputStream(creating);
+        LOCKED_IN_THIS_JVM.add(segment.getCanonicalPath());
+        try {
+            stream.getChannel().lock();
+            if (!creating.renameTo(segment)) {
+                throw new IOException("Could not rename " + creating + " to " + segment);
+            }
+        } catch (IOException e) {
+            LOCKED_IN_THIS_JVM.remove(segment.getCanonicalPath());
+            stream.close();
+            creating.delete();
+            throw e;
+        }
+        privateSegment = segment;
+        segmentOutput = new DataOutputStream(new BufferedOutputStream(stream));
+    }
+
+    /**
+     * Closes the segment being written, which releases the lock of a private segment.
+     *
+     * @throws IOException the iO exception
+     */
+    private void closeSegment() throws IOException {
+        if (segmentOutput == null) {
+            return;
+        }
+        try {
+            segmentOutput.close();
+        } finally {
+            segmentOutput = null;
+            if (privateSegment != null) {
+                LOCKED_IN_THIS_JVM.remove(privateSegment.getCanonicalPath());
+                privateSegment = null;
+            }
+        }
+    }
+
+    /**
+     * Takes the lock of a file without waiting.
+     *
+     * @param file the file
+     *
+     * @return the channel holding the lock, or null when another store holds it
+     *
+     * @throws IOException the iO exception
+     */
+    private static FileChannel tryLock(File file) throws IOException {
+        String path = file.getCanonicalPath();
+        if (!LOCKED_IN_THIS_JVM.add(path)) {
+            return null;
+        }
+        FileChannel channel = null;
+        FileLock lock = null;
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } finally {
+            if (lock == null) {
+                LOCKED_IN_THIS_JVM.remove(path);
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+        return lock != null ? channel : null;
+    }
+
+    /**
+     * Releases a lock taken with {@link #tryLock(File)}.
+     *
+     * @param file    the file
+     * @param channel the channel
+     *
+     * @throws IOException the iO exception
+     */
+    private static void unlock(File file, FileChannel channel) throws IOException {
+        try {
+            channel.close();
+        } finally {
+            LOCKED_IN_THIS_JVM.remove(file.getCanonicalPath());
+        }
+    }
+
+    /**
+     * Writes a record.
+     *
+     * @param output  the output
+     * @param payload the payload
+     *
+     * @return the bytes written
+     *
+     * @throws IOException the iO exception
+     */
+    private static int writeRecord(DataOutputStream output, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        output.writeInt(payload.length);
+        output.writeInt((int) crc.getValue());
+        output.write(payload);
+        return payload.length + RECORD_HEADER_BYTES;
+    }
+
+    /**
+     * Continues the only segment, cutting off a torn record left at its end by a crash, since records appended
+     * after it would never be replayed. Only the owner writes numbered segments, so nobody else is appending.
+     *
+     * @param segment     the segment
+     * @param intactBytes the length of its intact records
+     *
+     * @throws IOException the iO exception
+     */
+    private void reopen(File segment, long intactBytes) throws IOException {
+        if (segment.length() > intactBytes) {
+            RandomAccessFile file = new RandomAccessFile(segment, "rw");
+            try {
+                file.setLength(intactBytes);
+            } finally {
+                file.close();
+            }
+        }
+        segmentOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment, true)));
+        segmentBytes = intactBytes;
+    }
+
+    /**
+     * Writes the baselines into one new segment, synced to disk and renamed into place before the segments it
+     * replaces are deleted. A crash in between leaves the old segments first in line, and they replay to the same
+     * baselines.
+     *
+     * @param segments the segments
+     *
+     * @throws IOException the iO exception
+     */
+    private void compact(List<File> segments) throws IOException {
+        long before = 0;
+        for (File segment : segments) {
+            before += segment.length();
+        }
+
+        File compacting = new File(directory, COMPACTING_FILE);
+        FileOutputStream stream = new FileOutputStream(compacting);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+            for (Map.Entry<CrumbKey, String> baseline : baselines.entrySet()) {
+                writeRecord(output, encode(baseline.getKey(), baseline.getValue()));
+            }
+            output.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        segmentNumber++;
+        File compacted = segmentFile(segmentNumber);
+        if (!compacting.renameTo(compacted)) {
+            throw new IOException("Could not rename " + compacting + " to " + compacted);
+        }
+
+        for (File segment : segments) {
+            if (!segment.delete()) {
+                logger.warn("Could not delete compacted crumb segment " + segment);
+            }
+        }
+        reopen(compacted, compacted.length());
+        logger.info("Compacted " + segments.size() + " crumb segments of " + before + " bytes into " + compacted + " of " + segmentBytes + " bytes");
+    }
+
+    /**
+     * Replays a segment into the index. A torn or corrupt record, such as one left at the end of a segment by a
+     * crash, ends the replay.
+     *
+     * @param segment the segment
+     *
+     * @return the length of the intact records
+     *
+     * @throws IOException the iO exception
+     */
+    private long loadSegment(File segment) throws IOException {
+        long segmentLength = segment.length();
+        long position = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)));
+        try {
+            while (position + RECORD_HEADER_BYTES <= segmentLength) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 0 || length > segmentLength - position - RECORD_HEADER_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                CrumbKey key;
+                String value;
+                try {
+                    key = new CrumbKey(readString(record), readString(record), readString(record),
+                            readString(record), readString(record), readString(record));
+                    value = readString(record);
+                } catch (IOException e) {
+                    break;
+                }
+                if (!baselines.containsKey(key)) {
+                    baselines.put(key, value);
+                }
+                position += RECORD_HEADER_BYTES + length;
+            }
+        } finally {
+            input.close();
+        }
+
+        if (position < segmentLength) {
+            logger.warn("Ignoring " + (segmentLength - position) + " bytes of torn or corrupt crumb records at the end of " + segment);
+        }
+        return position;
+    }
+
+    /**
+     * Encode.
+     *
+     * @param key   the key
+     * @param value the value
+     *
+     * @return the byte [ ]
+     *
+     * @throws IOException the iO exception
+     */
+    private byte[] encode(CrumbKey key, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(bytes);
+        writeString(record, key.getBrowser());
+        writeString(record, key.getTestName());
+        writeString(record, key.getTestState());
+        writeString(record, key.getViewport());
+        writeString(record, key.getXpathHash());
+        writeString(record, key.getAttribute());
+        writeString(record, value);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write string.
+     *
+     * @param output the output
+     * @param value  the value
+     *
+     * @throws IOException the iO exception
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read string.
+     *
+     * @param input the input, over a single record so that the bytes available are the bytes left
+     *
+     * @return the string
+     *
+     * @throws IOException the iO exception
+     */
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length < 0 || length > input.available()) {
+            throw new IOException("Corrupt crumb record, string of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    /**
+     * Segment file.
+     *
+     * @param number the number
+     *
+     * @return the file
+     */
+    private File segmentFile(int number) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%06d", number) + SEGMENT_SUFFIX);
+    }
+}
@@ -0,0 +1,92 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Migrates a legacy crumbdb/&lt;browser&gt;/&lt;test&gt;/&lt;state&gt;/&lt;WxH&gt;/&lt;md5(xpath)&gt;/&lt;attribute&gt;.txt tree into a
+ * {@link CrumbStore}. Every line of every attribute file is appended in order, so the first line stays the
+ * baseline.
+ * <p/>
+ * Usage: CrumbStoreMigration &lt;crumbdb dir&gt; &lt;crumb store dir&gt;
+ * User: Atish Narlawar
+ */
+public final class CrumbStoreMigration {
+
+    /**
+     * The segment size used while migrating.
+     */
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Instantiates a new Crumb store migration.
+     */
+    private CrumbStoreMigration() {
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     *
+     * @throws IOException the iO exception
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CrumbStoreMigration <crumbdb dir> <crumb store dir>");
+            System.exit(2);
+        }
+
+        CrumbStore crumbStore = new CrumbStore(args[1], SEGMENT_BYTES);
+        crumbStore.afterPropertiesSet();
+        try {
+            int migrated = migrate(new File(args[0]), crumbStore);
+            System.out.println("Migrated " + migrated + " crumbs from " + args[0] + " to " + args[1]);
+        } finally {
+            crumbStore.destroy();
+        }
+    }
+
+    /**
+     * Migrates every attribute file below the legacy root.
+     *
+     * @param legacyRoot the legacy root
+     * @param crumbStore the crumb store
+     *
+     * @return the number of values migrated
+     *
+     * @throws IOException the iO exception
+     */
+    public static int migrate(File legacyRoot, CrumbStore crumbStore) throws IOException {
+        List<File> attributeFiles = new ArrayList<File>(FileUtils.listFiles(legacyRoot, new String[]{"txt"}, true));
+        Collections.sort(attributeFiles);
+
+        int migrated = 0;
+        for (File attributeFile : attributeFiles) {
+            String relativePath = legacyRoot.toURI().relativize(attributeFile.toURI()).getPath();
+            String[] parts = StringUtils.split(relativePath, '/');
+            if (parts.length != 6) {
+                System.err.println("Skipping " + attributeFile + ", not in <browser>/<test>/<state>/<WxH>/<md5>/<attribute>.txt layout");
+                continue;
+            }
+
+            CrumbKey key = new CrumbKey(parts[0], parts[1], parts[2], parts[3], parts[4], StringUtils.removeEnd(parts[5], ".txt"));
+            Collection<String> lines = Files.readLines(attributeFile, Charsets.UTF_8);
+            for (String line : lines) {
+                crumbStore.record(key, line);
+                migrated++;
+            }
+        }
+        crumbStore.flush();
+        return migrated;
+    }
+}
@@ -0,0 +1,258 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.PrefixFileFilter;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Records crumbs in a {@link CrumbStore} in a temporary directory and opens it again.
+ * User: Atish Narlawar
+ */
+public class CrumbStoreTest {
+
+    /**
+     * The Directory.
+     */
+    private File directory;
+
+    /**
+     * Creates the directory.
+     */
+    @BeforeMethod
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    /**
+     * Deletes the directory.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void deleteDirectory() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    /**
+     * The first value of a key stays its baseline across runs, and runs share one segment.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void keepsTheFirstValueAcrossRuns() throws IOException {
+        CrumbStore store = open(1024 * 1024);
+        assertNull(store.record(key("alt"), "first"));
+        assertEquals(store.record(key("alt"), "second"), "first");
+        store.destroy();
+
+        store = open(1024 * 1024);
+        assertEquals(store.record(key("alt"), "third"), "first");
+        assertNull(store.record(key("title"), "new"));
+        store.destroy();
+
+        store = open(1024 * 1024);
+        assertEquals(store.getBaseline(key("title")), "new");
+        store.destroy();
+        assertEquals(segments().length, 1);
+    }
+
+    /**
+     * A torn record at the end is dropped, and records appended after it are replayed.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void cutsOffATornRecord() throws IOException {
+        CrumbStore store = open(1024 * 1024);
+        store.record(key("alt"), "first");
+        store.destroy();
+        File segment = segments()[0];
+        long intactBytes = segment.length();
+        FileUtils.writeByteArrayToFile(segment, new byte[]{0, 0, 0, 40, 1, 2}, true);
+
+        store = open(1024 * 1024);
+        assertEquals(segment.length(), intactBytes);
+        store.record(key("title"), "after");
+        store.destroy();
+
+        store = open(1024 * 1024);
+        assertEquals(store.getBaseline(key("alt")), "first");
+        assertEquals(store.getBaseline(key("title")), "after");
+        store.destroy();
+    }
+
+    /**
+     * Lengths that are negative or run past the segment end the replay instead of allocating them.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void stopsAtImpossibleLengths() throws IOException {
+        CrumbStore store = open(1024 * 1024);
+        store.record(key("alt"), "first");
+        store.destroy();
+        File segment = segments()[0];
+
+        for (int length : new int[]{-1, Integer.MAX_VALUE}) {
+            DataOutputStream output = new DataOutputStream(new FileOutputStream(segment, true));
+            try {
+                output.writeInt(length);
+                output.writeInt(0);
+                output.write(new byte[16]);
+            } finally {
+                output.close();
+            }
+
+            store = open(1024 * 1024);
+            assertEquals(store.getBaseline(key("alt")), "first");
+            store.destroy();
+        }
+    }
+
+    /**
+     * Observations spread over several segments are compacted into one segment of baselines.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void compactsIntoTheBaselines() throws IOException {
+        CrumbStore store = open(256);
+        for (int i = 0; i < 50; i++) {
+            store.record(key("alt"), "value " + i);
+            store.record(key("title"), "title " + i);
+        }
+        store.destroy();
+        assertTrue(segments().length > 1);
+
+        store = open(256);
+        assertEquals(segments().length, 1);
+        assertEquals(store.record(key("alt"), "again"), "value 0");
+        store.destroy();
+
+        store = open(256);
+        assertEquals(store.getBaseline(key("alt")), "value 0");
+        assertEquals(store.getBaseline(key("title")), "title 0");
+        store.destroy();
+    }
+
+    /**
+     * A second store on the directory reads the owner's baselines and writes a private segment, which the next
+     * owner folds in.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void sharesTheDirectoryWithASecondStore() throws IOException {
+        CrumbStore owner = open(1024 * 1024);
+        owner.record(key("alt"), "owner");
+        owner.flush();
+
+        CrumbStore second = open(1024 * 1024);
+        assertTrue(owner.isOwner());
+        assertFalse(second.isOwner());
+        assertEquals(second.record(key("alt"), "second"), "owner");
+        assertNull(second.record(key("title"), "second"));
+        owner.record(key("src"), "owner");
+
+        CrumbStore third = open(1024 * 1024);
+        assertFalse(third.isOwner());
+        third.destroy();
+        assertEquals(segments().length, 1);
+
+        second.destroy();
+        owner.destroy();
+        assertEquals(directory.list(new SuffixFileFilter(".dat")).length, 2);
+
+        CrumbStore next = open(1024 * 1024);
+        assertTrue(next.isOwner());
+        assertEquals(next.getBaseline(key("alt")), "owner");
+        assertEquals(next.getBaseline(key("title")), "second");
+        assertEquals(next.getBaseline(key("src")), "owner");
+        next.destroy();
+        assertEquals(directory.list(new SuffixFileFilter(".dat")).length, 1);
+    }
+
+    /**
+     * Another process records into a directory this one owns without disturbing it.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void sharesTheDirectoryWithAnotherProcess() throws Exception {
+        CrumbStore owner = open(1024 * 1024);
+        owner.record(key("alt"), "owner");
+
+        File legacy = new File(directory.getParentFile(), directory.getName() + "-legacy");
+        File log = new File(directory.getParentFile(), directory.getName() + ".log");
+        try {
+            FileUtils.writeStringToFile(new File(legacy, "firefox/home/default/800x600/0123abcd/title.txt"), "other process\n");
+            Process other = ForkedJvm.start(CrumbStoreMigration.class, Collections.<String, String>emptyMap(),
+                    Arrays.asList(legacy.getPath(), directory.getPath()), log);
+            assertEquals(other.waitFor(), 0, FileUtils.readFileToString(log));
+
+            owner.record(key("src"), "owner");
+            owner.destroy();
+
+            CrumbStore next = open(1024 * 1024);
+            assertEquals(next.getBaseline(key("alt")), "owner");
+            assertEquals(next.getBaseline(key("src")), "owner");
+            assertEquals(next.getBaseline(key("title")), "other process");
+            next.destroy();
+        } finally {
+            FileUtils.deleteDirectory(legacy);
+            FileUtils.deleteQuietly(log);
+        }
+    }
+
+    /**
+     * The numbered segments.
+     *
+     * @return the files
+     */
+    private File[] segments() {
+        return directory.listFiles((FilenameFilter) new PrefixFileFilter("segment-"));
+    }
+
+    /**
+     * Opens the store.
+     *
+     * @param maxSegmentBytes the max segment bytes
+     *
+     * @return the crumb store
+     *
+     * @throws IOException the iO exception
+     */
+    private CrumbStore open(long maxSegmentBytes) throws IOException {
+        CrumbStore store = new CrumbStore(directory.getPath(), maxSegmentBytes);
+        store.afterPropertiesSet();
+        return store;
+    }
+
+    /**
+     * Key of an attribute of the home page logo.
+     *
+     * @param attribute the attribute
+     *
+     * @return the crumb key
+     */
+    private static CrumbKey key(String attribute) {
+        return new CrumbKey("firefox", "home", "default", "800x600", "0123abcd", attribute);
+    }
+}
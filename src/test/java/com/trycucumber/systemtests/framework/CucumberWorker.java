@@ -0,0 +1,164 @@
+package com.trycucumber.systemtests.framework;
+
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.Runtime;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.RuntimeOptionsFactory;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.io.ResourceLoader;
+import cucumber.runtime.io.ResourceLoaderClassFinder;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import org.testng.log4testng.Logger;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One Cucumber runtime with its own glue, formatters and reporters, confined to the thread that runs its features.
+ * Cucumber's Spring object factory and glue scope are JVM wide, so only one worker may run features in a JVM at a
+ * time; parallel runs start each worker in a JVM of its own through {@link #main(String[])}.
+ * User: Atish Narlawar
+ */
+public class CucumberWorker {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(CucumberWorker.class);
+
+    /**
+     * The Runtime.
+     */
+    private final Runtime runtime;
+
+    /**
+     * The Formatter.
+     */
+    private final Formatter formatter;
+
+    /**
+     * The Reporter.
+     */
+    private final Reporter reporter;
+
+    /**
+     * Instantiates a new Cucumber worker.
+     *
+     * @param classLoader the class loader
+     * @param glue        the glue paths
+     * @param formats     the formats, in --format syntax
+     */
+    public CucumberWorker(ClassLoader classLoader, List<String> glue, List<String> formats) {
+        this(classLoader, glue, formats, Collections.<Formatter>emptyList());
+    }
+
+    /**
+     * Instantiates a new Cucumber worker with plugin instances next to the formats, for plugins that report
+     * to a caller supplied object rather than to a file.
+     *
+     * @param classLoader the class loader
+     * @param glue        the glue paths
+     * @param formats     the formats, in --format syntax
+     * @param plugins     the plugins, formatters that may also be reporters
+     */
+    public CucumberWorker(ClassLoader classLoader, List<String> glue, List<String> formats, List<Formatter> plugins) {
+        List<String> args = new ArrayList<String>();
+        for (String gluePath : glue) {
+            args.add("--glue");
+            args.add(gluePath);
+        }
+        for (String format : formats) {
+            args.add("--format");
+            args.add(format);
+        }
+
+        RuntimeOptions runtimeOptions = new RuntimeOptions(args);
+        for (Formatter plugin : plugins) {
+            runtimeOptions.addFormatter(plugin);
+        }
+        ResourceLoader resourceLoader = new MultiLoader(classLoader);
+
+        this.runtime = new Runtime(resourceLoader, new ResourceLoaderClassFinder(resourceLoader, classLoader), classLoader, runtimeOptions);
+        this.formatter = runtimeOptions.formatter(classLoader);
+        this.reporter = runtimeOptions.reporter(classLoader);
+    }
+
+    /**
+     * Runs the share of a forked worker: every feature whose index modulo the worker count is the worker index.
+     * Exits with 1 when any scenario failed.
+     *
+     * @param args the runner class, the worker index, the worker count and the report name, without extension
+     *
+     * @throws ClassNotFoundException the class not found exception
+     */
+    public static void main(String[] args) throws ClassNotFoundException {
+        Class<?> runnerClass = Class.forName(args[0]);
+        int workerIndex = Integer.parseInt(args[1]);
+        int workerCount = Integer.parseInt(args[2]);
+        String reportName = args[3];
+
+        ClassLoader classLoader = runnerClass.getClassLoader();
+        RuntimeOptions runtimeOptions = runtimeOptions(runnerClass);
+        List<CucumberFeature> features = runtimeOptions.cucumberFeatures(new MultiLoader(classLoader));
+
+        CucumberWorker worker = new CucumberWorker(classLoader, runtimeOptions.getGlue(),
+                Arrays.asList("html:" + reportName + "-html", "json:" + reportName + ".json", StepTracker.class.getName()));
+        for (int i = workerIndex; i < features.size(); i += workerCount) {
+            worker.run(features.get(i));
+        }
+
+        List<Throwable> errors = worker.finish();
+        for (Throwable error : errors) {
+            logger.error("Scenario failed", error);
+        }
+        System.exit(errors.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Gets the runtime options of a runner class's {@link CucumberOptions}.
+     *
+     * @param runnerClass the runner class
+     *
+     * @return the runtime options
+     */
+    @SuppressWarnings("unchecked")
+    public static RuntimeOptions runtimeOptions(Class<?> runnerClass) {
+        return new RuntimeOptionsFactory(runnerClass, (Class<? extends Annotation>[]) new Class<?>[]{CucumberOptions.class}).create();
+    }
+
+    /**
+     * Runs every scenario of the feature.
+     *
+     * @param feature the feature
+     */
+    public void run(CucumberFeature feature) {
+        feature.run(formatter, reporter, runtime);
+    }
+
+    /**
+     * Takes the errors collected since the last call, for workers that run features over and over.
+     *
+     * @return the errors
+     */
+    public List<Throwable> drainErrors() {
+        List<Throwable> errors = new ArrayList<Throwable>(runtime.getErrors());
+        runtime.getErrors().clear();
+        return errors;
+    }
+
+    /**
+     * Closes the formatters and returns the errors collected by this worker.
+     *
+     * @return the errors
+     */
+    public List<Throwable> finish() {
+        formatter.done();
+        formatter.close();
+        return runtime.getErrors();
+    }
+}
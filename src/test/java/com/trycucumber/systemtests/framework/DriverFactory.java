@@ -2,6 +2,7 @@ package com.trycucumber.systemtests.framework;
 
 import com.opera.core.systems.OperaDriver;
 import org.apache.commons.lang3.StringUtils;
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.firefox.FirefoxDriver;
@@ -9,13 +10,17 @@ import org.openqa.selenium.firefox.FirefoxProfile;
 import org.openqa.selenium.htmlunit.HtmlUnitDriver;
 import org.openqa.selenium.ie.InternetExplorerDriver;
 import org.openqa.selenium.phantomjs.PhantomJSDriver;
+import org.openqa.selenium.remote.CapabilityType;
 import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.safari.SafariDriver;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
 
 import java.net.URL;
 import java.util.concurrent.TimeUnit;
@@ -28,7 +33,22 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 
 @Component
-public class DriverFactory implements FactoryBean<WebDriver> {
+public class DriverFactory implements FactoryBean<WebDriver>, InitializingBean, DisposableBean {
+
+    /**
+     * The implicit wait every session starts with, kept short as SeleniumAPI waits for elements explicitly.
+     */
+    public static final int DEFAULT_IMPLICIT_WAIT_SECONDS = 2;
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(DriverFactory.class);
+
+    /**
+     * The page load strategy capability.
+     */
+    private static final String PAGE_LOAD_STRATEGY = "pageLoadStrategy";
 
     /**
      * The Server url.
@@ -54,6 +74,53 @@ public class DriverFactory implements FactoryBean<WebDriver> {
     @Value("${saucelabs.key}")
     private String saucelabsKey;
 
+    /**
+     * The Pool max sessions.
+     */
+    @Value("${driver.pool.max.sessions}")
+    private int poolMaxSessions;
+
+    /**
+     * The Pool max uses per session.
+     */
+    @Value("${driver.pool.max.uses}")
+    private int poolMaxUses;
+
+    /**
+     * The Pool idle timeout seconds.
+     */
+    @Value("${driver.pool.idle.timeout.seconds}")
+    private long poolIdleTimeoutSeconds;
+
+    /**
+     * The Pool checkout timeout seconds.
+     */
+    @Value("${driver.pool.checkout.timeout.seconds}")
+    private long poolCheckoutTimeoutSeconds;
+
+    /**
+     * The page load strategy asked of drivers that support one: normal, eager or none. Empty leaves the default.
+     */
+    @Value("${driver.page.load.strategy}")
+    private String pageLoadStrategy;
+
+    /**
+     * The Browser proxy.
+     */
+    @Autowired
+    private BrowserProxy browserProxy;
+
+    /**
+     * The Command metrics.
+     */
+    @Autowired
+    private CommandMetrics commandMetrics;
+
+    /**
+     * The Driver pool.
+     */
+    private DriverPool driverPool;
+
     /**
      * The enum Browser type.
      */
@@ -148,72 +215,289 @@ public class DriverFactory implements FactoryBean<WebDriver> {
 
 
     /**
-     * Gets object.
+     * Gets object. Every call checks out a session from the pool; hand it back with {@link #release(WebDriver)}.
      *
      * @return the object
      *
      * @throws Exception the exception
      */
     public WebDriver getObject() throws Exception {
+        return instrument(driverPool.checkout(new SessionKey(browserType.getBrowserTypeString(), getKeyCapabilities())));
+    }
+
+    /**
+     * Checks out a session whose window is already set to the given size. Sessions are pooled per size, so a
+     * viewport used before is handed back without resizing.
+     *
+     * @param windowSize the window size
+     *
+     * @return the web driver
+     *
+     * @throws Exception the exception
+     */
+    public WebDriver getObject(Dimension windowSize) throws Exception {
+        return instrument(driverPool.checkout(new SessionKey(browserType.getBrowserTypeString(), getKeyCapabilities(), windowSize)));
+    }
+
+    /**
+     * Starts a new session outside the pool, with an empty profile and so a cold cache. It is quit when handed to
+     * {@link #release(WebDriver)}. It goes through the browser proxy's pass-through port, so neither the proxy's
+     * asset cache nor its blocked domains hide what a first-time visitor would download.
+     *
+     * @return the web driver
+     *
+     * @throws Exception the exception
+     */
+    public WebDriver getFreshObject() throws Exception {
+        DesiredCapabilities capabilities = getDesiredCapabilities();
+        if (capabilities.getCapability(CapabilityType.PROXY) != null) {
+            capabilities.setCapability(CapabilityType.PROXY, browserProxy.getPassThroughProxy());
+        }
+        WebDriver webDriver = createWebDriver(capabilities);
+        initWebDriver(webDriver);
+        return instrument(webDriver);
+    }
+
+    /**
+     * Gets the sessions the pool can still hand out without waiting for one to come back.
+     *
+     * @return the available sessions
+     */
+    public int getAvailableSessions() {
+        return driverPool.getAvailableSessions();
+    }
+
+    /**
+     * Returns a session obtained from {@link #getObject()} to the pool.
+     *
+     * @param webDriver the web driver
+     */
+    public void release(WebDriver webDriver) {
+        driverPool.release(InstrumentedDriver.unwrap(webDriver));
+    }
+
+    /**
+     * Notes a url a session obtained from {@link #getObject()} opens, so that the pool clears its origin's storage
+     * when the session comes back.
+     *
+     * @param webDriver the web driver
+     * @param url       the url
+     */
+    public void recordVisit(WebDriver webDriver, String url) {
+        driverPool.recordVisit(InstrumentedDriver.unwrap(webDriver), url);
+    }
+
+    /**
+     * Quits a session obtained from {@link #getObject()} instead of returning it to the pool.
+     *
+     * @param webDriver the web driver
+     */
+    public void invalidate(WebDriver webDriver) {
+        driverPool.invalidate(InstrumentedDriver.unwrap(webDriver));
+    }
+
+    /**
+     * Wraps a checked out session to time its commands, when command metrics are enabled.
+     *
+     * @param webDriver the web driver
+     *
+     * @return the web driver
+     */
+    private WebDriver instrument(WebDriver webDriver) {
+        return commandMetrics.isEnabled() ? InstrumentedDriver.wrap(webDriver, commandMetrics) : webDriver;
+    }
+
+    /**
+     * After properties set.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (browserProxy.isRunning() && isRemote() && !browserProxy.isRoutable()) {
+            logger.warn("Browser proxy at " + browserProxy.getAddress() + " cannot be reached by " + browserType.getBrowserTypeString()
+                    + " browsers on other machines, so they go without it; set browser.proxy.host to an address they can reach");
+        }
+        driverPool = new DriverPool(new DriverPool.SessionLifecycle() {
+            @Override
+            public WebDriver create(SessionKey key) throws Exception {
+                WebDriver webDriver = createWebDriver(getDesiredCapabilities());
+                if (key.getWindowSize() != null) {
+                    try {
+                        webDriver.manage().window().setSize(key.getWindowSize());
+                    } catch (RuntimeException e) {
+                        webDriver.quit();
+                        throw e;
+                    }
+                }
+                return webDriver;
+            }
+
+            @Override
+            public void prepare(WebDriver webDriver) {
+                initWebDriver(webDriver);
+            }
+        }, poolMaxSessions, poolMaxUses, TimeUnit.SECONDS.toMillis(poolIdleTimeoutSeconds), TimeUnit.SECONDS.toMillis(poolCheckoutTimeoutSeconds));
+    }
+
+    /**
+     * Destroy.
+     */
+    @Override
+    public void destroy() {
+        driverPool.shutdown();
+    }
+
+    /**
+     * Gets desired capabilities.
+     *
+     * @return the desired capabilities
+     */
+    private DesiredCapabilities getDesiredCapabilities() {
 
-        final WebDriver webDriver;
         DesiredCapabilities capabilities;
 
         switch (browserType) {
             case FIREFOX:
-                FirefoxProfile profile = new FirefoxProfile();
-                profile.setAssumeUntrustedCertificateIssuer(false);
-                webDriver = new FirefoxDriver(profile);
+            case RWD_FIREFOX:
+                capabilities = DesiredCapabilities.firefox();
+                break;
+            case RWD_IE8_VM:
+                capabilities = DesiredCapabilities.firefox();
+                //capabilities.setCapability("webdriver.ie.driver", "C:\\selenium\\IEDriverServer.exe");
                 break;
             case HEADLESS:
-                webDriver = new HtmlUnitDriver();
+                capabilities = DesiredCapabilities.htmlUnit();
+                // SeleniumAPI does its page queries in scripts
+                capabilities.setJavascriptEnabled(true);
                 break;
             case IE:
-                webDriver = new InternetExplorerDriver();
+                capabilities = DesiredCapabilities.internetExplorer();
                 break;
             case OPERA:
-                webDriver = new OperaDriver();
+                capabilities = DesiredCapabilities.opera();
                 break;
             case SAFARI:
-                webDriver = new SafariDriver();
+                capabilities = DesiredCapabilities.safari();
                 break;
             case CHROME:
-                webDriver = new ChromeDriver();
+                capabilities = DesiredCapabilities.chrome();
                 break;
             case PHANTOMJS:
                 //TODO: KER figure out how to configure this correct
                 capabilities = DesiredCapabilities.phantomjs();
-                webDriver = new PhantomJSDriver(capabilities);
                 break;
             case RWD_CHROME:
                 capabilities = DesiredCapabilities.chrome();
                 capabilities.setCapability("webdriver.chrome.driver", "~/Documents/chromedriver");
-
-                webDriver = new RemoteWebDriver(new URL("http://127.0.0.1:4444/wd/hub"), capabilities);
-
                 break;
             case RWD_PHANTOMJS:
                 capabilities = DesiredCapabilities.phantomjs();
                 capabilities.setCapability("phantomjs.binary.path", "/usr/bin/phantomjs");
-
-                webDriver = new RemoteWebDriver(new URL("http://127.0.0.1:4444/wd/hub"), capabilities);
                 break;
-            case RWD_FIREFOX:
+            case SAUCELABS:
                 capabilities = DesiredCapabilities.firefox();
+                capabilities.setCapability("name", "Lexus Selenium");
+                break;
+
+            default:
+                throw new IllegalArgumentException("Invalid browser type set in class injection " + browserType.getBrowserTypeString());
+        }
+
+        if (StringUtils.isNotEmpty(pageLoadStrategy)) {
+            capabilities.setCapability(PAGE_LOAD_STRATEGY, pageLoadStrategy);
+        }
+
+        if (browserProxy.isRunning() && (!isRemote() || browserProxy.isRoutable())) {
+            capabilities.setCapability(CapabilityType.PROXY, browserProxy.getSeleniumProxy());
+        }
+
+        return capabilities;
+    }
+
+    /**
+     * Gets the capabilities that identify interchangeable sessions, with the proxy as its address.
+     *
+     * @return the key capabilities
+     */
+    private DesiredCapabilities getKeyCapabilities() {
+        DesiredCapabilities capabilities = getDesiredCapabilities();
+        if (capabilities.getCapability(CapabilityType.PROXY) != null) {
+            capabilities.setCapability(CapabilityType.PROXY, browserProxy.getAddress());
+        }
+        return capabilities;
+    }
+
+    /**
+     * Is the browser on another machine, such as a grid node or Sauce Labs, which cannot reach a loopback address
+     * of this one.
+     *
+     * @return the boolean
+     */
+    private boolean isRemote() {
+        switch (browserType) {
+            case RWD_CHROME:
+            case RWD_PHANTOMJS:
+            case RWD_FIREFOX:
+            case RWD_IE8_VM:
+            case SAUCELABS:
+                return true;
+            default:
+                return false;
+        }
+    }
 
+    /**
+     * Starts a new browser session.
+     *
+     * @param capabilities the capabilities
+     *
+     * @return the web driver
+     *
+     * @throws Exception the exception
+     */
+    private WebDriver createWebDriver(DesiredCapabilities capabilities) throws Exception {
+
+        final WebDriver webDriver;
+
+        switch (browserType) {
+            case FIREFOX:
+                FirefoxProfile profile = new FirefoxProfile();
+                profile.setAssumeUntrustedCertificateIssuer(false);
+                if (StringUtils.isNotEmpty(pageLoadStrategy) && !"normal".equals(pageLoadStrategy)) {
+                    // This FirefoxDriver only knows its own preference for not waiting on the load event.
+                    profile.setPreference("webdriver.load.strategy", "unstable");
+                }
+                capabilities.setCapability(FirefoxDriver.PROFILE, profile);
+                webDriver = new FirefoxDriver(capabilities);
+                break;
+            case HEADLESS:
+                webDriver = new HtmlUnitDriver(capabilities);
+                break;
+            case IE:
+                webDriver = new InternetExplorerDriver(capabilities);
+                break;
+            case OPERA:
+                webDriver = new OperaDriver(capabilities);
+                break;
+            case SAFARI:
+                webDriver = new SafariDriver(capabilities);
+                break;
+            case CHROME:
+                webDriver = new ChromeDriver(capabilities);
+                break;
+            case PHANTOMJS:
+                webDriver = new PhantomJSDriver(capabilities);
+                break;
+            case RWD_CHROME:
+            case RWD_PHANTOMJS:
+            case RWD_FIREFOX:
                 webDriver = new RemoteWebDriver(new URL("http://127.0.0.1:4444/wd/hub"), capabilities);
                 break;
 
             case RWD_IE8_VM:
-                capabilities = DesiredCapabilities.firefox();
-                //capabilities.setCapability("webdriver.ie.driver", "C:\\selenium\\IEDriverServer.exe");
-
                 webDriver = new RemoteWebDriver(new URL("http://10.10.22.113:4444/wd/hub"), capabilities);
                 break;
 
             case SAUCELABS:
-                capabilities = DesiredCapabilities.firefox();
-                capabilities.setCapability("name", "Lexus Selenium");
                 webDriver = new RemoteWebDriver(
                         new URL("http://" + saucelabsUsername + ":" + saucelabsKey + "@ondemand.saucelabs.com:80/wd/hub"),
                         capabilities);
@@ -223,7 +507,6 @@ public class DriverFactory implements FactoryBean<WebDriver> {
                 throw new IllegalArgumentException("Invalid browser type set in class injection " + browserType.getBrowserTypeString());
         }
 
-        initWebDriver(webDriver);
         return webDriver;
     }
 
@@ -233,7 +516,7 @@ public class DriverFactory implements FactoryBean<WebDriver> {
      * @param webDriver the web driver
      */
     private void initWebDriver(WebDriver webDriver) {
-        webDriver.manage().timeouts().implicitlyWait(30, TimeUnit.SECONDS);
+        webDriver.manage().timeouts().implicitlyWait(DEFAULT_IMPLICIT_WAIT_SECONDS, TimeUnit.SECONDS);
     }
 
     /**
@@ -246,7 +529,8 @@ public class DriverFactory implements FactoryBean<WebDriver> {
     }
 
     /**
-     * Is singleton.
+     * Is singleton. Not a singleton because each caller leases its own session from the pool; sessions
+     * themselves outlive the scenario that used them.
      *
      * @return the boolean
      */
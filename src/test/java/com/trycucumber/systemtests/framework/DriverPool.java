@@ -0,0 +1,631 @@
+package com.trycucumber.systemtests.framework;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.testng.log4testng.Logger;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bounded pool of live WebDriver sessions. Sessions are checked out per scenario, reset and health checked
+ * when returned, and evicted once they have been idle too long or served too many checkouts.
+ * <p/>
+ * Cookies, localStorage and sessionStorage belong to an origin, and WebDriver only reaches those of the page it is
+ * on. Callers note the urls they open with {@link #recordVisit(WebDriver, String)}; a returned session is taken to
+ * each of those origins and to the one it was left on, and has its storage and cookies cleared there. A session
+ * whose driver cannot run the script is quit instead of reused.
+ * User: Atish Narlawar
+ */
+public class DriverPool {
+
+    /**
+     * Creates and prepares the sessions held by the pool.
+     */
+    public interface SessionLifecycle {
+
+        /**
+         * Starts a new browser session for the key.
+         *
+         * @param key the session key
+         *
+         * @return the web driver
+         *
+         * @throws Exception the exception
+         */
+        WebDriver create(SessionKey key) throws Exception;
+
+        /**
+         * Applies the per-session defaults, after creation and after every reset.
+         *
+         * @param webDriver the web driver
+         */
+        void prepare(WebDriver webDriver);
+    }
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(DriverPool.class);
+
+    /**
+     * The page every returned session is parked on.
+     */
+    private static final String BLANK_PAGE = "about:blank";
+
+    /**
+     * The page of an origin opened to clear its storage: small, script free, and served on the origin even when
+     * missing.
+     */
+    private static final String CLEARING_PATH = "/robots.txt";
+
+    /**
+     * Clears the storage of the current page's origin.
+     */
+    private static final String CLEAR_STORAGE_SCRIPT = "localStorage.clear();sessionStorage.clear();";
+
+    /**
+     * The Session lifecycle.
+     */
+    private final SessionLifecycle lifecycle;
+
+    /**
+     * The Max sessions, idle and checked out together.
+     */
+    private final int maxSessions;
+
+    /**
+     * The Max uses before a session is retired.
+     */
+    private final int maxUses;
+
+    /**
+     * The Idle timeout millis.
+     */
+    private final long idleTimeoutMillis;
+
+    /**
+     * The Checkout timeout millis.
+     */
+    private final long checkoutTimeoutMillis;
+
+    /**
+     * The Idle sessions, most recently returned first.
+     */
+    private final Map<SessionKey, Deque<PooledSession>> idleSessions = new HashMap<SessionKey, Deque<PooledSession>>();
+
+    /**
+     * The Checked out sessions.
+     */
+    private final Map<WebDriver, PooledSession> checkedOutSessions = new IdentityHashMap<WebDriver, PooledSession>();
+
+    /**
+     * The Live sessions count.
+     */
+    private int liveSessions;
+
+    /**
+     * The Shut down flag.
+     */
+    private boolean shutDown;
+
+    /**
+     * Instantiates a new Driver pool.
+     *
+     * @param lifecycle             the session lifecycle
+     * @param maxSessions           the max sessions
+     * @param maxUses               the max uses
+     * @param idleTimeoutMillis     the idle timeout millis
+     * @param checkoutTimeoutMillis the checkout timeout millis
+     */
+    public DriverPool(SessionLifecycle lifecycle, int maxSessions, int maxUses, long idleTimeoutMillis, long checkoutTimeoutMillis) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("Driver pool needs at least one session, was " + maxSessions);
+        }
+        this.lifecycle = lifecycle;
+        this.maxSessions = maxSessions;
+        this.maxUses = maxUses;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+    }
+
+    /**
+     * Checks out a healthy session for the key, reusing an idle one when possible.
+     *
+     * @param key the session key
+     *
+     * @return the web driver
+     *
+     * @throws Exception the exception
+     */
+    public WebDriver checkout(SessionKey key) throws Exception {
+        long deadline = System.currentTimeMillis() + checkoutTimeoutMillis;
+
+        while (true) {
+            PooledSession candidate = null;
+            List<PooledSession> evicted = new ArrayList<PooledSession>();
+
+            synchronized (this) {
+                if (shutDown) {
+                    throw new IllegalStateException("Driver pool has been shut down");
+                }
+                collectExpired(evicted);
+
+                Deque<PooledSession> idle = idleSessions.get(key);
+                if (idle != null && !idle.isEmpty()) {
+                    candidate = idle.pop();
+                } else if (liveSessions < maxSessions || collectOldestIdle(evicted)) {
+                    liveSessions++;
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IllegalStateException("No WebDriver session available for " + key + " within " + checkoutTimeoutMillis + " ms");
+                    }
+                    wait(remaining);
+                    continue;
+                }
+            }
+
+            destroyAll(evicted);
+
+            if (candidate == null) {
+                return checkoutNew(key);
+            }
+            if (isHealthy(candidate)) {
+                return markCheckedOut(candidate);
+            }
+            logger.debug("Discarding unhealthy WebDriver session for " + key);
+            destroy(candidate);
+        }
+    }
+
+    /**
+     * Returns a session to the pool. Sessions the pool did not hand out are simply quit.
+     *
+     * @param webDriver the web driver
+     */
+    public void release(WebDriver webDriver) {
+        PooledSession session;
+        synchronized (this) {
+            session = checkedOutSessions.remove(webDriver);
+        }
+
+        if (session == null) {
+            quitQuietly(webDriver);
+            return;
+        }
+
+        if (session.getUses() >= maxUses || !reset(session)) {
+            destroy(session);
+            return;
+        }
+
+        synchronized (this) {
+            if (!shutDown) {
+                session.markIdle();
+                Deque<PooledSession> idle = idleSessions.get(session.getKey());
+                if (idle == null) {
+                    idle = new ArrayDeque<PooledSession>();
+                    idleSessions.put(session.getKey(), idle);
+                }
+                idle.push(session);
+                notifyAll();
+                return;
+            }
+        }
+        destroy(session);
+    }
+
+    /**
+     * Notes a url a checked out session opens, so that the storage of its origin is cleared when the session is
+     * returned. Urls that are not http or https, and sessions the pool did not hand out, are ignored.
+     *
+     * @param webDriver the web driver
+     * @param url       the url
+     */
+    public void recordVisit(WebDriver webDriver, String url) {
+        String origin = origin(url);
+        if (origin == null) {
+            return;
+        }
+        synchronized (this) {
+            PooledSession session = checkedOutSessions.get(webDriver);
+            if (session != null) {
+                session.getOrigins().add(origin);
+            }
+        }
+    }
+
+    /**
+     * Quits a checked out session instead of returning it, e.g. after the browser crashed.
+     *
+     * @param webDriver the web driver
+     */
+    public void invalidate(WebDriver webDriver) {
+        PooledSession session;
+        synchronized (this) {
+            session = checkedOutSessions.remove(webDriver);
+        }
+
+        if (session == null) {
+            quitQuietly(webDriver);
+        } else {
+            destroy(session);
+        }
+    }
+
+    /**
+     * Quits every idle session that exceeded the idle timeout.
+     */
+    public void evictExpired() {
+        List<PooledSession> evicted = new ArrayList<PooledSession>();
+        synchronized (this) {
+            collectExpired(evicted);
+        }
+        destroyAll(evicted);
+    }
+
+    /**
+     * Shuts the pool down and quits every session it holds.
+     */
+    public void shutdown() {
+        List<PooledSession> sessions = new ArrayList<PooledSession>();
+        synchronized (this) {
+            shutDown = true;
+            for (Deque<PooledSession> idle : idleSessions.values()) {
+                sessions.addAll(idle);
+            }
+            idleSessions.clear();
+            sessions.addAll(checkedOutSessions.values());
+            checkedOutSessions.clear();
+            notifyAll();
+        }
+        destroyAll(sessions);
+    }
+
+    /**
+     * Gets live sessions.
+     *
+     * @return the live sessions
+     */
+    public synchronized int getLiveSessions() {
+        return liveSessions;
+    }
+
+    /**
+     * Gets the sessions that can be checked out without waiting: the free slots and the idle sessions, which are
+     * reused or make way for a new one.
+     *
+     * @return the available sessions
+     */
+    public synchronized int getAvailableSessions() {
+        if (shutDown) {
+            return 0;
+        }
+        int available = maxSessions - liveSessions;
+        for (Deque<PooledSession> idle : idleSessions.values()) {
+            available += idle.size();
+        }
+        return available;
+    }
+
+    /**
+     * Creates a new session for a slot already reserved in liveSessions.
+     *
+     * @param key the session key
+     *
+     * @return the web driver
+     *
+     * @throws Exception the exception
+     */
+    private WebDriver checkoutNew(SessionKey key) throws Exception {
+        WebDriver webDriver;
+        try {
+            webDriver = lifecycle.create(key);
+            lifecycle.prepare(webDriver);
+        } catch (Exception e) {
+            releaseSlot();
+            throw e;
+        } catch (Error e) {
+            releaseSlot();
+            throw e;
+        }
+
+        logger.debug("Started new WebDriver session for " + key);
+        return markCheckedOut(new PooledSession(key, webDriver, readWindowSize(webDriver)));
+    }
+
+    /**
+     * Mark checked out.
+     *
+     * @param session the session
+     *
+     * @return the web driver
+     */
+    private WebDriver markCheckedOut(PooledSession session) {
+        session.markCheckedOut();
+        synchronized (this) {
+            checkedOutSessions.put(session.getDriver(), session);
+        }
+        return session.getDriver();
+    }
+
+    /**
+     * Brings a session back to a clean state: no cookies or storage on the origins it visited, blank page, original
+     * window size.
+     *
+     * @param session the session
+     *
+     * @return true when the session can be reused
+     */
+    private boolean reset(PooledSession session) {
+        WebDriver webDriver = session.getDriver();
+        try {
+            Set<String> origins = session.getOrigins();
+            String current = origin(webDriver.getCurrentUrl());
+            if (current != null) {
+                clearOrigin(webDriver);
+                origins.remove(current);
+            }
+            for (String origin : origins) {
+                webDriver.get(origin + CLEARING_PATH);
+                clearOrigin(webDriver);
+            }
+            origins.clear();
+            if (current == null) {
+                webDriver.manage().deleteAllCookies();
+            }
+            webDriver.get(BLANK_PAGE);
+            if (session.getWindowSize() != null) {
+                webDriver.manage().window().setSize(session.getWindowSize());
+            }
+            lifecycle.prepare(webDriver);
+            return true;
+        } catch (WebDriverException e) {
+            logger.debug("Could not reset WebDriver session for " + session.getKey() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the cookies and clears the localStorage and sessionStorage of the current page's origin.
+     *
+     * @param webDriver the web driver
+     */
+    private static void clearOrigin(WebDriver webDriver) {
+        if (!(webDriver instanceof JavascriptExecutor)) {
+            throw new WebDriverException("Cannot clear the storage of " + webDriver.getCurrentUrl() + " without JavaScript");
+        }
+        ((JavascriptExecutor) webDriver).executeScript(CLEAR_STORAGE_SCRIPT);
+        webDriver.manage().deleteAllCookies();
+    }
+
+    /**
+     * Gets the origin of an http or https url.
+     *
+     * @param url the url
+     *
+     * @return the scheme://host[:port], or null for other urls
+     */
+    static String origin(String url) {
+        URI uri;
+        try {
+            uri = url == null ? null : URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (uri == null || uri.getHost() == null || uri.getScheme() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        if (!"http".equals(scheme) && !"https".equals(scheme)) {
+            return null;
+        }
+        return scheme + "://" + uri.getHost().toLowerCase(Locale.ENGLISH) + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+    }
+
+    /**
+     * Is healthy.
+     *
+     * @param session the session
+     *
+     * @return the boolean
+     */
+    private boolean isHealthy(PooledSession session) {
+        try {
+            return session.getDriver().getWindowHandle() != null;
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Moves idle sessions past the idle timeout into the evicted list. Caller holds the lock.
+     *
+     * @param evicted the evicted sessions
+     */
+    private void collectExpired(List<PooledSession> evicted) {
+        long now = System.currentTimeMillis();
+        for (Deque<PooledSession> idle : idleSessions.values()) {
+            Iterator<PooledSession> idleIt = idle.iterator();
+            while (idleIt.hasNext()) {
+                PooledSession session = idleIt.next();
+                if (now - session.getIdleSince() > idleTimeoutMillis) {
+                    idleIt.remove();
+                    evicted.add(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the longest idle session of any key into the evicted list, freeing its slot. Caller holds the lock.
+     *
+     * @param evicted the evicted sessions
+     *
+     * @return true when a session was found
+     */
+    private boolean collectOldestIdle(List<PooledSession> evicted) {
+        Deque<PooledSession> oldestQueue = null;
+        for (Deque<PooledSession> idle : idleSessions.values()) {
+            if (!idle.isEmpty() && (oldestQueue == null || idle.peekLast().getIdleSince() < oldestQueue.peekLast().getIdleSince())) {
+                oldestQueue = idle;
+            }
+        }
+        if (oldestQueue == null) {
+            return false;
+        }
+        evicted.add(oldestQueue.pollLast());
+        return true;
+    }
+
+    /**
+     * Destroy all.
+     *
+     * @param sessions the sessions
+     */
+    private void destroyAll(List<PooledSession> sessions) {
+        for (PooledSession session : sessions) {
+            destroy(session);
+        }
+    }
+
+    /**
+     * Quits the session's browser and frees its slot.
+     *
+     * @param session the session
+     */
+    private void destroy(PooledSession session) {
+        quitQuietly(session.getDriver());
+        releaseSlot();
+    }
+
+    /**
+     * Release slot.
+     */
+    private synchronized void releaseSlot() {
+        liveSessions--;
+        notifyAll();
+    }
+
+    /**
+     * Quit quietly.
+     *
+     * @param webDriver the web driver
+     */
+    private void quitQuietly(WebDriver webDriver) {
+        try {
+            webDriver.quit();
+        } catch (WebDriverException e) {
+            logger.debug("WebDriver session was already gone: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read window size.
+     *
+     * @param webDriver the web driver
+     *
+     * @return the window size, or null when the driver cannot report it
+     */
+    private Dimension readWindowSize(WebDriver webDriver) {
+        try {
+            return webDriver.manage().window().getSize();
+        } catch (WebDriverException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A live session and its bookkeeping.
+     */
+    private static final class PooledSession {
+
+        /**
+         * The Key.
+         */
+        private final SessionKey key;
+
+        /**
+         * The Driver.
+         */
+        private final WebDriver driver;
+
+        /**
+         * The Window size at creation.
+         */
+        private final Dimension windowSize;
+
+        /**
+         * The origins visited since the session was checked out.
+         */
+        private final Set<String> origins = new LinkedHashSet<String>();
+
+        /**
+         * The Uses.
+         */
+        private int uses;
+
+        /**
+         * The Idle since.
+         */
+        private long idleSince;
+
+        /**
+         * Instantiates a new Pooled session.
+         *
+         * @param key        the key
+         * @param driver     the driver
+         * @param windowSize the window size
+         */
+        private PooledSession(SessionKey key, WebDriver driver, Dimension windowSize) {
+            this.key = key;
+            this.driver = driver;
+            this.windowSize = windowSize;
+        }
+
+        private SessionKey getKey() {
+            return key;
+        }
+
+        private WebDriver getDriver() {
+            return driver;
+        }
+
+        private Dimension getWindowSize() {
+            return windowSize;
+        }
+
+        private Set<String> getOrigins() {
+            return origins;
+        }
+
+        private int getUses() {
+            return uses;
+        }
+
+        private long getIdleSince() {
+            return idleSince;
+        }
+
+        private void markCheckedOut() {
+            uses++;
+        }
+
+        private void markIdle() {
+            idleSince = System.currentTimeMillis();
+        }
+    }
+}
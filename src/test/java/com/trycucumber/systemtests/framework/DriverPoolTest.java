@@ -0,0 +1,372 @@
+package com.trycucumber.systemtests.framework;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * Checks out and returns fake browser sessions through a {@link DriverPool}.
+ * User: Atish Narlawar
+ */
+public class DriverPoolTest {
+
+    /**
+     * The key of firefox sessions.
+     */
+    private static final SessionKey FIREFOX = new SessionKey("firefox", DesiredCapabilities.firefox());
+
+    /**
+     * The key of chrome sessions.
+     */
+    private static final SessionKey CHROME = new SessionKey("google-chrome", DesiredCapabilities.chrome());
+
+    /**
+     * The browsers created by the pool, in order.
+     */
+    private final List<FakeBrowser> browsers = new ArrayList<FakeBrowser>();
+
+    /**
+     * The Lifecycle, creating fake browsers.
+     */
+    private final DriverPool.SessionLifecycle lifecycle = new DriverPool.SessionLifecycle() {
+        @Override
+        public WebDriver create(SessionKey key) {
+            FakeBrowser browser = new FakeBrowser();
+            browsers.add(browser);
+            return browser.driver;
+        }
+
+        @Override
+        public void prepare(WebDriver webDriver) {
+        }
+    };
+
+    /**
+     * Forgets the browsers of the previous test.
+     */
+    @BeforeMethod
+    public void forgetBrowsers() {
+        browsers.clear();
+    }
+
+    /**
+     * A released session is reset and handed out again for the same key, and counts as available meanwhile.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void reusesReleasedSessions() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 2, 10, 60000, 1000);
+        assertEquals(pool.getAvailableSessions(), 2);
+
+        WebDriver first = pool.checkout(FIREFOX);
+        assertEquals(pool.getAvailableSessions(), 1);
+        pool.release(first);
+        assertEquals(pool.getAvailableSessions(), 2);
+        assertEquals(browsers.get(0).resets, 1);
+
+        assertSame(pool.checkout(FIREFOX), first);
+        assertEquals(browsers.size(), 1);
+        assertEquals(pool.getLiveSessions(), 1);
+    }
+
+    /**
+     * Storage and cookies of the origins a session opened, and of the page it was left on, do not survive into
+     * the next checkout.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void clearsTheOriginsASessionVisited() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 1, 10, 60000, 1000);
+        WebDriver driver = pool.checkout(FIREFOX);
+        FakeBrowser browser = browsers.get(0);
+        for (String url : new String[]{"http://site.test/login", "https://cdn.test:8443/app.js", "http://other.test/"}) {
+            if (!url.startsWith("http://other")) {
+                pool.recordVisit(driver, url);
+            }
+            driver.get(url);
+            browser.storage.add(DriverPool.origin(url));
+            browser.cookies.add(DriverPool.origin(url));
+        }
+        pool.release(driver);
+
+        assertSame(pool.checkout(FIREFOX), driver);
+        assertTrue(browser.storage.isEmpty(), browser.storage.toString());
+        assertTrue(browser.cookies.isEmpty(), browser.cookies.toString());
+        assertEquals(browser.url, "about:blank");
+    }
+
+    /**
+     * A session whose storage cannot be cleared is quit instead of handed out again.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void quitsSessionsThatCannotBeCleared() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 1, 10, 60000, 1000);
+        WebDriver driver = pool.checkout(FIREFOX);
+        browsers.get(0).scriptsFail = true;
+        driver.get("http://site.test/");
+        pool.release(driver);
+
+        assertTrue(browsers.get(0).quit);
+        assertEquals(pool.getLiveSessions(), 0);
+    }
+
+    /**
+     * When every slot is taken, an idle session of another key is quit to make way.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void replacesTheOldestIdleSessionWhenFull() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 1, 10, 60000, 1000);
+        pool.release(pool.checkout(FIREFOX));
+        assertEquals(pool.getAvailableSessions(), 1);
+
+        WebDriver chrome = pool.checkout(CHROME);
+        assertNotSame(chrome, browsers.get(0).driver);
+        assertTrue(browsers.get(0).quit);
+        assertEquals(pool.getLiveSessions(), 1);
+        assertEquals(pool.getAvailableSessions(), 0);
+    }
+
+    /**
+     * A session is quit once it has been used max uses times.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void retiresSessionsAfterMaxUses() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 1, 2, 60000, 1000);
+        pool.release(pool.checkout(FIREFOX));
+        pool.release(pool.checkout(FIREFOX));
+        assertTrue(browsers.get(0).quit);
+        assertEquals(pool.getLiveSessions(), 0);
+
+        pool.checkout(FIREFOX);
+        assertEquals(browsers.size(), 2);
+    }
+
+    /**
+     * Idle sessions whose browser died, or that cannot be reset, are quit instead of handed out.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void discardsDeadSessions() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 2, 10, 60000, 1000);
+        pool.release(pool.checkout(FIREFOX));
+        browsers.get(0).crashed = true;
+
+        WebDriver replacement = pool.checkout(FIREFOX);
+        assertTrue(browsers.get(0).quit);
+        assertSame(replacement, browsers.get(1).driver);
+
+        browsers.get(1).crashed = true;
+        pool.release(replacement);
+        assertTrue(browsers.get(1).quit);
+        assertEquals(pool.getLiveSessions(), 0);
+        assertEquals(pool.getAvailableSessions(), 2);
+    }
+
+    /**
+     * Idle sessions past the idle timeout are quit.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void evictsExpiredIdleSessions() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 2, 10, 0, 1000);
+        pool.release(pool.checkout(FIREFOX));
+        Thread.sleep(5);
+        pool.evictExpired();
+
+        assertTrue(browsers.get(0).quit);
+        assertEquals(pool.getLiveSessions(), 0);
+    }
+
+    /**
+     * Checkout gives up after the checkout timeout while every session is in use, and succeeds once one is
+     * invalidated.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void waitsForAFreeSlot() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 1, 10, 60000, 50);
+        WebDriver busy = pool.checkout(FIREFOX);
+        try {
+            pool.checkout(CHROME);
+            fail("Checked out more sessions than the pool holds");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("No WebDriver session available"), e.getMessage());
+        }
+
+        pool.invalidate(busy);
+        assertTrue(browsers.get(0).quit);
+        pool.checkout(CHROME);
+        assertEquals(browsers.size(), 2);
+    }
+
+    /**
+     * Shutting down quits every session, idle or checked out, and nothing is available afterwards.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void quitsEverythingOnShutdown() throws Exception {
+        DriverPool pool = new DriverPool(lifecycle, 2, 10, 60000, 1000);
+        pool.release(pool.checkout(FIREFOX));
+        pool.checkout(CHROME);
+
+        pool.shutdown();
+        assertTrue(browsers.get(0).quit);
+        assertTrue(browsers.get(1).quit);
+        assertEquals(pool.getAvailableSessions(), 0);
+        try {
+            pool.checkout(FIREFOX);
+            fail("Checked out a session after shutdown");
+        } catch (IllegalStateException e) {
+            assertFalse(e.getMessage().isEmpty());
+        }
+    }
+
+    /**
+     * A WebDriver answering the few calls the pool makes, which can be made to crash.
+     */
+    private static final class FakeBrowser implements InvocationHandler {
+
+        /**
+         * The Driver.
+         */
+        private final WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebDriver.class, JavascriptExecutor.class}, this);
+
+        /**
+         * The origins holding storage.
+         */
+        private final Set<String> storage = new HashSet<String>();
+
+        /**
+         * The origins holding cookies.
+         */
+        private final Set<String> cookies = new HashSet<String>();
+
+        /**
+         * The Url of the current page.
+         */
+        private String url;
+
+        /**
+         * Whether scripts fail.
+         */
+        private boolean scriptsFail;
+
+        /**
+         * The Crashed flag, making every call fail.
+         */
+        private boolean crashed;
+
+        /**
+         * The Quit flag.
+         */
+        private boolean quit;
+
+        /**
+         * The times its cookies were deleted.
+         */
+        private int resets;
+
+        /**
+         * Answers calls to the driver and to its options and window.
+         *
+         * @param proxy  the proxy
+         * @param method the method
+         * @param args   the args
+         *
+         * @return the object
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if ("quit".equals(name)) {
+                quit = true;
+                return null;
+            }
+            if ("toString".equals(name)) {
+                return "FakeBrowser";
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if (crashed) {
+                throw new WebDriverException("Browser crashed");
+            }
+            if ("manage".equals(name)) {
+                return proxy(WebDriver.Options.class);
+            }
+            if ("window".equals(name)) {
+                return proxy(WebDriver.Window.class);
+            }
+            if ("getSize".equals(name)) {
+                return new Dimension(1024, 768);
+            }
+            if ("getWindowHandle".equals(name)) {
+                return "window-1";
+            }
+            if ("get".equals(name)) {
+                url = (String) args[0];
+            }
+            if ("getCurrentUrl".equals(name)) {
+                return url;
+            }
+            if ("executeScript".equals(name)) {
+                if (scriptsFail) {
+                    throw new WebDriverException("JavaScript is disabled");
+                }
+                storage.remove(DriverPool.origin(url));
+            }
+            if ("deleteAllCookies".equals(name)) {
+                resets++;
+                cookies.remove(DriverPool.origin(url));
+            }
+            return null;
+        }
+
+        /**
+         * Proxy of an interface answered by this browser.
+         *
+         * @param <T>   the type parameter
+         * @param iface the iface
+         *
+         * @return the proxy
+         */
+        private <T> T proxy(Class<T> iface) {
+            return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, this));
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.trycucumber.systemtests.framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts a main class in a child JVM with this JVM's classpath and options. Cucumber's Spring object factory keeps
+ * its context in static fields, so Cucumber runtimes that run side by side must each get a JVM of their own.
+ * Debugger agents are not passed on, since the children would fight over the debug port.
+ * User: Atish Narlawar
+ */
+public final class ForkedJvm {
+
+    /**
+     * Instantiates a new Forked jvm.
+     */
+    private ForkedJvm() {
+    }
+
+    /**
+     * Starts the main class, sending its output to the log file.
+     *
+     * @param mainClass        the main class
+     * @param systemProperties the system properties, set after and so over this JVM's own
+     * @param args             the args
+     * @param log              the log file
+     *
+     * @return the process
+     *
+     * @throws IOException the iO exception
+     */
+    public static Process start(Class<?> mainClass, Map<String, String> systemProperties, List<String> args, File log) throws IOException {
+        File directory = log.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib:jdwp") && !option.startsWith("-Xrunjdwp") && !option.startsWith("-Xdebug")) {
+                command.add(option);
+            }
+        }
+        for (Map.Entry<String, String> property : systemProperties.entrySet()) {
+            command.add("-D" + property.getKey() + "=" + property.getValue());
+        }
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(args);
+
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+    }
+}
@@ -0,0 +1,295 @@
+package com.trycucumber.systemtests.framework;
+
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.HasInputDevices;
+import org.openqa.selenium.interactions.HasTouchScreen;
+import org.openqa.selenium.internal.Locatable;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps a driver so that every command it sends to the browser is timed into {@link CommandMetrics}. Elements
+ * found through the wrapper, including those returned by scripts, and the objects behind manage(), navigate()
+ * and switchTo() are wrapped as well. Driver and element commands are named after their method, the others
+ * after their interface and method, such as Timeouts.implicitlyWait.
+ * User: Atish Narlawar
+ */
+public final class InstrumentedDriver {
+
+    /**
+     * The accessors that return a driver side object without talking to the browser.
+     */
+    private static final Set<Class<?>> NESTED_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            WebDriver.Options.class, WebDriver.Navigation.class, WebDriver.TargetLocator.class,
+            WebDriver.Timeouts.class, WebDriver.Window.class, WebDriver.ImeHandler.class));
+
+    /**
+     * The interfaces whose methods never talk to the browser.
+     */
+    private static final Set<Class<?>> LOCAL_INTERFACES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            Object.class, WrapsDriver.class, WrapsElement.class, Locatable.class, HasInputDevices.class,
+            HasTouchScreen.class, HasCapabilities.class));
+
+    /**
+     * The proxy interfaces by wrapped class, worked out once per class.
+     */
+    private static final ConcurrentMap<Class<?>, Class<?>[]> proxyInterfaces = new ConcurrentHashMap<Class<?>, Class<?>[]>();
+
+    /**
+     * Instantiates a new Instrumented driver.
+     */
+    private InstrumentedDriver() {
+    }
+
+    /**
+     * Wraps a driver. The wrapper implements every public interface of the driver, so instanceof checks against
+     * capabilities such as JavascriptExecutor keep working; checks against driver classes must unwrap it first.
+     *
+     * @param driver  the driver
+     * @param metrics the metrics
+     *
+     * @return the web driver
+     */
+    public static WebDriver wrap(WebDriver driver, CommandMetrics metrics) {
+        Handler handler = new Handler(driver, metrics, null);
+        WebDriver proxy = (WebDriver) Proxy.newProxyInstance(InstrumentedDriver.class.getClassLoader(),
+                proxyInterfaces(driver.getClass(), WebDriver.class, WrapsDriver.class), handler);
+        handler.driverProxy = proxy;
+        return proxy;
+    }
+
+    /**
+     * Gets the driver behind any number of wrappers.
+     *
+     * @param driver the driver
+     *
+     * @return the web driver
+     */
+    public static WebDriver unwrap(WebDriver driver) {
+        WebDriver unwrapped = driver;
+        while (unwrapped instanceof WrapsDriver && Proxy.isProxyClass(unwrapped.getClass())) {
+            unwrapped = ((WrapsDriver) unwrapped).getWrappedDriver();
+        }
+        return unwrapped;
+    }
+
+    /**
+     * The interfaces a proxy for the class implements: the public interfaces of the class and its superclasses,
+     * plus the extra ones.
+     *
+     * @param type  the type
+     * @param extra the extra interfaces
+     *
+     * @return the interfaces
+     */
+    private static Class<?>[] proxyInterfaces(Class<?> type, Class<?>... extra) {
+        Class<?>[] cached = proxyInterfaces.get(type);
+        if (cached != null) {
+            return cached;
+        }
+
+        Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Class<?> implemented : current.getInterfaces()) {
+                if (Modifier.isPublic(implemented.getModifiers())) {
+                    interfaces.add(implemented);
+                }
+            }
+        }
+        interfaces.addAll(Arrays.asList(extra));
+
+        cached = interfaces.toArray(new Class<?>[interfaces.size()]);
+        proxyInterfaces.put(type, cached);
+        return cached;
+    }
+
+    /**
+     * Times the calls on one wrapped object.
+     */
+    private static final class Handler implements InvocationHandler {
+
+        /**
+         * The Target.
+         */
+        private final Object target;
+
+        /**
+         * The Metrics.
+         */
+        private final CommandMetrics metrics;
+
+        /**
+         * The prefix of command names, empty for the driver and elements.
+         */
+        private final String commandPrefix;
+
+        /**
+         * The wrapper of the driver the target belongs to.
+         */
+        private WebDriver driverProxy;
+
+        /**
+         * Instantiates a new Handler.
+         *
+         * @param target        the target
+         * @param metrics       the metrics
+         * @param commandPrefix the command prefix, null for none
+         */
+        private Handler(Object target, CommandMetrics metrics, String commandPrefix) {
+            this.target = target;
+            this.metrics = metrics;
+            this.commandPrefix = commandPrefix == null ? "" : commandPrefix + ".";
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            Class<?> declaringClass = method.getDeclaringClass();
+
+            if (declaringClass == Object.class) {
+                if (name.equals("equals")) {
+                    return proxy == args[0] || target.equals(unwrapArgument(args[0]));
+                }
+                if (name.equals("hashCode")) {
+                    return target.hashCode();
+                }
+                return target.toString();
+            }
+            if (declaringClass == WrapsDriver.class) {
+                return target instanceof WebDriver ? target : driverProxy;
+            }
+            if (declaringClass == WrapsElement.class) {
+                return target;
+            }
+
+            boolean command = !LOCAL_INTERFACES.contains(declaringClass)
+                    && !(NESTED_TYPES.contains(method.getReturnType()) && method.getParameterTypes().length == 0);
+
+            Object result;
+            long start = System.nanoTime();
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (command) {
+                    metrics.record(commandPrefix + name, System.nanoTime() - start);
+                }
+            }
+            return wrapResult(method, result);
+        }
+
+        /**
+         * Wraps what a call returned.
+         *
+         * @param method the method
+         * @param result the result
+         *
+         * @return the object
+         */
+        private Object wrapResult(Method method, Object result) {
+            if (result == null) {
+                return null;
+            }
+            if (result instanceof WebDriver && result == unwrap(driverProxy)) {
+                return driverProxy;
+            }
+            if (NESTED_TYPES.contains(method.getReturnType())) {
+                return wrapNested(method.getReturnType(), result);
+            }
+            return wrapValue(result);
+        }
+
+        /**
+         * Wraps elements anywhere in a value, as returned by find methods and scripts.
+         *
+         * @param value the value
+         *
+         * @return the object
+         */
+        private Object wrapValue(Object value) {
+            if (value instanceof WebElement && !(value instanceof WrapsElement && Proxy.isProxyClass(value.getClass()))) {
+                return wrapElement((WebElement) value);
+            }
+            if (value instanceof List) {
+                List<Object> wrapped = new ArrayList<Object>(((List<?>) value).size());
+                for (Object item : (List<?>) value) {
+                    wrapped.add(wrapValue(item));
+                }
+                return wrapped;
+            }
+            if (value instanceof Map) {
+                Map<Object, Object> wrapped = new LinkedHashMap<Object, Object>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    wrapped.put(entry.getKey(), wrapValue(entry.getValue()));
+                }
+                return wrapped;
+            }
+            return value;
+        }
+
+        /**
+         * Wrap element.
+         *
+         * @param element the element
+         *
+         * @return the web element
+         */
+        private WebElement wrapElement(WebElement element) {
+            Handler handler = new Handler(element, metrics, null);
+            handler.driverProxy = driverProxy;
+            return (WebElement) Proxy.newProxyInstance(InstrumentedDriver.class.getClassLoader(),
+                    proxyInterfaces(element.getClass(), WebElement.class, WrapsElement.class), handler);
+        }
+
+        /**
+         * Wraps an object such as the one behind manage().
+         *
+         * @param type   the type
+         * @param nested the nested
+         *
+         * @return the object
+         */
+        private Object wrapNested(Class<?> type, Object nested) {
+            Handler handler = new Handler(nested, metrics, type.getSimpleName());
+            handler.driverProxy = driverProxy;
+            return Proxy.newProxyInstance(InstrumentedDriver.class.getClassLoader(), new Class<?>[]{type}, handler);
+        }
+
+        /**
+         * Unwraps an argument compared for equality.
+         *
+         * @param argument the argument
+         *
+         * @return the object
+         */
+        private static Object unwrapArgument(Object argument) {
+            if (argument instanceof WebDriver) {
+                return unwrap((WebDriver) argument);
+            }
+            Object unwrapped = argument;
+            while (unwrapped instanceof WrapsElement && Proxy.isProxyClass(unwrapped.getClass())) {
+                unwrapped = ((WrapsElement) unwrapped).getWrappedElement();
+            }
+            return unwrapped;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.trycucumber.systemtests.framework;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Tests of {@link LatencyHistogram}.
+ * User: Atish Narlawar
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Small values are kept exactly.
+     */
+    @Test
+    public void keepsSmallValuesExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertEquals(histogram.getCount(), 10);
+        assertEquals(histogram.getTotalMicros(), 55);
+        assertEquals(histogram.getMaxMicros(), 10);
+        assertEquals(histogram.getPercentileMicros(50), 5);
+        assertEquals(histogram.getPercentileMicros(100), 10);
+    }
+
+    /**
+     * Large values are reported within the bucket precision, never above the max.
+     */
+    @Test
+    public void reportsLargeValuesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        long p95 = histogram.getPercentileMicros(95);
+        assertTrue(p95 >= 950000 && p95 <= 950000 * 1.125, "p95 was " + p95);
+        long p50 = histogram.getPercentileMicros(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125, "p50 was " + p50);
+        assertEquals(histogram.getPercentileMicros(100), 1000000);
+    }
+
+    /**
+     * Nothing recorded gives zeros, and negative latencies count as zero.
+     */
+    @Test
+    public void handlesEmptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getPercentileMicros(99), 0);
+
+        histogram.record(-5000);
+        assertEquals(histogram.getCount(), 1);
+        assertEquals(histogram.getMaxMicros(), 0);
+    }
+
+    /**
+     * Adding merges counts, totals and the max.
+     */
+    @Test
+    public void addsAnotherHistogram() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(TimeUnit.MICROSECONDS.toNanos(3));
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(TimeUnit.SECONDS.toNanos(2));
+
+        first.add(second);
+        assertEquals(first.getCount(), 2);
+        assertEquals(first.getTotalMicros(), 2000003);
+        assertEquals(first.getMaxMicros(), 2000000);
+        assertEquals(first.getPercentileMicros(50), 3);
+    }
+}
@@ -0,0 +1,234 @@
+package com.trycucumber.systemtests.framework;
+
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import org.testng.log4testng.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the features selected by a runner class's {@link CucumberOptions} as load: a number of virtual users,
+ * started evenly over the ramp-up, each running every selected feature over and over until the duration is up or
+ * it has done its iterations. Cucumber runtimes cannot share a JVM, so every virtual user is a {@link CucumberWorker}
+ * in a JVM of its own, with its own Spring context and DriverFactory pool, and so its own browser session whatever
+ * the pool size. Each one writes its results to a {@link LoadReport} file, merged when it is done; logs and reports
+ * go to target/load. A scenario that is running when the duration is up is allowed to finish.
+ * <p/>
+ * Every virtual user also gets its own crumb store, screenshot store and proxy cache under target/load, so that
+ * load runs neither race on them nor write their observations into the shared crumb baselines.
+ * User: Atish Narlawar
+ */
+public class LoadGenerator {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(LoadGenerator.class);
+
+    /**
+     * The directory of the virtual users' logs and reports.
+     */
+    private static final String USER_DIR = "target/load/";
+
+    /**
+     * The Runner class.
+     */
+    private final Class<?> runnerClass;
+
+    /**
+     * The Users.
+     */
+    private final int users;
+
+    /**
+     * The Ramp up seconds.
+     */
+    private final long rampUpSeconds;
+
+    /**
+     * The Duration seconds, 0 for no time limit.
+     */
+    private final long durationSeconds;
+
+    /**
+     * The Iterations per user, 0 for no limit.
+     */
+    private final int iterations;
+
+    /**
+     * Instantiates a new Load generator.
+     *
+     * @param runnerClass     the runner class
+     * @param users           the users
+     * @param rampUpSeconds   the ramp up seconds
+     * @param durationSeconds the duration seconds, 0 for no time limit
+     * @param iterations      the iterations per user, 0 for no limit
+     */
+    public LoadGenerator(Class<?> runnerClass, int users, long rampUpSeconds, long durationSeconds, int iterations) {
+        if (users < 1) {
+            throw new IllegalArgumentException("At least one virtual user is needed");
+        }
+        if (durationSeconds <= 0 && iterations <= 0) {
+            throw new IllegalArgumentException("A load run needs a duration, a number of iterations, or both");
+        }
+        this.runnerClass = runnerClass;
+        this.users = users;
+        this.rampUpSeconds = rampUpSeconds;
+        this.durationSeconds = durationSeconds;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Gets the system properties of a virtual user: those of a parallel worker, and a crumb store of its own.
+     *
+     * @param userName the user's own directory
+     *
+     * @return the system properties
+     */
+    public static Map<String, String> userProperties(String userName) {
+        Map<String, String> properties = ParallelCucumberRunner.workerProperties(userName);
+        properties.put("crumbdb.store.path", userName + "/crumbstore");
+        return properties;
+    }
+
+    /**
+     * Runs one virtual user in a forked JVM and writes its report.
+     *
+     * @param args the runner class, the deadline in epoch millis or 0, the iterations or 0, and the report file
+     *
+     * @throws Exception the exception
+     */
+    public static void main(String[] args) throws Exception {
+        Class<?> runnerClass = Class.forName(args[0]);
+        long deadline = Long.parseLong(args[1]);
+        int iterations = Integer.parseInt(args[2]);
+        File reportFile = new File(args[3]);
+
+        ClassLoader classLoader = runnerClass.getClassLoader();
+        RuntimeOptions runtimeOptions = CucumberWorker.runtimeOptions(runnerClass);
+        List<CucumberFeature> features = runtimeOptions.cucumberFeatures(new MultiLoader(classLoader));
+        LoadReport report = new LoadReport();
+        CucumberWorker worker = new CucumberWorker(classLoader, runtimeOptions.getGlue(),
+                Collections.singletonList(StepTracker.class.getName()), Collections.<Formatter>singletonList(new LoadRecorder(report)));
+
+        try {
+            running:
+            for (int iteration = 0; iterations <= 0 || iteration < iterations; iteration++) {
+                for (CucumberFeature feature : features) {
+                    if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                        break running;
+                    }
+                    worker.run(feature);
+                }
+            }
+        } finally {
+            worker.finish();
+        }
+
+        ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(reportFile)));
+        try {
+            output.writeObject(report);
+        } finally {
+            output.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Runs the load and waits for every virtual user to finish.
+     *
+     * @return the report
+     */
+    public LoadReport run() {
+        LoadReport report = new LoadReport();
+
+        logger.info("Starting " + users + " virtual users over " + rampUpSeconds + " s, for "
+                + (durationSeconds > 0 ? durationSeconds + " s" : "no time limit") + " and "
+                + (iterations > 0 ? iterations + " iterations each" : "no iteration limit"));
+
+        List<Process> processes = new ArrayList<Process>();
+        report.start();
+        long startedAt = System.currentTimeMillis();
+        long deadline = durationSeconds > 0 ? startedAt + TimeUnit.SECONDS.toMillis(durationSeconds) : 0;
+
+        try {
+            for (int i = 0; i < users; i++) {
+                long delay = startedAt + TimeUnit.SECONDS.toMillis(rampUpSeconds) * i / users - System.currentTimeMillis();
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                String userName = USER_DIR + "user-" + i;
+                File userReport = new File(userName + ".report");
+                if (userReport.exists() && !userReport.delete()) {
+                    throw new IOException("Could not delete the old report " + userReport);
+                }
+                processes.add(ForkedJvm.start(LoadGenerator.class, userProperties(userName),
+                        Arrays.asList(runnerClass.getName(), String.valueOf(deadline), String.valueOf(iterations), userName + ".report"),
+                        new File(userName + ".log")));
+            }
+
+            for (int i = 0; i < processes.size(); i++) {
+                String userName = USER_DIR + "user-" + i;
+                int exitStatus = processes.get(i).waitFor();
+                File userReport = new File(userName + ".report");
+                if (exitStatus != 0 || !userReport.isFile()) {
+                    logger.error("Virtual user " + i + " stopped with exit status " + exitStatus + ", see " + userName + ".log");
+                    report.recordLostUser();
+                    continue;
+                }
+                report.add(readReport(userReport));
+                if (!userReport.delete()) {
+                    logger.warn("Could not delete " + userReport);
+                }
+            }
+        } catch (IOException e) {
+            throw new CucumberException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CucumberException(e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        report.stop();
+        return report;
+    }
+
+    /**
+     * Reads the report a virtual user wrote.
+     *
+     * @param reportFile the report file
+     *
+     * @return the load report
+     *
+     * @throws IOException the iO exception
+     */
+    private static LoadReport readReport(File reportFile) throws IOException {
+        ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(reportFile)));
+        try {
+            return (LoadReport) input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.trycucumber.systemtests.framework;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Cucumber plugin of one virtual user, recording the scenarios and steps it runs into a shared {@link LoadReport}.
+ * A scenario runs from the start to the end of its life cycle, so its time and its outcome include its hooks: a
+ * failed Before hook fails the scenario even though its steps are only skipped.
+ * User: Atish Narlawar
+ */
+public class LoadRecorder implements Formatter, Reporter {
+
+    /**
+     * The Report.
+     */
+    private final LoadReport report;
+
+    /**
+     * The steps announced and not started yet.
+     */
+    private final Deque<String> pendingSteps = new ArrayDeque<String>();
+
+    /**
+     * The Feature uri.
+     */
+    private String uri;
+
+    /**
+     * The Scenario running, or null.
+     */
+    private String scenario;
+
+    /**
+     * The Scenario started at, in nanoseconds.
+     */
+    private long scenarioStartedAt;
+
+    /**
+     * Whether a step or hook of the running scenario failed.
+     */
+    private boolean scenarioFailed;
+
+    /**
+     * The Step running, or null.
+     */
+    private String step;
+
+    /**
+     * Instantiates a new Load recorder.
+     *
+     * @param report the report
+     */
+    public LoadRecorder(LoadReport report) {
+        this.report = report;
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        pendingSteps.clear();
+        this.scenario = StepTracker.label(uri, scenario);
+        this.scenarioStartedAt = System.nanoTime();
+        this.scenarioFailed = false;
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        if (this.scenario != null) {
+            report.recordScenario(this.scenario, System.nanoTime() - scenarioStartedAt, !scenarioFailed);
+            this.scenario = null;
+        }
+    }
+
+    @Override
+    public void uri(String uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+        pendingSteps.add(step.getKeyword() + step.getName());
+    }
+
+    @Override
+    public void match(Match match) {
+        step = pendingSteps.poll();
+    }
+
+    @Override
+    public void result(Result result) {
+        if (Result.PASSED.equals(result.getStatus())) {
+            if (step != null && result.getDuration() != null) {
+                report.recordStep(step, result.getDuration());
+            }
+        } else {
+            check(result);
+        }
+        step = null;
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+        check(result);
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+        check(result);
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    /**
+     * Marks the running scenario failed unless the result passed or was skipped after an earlier failure.
+     *
+     * @param result the result
+     */
+    private void check(Result result) {
+        if (!Result.PASSED.equals(result.getStatus()) && !Result.SKIPPED.getStatus().equals(result.getStatus())) {
+            scenarioFailed = true;
+        }
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.trycucumber.systemtests.framework;
+
+import com.trycucumber.probe.ProbeRunner;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Runs the probe features through a real Cucumber runtime into a {@link LoadRecorder}, and as load.
+ * User: Atish Narlawar
+ */
+public class LoadRecorderTest {
+
+    /**
+     * A failed Before hook fails its own scenario, not the one before it.
+     */
+    @Test
+    public void countsAFailedBeforeHookAgainstItsScenario() {
+        LoadReport report = new LoadReport();
+        StepTrackerTest.runProbe(new LoadRecorder(report));
+
+        assertEquals(report.getScenarioCount(), 5);
+        assertEquals(report.getFailed(), 1);
+    }
+
+    /**
+     * Virtual users run in forked JVMs and their reports are merged.
+     */
+    @Test
+    public void mergesTheReportsOfForkedVirtualUsers() {
+        LoadReport report = new LoadGenerator(ProbeRunner.class, 2, 0, 0, 2).run();
+
+        assertEquals(report.getLostUsers(), 0);
+        assertEquals(report.getScenarioCount(), 12);
+        assertEquals(report.getFailed(), 0);
+    }
+}
@@ -0,0 +1,267 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a load run: scenario counts and throughput, and latency percentiles of every scenario and every step.
+ * Every virtual user fills a report of its own, merged into the run's report when it is done. Step latencies are
+ * Cucumber's own step durations and only count passed steps; scenario latencies run from the start of the Before
+ * hooks to the end of the After hooks.
+ * User: Atish Narlawar
+ */
+public class LoadReport implements Serializable {
+
+    /**
+     * The constant serialVersionUID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(LoadReport.class);
+
+    /**
+     * The Scenario latencies, by scenario.
+     */
+    private final Map<String, LatencyHistogram> scenarios = new TreeMap<String, LatencyHistogram>();
+
+    /**
+     * The Step latencies, by step.
+     */
+    private final Map<String, LatencyHistogram> steps = new TreeMap<String, LatencyHistogram>();
+
+    /**
+     * The Passed scenarios.
+     */
+    private long passed;
+
+    /**
+     * The Failed scenarios.
+     */
+    private long failed;
+
+    /**
+     * The virtual users that stopped without a report.
+     */
+    private int lostUsers;
+
+    /**
+     * The Started at, in nanoseconds.
+     */
+    private long startedAt;
+
+    /**
+     * The Stopped at, in nanoseconds.
+     */
+    private long stoppedAt;
+
+    /**
+     * Marks the start of the run.
+     */
+    public synchronized void start() {
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the run.
+     */
+    public synchronized void stop() {
+        stoppedAt = System.nanoTime();
+    }
+
+    /**
+     * Records a finished scenario.
+     *
+     * @param scenario the scenario
+     * @param nanos    the nanos
+     * @param success  whether every step and hook passed
+     */
+    public synchronized void recordScenario(String scenario, long nanos, boolean success) {
+        histogram(scenarios, scenario).record(nanos);
+        if (success) {
+            passed++;
+        } else {
+            failed++;
+        }
+    }
+
+    /**
+     * Records a passed step.
+     *
+     * @param step  the step
+     * @param nanos the nanos
+     */
+    public synchronized void recordStep(String step, long nanos) {
+        histogram(steps, step).record(nanos);
+    }
+
+    /**
+     * Adds the scenarios and latencies of another report, such as a virtual user's, to this one.
+     *
+     * @param other the other
+     */
+    public synchronized void add(LoadReport other) {
+        merge(scenarios, other.scenarios);
+        merge(steps, other.steps);
+        passed += other.passed;
+        failed += other.failed;
+    }
+
+    /**
+     * Records a virtual user that stopped without a report, so its scenarios are missing.
+     */
+    public synchronized void recordLostUser() {
+        lostUsers++;
+    }
+
+    /**
+     * Gets lost users.
+     *
+     * @return the lost users
+     */
+    public synchronized int getLostUsers() {
+        return lostUsers;
+    }
+
+    /**
+     * Gets the scenarios run.
+     *
+     * @return the scenarios
+     */
+    public synchronized long getScenarioCount() {
+        return passed + failed;
+    }
+
+    /**
+     * Gets failed.
+     *
+     * @return the failed
+     */
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the throughput in scenarios per second, over the whole run including ramp-up.
+     *
+     * @return the throughput
+     */
+    public synchronized double getThroughput() {
+        long elapsed = (stoppedAt == 0 ? System.nanoTime() : stoppedAt) - startedAt;
+        return elapsed <= 0 ? 0 : (passed + failed) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Logs the summary and writes the report as JSON.
+     *
+     * @param reportFile the report file
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized void write(File reportFile) throws IOException {
+        double seconds = (stoppedAt - startedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        logger.info(String.format("%d scenarios, %d failed, in %.1f s: %.2f scenarios/s", passed + failed, failed, seconds, getThroughput()));
+        if (lostUsers > 0) {
+            logger.warn(lostUsers + " virtual users stopped without a report");
+        }
+        for (Map.Entry<String, LatencyHistogram> step : steps.entrySet()) {
+            LatencyHistogram histogram = step.getValue();
+            logger.info(String.format("%6d x p50 %7d ms, p95 %7d ms, p99 %7d ms  %s", histogram.getCount(),
+                    histogram.getPercentileMicros(50) / 1000, histogram.getPercentileMicros(95) / 1000,
+                    histogram.getPercentileMicros(99) / 1000, step.getKey()));
+        }
+
+        try {
+            JSONObject report = new JSONObject();
+            report.put("seconds", seconds);
+            report.put("scenarios", passed + failed);
+            report.put("failed", failed);
+            report.put("lostUsers", lostUsers);
+            report.put("throughputPerSecond", getThroughput());
+            report.put("scenarioLatencies", summarize(scenarios));
+            report.put("stepLatencies", summarize(steps));
+
+            File directory = reportFile.getAbsoluteFile().getParentFile();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(reportFile), Charsets.UTF_8);
+            try {
+                writer.write(report.toString(2));
+            } finally {
+                writer.close();
+            }
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        logger.info("Load report written to " + reportFile);
+    }
+
+    /**
+     * Gets the histogram of a name, creating it when missing.
+     *
+     * @param histograms the histograms
+     * @param name       the name
+     *
+     * @return the latency histogram
+     */
+    private static LatencyHistogram histogram(Map<String, LatencyHistogram> histograms, String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Adds every histogram of the source to the histogram of the same name in the target.
+     *
+     * @param target the target
+     * @param source the source
+     */
+    private static void merge(Map<String, LatencyHistogram> target, Map<String, LatencyHistogram> source) {
+        for (Map.Entry<String, LatencyHistogram> entry : source.entrySet()) {
+            histogram(target, entry.getKey()).add(entry.getValue());
+        }
+    }
+
+    /**
+     * Summarize.
+     *
+     * @param histograms the histograms
+     *
+     * @return the jSON object
+     *
+     * @throws JSONException the jSON exception
+     */
+    private static JSONObject summarize(Map<String, LatencyHistogram> histograms) throws JSONException {
+        JSONObject summaries = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            JSONObject summary = new JSONObject();
+            summary.put("count", histogram.getCount());
+            summary.put("p50Micros", histogram.getPercentileMicros(50));
+            summary.put("p90Micros", histogram.getPercentileMicros(90));
+            summary.put("p95Micros", histogram.getPercentileMicros(95));
+            summary.put("p99Micros", histogram.getPercentileMicros(99));
+            summary.put("maxMicros", histogram.getMaxMicros());
+            summaries.put(entry.getKey(), summary);
+        }
+        return summaries;
+    }
+}
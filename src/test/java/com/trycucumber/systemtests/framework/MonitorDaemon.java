@@ -0,0 +1,218 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.testng.log4testng.Logger;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic monitoring: runs the features selected by a runner class's {@link CucumberOptions} on a schedule,
+ * in one long-lived JVM. Every run happens on the same thread with the same {@link CucumberWorker}, so the glue,
+ * the seleniumContext.xml context, the SeleniumAPI and its pooled DriverFactory sessions all stay
+ * warm between runs, and a check costs only its scenarios. Sessions only stay warm while the interval is shorter
+ * than driver.pool.idle.timeout.seconds.
+ * <p/>
+ * Each run appends one line per scenario and a run summary line to a {@link RollingMetricsFile}. The first run
+ * is marked as not warm, since it starts the context and the browser.
+ * User: Atish Narlawar
+ */
+public class MonitorDaemon {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(MonitorDaemon.class);
+
+    /**
+     * The Runner class.
+     */
+    private final Class<?> runnerClass;
+
+    /**
+     * The Interval seconds, from the end of one run to the start of the next.
+     */
+    private final long intervalSeconds;
+
+    /**
+     * The Runs to do before stopping, 0 to run until shut down.
+     */
+    private final int runs;
+
+    /**
+     * The Metrics file.
+     */
+    private final RollingMetricsFile metricsFile;
+
+    /**
+     * The Scheduler, whose single thread does every run.
+     */
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("monitor").build());
+
+    /**
+     * The Timestamp format.
+     */
+    private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    /**
+     * The Recorder.
+     */
+    private final MonitorRecorder recorder = new MonitorRecorder();
+
+    /**
+     * The Worker, created by the first run.
+     */
+    private CucumberWorker worker;
+
+    /**
+     * The Features.
+     */
+    private List<CucumberFeature> features;
+
+    /**
+     * The Runs done.
+     */
+    private int runsDone;
+
+    /**
+     * Instantiates a new Monitor daemon.
+     *
+     * @param runnerClass     the runner class
+     * @param intervalSeconds the interval seconds, from the end of one run to the start of the next
+     * @param runs            the runs to do before stopping, 0 to run until shut down
+     * @param metricsFile     the metrics file
+     */
+    public MonitorDaemon(Class<?> runnerClass, long intervalSeconds, int runs, RollingMetricsFile metricsFile) {
+        if (intervalSeconds < 1) {
+            throw new IllegalArgumentException("Monitor interval must be at least a second, was " + intervalSeconds);
+        }
+        this.runnerClass = runnerClass;
+        this.intervalSeconds = intervalSeconds;
+        this.runs = runs;
+        this.metricsFile = metricsFile;
+    }
+
+    /**
+     * Schedules the runs, the first one right away. Whatever a run throws is logged and the next run goes ahead,
+     * since anything escaping the scheduled task would quietly cancel every later run.
+     */
+    public void start() {
+        logger.info("Monitoring every " + intervalSeconds + " s" + (runs > 0 ? " for " + runs + " runs" : ""));
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runOnce();
+                } catch (IOException e) {
+                    logger.error("Could not write monitor metrics", e);
+                } catch (Throwable e) {
+                    logger.error("Monitor run failed", e);
+                }
+                if (runs > 0 && runsDone >= runs) {
+                    scheduler.shutdown();
+                }
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops scheduling runs and lets the current one finish.
+     *
+     * @param timeoutSeconds the seconds to wait for the current run
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public void shutdown(long timeoutSeconds) throws InterruptedException {
+        scheduler.shutdown();
+        if (!scheduler.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+            logger.warn("Monitor run still going after " + timeoutSeconds + " s");
+        }
+    }
+
+    /**
+     * Waits until the daemon stops, after its runs or a shutdown.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!scheduler.awaitTermination(1, TimeUnit.DAYS)) {
+            logger.debug("Monitor still running");
+        }
+    }
+
+    /**
+     * Runs every feature once and appends the results to the metrics file.
+     *
+     * @throws IOException the iO exception
+     */
+    private void runOnce() throws IOException {
+        boolean warm = worker != null;
+        if (!warm) {
+            ClassLoader classLoader = runnerClass.getClassLoader();
+            RuntimeOptions runtimeOptions = CucumberWorker.runtimeOptions(runnerClass);
+            features = runtimeOptions.cucumberFeatures(new MultiLoader(classLoader));
+            worker = new CucumberWorker(classLoader, runtimeOptions.getGlue(),
+                    Collections.singletonList(StepTracker.class.getName()), Collections.<Formatter>singletonList(recorder));
+        }
+
+        String startedAt = timestampFormat.format(new Date());
+        long start = System.nanoTime();
+        for (CucumberFeature feature : features) {
+            worker.run(feature);
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        runsDone++;
+
+        List<JSONObject> results = recorder.drainResults();
+        List<Throwable> errors = worker.drainErrors();
+        int failed = 0;
+        List<String> lines = new ArrayList<String>();
+        try {
+            for (JSONObject result : results) {
+                if (!"passed".equals(result.getString("status"))) {
+                    failed++;
+                }
+                result.put("type", "scenario");
+                result.put("run", runsDone);
+                result.put("time", startedAt);
+                result.put("warm", warm);
+                lines.add(result.toString());
+            }
+
+            JSONObject summary = new JSONObject();
+            summary.put("type", "run");
+            summary.put("run", runsDone);
+            summary.put("time", startedAt);
+            summary.put("warm", warm);
+            summary.put("scenarios", results.size());
+            summary.put("failed", failed);
+            summary.put("millis", millis);
+            lines.add(summary.toString());
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        metricsFile.append(lines);
+
+        if (failed > 0) {
+            logger.warn("Monitor run " + runsDone + ": " + failed + " of " + results.size() + " scenarios failed in " + millis + " ms"
+                    + (errors.isEmpty() ? "" : ", first error: " + errors.get(0)));
+        } else {
+            logger.info("Monitor run " + runsDone + ": " + results.size() + " scenarios passed in " + millis + " ms");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.trycucumber.systemtests.framework;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cucumber plugin of the {@link MonitorDaemon}, keeping the outcome and timings of every scenario of a run until
+ * the daemon drains them. A scenario runs from the start to the end of its life cycle, so its time and its status
+ * include its hooks: a failed Before hook fails the scenario even though its steps are only skipped.
+ * User: Atish Narlawar
+ */
+public class MonitorRecorder implements Formatter, Reporter {
+
+    /**
+     * The Finished scenarios, not drained yet.
+     */
+    private final List<JSONObject> results = new ArrayList<JSONObject>();
+
+    /**
+     * The steps announced and not started yet.
+     */
+    private final Deque<String> pendingSteps = new ArrayDeque<String>();
+
+    /**
+     * The Feature uri.
+     */
+    private String uri;
+
+    /**
+     * The Scenario running, or null.
+     */
+    private String scenario;
+
+    /**
+     * The Scenario started at, in nanoseconds.
+     */
+    private long scenarioStartedAt;
+
+    /**
+     * The Status of the running scenario.
+     */
+    private String status;
+
+    /**
+     * The first error of the running scenario.
+     */
+    private String error;
+
+    /**
+     * The Steps of the running scenario.
+     */
+    private JSONArray steps;
+
+    /**
+     * The Step running, or null.
+     */
+    private String step;
+
+    /**
+     * Takes the scenarios finished since the last call.
+     *
+     * @return the results, one JSON object per scenario
+     */
+    public List<JSONObject> drainResults() {
+        List<JSONObject> drained = new ArrayList<JSONObject>(results);
+        results.clear();
+        return drained;
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        pendingSteps.clear();
+        this.scenario = StepTracker.label(uri, scenario);
+        this.scenarioStartedAt = System.nanoTime();
+        this.status = Result.PASSED;
+        this.error = null;
+        this.steps = new JSONArray();
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        finishScenario();
+    }
+
+    @Override
+    public void uri(String uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+        pendingSteps.add(step.getKeyword() + step.getName());
+    }
+
+    @Override
+    public void match(Match match) {
+        step = pendingSteps.poll();
+    }
+
+    @Override
+    public void result(Result result) {
+        if (scenario != null && step != null) {
+            try {
+                JSONObject stepResult = new JSONObject();
+                stepResult.put("step", step);
+                stepResult.put("status", result.getStatus());
+                if (result.getDuration() != null) {
+                    stepResult.put("millis", TimeUnit.NANOSECONDS.toMillis(result.getDuration()));
+                }
+                steps.put(stepResult);
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        check(result);
+        step = null;
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+        check(result);
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+        check(result);
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    /**
+     * Takes the first status of the running scenario that is neither passed nor skipped, and its error.
+     *
+     * @param result the result
+     */
+    private void check(Result result) {
+        if (scenario != null && Result.PASSED.equals(status) && !Result.PASSED.equals(result.getStatus())
+                && !Result.SKIPPED.getStatus().equals(result.getStatus())) {
+            status = result.getStatus();
+            error = result.getErrorMessage();
+        }
+    }
+
+    /**
+     * Keeps the result of the running scenario, if any.
+     */
+    private void finishScenario() {
+        if (scenario == null) {
+            return;
+        }
+        try {
+            JSONObject result = new JSONObject();
+            result.put("feature", uri);
+            result.put("scenario", scenario);
+            result.put("status", status);
+            result.put("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scenarioStartedAt));
+            result.put("steps", steps);
+            if (error != null) {
+                result.put("error", error.length() > 500 ? error.substring(0, 500) : error);
+            }
+            results.add(result);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            scenario = null;
+        }
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
@@ -0,0 +1,44 @@
+package com.trycucumber.systemtests.framework;
+
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the probe features through a real Cucumber runtime into a {@link MonitorRecorder}.
+ * User: Atish Narlawar
+ */
+public class MonitorRecorderTest {
+
+    /**
+     * A failed Before hook fails its own scenario, and scenarios of the same name are kept apart.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void recordsEveryScenarioWithItsOwnHooks() throws Exception {
+        MonitorRecorder recorder = new MonitorRecorder();
+        StepTrackerTest.runProbe(recorder);
+        List<JSONObject> results = recorder.drainResults();
+
+        assertEquals(results.size(), 5);
+        assertEquals(results.get(0).getString("scenario"), "Twin (probe/probe.feature:9)");
+        assertEquals(results.get(1).getString("scenario"), "Twin (probe/probe.feature:12)");
+        for (int i = 0; i < 4; i++) {
+            assertEquals(results.get(i).getString("status"), "passed", results.get(i).toString());
+            assertEquals(results.get(i).getJSONArray("steps").length(), 2);
+        }
+
+        JSONObject broken = results.get(4);
+        assertEquals(broken.getString("scenario"), "Broken hook (probe/probe.feature:24)");
+        assertEquals(broken.getString("status"), "failed");
+        assertTrue(broken.getString("error").contains("Probe hook failure"), broken.getString("error"));
+        assertFalse(broken.toString().contains("\"status\":\"passed\""), broken.toString());
+        assertTrue(recorder.drainResults().isEmpty());
+    }
+}
@@ -0,0 +1,229 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import cucumber.api.CucumberOptions;
+import cucumber.runtime.CucumberException;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import gherkin.JSONParser;
+import gherkin.formatter.Formatter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.testng.log4testng.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the features selected by a runner class's {@link CucumberOptions} on several workers, each a
+ * {@link CucumberWorker} in a JVM of its own with its own Spring context and browser sessions, sharing the
+ * features out round robin. Reports and logs are written per worker to target/cucumber-parallel, and so are the
+ * WebDriver metrics, page timings, element state SQL, screenshots, proxy cache and visual diffs, which workers
+ * would otherwise overwrite or race on. The crumb store and the stand-in fixtures are shared, since both are safe
+ * to write from several processes.
+ * <p/>
+ * Once the workers are done, their JSON reports are merged, in feature order, into the json and html reports
+ * the runner class asks for, or into target/cucumber-parallel/cucumber.json and cucumber-html when it asks for
+ * neither.
+ * User: Atish Narlawar
+ */
+public class ParallelCucumberRunner {
+
+    /**
+     * The system property holding the worker count. 0 means one worker per available core.
+     */
+    public static final String WORKERS_PROPERTY = "cucumber.workers";
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(ParallelCucumberRunner.class);
+
+    /**
+     * The Report directory.
+     */
+    private static final String REPORT_DIR = "target/cucumber-parallel/";
+
+    /**
+     * The Runner class.
+     */
+    private final Class<?> runnerClass;
+
+    /**
+     * The Workers.
+     */
+    private final int workers;
+
+    /**
+     * Instantiates a new Parallel cucumber runner.
+     *
+     * @param runnerClass the runner class
+     * @param workers     the workers
+     */
+    public ParallelCucumberRunner(Class<?> runnerClass, int workers) {
+        this.runnerClass = runnerClass;
+        this.workers = workers;
+    }
+
+    /**
+     * Gets the worker count configured through {@link #WORKERS_PROPERTY}.
+     *
+     * @return the configured workers
+     */
+    public static int configuredWorkers() {
+        int workers = Integer.getInteger(WORKERS_PROPERTY, 1);
+        if (workers <= 0) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+        return workers;
+    }
+
+    /**
+     * Gets the system properties a forked worker needs so its output files do not clash with the other workers'.
+     *
+     * @param directory the worker's own directory
+     *
+     * @return the system properties
+     */
+    public static Map<String, String> workerProperties(String directory) {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put("driver.metrics.path", directory + "/webdriver-metrics.json");
+        properties.put("page.timing.path", directory + "/page-timings");
+        properties.put("element.state.sql.file", directory + "/log-sql.txt");
+        properties.put("server.screenshot.path", directory + "/screenshots");
+        properties.put("browser.proxy.cache.path", directory + "/browser-proxy-cache");
+        properties.put("visual.diff.output.path", directory + "/visual-diffs");
+        properties.put("visual.diff.candidate.path", directory + "/visual-candidates");
+        return properties;
+    }
+
+    /**
+     * Runs the features and fails when any worker reported a failed scenario.
+     */
+    public void runCukes() {
+        int features = CucumberWorker.runtimeOptions(runnerClass).cucumberFeatures(new MultiLoader(runnerClass.getClassLoader())).size();
+        int workerCount = Math.max(1, Math.min(workers, features));
+        logger.info("Running " + features + " features on " + workerCount + " forked workers");
+
+        List<Process> processes = new ArrayList<Process>();
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                String reportName = REPORT_DIR + "worker-" + i;
+                File report = new File(reportName + ".json");
+                if (report.exists() && !report.delete()) {
+                    throw new IOException("Could not delete the old report " + report);
+                }
+                processes.add(ForkedJvm.start(CucumberWorker.class, workerProperties(reportName),
+                        Arrays.asList(runnerClass.getName(), String.valueOf(i), String.valueOf(workerCount), reportName),
+                        new File(reportName + ".log")));
+            }
+
+            List<String> failedWorkers = new ArrayList<String>();
+            for (int i = 0; i < processes.size(); i++) {
+                int exitStatus = processes.get(i).waitFor();
+                if (exitStatus != 0) {
+                    failedWorkers.add("worker-" + i + " (exit status " + exitStatus + ")");
+                }
+            }
+            mergeReports(workerCount);
+
+            if (!failedWorkers.isEmpty()) {
+                throw new CucumberException("Failed workers " + failedWorkers + ", see their logs in " + REPORT_DIR);
+            }
+        } catch (IOException e) {
+            throw new CucumberException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CucumberException(e);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Merges the workers' JSON reports into the runner's json and html reports. Worker i ran features i, i + n,
+     * and so on, so taking their features in turn restores the feature order.
+     *
+     * @param workerCount the worker count
+     *
+     * @throws IOException the iO exception
+     */
+    private void mergeReports(int workerCount) throws IOException {
+        List<JSONArray> workerFeatures = new ArrayList<JSONArray>();
+        for (int i = 0; i < workerCount; i++) {
+            File report = new File(REPORT_DIR + "worker-" + i + ".json");
+            if (!report.isFile()) {
+                logger.warn("worker-" + i + " wrote no report, its features are missing from the merged report");
+                workerFeatures.add(new JSONArray());
+                continue;
+            }
+            try {
+                workerFeatures.add(new JSONArray(Files.toString(report, Charsets.UTF_8)));
+            } catch (JSONException e) {
+                throw new IOException("Unreadable report " + report, e);
+            }
+        }
+
+        JSONArray merged = new JSONArray();
+        for (int feature = 0; ; feature++) {
+            JSONArray features = workerFeatures.get(feature % workerCount);
+            if (feature / workerCount >= features.length()) {
+                break;
+            }
+            try {
+                merged.put(features.get(feature / workerCount));
+            } catch (JSONException e) {
+                throw new IOException(e);
+            }
+        }
+
+        List<String> htmlFormats = new ArrayList<String>();
+        List<String> jsonFiles = new ArrayList<String>();
+        CucumberOptions options = runnerClass.getAnnotation(CucumberOptions.class);
+        for (String format : options == null ? new String[0] : options.format()) {
+            if (format.startsWith("html:")) {
+                htmlFormats.add(format);
+            } else if (format.startsWith("json:")) {
+                jsonFiles.add(format.substring("json:".length()));
+            }
+        }
+        if (htmlFormats.isEmpty() && jsonFiles.isEmpty()) {
+            htmlFormats.add("html:" + REPORT_DIR + "cucumber-html");
+            jsonFiles.add(REPORT_DIR + "cucumber.json");
+        }
+
+        String json;
+        try {
+            json = merged.toString(2);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        for (String jsonFile : jsonFiles) {
+            File file = new File(jsonFile);
+            Files.createParentDirs(file);
+            Files.write(json, file, Charsets.UTF_8);
+        }
+
+        if (!htmlFormats.isEmpty()) {
+            List<String> args = new ArrayList<String>();
+            for (String format : htmlFormats) {
+                args.add("--format");
+                args.add(format);
+            }
+            RuntimeOptions runtimeOptions = new RuntimeOptions(args);
+            Formatter formatter = runtimeOptions.formatter(runnerClass.getClassLoader());
+            new JSONParser(runtimeOptions.reporter(runnerClass.getClassLoader()), formatter).parse(json);
+            formatter.done();
+            formatter.close();
+        }
+        logger.info("Merged the reports of " + merged.length() + " features into " + jsonFiles + " and " + htmlFormats);
+    }
+}
@@ -0,0 +1,62 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.trycucumber.probe.FailingProbeRunner;
+import com.trycucumber.probe.ProbeRunner;
+import cucumber.runtime.CucumberException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the probe features on forked workers.
+ * User: Atish Narlawar
+ */
+public class ParallelCucumberRunnerTest {
+
+    /**
+     * Every worker runs its share in a JVM of its own and writes its own report.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void sharesFeaturesOutOverForkedWorkers() throws IOException {
+        new ParallelCucumberRunner(ProbeRunner.class, 2).runCukes();
+
+        String first = Files.toString(new File("target/cucumber-parallel/worker-0.json"), Charsets.UTF_8);
+        String second = Files.toString(new File("target/cucumber-parallel/worker-1.json"), Charsets.UTF_8);
+        assertTrue(first.contains("Parallel probe 1") && first.contains("Parallel probe 3"), first);
+        assertTrue(second.contains("Parallel probe 2") && !second.contains("Parallel probe 1"), second);
+    }
+
+    /**
+     * The workers' reports are merged, in feature order, into one json and one html report.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void mergesTheWorkersReports() throws IOException {
+        new ParallelCucumberRunner(ProbeRunner.class, 2).runCukes();
+
+        String merged = Files.toString(new File("target/cucumber-parallel/cucumber.json"), Charsets.UTF_8);
+        int first = merged.indexOf("Parallel probe 1");
+        int second = merged.indexOf("Parallel probe 2");
+        int third = merged.indexOf("Parallel probe 3");
+        assertTrue(first >= 0 && first < second && second < third, merged);
+
+        String html = Files.toString(new File("target/cucumber-parallel/cucumber-html/report.js"), Charsets.UTF_8);
+        assertTrue(html.contains("Parallel probe 2"), html);
+    }
+
+    /**
+     * A failed scenario on a worker fails the run.
+     */
+    @Test(expectedExceptions = CucumberException.class, expectedExceptionsMessageRegExp = "Failed workers \\[worker-0 .*")
+    public void failsWhenAWorkerFails() {
+        new ParallelCucumberRunner(FailingProbeRunner.class, 2).runCukes();
+    }
+}
@@ -0,0 +1,106 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Local metrics file of one JSON object per line. When the file would grow past its limit it is rolled over to
+ * name.1, the older files shift along to name.2 and onwards, and the oldest beyond the kept count is deleted.
+ * User: Atish Narlawar
+ */
+public class RollingMetricsFile {
+
+    /**
+     * The File.
+     */
+    private final File file;
+
+    /**
+     * The Max bytes of one file.
+     */
+    private final long maxBytes;
+
+    /**
+     * The Rolled files kept next to the current one.
+     */
+    private final int keptFiles;
+
+    /**
+     * Instantiates a new Rolling metrics file.
+     *
+     * @param file      the file
+     * @param maxBytes  the max bytes of one file
+     * @param keptFiles the rolled files kept next to the current one
+     */
+    public RollingMetricsFile(File file, long maxBytes, int keptFiles) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.keptFiles = keptFiles;
+    }
+
+    /**
+     * Appends lines, rolling the file over first when they would not fit.
+     *
+     * @param lines the lines, without line breaks
+     *
+     * @throws IOException the iO exception
+     */
+    public synchronized void append(Iterable<String> lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        byte[] bytes = text.toString().getBytes(Charsets.UTF_8);
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        if (file.length() > 0 && file.length() + bytes.length > maxBytes) {
+            roll();
+        }
+
+        OutputStream output = new FileOutputStream(file, true);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Shifts the rolled files along and moves the current file to name.1.
+     *
+     * @throws IOException the iO exception
+     */
+    private void roll() throws IOException {
+        File oldest = rolled(keptFiles);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Could not delete " + oldest);
+        }
+        for (int i = keptFiles - 1; i >= 1; i--) {
+            File rolled = rolled(i);
+            if (rolled.exists() && !rolled.renameTo(rolled(i + 1))) {
+                throw new IOException("Could not roll " + rolled);
+            }
+        }
+        if (keptFiles < 1 ? !file.delete() : !file.renameTo(rolled(1))) {
+            throw new IOException("Could not roll " + file);
+        }
+    }
+
+    /**
+     * Gets the rolled file of a number.
+     *
+     * @param number the number
+     *
+     * @return the file
+     */
+    private File rolled(int number) {
+        return new File(file.getPath() + "." + number);
+    }
+}
@@ -0,0 +1,72 @@
+package com.trycucumber.systemtests.framework;
+
+/**
+ * The scenario and step running on the current thread, as tracked by {@link StepTracker}.
+ * User: Atish Narlawar
+ */
+public final class RunContext {
+
+    /**
+     * The label used outside of any scenario or step.
+     */
+    public static final String NONE = "(none)";
+
+    /**
+     * The step label while hooks run.
+     */
+    public static final String HOOKS = "(hooks)";
+
+    /**
+     * The Scenario.
+     */
+    private static final ThreadLocal<String> scenario = new ThreadLocal<String>();
+
+    /**
+     * The Step.
+     */
+    private static final ThreadLocal<String> step = new ThreadLocal<String>();
+
+    /**
+     * Instantiates a new Run context.
+     */
+    private RunContext() {
+    }
+
+    /**
+     * Gets scenario.
+     *
+     * @return the scenario
+     */
+    public static String getScenario() {
+        String name = scenario.get();
+        return name == null ? NONE : name;
+    }
+
+    /**
+     * Sets scenario.
+     *
+     * @param name the name, or null when no scenario runs
+     */
+    public static void setScenario(String name) {
+        scenario.set(name);
+    }
+
+    /**
+     * Gets step.
+     *
+     * @return the step
+     */
+    public static String getStep() {
+        String name = step.get();
+        return name == null ? NONE : name;
+    }
+
+    /**
+     * Sets step.
+     *
+     * @param name the name, or null when no step runs
+     */
+    public static void setStep(String name) {
+        step.set(name);
+    }
+}
@@ -0,0 +1,121 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSortedMap;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.Dimension;
+
+import java.util.Map;
+
+/**
+ * Identifies which pooled WebDriver sessions are interchangeable: same browser type, same capabilities and,
+ * when one was asked for, same window size. Capability values must be strings, numbers, booleans or enums, whose
+ * text stands for their value; anything else, such as a Selenium Proxy, would be keyed by its identity and so never
+ * match another session, and has to be given as its text instead.
+ * User: Atish Narlawar
+ */
+public final class SessionKey {
+
+    /**
+     * The Browser type.
+     */
+    private final String browserType;
+
+    /**
+     * The Capabilities, sorted so that equal capability sets produce equal keys.
+     */
+    private final Map<String, String> capabilities;
+
+    /**
+     * The Window size, or null for the browser's default.
+     */
+    private final Dimension windowSize;
+
+    /**
+     * Instantiates a new Session key.
+     *
+     * @param browserType  the browser type
+     * @param capabilities the capabilities
+     */
+    public SessionKey(String browserType, Capabilities capabilities) {
+        this(browserType, capabilities, null);
+    }
+
+    /**
+     * Instantiates a new Session key for sessions sized to a viewport.
+     *
+     * @param browserType  the browser type
+     * @param capabilities the capabilities
+     * @param windowSize   the window size, or null for the browser's default
+     *
+     * @throws IllegalArgumentException when a capability value is not a string, number, boolean or enum
+     */
+    public SessionKey(String browserType, Capabilities capabilities, Dimension windowSize) {
+        this.browserType = browserType;
+        this.windowSize = windowSize;
+
+        ImmutableSortedMap.Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
+        if (capabilities != null) {
+            for (Map.Entry<String, ?> capability : capabilities.asMap().entrySet()) {
+                Object value = capability.getValue();
+                if (value != null && !(value instanceof String || value instanceof Number || value instanceof Boolean
+                        || value instanceof Character || value instanceof Enum)) {
+                    throw new IllegalArgumentException("Capability " + capability.getKey() + " of type "
+                            + value.getClass().getName() + " cannot identify a session, give it as a string");
+                }
+                builder.put(capability.getKey(), String.valueOf(value));
+            }
+        }
+        this.capabilities = builder.build();
+    }
+
+    /**
+     * Gets browser type.
+     *
+     * @return the browser type
+     */
+    public String getBrowserType() {
+        return browserType;
+    }
+
+    /**
+     * Gets capabilities.
+     *
+     * @return the capabilities
+     */
+    public Map<String, String> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Gets window size.
+     *
+     * @return the window size, or null for the browser's default
+     */
+    public Dimension getWindowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SessionKey)) {
+            return false;
+        }
+        SessionKey other = (SessionKey) o;
+        return Objects.equal(browserType, other.browserType) && Objects.equal(capabilities, other.capabilities)
+                && Objects.equal(windowSize, other.windowSize);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(browserType, capabilities, windowSize);
+    }
+
+    @Override
+    public String toString() {
+        return windowSize == null ? browserType + capabilities : browserType + capabilities + "@" + windowSize;
+    }
+}
@@ -0,0 +1,60 @@
+package com.trycucumber.systemtests.framework;
+
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+/**
+ * Checks which capability sets make interchangeable {@link SessionKey}s.
+ * User: Atish Narlawar
+ */
+public class SessionKeyTest {
+
+    /**
+     * Capabilities built separately but alike make equal keys.
+     */
+    @Test
+    public void equalCapabilitiesMakeEqualKeys() {
+        DesiredCapabilities first = DesiredCapabilities.htmlUnit();
+        first.setJavascriptEnabled(true);
+        first.setCapability(CapabilityType.PROXY, "127.0.0.1:8080");
+        DesiredCapabilities second = DesiredCapabilities.htmlUnit();
+        second.setCapability(CapabilityType.PROXY, "127.0.0.1:8080");
+        second.setJavascriptEnabled(true);
+
+        assertEquals(new SessionKey("headless", first), new SessionKey("headless", second));
+        assertEquals(new SessionKey("headless", first).hashCode(), new SessionKey("headless", second).hashCode());
+    }
+
+    /**
+     * Browser type, capabilities and window size each tell keys apart.
+     */
+    @Test
+    public void differencesMakeDifferentKeys() {
+        DesiredCapabilities capabilities = DesiredCapabilities.chrome();
+        DesiredCapabilities eager = DesiredCapabilities.chrome();
+        eager.setCapability("pageLoadStrategy", "eager");
+
+        SessionKey key = new SessionKey("google-chrome", capabilities);
+        assertFalse(key.equals(new SessionKey("firefox", capabilities)));
+        assertFalse(key.equals(new SessionKey("google-chrome", eager)));
+        assertFalse(key.equals(new SessionKey("google-chrome", capabilities, new Dimension(320, 480))));
+        assertEquals(new SessionKey("google-chrome", capabilities, new Dimension(320, 480)),
+                new SessionKey("google-chrome", capabilities, new Dimension(320, 480)));
+    }
+
+    /**
+     * A value without a stable text, such as a Selenium Proxy, is refused.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Capability proxy of type .*Proxy.*")
+    public void refusesObjectValues() {
+        DesiredCapabilities capabilities = DesiredCapabilities.firefox();
+        capabilities.setCapability(CapabilityType.PROXY, new Proxy().setHttpProxy("127.0.0.1:8080"));
+        new SessionKey("firefox", capabilities);
+    }
+}
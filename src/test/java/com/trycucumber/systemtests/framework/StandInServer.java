@@ -0,0 +1,481 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.testng.log4testng.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for server.host, started with the Spring context. In record mode it forwards every GET to the
+ * real site and saves the response under the fixture directory before answering; in replay mode it answers from
+ * the fixture directory alone, so runs need no network. Text responses have the real site's base URL rewritten to
+ * the stand-in's, keeping absolute links and assets on the stand-in.
+ * <p/>
+ * Asset, CDN or www hosts listed in standin.extra.origins are recorded and replayed too: their absolute and
+ * protocol-relative URLs are rewritten to paths under /standin-origin/&lt;scheme&gt;/&lt;host&gt; on the stand-in.
+ * URLs of any other host, and URLs that scripts put together at runtime, still go to the network, so a replay only
+ * covers the site and the listed origins.
+ * User: Atish Narlawar
+ */
+@Component
+public class StandInServer implements InitializingBean, DisposableBean {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(StandInServer.class);
+
+    /**
+     * The Body suffix.
+     */
+    private static final String BODY_SUFFIX = ".body";
+
+    /**
+     * The Meta suffix.
+     */
+    private static final String META_SUFFIX = ".meta";
+
+    /**
+     * The content types whose base URLs are rewritten.
+     */
+    private static final List<String> TEXT_TYPES = Arrays.asList("text/", "javascript", "json", "xml");
+
+    /**
+     * The path under which the stand-in serves the extra origins.
+     */
+    private static final String ORIGIN_PATH = "/standin-origin/";
+
+    /**
+     * The request headers passed on to the real site.
+     */
+    private static final List<String> FORWARDED_HEADERS = Arrays.asList("User-Agent", "Accept", "Accept-Language");
+
+    /**
+     * The modes of the stand-in.
+     */
+    public static enum Mode {
+        /**
+         * Not started, tests go to server.host.
+         */OFF,
+        /**
+         * Forwards to server.host and saves what it gets.
+         */RECORD,
+        /**
+         * Serves saved responses only.
+         */REPLAY
+    }
+
+    /**
+     * The Mode.
+     */
+    @Value("${standin.mode}")
+    private String modeName;
+
+    /**
+     * The Port, 0 for any free port.
+     */
+    @Value("${standin.port}")
+    private int port;
+
+    /**
+     * The Fixture path.
+     */
+    @Value("${standin.fixture.path}")
+    private String fixturePath;
+
+    /**
+     * The Extra origins, such as https://static.example.com, served under the stand-in as well.
+     */
+    @Value("${standin.extra.origins}")
+    private String extraOrigins;
+
+    /**
+     * The Server url.
+     */
+    @Value("${server.host}")
+    private String serverUrl;
+
+    /**
+     * The Server port.
+     */
+    @Value("${server.port}")
+    private int serverPort;
+
+    /**
+     * The Mode.
+     */
+    private Mode mode;
+
+    /**
+     * The Fixture dir.
+     */
+    private File fixtureDir;
+
+    /**
+     * The Http server.
+     */
+    private HttpServer httpServer;
+
+    /**
+     * The Executor.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The Http client, in record mode.
+     */
+    private CloseableHttpClient httpClient;
+
+    /**
+     * The Base url of the stand-in.
+     */
+    private String baseUrl;
+
+    /**
+     * The paths on the stand-in of the extra origins, by origin.
+     */
+    private final Map<String, String> originPaths = new LinkedHashMap<String, String>();
+
+    /**
+     * The URL prefixes rewritten in text responses, longest match first among overlapping ones.
+     */
+    private String[] rewrittenPrefixes;
+
+    /**
+     * The stand-in URL prefixes they are rewritten to.
+     */
+    private String[] rewrittenTo;
+
+    /**
+     * Starts the server unless the mode is off.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        mode = StringUtils.isBlank(modeName) ? Mode.OFF : Mode.valueOf(modeName.trim().toUpperCase());
+        if (mode == Mode.OFF) {
+            return;
+        }
+
+        fixtureDir = new File(fixturePath);
+        FileUtils.forceMkdir(fixtureDir);
+        if (mode == Mode.RECORD) {
+            httpClient = HttpClients.createDefault();
+        }
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (IOException e) {
+                    logger.warn("Stand-in could not serve " + exchange.getRequestURI() + ": " + e.getMessage());
+                    throw e;
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("standin-%d").setDaemon(true).build());
+        httpServer.setExecutor(executor);
+        httpServer.start();
+
+        baseUrl = "http://127.0.0.1:" + httpServer.getAddress().getPort();
+        prepareRewrites();
+        logger.info("Stand-in for " + getOriginUrl() + (originPaths.isEmpty() ? "" : " and " + originPaths.keySet()) + " " + (mode == Mode.RECORD ? "recording" : "replaying") + " at " + baseUrl + " in " + fixtureDir);
+    }
+
+    /**
+     * Stops the server.
+     *
+     * @throws IOException the iO exception
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            executor.shutdownNow();
+        }
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Is serving, true in record and replay mode.
+     *
+     * @return the boolean
+     */
+    public boolean isServing() {
+        return httpServer != null;
+    }
+
+    /**
+     * Gets mode.
+     *
+     * @return the mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the base url pages should be opened at, such as http://127.0.0.1:52310.
+     *
+     * @return the base url
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Answers one request from the fixture, recording it first in record mode.
+     *
+     * @param exchange the exchange
+     *
+     * @throws IOException the iO exception
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        String requestPath = exchange.getRequestURI().getRawPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            requestPath = requestPath + "?" + query;
+        }
+
+        String key = Hashing.sha1().hashString(requestPath, Charsets.UTF_8).toString();
+        File body = new File(fixtureDir, key + BODY_SUFFIX);
+        File meta = new File(fixtureDir, key + META_SUFFIX);
+
+        if (mode == Mode.RECORD) {
+            record(requestPath, upstreamUrl(requestPath), exchange.getRequestHeaders(), body, meta);
+        }
+        if (!meta.isFile()) {
+            logger.warn("Stand-in has no recording of " + requestPath);
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        Properties response = new Properties();
+        InputStream metaInput = new FileInputStream(meta);
+        try {
+            response.load(metaInput);
+        } finally {
+            metaInput.close();
+        }
+
+        byte[] content = FileUtils.readFileToByteArray(body);
+        String contentType = response.getProperty("content-type");
+        if (contentType != null) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            if (isText(contentType)) {
+                content = rewriteOrigin(content);
+            }
+        }
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+
+        int status = Integer.parseInt(response.getProperty("status", "200"));
+        if ("HEAD".equals(method)) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, content.length == 0 ? -1 : content.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(content);
+        output.close();
+    }
+
+    /**
+     * Fetches the url from the real site or an extra origin, following redirects, and saves the final response.
+     *
+     * @param requestPath    the request path
+     * @param url            the url
+     * @param requestHeaders the request headers
+     * @param body           the body file
+     * @param meta           the meta file
+     *
+     * @throws IOException the iO exception
+     */
+    private void record(String requestPath, String url, Headers requestHeaders, File body, File meta) throws IOException {
+        HttpGet get = new HttpGet(url);
+        for (String header : FORWARDED_HEADERS) {
+            String value = requestHeaders.getFirst(header);
+            if (value != null) {
+                get.setHeader(header, value);
+            }
+        }
+
+        CloseableHttpResponse upstream = httpClient.execute(get);
+        try {
+            HttpEntity entity = upstream.getEntity();
+            byte[] content = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+
+            Properties response = new Properties();
+            response.setProperty("path", requestPath);
+            response.setProperty("url", url);
+            response.setProperty("status", String.valueOf(upstream.getStatusLine().getStatusCode()));
+            Header contentType = upstream.getFirstHeader("Content-Type");
+            if (contentType != null) {
+                response.setProperty("content-type", contentType.getValue());
+            }
+
+            // the body first, so a meta file always has its body
+            ByteArrayOutputStream metaBytes = new ByteArrayOutputStream();
+            response.store(metaBytes, null);
+            writeFixture(body, content);
+            writeFixture(meta, metaBytes.toByteArray());
+            logger.debug("Stand-in recorded " + requestPath + " (" + content.length + " bytes)");
+        } finally {
+            upstream.close();
+        }
+    }
+
+    /**
+     * Writes a fixture file through a temporary file renamed into place, so that parallel workers recording the
+     * same request each put a whole copy there and never serve a half written one.
+     *
+     * @param file    the file
+     * @param content the content
+     *
+     * @throws IOException the iO exception
+     */
+    private void writeFixture(File file, byte[] content) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", fixtureDir);
+        try {
+            FileUtils.writeByteArrayToFile(temp, content);
+            if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+                throw new IOException("Could not move " + temp + " to " + file);
+            }
+        } finally {
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * Rewrites links to the real site and the extra origins into links to the stand-in, in a single pass so that
+     * rewritten links are not rewritten again. URLs are ASCII, so the content is handled as ISO-8859-1, which leaves
+     * every other byte as it was whatever the real charset.
+     *
+     * @param content the content
+     *
+     * @return the byte [ ]
+     */
+    private byte[] rewriteOrigin(byte[] content) {
+        String text = new String(content, Charsets.ISO_8859_1);
+        return StringUtils.replaceEach(text, rewrittenPrefixes, rewrittenTo).getBytes(Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Maps the extra origins to their paths on the stand-in and lists the URL prefixes to rewrite.
+     */
+    private void prepareRewrites() {
+        List<String> prefixes = new ArrayList<String>();
+        List<String> replacements = new ArrayList<String>();
+        for (String extraOrigin : StringUtils.split(StringUtils.defaultString(extraOrigins), ", ")) {
+            URI origin = URI.create(StringUtils.removeEnd(extraOrigin, "/"));
+            if (origin.getScheme() == null || origin.getRawAuthority() == null) {
+                throw new IllegalArgumentException("Invalid stand-in origin " + extraOrigin + ", expected scheme://host[:port]");
+            }
+            String originUrl = origin.getScheme() + "://" + origin.getRawAuthority();
+            String originPath = ORIGIN_PATH + origin.getScheme() + "/" + origin.getRawAuthority();
+            originPaths.put(originUrl, originPath);
+
+            prefixes.add(originUrl);
+            replacements.add(baseUrl + originPath);
+            prefixes.add("//" + origin.getRawAuthority());
+            replacements.add(StringUtils.removeStart(baseUrl, "http:") + originPath);
+        }
+        prefixes.add(getOriginUrl());
+        replacements.add(baseUrl);
+        prefixes.add(serverUrl);
+        replacements.add(baseUrl);
+
+        rewrittenPrefixes = prefixes.toArray(new String[prefixes.size()]);
+        rewrittenTo = replacements.toArray(new String[replacements.size()]);
+    }
+
+    /**
+     * Gets the url a request to the stand-in stands in for, on an extra origin or else on the real site.
+     *
+     * @param requestPath the request path
+     *
+     * @return the url
+     */
+    private String upstreamUrl(String requestPath) {
+        for (Map.Entry<String, String> originPath : originPaths.entrySet()) {
+            String path = originPath.getValue();
+            if (requestPath.startsWith(path) && (requestPath.length() == path.length() || "/?".indexOf(requestPath.charAt(path.length())) >= 0)) {
+                String rest = requestPath.substring(path.length());
+                return originPath.getKey() + (rest.startsWith("/") ? rest : "/" + rest);
+            }
+        }
+        return getOriginUrl() + requestPath;
+    }
+
+    /**
+     * Is text.
+     *
+     * @param contentType the content type
+     *
+     * @return the boolean
+     */
+    private static boolean isText(String contentType) {
+        for (String textType : TEXT_TYPES) {
+            if (contentType.contains(textType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the base url of the real site, as AbstractSeleniumTest builds it.
+     *
+     * @return the origin url
+     */
+    private String getOriginUrl() {
+        return serverUrl + ":" + serverPort;
+    }
+}
@@ -0,0 +1,165 @@
+package com.trycucumber.systemtests.framework;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Records a page and its assets from a local server, reached as localhost for the site and as 127.0.0.1 for an
+ * asset host, and replays them with the server gone.
+ * User: Atish Narlawar
+ */
+public class StandInServerTest {
+
+    /**
+     * The Upstream.
+     */
+    private HttpServer upstream;
+
+    /**
+     * The Fixture dir.
+     */
+    private File fixtureDir;
+
+    /**
+     * The Asset origin.
+     */
+    private String assetOrigin;
+
+    /**
+     * Starts the upstream server.
+     *
+     * @throws IOException the iO exception
+     */
+    @BeforeMethod
+    public void start() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        int port = upstream.getAddress().getPort();
+        assetOrigin = "http://127.0.0.1:" + port;
+        final String page = "<link href=\"http://localhost:" + port + "/site.css\">"
+                + "<img src=\"" + assetOrigin + "/img/logo.png\">"
+                + "<script src=\"//127.0.0.1:" + port + "/app.js\"></script>";
+        upstream.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean isPage = "/".equals(exchange.getRequestURI().getPath());
+                byte[] body = (isPage ? page : "asset " + exchange.getRequestURI()).getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", isPage ? "text/html" : "image/png");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        upstream.start();
+        fixtureDir = Files.createTempDir();
+    }
+
+    /**
+     * Stops the upstream server.
+     *
+     * @throws IOException the iO exception
+     */
+    @AfterMethod
+    public void stop() throws IOException {
+        upstream.stop(0);
+        FileUtils.deleteDirectory(fixtureDir);
+    }
+
+    /**
+     * Links to the site and to the extra origin point at the stand-in, which records and replays both.
+     *
+     * @throws IOException the iO exception
+     */
+    @Test
+    public void replaysTheSiteAndExtraOrigins() throws IOException {
+        StandInServer recorder = standIn("record");
+        String page;
+        String logo;
+        try {
+            String baseUrl = recorder.getBaseUrl();
+            page = get(baseUrl + "/");
+            assertTrue(page.contains("\"" + baseUrl + "/site.css\""), page);
+            assertTrue(page.contains("\"" + baseUrl + "/standin-origin/http/127.0.0.1:" + upstream.getAddress().getPort() + "/img/logo.png\""), page);
+            assertTrue(page.contains("\"" + baseUrl.substring("http:".length()) + "/standin-origin/http/127.0.0.1:" + upstream.getAddress().getPort() + "/app.js\""), page);
+
+            logo = get(baseUrl + "/standin-origin/http/127.0.0.1:" + upstream.getAddress().getPort() + "/img/logo.png");
+            assertEquals(logo, "asset /img/logo.png");
+        } finally {
+            recorder.destroy();
+        }
+        upstream.stop(0);
+
+        StandInServer player = standIn("replay");
+        try {
+            String baseUrl = player.getBaseUrl();
+            assertEquals(get(baseUrl + "/"), page.replace(recorder.getBaseUrl(), baseUrl)
+                    .replace(recorder.getBaseUrl().substring("http:".length()), baseUrl.substring("http:".length())));
+            assertEquals(get(baseUrl + "/standin-origin/http/127.0.0.1:" + upstream.getAddress().getPort() + "/img/logo.png"), logo);
+        } finally {
+            player.destroy();
+        }
+    }
+
+    /**
+     * Starts a stand-in for the upstream server.
+     *
+     * @param mode the mode
+     *
+     * @return the stand in server
+     *
+     * @throws IOException the iO exception
+     */
+    private StandInServer standIn(String mode) throws IOException {
+        StandInServer standIn = new StandInServer();
+        setField(standIn, "modeName", mode);
+        setField(standIn, "port", 0);
+        setField(standIn, "fixturePath", fixtureDir.getPath());
+        setField(standIn, "extraOrigins", assetOrigin);
+        setField(standIn, "serverUrl", "http://localhost");
+        setField(standIn, "serverPort", upstream.getAddress().getPort());
+        standIn.afterPropertiesSet();
+        return standIn;
+    }
+
+    /**
+     * Gets the body of a url.
+     *
+     * @param url the url
+     *
+     * @return the body
+     *
+     * @throws IOException the iO exception
+     */
+    private static String get(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            assertEquals(connection.getResponseCode(), 200, url);
+            InputStream body = connection.getInputStream();
+            try {
+                return IOUtils.toString(body, "UTF-8");
+            } finally {
+                body.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.trycucumber.systemtests.framework;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.Reporter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Match;
+import gherkin.formatter.model.Result;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Cucumber plugin keeping {@link RunContext} up to date, so WebDriver commands can be attributed to the scenario
+ * and step that issued them. Register it with --format com.trycucumber.systemtests.framework.StepTracker.
+ * A scenario starts with its life cycle, before its Before hooks, so hook commands are charged to the scenario
+ * they belong to. Scenarios are labelled with their feature and line, so outline rows and scenarios sharing a name
+ * stay apart. Cucumber announces the steps of the background and of the scenario before running them, then reports
+ * a match as each one starts.
+ * User: Atish Narlawar
+ */
+public class StepTracker implements Formatter, Reporter {
+
+    /**
+     * The steps announced and not started yet.
+     */
+    private final Deque<String> pendingSteps = new ArrayDeque<String>();
+
+    /**
+     * The Feature uri.
+     */
+    private String uri;
+
+    /**
+     * Gets the label of a scenario: its name, feature and line.
+     *
+     * @param uri      the feature uri
+     * @param scenario the scenario
+     *
+     * @return the label
+     */
+    public static String label(String uri, Scenario scenario) {
+        return scenario.getName() + " (" + uri + ":" + scenario.getLine() + ")";
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        pendingSteps.clear();
+        RunContext.setScenario(label(uri, scenario));
+        RunContext.setStep(RunContext.HOOKS);
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        RunContext.setScenario(null);
+        RunContext.setStep(null);
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+    }
+
+    @Override
+    public void step(Step step) {
+        pendingSteps.add(step.getKeyword() + step.getName());
+    }
+
+    @Override
+    public void match(Match match) {
+        String step = pendingSteps.poll();
+        RunContext.setStep(step == null ? RunContext.HOOKS : step);
+    }
+
+    @Override
+    public void result(Result result) {
+        RunContext.setStep(RunContext.HOOKS);
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+    }
+
+    @Override
+    public void uri(String uri) {
+        this.uri = uri;
+    }
+
+    @Override
+    public void feature(Feature feature) {
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+    }
+
+    @Override
+    public void examples(Examples examples) {
+    }
+
+    @Override
+    public void background(Background background) {
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void eof() {
+    }
+
+    @Override
+    public void before(Match match, Result result) {
+    }
+
+    @Override
+    public void after(Match match, Result result) {
+    }
+
+    @Override
+    public void embedding(String mimeType, byte[] data) {
+    }
+
+    @Override
+    public void write(String text) {
+    }
+}
@@ -0,0 +1,92 @@
+package com.trycucumber.systemtests.framework;
+
+import com.trycucumber.probe.ProbeGlue;
+import cucumber.runtime.RuntimeOptions;
+import cucumber.runtime.io.MultiLoader;
+import cucumber.runtime.model.CucumberFeature;
+import gherkin.formatter.Formatter;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Runs the probe feature through a real Cucumber runtime and checks what {@link StepTracker} attributes hooks and
+ * steps to.
+ * User: Atish Narlawar
+ */
+public class StepTrackerTest {
+
+    /**
+     * The glue of the probe features.
+     */
+    public static final String PROBE_GLUE = "classpath:com/trycucumber/probe";
+
+    /**
+     * Runs the probe features with the plugins.
+     *
+     * @param plugins the plugins
+     */
+    @SuppressWarnings("unchecked")
+    public static void runProbe(Formatter... plugins) {
+        ClassLoader classLoader = StepTrackerTest.class.getClassLoader();
+        List<CucumberFeature> features = new RuntimeOptions(Arrays.asList("--glue", PROBE_GLUE, "classpath:probe"))
+                .cucumberFeatures(new MultiLoader(classLoader));
+
+        CucumberWorker worker = new CucumberWorker(classLoader, Collections.singletonList(PROBE_GLUE),
+                Collections.singletonList("json:target/probe.json"), Arrays.asList(plugins));
+        for (CucumberFeature feature : features) {
+            worker.run(feature);
+        }
+        worker.finish();
+    }
+
+    /**
+     * Hooks and steps are charged to the scenario they run in.
+     */
+    @Test
+    public void attributesHooksAndStepsToTheirScenario() {
+        ProbeGlue.OBSERVED.clear();
+        runProbe(new StepTracker());
+
+        List<String> observed = new ArrayList<String>(ProbeGlue.OBSERVED);
+        assertEquals(observed, Arrays.asList(
+                "before: Twin (probe/probe.feature:9) | (hooks)",
+                "step: Twin (probe/probe.feature:9) | Given a probe step",
+                "step: Twin (probe/probe.feature:9) | When a probe step",
+                "before: Twin (probe/probe.feature:12) | (hooks)",
+                "step: Twin (probe/probe.feature:12) | Given a probe step",
+                "step: Twin (probe/probe.feature:12) | When a probe step",
+                "before: Rows (probe/probe.feature:20) | (hooks)",
+                "step: Rows (probe/probe.feature:20) | Given a probe step",
+                "row 1: Rows (probe/probe.feature:20) | When probe row 1",
+                "before: Rows (probe/probe.feature:21) | (hooks)",
+                "step: Rows (probe/probe.feature:21) | Given a probe step",
+                "row 2: Rows (probe/probe.feature:21) | When probe row 2",
+                "before: Broken hook (probe/probe.feature:24) | (hooks)"));
+        assertEquals(RunContext.getScenario(), RunContext.NONE);
+    }
+
+    /**
+     * Scenarios sharing a name and outline rows get labels of their own.
+     */
+    @Test
+    public void labelsEveryScenarioApart() {
+        ProbeGlue.OBSERVED.clear();
+        runProbe(new StepTracker());
+
+        Set<String> scenarios = new LinkedHashSet<String>();
+        for (String observation : ProbeGlue.OBSERVED) {
+            scenarios.add(observation.substring(observation.indexOf(": ") + 2, observation.indexOf(" | ")));
+        }
+        assertEquals(scenarios.size(), 5);
+        assertTrue(scenarios.contains("Broken hook (probe/probe.feature:24)"));
+    }
+}
@@ -3,6 +3,7 @@ package com.trycucumber.systemtests.pages.home;
 import com.trycucumber.systemtests.api.SeleniumAPI;
 import com.trycucumber.systemtests.framework.AbstractSeleniumTest;
 import com.trycucumber.systemtests.util.UriManager;
+import cucumber.api.Scenario;
 import cucumber.api.java.After;
 import cucumber.api.java.Before;
 import cucumber.api.java.en.Given;
@@ -36,13 +37,15 @@ public class HomePageIT extends AbstractSeleniumTest {
     /**
      * Sets up Home Page Test.
      *
+     * @param scenario the scenario, whose @readiness-* tag selects when pages count as loaded
+     *
      * @throws Exception the exception
      */
     @Before("@HomePage")
-    public void setUp() throws Exception {
+    public void setUp(Scenario scenario) throws Exception {
         logger.debug("Opening up Home Page");
         seleniumAPI.start();
-        seleniumAPI.implicit();
+        seleniumAPI.selectPageReadiness(scenario);
     }
 
     /**
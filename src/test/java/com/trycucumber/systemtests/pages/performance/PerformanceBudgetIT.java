@@ -0,0 +1,213 @@
+package com.trycucumber.systemtests.pages.performance;
+
+import com.trycucumber.systemtests.api.PageTiming;
+import com.trycucumber.systemtests.api.SeleniumAPI;
+import com.trycucumber.systemtests.framework.AbstractSeleniumTest;
+import com.trycucumber.systemtests.util.PerformanceBudget;
+import com.trycucumber.systemtests.util.UriManager;
+import cucumber.api.Scenario;
+import cucumber.api.java.After;
+import cucumber.api.java.Before;
+import cucumber.api.java.en.Then;
+import cucumber.api.java.en.When;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.testng.log4testng.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reusable performance budget steps for any page known to {@link UriManager}. A page is loaded K times, with the
+ * browser cache warm (one unmeasured load first, then K loads in the same session) or cold (every load in a new
+ * session), and budgets are checked against the median or the p95 of the browser's own timing data. Cold sessions
+ * bypass the browser proxy's asset cache and blocked domains, so they download what a first-time visitor does, ads
+ * included; warm loads go through both, like every other scenario.
+ * Requests count the document and every resource; transfer sizes of cross-origin resources without
+ * Timing-Allow-Origin are reported as 0 by browsers. A load that filled the browser's Resource Timing buffer has an
+ * unknown request count and transfer size, so the request and transfer budgets fail on it rather than pass on a
+ * count that stopped at the buffer size.
+ * Created by Atish Narlawar.
+ */
+public class PerformanceBudgetIT extends AbstractSeleniumTest {
+
+    /**
+     * The constant logger.
+     */
+    private static final Logger logger = Logger.getLogger(PerformanceBudgetIT.class);
+
+    /**
+     * The Selenium API.
+     */
+    @Autowired
+    private SeleniumAPI seleniumAPI;
+
+    /**
+     * The Page uri measured.
+     */
+    private String pageUri;
+
+    /**
+     * The Load millis of every measured load.
+     */
+    private final List<Double> loadMillis = new ArrayList<Double>();
+
+    /**
+     * The Requests of every measured load.
+     */
+    private final List<Double> requests = new ArrayList<Double>();
+
+    /**
+     * The Transfer kb of every measured load.
+     */
+    private final List<Double> transferKb = new ArrayList<Double>();
+
+    /**
+     * The measured loads that filled the Resource Timing buffer.
+     */
+    private int resourceBufferFullLoads;
+
+    /**
+     * Sets up performance tests.
+     *
+     * @param scenario the scenario
+     *
+     * @throws Exception the exception
+     */
+    @Before("@performance")
+    public void setUp(Scenario scenario) throws Exception {
+        seleniumAPI.start();
+        seleniumAPI.selectPageReadiness(scenario);
+    }
+
+    /**
+     * Tear down.
+     */
+    @After("@performance")
+    public void tearDown() {
+        seleniumAPI.quit();
+    }
+
+    /**
+     * Loads a page repeatedly, recording the timings of every measured load.
+     *
+     * @param pageName the page name
+     * @param loads    the loads
+     * @param cache    warm or cold
+     *
+     * @throws Exception the exception
+     */
+    @When("^the (\\S+) page is loaded (\\d+) times? with a (warm|cold) cache$")
+    public void loadPage(String pageName, int loads, String cache) throws Exception {
+        pageUri = UriManager.forPage(pageName);
+        String pageUrl = getPageUrl(pageUri);
+        boolean cold = "cold".equals(cache);
+
+        if (!cold) {
+            seleniumAPI.openPage(pageUrl);
+        }
+        for (int i = 0; i < loads; i++) {
+            if (cold) {
+                seleniumAPI.start(true);
+            }
+            seleniumAPI.openPage(pageUrl);
+
+            PageTiming timing = seleniumAPI.getPageTiming();
+            assertNotNull("The browser reports no Navigation Timing for " + pageUrl, timing);
+            loadMillis.add(timing.getLoad());
+            requests.add((double) timing.getResources().size() + 1);
+            transferKb.add(timing.getTransferSize() / 1024.0);
+            if (timing.isResourceBufferFull()) {
+                resourceBufferFullLoads++;
+            }
+        }
+        logger.debug(cache + " loads of " + pageUrl + ": load ms " + loadMillis + ", requests " + requests + ", transfer KB " + transferKb);
+    }
+
+    /**
+     * Checks the load time.
+     *
+     * @param millis     the millis
+     * @param percentile the percentile
+     */
+    @Then("^the page should load within (\\d+) ms at the (median|p95)$")
+    public void checkLoadTime(long millis, String percentile) {
+        double actual = percentile(loadMillis, percentile);
+        assertTrue("Page load " + percentile + " is " + actual + " ms, over the budget of " + millis + " ms " + loadMillis,
+                actual >= 0 && actual <= millis);
+    }
+
+    /**
+     * Checks the request count.
+     *
+     * @param maxRequests the max requests
+     * @param percentile  the percentile
+     */
+    @Then("^the page should make at most (\\d+) requests at the (median|p95)$")
+    public void checkRequests(int maxRequests, String percentile) {
+        checkResourcesComplete();
+        double actual = percentile(requests, percentile);
+        assertTrue("Request count " + percentile + " is " + actual + ", over the budget of " + maxRequests + " " + requests,
+                actual <= maxRequests);
+    }
+
+    /**
+     * Checks the transfer size.
+     *
+     * @param maxKb      the max kb
+     * @param percentile the percentile
+     */
+    @Then("^the total transfer should be under (\\d+) KB at the (median|p95)$")
+    public void checkTransfer(long maxKb, String percentile) {
+        checkResourcesComplete();
+        double actual = percentile(transferKb, percentile);
+        assertTrue("Transfer " + percentile + " is " + actual + " KB, over the budget of " + maxKb + " KB " + transferKb,
+                actual < maxKb);
+    }
+
+    /**
+     * Fails when a load filled the Resource Timing buffer, so its resources are only the first ones.
+     */
+    private void checkResourcesComplete() {
+        assertTrue(resourceBufferFullLoads + " of " + requests.size() + " loads filled the browser's Resource Timing buffer,"
+                + " so their requests and transfer are unknown; load the page through the browser proxy over plain HTTP"
+                + " with browser.proxy.resource.timing.buffer set to raise the buffer from the first request", resourceBufferFullLoads == 0);
+    }
+
+    /**
+     * Checks every limit of the budget UriManager holds for the page.
+     */
+    @Then("^the page should meet its performance budget$")
+    public void checkBudget() {
+        PerformanceBudget budget = UriManager.budget(pageUri);
+        assertNotNull("UriManager has no performance budget for " + pageUri, budget);
+        checkLoadTime(budget.getLoadMillis(), budget.getPercentile());
+        checkRequests(budget.getMaxRequests(), budget.getPercentile());
+        checkTransfer(budget.getMaxTransferKb(), budget.getPercentile());
+    }
+
+    /**
+     * Gets the median or p95 of the samples, by nearest rank.
+     *
+     * @param samples    the samples
+     * @param percentile "median" or "p95"
+     *
+     * @return the value
+     */
+    private static double percentile(List<Double> samples, String percentile) {
+        assertTrue("No page loads measured", !samples.isEmpty());
+
+        double[] sorted = new double[samples.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+
+        double share = "median".equals(percentile) ? 0.5 : 0.95;
+        int rank = (int) Math.ceil(share * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
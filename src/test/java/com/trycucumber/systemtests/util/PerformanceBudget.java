@@ -0,0 +1,80 @@
+package com.trycucumber.systemtests.util;
+
+/**
+ * Performance budget of a page: how long it may take to load, how many requests it may make and how much it may
+ * transfer, checked at the median or the p95 of repeated loads.
+ * User: Atish Narlawar
+ */
+public class PerformanceBudget {
+
+    /**
+     * The Load millis.
+     */
+    private final long loadMillis;
+
+    /**
+     * The Max requests.
+     */
+    private final int maxRequests;
+
+    /**
+     * The Max transfer kb.
+     */
+    private final long maxTransferKb;
+
+    /**
+     * The percentile checked, "median" or "p95".
+     */
+    private final String percentile;
+
+    /**
+     * Instantiates a new Performance budget.
+     *
+     * @param loadMillis    the load millis
+     * @param maxRequests   the max requests
+     * @param maxTransferKb the max transfer kb
+     * @param percentile    the percentile, "median" or "p95"
+     */
+    public PerformanceBudget(long loadMillis, int maxRequests, long maxTransferKb, String percentile) {
+        this.loadMillis = loadMillis;
+        this.maxRequests = maxRequests;
+        this.maxTransferKb = maxTransferKb;
+        this.percentile = percentile;
+    }
+
+    /**
+     * Gets load millis.
+     *
+     * @return the load millis
+     */
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * Gets max requests.
+     *
+     * @return the max requests
+     */
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Gets max transfer kb.
+     *
+     * @return the max transfer kb
+     */
+    public long getMaxTransferKb() {
+        return maxTransferKb;
+    }
+
+    /**
+     * Gets percentile.
+     *
+     * @return the percentile
+     */
+    public String getPercentile() {
+        return percentile;
+    }
+}
@@ -1,5 +1,8 @@
 package com.trycucumber.systemtests.util;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * One point URI Manager.
  * User: Atish Narlawar
@@ -7,6 +10,15 @@ package com.trycucumber.systemtests.util;
  */
 public class UriManager {
 
+    /**
+     * The performance budgets by URI.
+     */
+    private static final Map<String, PerformanceBudget> budgets = new HashMap<String, PerformanceBudget>();
+
+    static {
+        budgets.put(homepage(), new PerformanceBudget(8000, 150, 4096, "p95"));
+    }
+
 
     /**
      * Returns the URI for HomePage
@@ -17,5 +29,30 @@ public class UriManager {
         return homepage;
     }
 
+    /**
+     * Returns the URI of a page by the name used in features, such as "home".
+     *
+     * @param pageName the page name
+     *
+     * @return the uri
+     */
+    public static String forPage(String pageName) {
+        if ("home".equalsIgnoreCase(pageName) || "homepage".equalsIgnoreCase(pageName)) {
+            return homepage();
+        }
+        throw new IllegalArgumentException("Unknown page " + pageName);
+    }
+
+    /**
+     * Returns the performance budget of a URI.
+     *
+     * @param uri the uri
+     *
+     * @return the performance budget, or null when the page has none
+     */
+    public static PerformanceBudget budget(String uri) {
+        return budgets.get(uri);
+    }
+
 
 }
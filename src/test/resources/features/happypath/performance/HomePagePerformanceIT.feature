@@ -0,0 +1,19 @@
+# Performance budgets are checked against the browser's own timing data over repeated loads.
+# Budgets of pages without explicit limits come from UriManager.
+# Cold cache loads start a new browser that bypasses the browser proxy's asset cache and blocked domains, ads included.
+
+@performance @happypath
+Feature: Yahoo Home Page performance
+  As a user, I can load Yahoo Home Page quickly and without needless downloads
+
+  @ready
+  Scenario: Yahoo home page stays within its budget with a warm cache
+    When the home page is loaded 5 times with a warm cache
+    Then the page should meet its performance budget
+
+  @ready
+  Scenario: Yahoo home page loads within limits with a cold cache
+    When the home page is loaded 3 times with a cold cache
+    Then the page should load within 10000 ms at the median
+    And the page should make at most 200 requests at the p95
+    And the total transfer should be under 6144 KB at the p95
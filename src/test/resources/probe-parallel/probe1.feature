@@ -0,0 +1,7 @@
+# Run by ParallelCucumberRunnerTest on forked workers, see com.trycucumber.probe.ProbeGlue.
+
+@probe
+Feature: Parallel probe 1
+
+  Scenario: Parallel probe 1
+    Given a probe step
@@ -0,0 +1,25 @@
+# Run by the framework tests through a real Cucumber runtime, see com.trycucumber.probe.ProbeGlue.
+
+@probe
+Feature: Probe
+
+  Background:
+    Given a probe step
+
+  Scenario: Twin
+    When a probe step
+
+  Scenario: Twin
+    When a probe step
+
+  Scenario Outline: Rows
+    When probe row <row>
+
+    Examples:
+      | row |
+      | 1   |
+      | 2   |
+
+  @probe-failing-hook
+  Scenario: Broken hook
+    When a probe step